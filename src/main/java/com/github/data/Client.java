@@ -2,6 +2,7 @@ package com.github.data;
 
 import com.github.data.common.LogManager;
 import com.github.data.common.TinyLogger;
+import com.github.data.compress.CompressionType;
 import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.request.*;
 import com.github.data.utils.Utils;
@@ -16,6 +17,8 @@ import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -143,22 +146,53 @@ public class Client {
      * A logging client that sends requests to Reactor on TCP socket.
      */
     static class TcpLoggingClient implements Runnable {
+        // 所有连接共用的心跳调度线程, 不阻止进程退出
+        private static final ScheduledExecutorService HEART_BEAT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r,"HeartBeatScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         private final int serverPort;
         private final String serverHost;
         private final int messageNum;
         private final User user;
+        // 每个请求携带的消息数, 大于1时使用批量消息请求
+        private final int batchSize;
+        // 批量消息的压缩类型, 协商的协议版本支持时使用
+        private final CompressionType compressionType;
+        // 登录时与服务端协商的协议版本
+        private volatile short protocolVersion = ApiKeys.LEGACY_VERSION;
 
         /**
          * Creates a new TCP logging client.
          */
         public TcpLoggingClient(String serverHost, int serverPort, int messageNum,User user) {
+            this(serverHost,serverPort,messageNum,user,1);
+        }
+
+        /**
+         * Creates a new TCP logging client sending its messages in LZ4 compressed batches of
+         * {@code batchSize}.
+         */
+        public TcpLoggingClient(String serverHost, int serverPort, int messageNum,User user,int batchSize) {
+            this(serverHost,serverPort,messageNum,user,batchSize,CompressionType.LZ4);
+        }
+
+        /**
+         * Creates a new TCP logging client sending its messages in batches of {@code batchSize}
+         * compressed with {@code compressionType}.
+         */
+        public TcpLoggingClient(String serverHost, int serverPort, int messageNum,User user,int batchSize,CompressionType compressionType) {
+            this.compressionType = compressionType;
             this.serverHost = serverHost;
             this.serverPort = serverPort;
             this.messageNum = messageNum;
             this.user = user;
+            this.batchSize = Math.max(1,batchSize);
         }
 
-        private void heartBeat(OutputStream outputStream){
+        private ScheduledFuture<?> heartBeat(OutputStream outputStream){
             Runnable heartTask = new Runnable() {
                 @Override
                 public void run() {
@@ -173,8 +207,8 @@ public class Client {
                 }
             };
 
-            // 定时收发心跳消息
-            Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(heartTask,100,500,TimeUnit.MILLISECONDS);
+            // 定时收发心跳消息, 所有连接共用一个调度线程
+            return HEART_BEAT_SCHEDULER.scheduleAtFixedRate(heartTask,100,500,TimeUnit.MILLISECONDS);
         }
 
         @Override
@@ -194,6 +228,7 @@ public class Client {
                 throw new RuntimeException("Socket初始化失败!");
             }
 
+            ScheduledFuture<?> heartBeatFuture = null;
             try /*(Socket socket = new Socket(address, serverPort))*/ {
                 OutputStream outputStream = socket.getOutputStream();
 
@@ -203,10 +238,17 @@ public class Client {
                 // 接收登录回复
                 readLoginResponses(socket.getInputStream());
 
-                heartBeat(outputStream);
+                heartBeatFuture = heartBeat(outputStream);
 
                 Random random = new Random();
-                for (int i = 0; i < messageNum; i++) {
+                for (int i = 0; i < messageNum; i += batchSize) {
+                    if(batchSize > 1){
+                        // 发送批量消息请求并收取回复
+                        sendMessageBatchRequests(outputStream,Math.min(batchSize,messageNum - i));
+                        readMessageBatchResponses(socket.getInputStream());
+                        continue;
+                    }
+
                     // 发送数据消息请求
                     sendMessageRequests(outputStream);
 
@@ -223,19 +265,20 @@ public class Client {
             } catch (IOException e) {
                 LOG.error("error sending requests", e);
                 throw new RuntimeException(e);
+            } finally {
+                if(heartBeatFuture != null){
+                    heartBeatFuture.cancel(false);
+                }
             }
         }
 
         private void sendLoginRequests(OutputStream outputStream,User user) throws IOException {
             // User user = users[userChooseRandom.nextInt(users.length)];
             System.out.println("user=" + user.toString());
-            LoginRequest loginRequest = new LoginRequest(user.getUser(), Utils.md5Hex(user.getPassWord()));
+            LoginRequest loginRequest = new LoginRequest(user.getUser(), Utils.md5Hex(user.getPassWord()), ApiKeys.LATEST_VERSION);
             // System.out.println(loginRequest.toStruct().toString());
-            int sizeOf = loginRequest.toStruct().sizeOf();
-            ByteBuffer buff = ByteBuffer.allocate(sizeOf + 4 + 4);
-            buff.putInt(sizeOf);
-            buff.putInt(ApiKeys.LOGIN.getId());
-            loginRequest.toStruct().writeTo(buff);
+            ByteBuffer buff = ByteBuffer.allocate(loginRequest.frameSize());
+            loginRequest.writeFrame(ApiKeys.LOGIN,buff);
 
             outputStream.write(buff.array());
         }
@@ -249,20 +292,18 @@ public class Client {
                 ByteBuffer buff = ByteBuffer.wrap(data, 0, read);
                 int len = buff.getInt();
                 int apiId = buff.getInt();
-                LoginResponse loginResponse = LoginResponse.parse(buff);
+                // 协议版本字段可选, 只读取本帧
+                buff.limit(buff.position() + len);
+                LoginResponse loginResponse = LoginResponse.decode(buff,ApiKeys.COMPACT_VERSION);
+                protocolVersion = loginResponse.getProtocolVersion();
                 System.out.println(loginResponse.toStruct().toString());
             }
         }
 
         private void sendHeartRequests(OutputStream outputStream) throws IOException{
             HeartBeatRequest heartBeatRequest = new HeartBeatRequest("心跳消息",System.currentTimeMillis());
-            int sizeOf = heartBeatRequest.toStruct().sizeOf();
-
-            ByteBuffer buff = ByteBuffer.allocate(sizeOf + 4 + 4);
-            buff.putInt(sizeOf);
-            buff.putInt(ApiKeys.HEART_BEAT.getId());
-
-            heartBeatRequest.toStruct().writeTo(buff);
+            ByteBuffer buff = ByteBuffer.allocate(heartBeatRequest.frameSize(protocolVersion));
+            heartBeatRequest.writeFrame(ApiKeys.HEART_BEAT,protocolVersion,buff);
             outputStream.write(buff.array());
         }
 
@@ -275,7 +316,7 @@ public class Client {
                 ByteBuffer buff = ByteBuffer.wrap(data, 0, read);
                 int len = buff.getInt();
                 int apiId = buff.getInt();
-                HeartBeatResponse heartBeatResponse = HeartBeatResponse.parse(buff);
+                HeartBeatResponse heartBeatResponse = HeartBeatResponse.decode(buff,protocolVersion);
                 System.out.println(heartBeatResponse.toStruct().toString());
             }
         }
@@ -286,12 +327,8 @@ public class Client {
            String value = Thread.currentThread().getId() + "_" + random.nextInt(Integer.MAX_VALUE - 1);
            MessageRequest messageRequest = new MessageRequest(key.getBytes(),value.getBytes(),System.currentTimeMillis());
 
-           int sizeOf = messageRequest.toStruct().sizeOf();
-
-           ByteBuffer buff = ByteBuffer.allocate(sizeOf + 4 + 4);
-           buff.putInt(sizeOf);
-           buff.putInt(ApiKeys.MESSAGE.getId());
-           messageRequest.toStruct().writeTo(buff);
+           ByteBuffer buff = ByteBuffer.allocate(messageRequest.frameSize(protocolVersion));
+           messageRequest.writeFrame(ApiKeys.MESSAGE,protocolVersion,buff);
            outputStream.write(buff.array());
         }
 
@@ -304,9 +341,41 @@ public class Client {
                 ByteBuffer buff = ByteBuffer.wrap(data, 0, read);
                 int len = buff.getInt();
                 int apiId = buff.getInt();
-                MessageResponse messageResponse = MessageResponse.parse(buff);
+                MessageResponse messageResponse = MessageResponse.decode(buff,protocolVersion);
                 // System.out.println(messageResponse.toStruct().toString());
             }
         }
+
+        private void sendMessageBatchRequests(OutputStream outputStream, int recordCount) throws IOException{
+            String key = keys[userChooseRandom.nextInt(keys.length)];
+            Random random = new Random(System.currentTimeMillis());
+            MessageBatchRequest.Builder builder = new MessageBatchRequest.Builder(key.getBytes(),System.currentTimeMillis());
+            if(protocolVersion >= ApiKeys.COMPRESSION_VERSION){
+                builder.compression(compressionType);
+            }
+            for (int i = 0; i < recordCount; i++) {
+                String value = Thread.currentThread().getId() + "_" + random.nextInt(Integer.MAX_VALUE - 1);
+                builder.append(System.currentTimeMillis(),value.getBytes());
+            }
+            MessageBatchRequest batchRequest = builder.build();
+
+            ByteBuffer buff = ByteBuffer.allocate(batchRequest.frameSize(protocolVersion));
+            batchRequest.writeFrame(ApiKeys.MESSAGE_BATCH,protocolVersion,buff);
+            outputStream.write(buff.array());
+        }
+
+        private void readMessageBatchResponses(InputStream inputStream) throws IOException{
+            byte[] data = new byte[64 * 1024];
+            int read = inputStream.read(data, 0, data.length);
+            if (read == 0) {
+                LOG.info("Read zero bytes");
+            } else {
+                ByteBuffer buff = ByteBuffer.wrap(data, 0, read);
+                int len = buff.getInt();
+                int apiId = buff.getInt();
+                MessageBatchResponse batchResponse = MessageBatchResponse.decode(buff,protocolVersion);
+                // System.out.println(batchResponse.toStruct().toString());
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,8 +1,13 @@
 package com.github.data;
 
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.common.LogManager;
+import com.github.data.io.LogConfig;
+import com.github.data.io.MessageRouteCache;
 import com.github.data.io.MessageWriterManager;
 import com.github.data.network.handler.HeartBeatEventHandler;
 import com.github.data.network.handler.LoginEventHandler;
+import com.github.data.network.handler.MessageBatchEventHandler;
 import com.github.data.network.handler.MessageEventHandler;
 import com.github.data.network.reactor.*;
 import com.github.data.tools.ServerMonitor;
@@ -22,6 +27,7 @@ public class Server {
     private NioReactor reactor;
     private final List<AbstractNioChannel> channels = new ArrayList<>();
     private final Dispatcher dispatcher;
+    private MessageWriterManager writerManager;
 
     public Server(Dispatcher dispatcher){
         this.dispatcher = dispatcher;
@@ -31,7 +37,11 @@ public class Server {
         /*
          * The application can customize its event dispatching mechanism.
          */
-        reactor = new NioReactor(dispatcher);
+        int subReactorNum = appConf.getInteger("server.reactor.sub.num",0);
+        subReactorNum = subReactorNum == -1 ? Runtime.getRuntime().availableProcessors() : subReactorNum;
+        reactor = new NioReactor(dispatcher,subReactorNum,BackpressureController.fromConfiguration(appConf));
+
+        reactor.setHeartBeatTimeoutMs(appConf.getLong("server.session.heartbeat.timeout.ms",60 * 1000));
 
         ApiBasedChannelHandler apiBasedChannelHandler = new ApiBasedChannelHandler();
 
@@ -41,16 +51,29 @@ public class Server {
 
         String storagePath = appConf.getString("server.service.storage.path","./");
         int cacheFlushSize = appConf.getInteger("server.service.message.writer.cache.flush.size",100);
-        MessageWriterManager writerManager = new MessageWriterManager(cacheFlushSize,storagePath);
-        apiBasedChannelHandler.addEventHandler(new MessageEventHandler(writerManager));
+        int routeCacheSize = appConf.getInteger("server.service.message.route.cache.size",MessageRouteCache.DEFAULT_CAPACITY);
+        writerManager = new MessageWriterManager(cacheFlushSize,storagePath,LogConfig.from(appConf),routeCacheSize);
+        String ackMode = appConf.getString("server.service.message.ack.mode",MessageEventHandler.AckMode.IMMEDIATE.name());
+        MessageEventHandler.AckMode messageAckMode = MessageEventHandler.AckMode.valueOf(ackMode.trim().toUpperCase());
+        apiBasedChannelHandler.addEventHandler(new MessageEventHandler(writerManager,messageAckMode));
+        apiBasedChannelHandler.addEventHandler(new MessageBatchEventHandler(writerManager,messageAckMode));
 
         String serviceTcpPortStr = appConf.getString("server.service.tcp.port","");
         for (String portStr : serviceTcpPortStr.split(",")) {
             reactor.registerChannel(tcpChannel(Integer.parseInt(portStr),apiBasedChannelHandler));
         }
 
+        // UDP端口只接收消息, 不回复
+        String serviceUdpPortStr = appConf.getString("server.service.udp.port","");
+        int maxDatagramSize = appConf.getInteger("server.service.udp.max.datagram.size",NioDatagramChannel.DEFAULT_MAX_DATAGRAM_SIZE);
+        for (String portStr : serviceUdpPortStr.split(",")) {
+            if(!portStr.trim().isEmpty()){
+                reactor.registerChannel(udpChannel(Integer.parseInt(portStr.trim()),apiBasedChannelHandler,maxDatagramSize));
+            }
+        }
+
         // 监控任务
-        ServerMonitor.start(reactor.getChannelManager());
+        ServerMonitor.start(reactor,writerManager);
 
         reactor.start();
     }
@@ -64,9 +87,13 @@ public class Server {
     public void stop() throws InterruptedException, IOException {
         reactor.stop();
         dispatcher.stop();
+        // 写入缓存的消息并关闭topic日志
+        writerManager.close();
         for (AbstractNioChannel channel : channels) {
             channel.getJavaChannel().close();
         }
+        // 释放池化的堆外内存
+        BufferPoolAllocator.getInstance().close();
     }
 
     private AbstractNioChannel tcpChannel(int port, ChannelHandler handler) throws IOException {
@@ -76,12 +103,38 @@ public class Server {
         return channel;
     }
 
+    private AbstractNioChannel udpChannel(int port, ChannelHandler handler, int maxDatagramSize) throws IOException {
+        NioDatagramChannel channel = new NioDatagramChannel(port, handler, maxDatagramSize);
+        channel.bind();
+        channels.add(channel);
+        return channel;
+    }
+
     public static void main(String[] args){
         AppConfiguration appConf = AppConfiguration.loadFromPropertiesResource("server.properties");
+        // 日志先于其他组件配置, 它们在类初始化时获取日志
+        LogManager.configure(appConf);
+        BufferPoolAllocator.configure(appConf);
+
         int reactorProcessorNum = appConf.getInteger("server.reactor.processor.num",1);
         reactorProcessorNum = reactorProcessorNum == -1 ? Runtime.getRuntime().availableProcessors() : reactorProcessorNum;
 
-        Server server = new Server(new ThreadPoolDispatcher(reactorProcessorNum));
+        Dispatcher dispatcher;
+        String dispatcherType = appConf.getString("server.reactor.dispatcher","pool");
+        boolean ordered = dispatcherType.trim().equalsIgnoreCase("ordered");
+        String ackMode = appConf.getString("server.service.message.ack.mode",MessageEventHandler.AckMode.IMMEDIATE.name());
+        if(!ordered && MessageEventHandler.AckMode.valueOf(ackMode.trim().toUpperCase()) == MessageEventHandler.AckMode.PERSISTED){
+            // 持久化确认按请求顺序预留响应位置, 同一连接的帧必须按序处理
+            throw new IllegalStateException("server.service.message.ack.mode=persisted requires server.reactor.dispatcher=ordered");
+        }
+        if(ordered){
+            int laneQueueSize = appConf.getInteger("server.reactor.dispatcher.lane.queue.size",OrderedThreadPoolDispatcher.DEFAULT_LANE_QUEUE_SIZE);
+            dispatcher = new OrderedThreadPoolDispatcher(reactorProcessorNum,laneQueueSize);
+        }else{
+            dispatcher = new ThreadPoolDispatcher(reactorProcessorNum);
+        }
+
+        Server server = new Server(dispatcher);
 
         try{
             server.start(appConf);
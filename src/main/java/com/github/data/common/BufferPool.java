@@ -0,0 +1,63 @@
+package com.github.data.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of ByteBuffers of one size class kept under a given memory limit.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/17 10:03
+ * @description 内存池
+ */
+public interface BufferPool {
+
+    /**
+     * Allocate a buffer of the given size, blocking up to {@code maxTimeToBlockMs} if there is not
+     * enough memory.
+     *
+     * @param size The buffer size to allocate in bytes
+     * @param maxTimeToBlockMs The maximum time in milliseconds to block for buffer memory to be available
+     * @return The buffer
+     * @throws InterruptedException If the thread is interrupted while blocked
+     */
+    ByteBuffer allocate(int size, long maxTimeToBlockMs) throws InterruptedException;
+
+    /**
+     * Return a buffer to the pool.
+     *
+     * @param buffer The buffer to return
+     * @param size The size of the buffer to mark as deallocated
+     */
+    void deallocate(ByteBuffer buffer, int size);
+
+    /**
+     * the total free memory both unallocated and in the free list
+     */
+    long availableMemory();
+
+    /**
+     * Get the unallocated memory (not in the free list or in use)
+     */
+    long unallocatedMemory();
+
+    /**
+     * The buffer size that will be retained in the free list after use
+     */
+    int poolableSize();
+
+    /**
+     * The total memory managed by this pool
+     */
+    long totalMemory();
+
+    /**
+     * Whether the buffers of this pool are direct (off-heap) buffers
+     */
+    boolean isDirect();
+
+    /**
+     * Frees the buffers cached in the free list, called on shutdown once no buffer is in use any more
+     */
+    void close();
+}
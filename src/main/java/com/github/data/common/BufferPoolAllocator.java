@@ -1,12 +1,28 @@
 package com.github.data.common;
 
+import com.github.data.utils.AppConfiguration;
 import com.github.data.utils.Utils;
 
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
+ * Allocates ByteBuffers from one {@link BufferPool} per {@link ChuckSize}. Two modes are supported:
+ * <ul>
+ * <li>{@link AllocatorMode#LOCKED}: every size class is a {@link FixedBufferPool} guarded by its own lock,
+ *     only requests of exactly the poolable size are recycled.
+ * <li>{@link AllocatorMode#THREAD_LOCAL}: every size class is a {@link LockFreeBufferPool}, requests are
+ *     rounded up to their size class so every buffer is recycled, and the small size classes are
+ *     fronted by a per-thread magazine so that most allocations and releases touch no shared state.
+ * </ul>
+ * Independently of the mode, every size class can be backed by direct (off-heap) buffers so that
+ * socket reads and writes skip the JDK's temporary direct buffer copy. The mode and the direct size
+ * classes have to be chosen with {@link #configure(AppConfiguration)} before the first call to
+ * {@link #getInstance()}, pooled direct memory is freed by {@link #close()} on shutdown.
+ *
  * @author yusheng
  * @version 1.0.0
  * @datetime 2022/8/15 12:07
@@ -16,7 +32,22 @@ public final class BufferPoolAllocator {
     private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
     private static final long ONE_MB = 1024 * 1024;
 
-    private static final Map<ChuckSize,FixedBufferPool> bufferPoolMap = new HashMap<>();
+    // 线程本地缓存(magazine)只服务于不超过该大小的内存块
+    private static final int MAGAZINE_MAX_POOLABLE_SIZE = 16 * 1024;
+
+    // 每个线程每种内存块的本地缓存容量
+    private static final int MAGAZINE_CAPACITY = 32;
+
+    private static volatile AllocatorMode configuredMode = AllocatorMode.LOCKED;
+    private static volatile boolean[] configuredDirect = new boolean[ChuckSize.values().length];
+    private static volatile boolean initialized;
+
+    public enum AllocatorMode{
+        // 每个内存块大小一把锁
+        LOCKED,
+        // 无锁共享池 + 线程本地缓存
+        THREAD_LOCAL
+    }
 
     enum ChuckSize{
         SIZE_QUARTER_KB(256,16 * ONE_MB),
@@ -40,13 +71,35 @@ public final class BufferPoolAllocator {
         }
     }
 
+    /**
+     * The largest size {@link #allocate(int)} can serve, larger requests fail.
+     */
+    public static final int MAX_CHUCK_SIZE = ChuckSize.SIZE_64MB.poolableSize;
+
+    /**
+     * 所有内存块大小均为2的幂次, 以size向上取整到2的幂次后的指数为下标, O(1)查找能容纳size的最小内存块.
+     * */
+    private static final ChuckSize[] CHUCK_SIZE_BY_SHIFT = new ChuckSize[Integer.SIZE];
+
+    static {
+        for (int shift = 0; shift < CHUCK_SIZE_BY_SHIFT.length; shift++) {
+            long size = 1L << shift;
+            for (ChuckSize chuckSize : ChuckSize.values()) {
+                if(chuckSize.poolableSize >= size){
+                    CHUCK_SIZE_BY_SHIFT[shift] = chuckSize;
+                    break;
+                }
+            }
+        }
+    }
+
     enum BufferPoolAllocatorHolder{
         INSTANCE;
 
         private final BufferPoolAllocator bufferPoolAllocator;
 
         BufferPoolAllocatorHolder(){
-            this.bufferPoolAllocator = new BufferPoolAllocator(ChuckSize.SIZE_64MB);
+            this.bufferPoolAllocator = new BufferPoolAllocator(ChuckSize.SIZE_64MB,configuredMode,configuredDirect);
         }
 
         public BufferPoolAllocator getInstance(){
@@ -58,15 +111,91 @@ public final class BufferPoolAllocator {
         return BufferPoolAllocatorHolder.INSTANCE.getInstance();
     }
 
-    private BufferPoolAllocator(ChuckSize maxChuckSize){
+    /**
+     * Selects the allocator mode from {@code server.buffer.pool.allocator.mode}, either {@code locked}
+     * (default) or {@code thread_local}, and the size classes backed by direct buffers from
+     * {@code server.buffer.pool.direct.chuck.sizes}, a comma separated list of poolable sizes in bytes
+     * (empty by default). Must be called before the allocator is first used.
+     *
+     * @param appConf the server configuration.
+     * @throws IllegalStateException if the allocator is already in use.
+     * @throws IllegalArgumentException if a direct size is not the poolable size of a size class.
+     */
+    public static void configure(AppConfiguration appConf){
+        if(initialized){
+            throw new IllegalStateException("BufferPoolAllocator已初始化, 无法修改配置!");
+        }
+        String mode = appConf.getString("server.buffer.pool.allocator.mode",AllocatorMode.LOCKED.name());
+        configuredMode = AllocatorMode.valueOf(mode.trim().toUpperCase());
+
+        boolean[] direct = new boolean[ChuckSize.values().length];
+        String directSizes = appConf.getString("server.buffer.pool.direct.chuck.sizes","");
+        for (String sizeStr : directSizes.split(",")) {
+            if(sizeStr.trim().isEmpty()){
+                continue;
+            }
+            int size = Integer.parseInt(sizeStr.trim());
+            ChuckSize chuckSize = chuckSizeFor(size);
+            if(chuckSize == null || chuckSize.poolableSize != size){
+                throw new IllegalArgumentException("无效的堆外内存块大小:" + size);
+            }
+            direct[chuckSize.ordinal()] = true;
+        }
+        configuredDirect = direct;
+    }
+
+    private final AllocatorMode mode;
+    private final BufferPool[] bufferPools;
+    private final ThreadLocal<BufferMagazine[]> magazines;
+
+    // 所有线程的本地缓存, 关闭时释放其中的堆外内存
+    private final Queue<BufferMagazine[]> allMagazines = new ConcurrentLinkedQueue<>();
+
+    // 测试中可以直接创建独立的实例
+    BufferPoolAllocator(ChuckSize maxChuckSize, AllocatorMode mode, boolean[] direct){
         if(maxChuckSize.poolableSize > ChuckSize.SIZE_64MB.poolableSize){
             throw new RuntimeException("申请的内存块大小过大:" + maxChuckSize.poolableSize);
         }
 
+        this.mode = mode;
+        this.bufferPools = new BufferPool[ChuckSize.values().length];
         for (ChuckSize chuckSize : ChuckSize.values()) {
-            FixedBufferPool bufferPool = new FixedBufferPool(chuckSize.totalMemory,chuckSize.poolableSize);
-            bufferPoolMap.put(chuckSize,bufferPool);
+            BufferPool bufferPool;
+            if(mode == AllocatorMode.THREAD_LOCAL){
+                // 大内存块按实际大小分配, 避免向上取整造成浪费
+                boolean roundUp = chuckSize.poolableSize <= MAGAZINE_MAX_POOLABLE_SIZE;
+                bufferPool = new LockFreeBufferPool(chuckSize.totalMemory,chuckSize.poolableSize,roundUp,direct[chuckSize.ordinal()]);
+            }else{
+                bufferPool = new FixedBufferPool(chuckSize.totalMemory,chuckSize.poolableSize,direct[chuckSize.ordinal()]);
+            }
+            bufferPools[chuckSize.ordinal()] = bufferPool;
         }
+
+        if(mode == AllocatorMode.THREAD_LOCAL){
+            this.magazines = ThreadLocal.withInitial(() -> {
+                BufferMagazine[] threadMagazines = new BufferMagazine[ChuckSize.values().length];
+                for (ChuckSize chuckSize : ChuckSize.values()) {
+                    if(chuckSize.poolableSize <= MAGAZINE_MAX_POOLABLE_SIZE){
+                        threadMagazines[chuckSize.ordinal()] = new BufferMagazine(MAGAZINE_CAPACITY);
+                    }
+                }
+                allMagazines.add(threadMagazines);
+                return threadMagazines;
+            });
+        }else{
+            this.magazines = null;
+        }
+
+        initialized = true;
+        LOG.info("BufferPoolAllocator mode: {}", mode);
+    }
+
+    /**
+     * 返回能容纳size的最小内存块, 没有满足要求的内存块时返回null.
+     * */
+    static ChuckSize chuckSizeFor(int size){
+        int shift = size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        return shift < CHUCK_SIZE_BY_SHIFT.length ? CHUCK_SIZE_BY_SHIFT[shift] : null;
     }
 
     public ByteBuffer allocate(int size, long maxTimeToBlockMs) throws InterruptedException{
@@ -74,12 +203,37 @@ public final class BufferPoolAllocator {
             throw new RuntimeException("申请的内存块大小无效:" + size);
         }
 
-        for (ChuckSize chuck : ChuckSize.values()) {
-            if(chuck.poolableSize >= size){
-                return bufferPoolMap.get(chuck).allocate(size,maxTimeToBlockMs);
+        ChuckSize chuck = chuckSizeFor(size);
+        if(chuck == null){
+            throw new RuntimeException("没有满足要求大小的内存块!");
+        }
+
+        BufferPool bufferPool = bufferPools[chuck.ordinal()];
+        if(magazines != null){
+            BufferMagazine magazine = magazines.get()[chuck.ordinal()];
+            if(magazine != null){
+                ByteBuffer buffer = magazine.pop();
+                if(buffer == null){
+                    buffer = refill(magazine,(LockFreeBufferPool) bufferPool);
+                }
+                if(buffer != null){
+                    buffer.limit(size);
+                    return buffer;
+                }
             }
         }
-        throw new RuntimeException("没有满足要求大小的内存块!");
+        return bufferPool.allocate(size,maxTimeToBlockMs);
+    }
+
+    /**
+     * 从共享池批量补充线程本地缓存, 共享池为空时返回null.
+     * */
+    private ByteBuffer refill(BufferMagazine magazine, LockFreeBufferPool bufferPool){
+        ByteBuffer buffer;
+        for (int i = 0; i < MAGAZINE_CAPACITY / 2 && (buffer = bufferPool.pollFree()) != null; i++) {
+            magazine.push(buffer);
+        }
+        return magazine.pop();
     }
 
     public ByteBuffer allocate(int size){
@@ -94,23 +248,102 @@ public final class BufferPoolAllocator {
     }
 
     public void release(ByteBuffer buff, int size){
-        for (ChuckSize chuckSize : ChuckSize.values()) {
-            if(chuckSize.poolableSize >= size){
-                bufferPoolMap.get(chuckSize).deallocate(buff,size);
+        // 线程本地模式下内存块大小由capacity决定
+        ChuckSize chuck = chuckSizeFor(mode == AllocatorMode.THREAD_LOCAL ? buff.capacity() : size);
+        if(chuck == null){
+            return;
+        }
+
+        BufferPool bufferPool = bufferPools[chuck.ordinal()];
+        if(magazines != null && buff.capacity() == chuck.poolableSize){
+            BufferMagazine magazine = magazines.get()[chuck.ordinal()];
+            if(magazine != null){
+                if(magazine.isFull()){
+                    // 线程本地缓存已满, 将一半归还共享池
+                    for (int i = 0; i < MAGAZINE_CAPACITY / 2; i++) {
+                        bufferPool.deallocate(magazine.pop(),chuck.poolableSize);
+                    }
+                }
+                buff.clear();
+                magazine.push(buff);
                 return;
             }
         }
+        bufferPool.deallocate(buff,size);
+    }
+
+    /**
+     * Frees the buffers cached by the pools and the thread-local magazines, direct memory is given
+     * back to the OS immediately. Must only be called on shutdown once no thread uses pooled buffers.
+     */
+    public void close(){
+        for (BufferMagazine[] threadMagazines : allMagazines) {
+            for (int i = 0; i < threadMagazines.length; i++) {
+                BufferMagazine magazine = threadMagazines[i];
+                if(magazine == null){
+                    continue;
+                }
+                ByteBuffer buffer;
+                while ((buffer = magazine.pop()) != null) {
+                    bufferPools[i].deallocate(buffer,buffer.capacity());
+                }
+            }
+        }
+        for (BufferPool bufferPool : bufferPools) {
+            bufferPool.close();
+        }
     }
 
     public void printStatus(){
+        System.out.println("allocatorMode=" + mode);
+        long pooledDirectMemory = 0L;
         for (ChuckSize chuckSize : ChuckSize.values()) {
-            if(bufferPoolMap.containsKey(chuckSize)){
-                FixedBufferPool bufferPool = bufferPoolMap.get(chuckSize);
-                String poolableSize = Utils.formatBytes(bufferPool.poolableSize());
-                String availableMemory = Utils.formatBytes(bufferPool.availableMemory());
-                String unallocatedMemory = Utils.formatBytes(bufferPool.unallocatedMemory());
-                System.out.println("poolableSize=" + poolableSize + ",totalMemory=" + Utils.formatBytes(chuckSize.totalMemory) + ",availableMemory=" + availableMemory + ",unallocatedMemory=" + unallocatedMemory);
+            BufferPool bufferPool = bufferPools[chuckSize.ordinal()];
+            String poolableSize = Utils.formatBytes(bufferPool.poolableSize());
+            String availableMemory = Utils.formatBytes(bufferPool.availableMemory());
+            String unallocatedMemory = Utils.formatBytes(bufferPool.unallocatedMemory());
+            System.out.println("poolableSize=" + poolableSize + ",direct=" + bufferPool.isDirect() + ",totalMemory=" + Utils.formatBytes(chuckSize.totalMemory) + ",availableMemory=" + availableMemory + ",unallocatedMemory=" + unallocatedMemory);
+            if(bufferPool.isDirect()){
+                // 已向系统申请的堆外内存 = 总量 - 未申请未使用空间
+                pooledDirectMemory += bufferPool.totalMemory() - bufferPool.unallocatedMemory();
+            }
+        }
+
+        long jvmDirectMemory = 0L;
+        for (BufferPoolMXBean bufferPoolMXBean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if("direct".equals(bufferPoolMXBean.getName())){
+                jvmDirectMemory = bufferPoolMXBean.getMemoryUsed();
             }
         }
+        System.out.println("pooledDirectMemory=" + Utils.formatBytes(pooledDirectMemory) + ",jvmDirectMemoryUsed=" + Utils.formatBytes(jvmDirectMemory));
+    }
+
+    /**
+     * 单个线程独占的固定容量缓存栈, 无需同步.
+     * */
+    private static final class BufferMagazine{
+        private final ByteBuffer[] buffers;
+        private int count;
+
+        BufferMagazine(int capacity){
+            this.buffers = new ByteBuffer[capacity];
+        }
+
+        ByteBuffer pop(){
+            if(count == 0){
+                return null;
+            }
+            ByteBuffer buffer = buffers[--count];
+            buffers[count] = null;
+            return buffer;
+        }
+
+        void push(ByteBuffer buffer){
+            buffers[count++] = buffer;
+        }
+
+        boolean isFull(){
+            return count == buffers.length;
+        }
     }
-}
\ No newline at end of file
+}
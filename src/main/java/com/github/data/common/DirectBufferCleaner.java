@@ -0,0 +1,88 @@
+package com.github.data.common;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees the native memory of a direct ByteBuffer immediately instead of waiting for the garbage
+ * collector. {@code sun.misc.Unsafe#invokeCleaner} is used on Java 9+, the buffer's own
+ * {@code cleaner().clean()} on Java 8. Both are looked up reflectively once; if neither is
+ * available cleaning is a no-op and the memory is reclaimed by the garbage collector.
+ *
+ * <p>A cleaned buffer must never be touched again, accessing it crashes the JVM.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/17 16:40
+ * @description 堆外内存释放
+ */
+public final class DirectBufferCleaner {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    // Java 9+: sun.misc.Unsafe实例及其invokeCleaner方法
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    // Java 8: DirectByteBuffer.cleaner()及Cleaner.clean()
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Throwable t) {
+            invokeCleaner = null;
+            try {
+                ByteBuffer probe = ByteBuffer.allocateDirect(1);
+                cleaner = probe.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                clean = cleaner.getReturnType().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner.invoke(probe));
+            } catch (Throwable t2) {
+                cleaner = null;
+                clean = null;
+                LOG.warn("direct buffer cleaner unavailable, direct memory is freed by GC only");
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private DirectBufferCleaner(){
+    }
+
+    /**
+     * Frees the native memory of {@code buffer} if it is a direct buffer owning its memory, slices
+     * and duplicates are ignored.
+     */
+    public static void clean(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else if (CLEANER != null) {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+        } catch (Throwable t) {
+            // slice或duplicate不持有内存, 交由GC处理
+            LOG.warn("failed to clean direct buffer: {}", t);
+        }
+    }
+}
@@ -26,13 +26,16 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * This class is copied from Apache Project of Kafka.
  */
-public final class FixedBufferPool {
+public final class FixedBufferPool implements BufferPool {
     // 记录了整个Pool的大小
     private final long totalMemory;
 
     // BufferPool对象只针对特定大小(poolableSize指定)的ByteBuffer进行管理
     private final int poolableSize;
 
+    // 是否分配堆外内存
+    private final boolean direct;
+
     // 多线程并发分配和回收ByteBuffer，所以使用锁控制并发保证线程安全
     private final ReentrantLock lock;
 
@@ -56,7 +59,18 @@ public final class FixedBufferPool {
      * @param poolableSize The buffer size to cache in the free list rather than deallocating
      */
     public FixedBufferPool(long memory, int poolableSize){
+        this(memory, poolableSize, false);
+    }
+
+    /**
+     * Create a new buffer pool
+     * @param memory The maximum amount of memory that this buffer pool can allocate
+     * @param poolableSize The buffer size to cache in the free list rather than deallocating
+     * @param direct Whether to allocate direct (off-heap) buffers
+     */
+    public FixedBufferPool(long memory, int poolableSize, boolean direct){
         this.poolableSize = poolableSize;
+        this.direct = direct;
         this.lock = new ReentrantLock();
         this.free = new ArrayDeque<>();
         this.waiters = new ArrayDeque<>();
@@ -75,6 +89,7 @@ public final class FixedBufferPool {
      * @throws IllegalArgumentException if size is larger than the total memory controlled by the pool (and hence we would block
      *         forever)
      */
+    @Override
     public ByteBuffer allocate(int size, long maxTimeToBlockMs) throws InterruptedException {
         if (size > this.totalMemory)
             throw new IllegalArgumentException("Attempt to allocate " + size
@@ -213,7 +228,7 @@ public final class FixedBufferPool {
     }
 
     protected ByteBuffer allocateByteBuffer(int size) {
-        return ByteBuffer.allocate(size);
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
     }
 
     /**
@@ -226,7 +241,10 @@ public final class FixedBufferPool {
         // 会从free中释放ByteBuffer，直到原nonPooledAvailableMemory大小 + 本次
         // 从free中已释放的ByteBuffer的大小超过size则停止释放free.
         while (!this.free.isEmpty() && this.nonPooledAvailableMemory < size){
-            this.nonPooledAvailableMemory += this.free.pollLast().capacity();
+            ByteBuffer buffer = this.free.pollLast();
+            this.nonPooledAvailableMemory += buffer.capacity();
+            if (direct)
+                DirectBufferCleaner.clean(buffer);
         }
     }
 
@@ -238,6 +256,7 @@ public final class FixedBufferPool {
      * @param size The size of the buffer to mark as deallocated, note that this may be smaller than buffer.capacity
      *             since the buffer may re-allocate itself during in-place compression
      */
+    @Override
     public void deallocate(ByteBuffer buffer, int size) {
         lock.lock();
         try {
@@ -246,8 +265,10 @@ public final class FixedBufferPool {
                 buffer.clear();
                 this.free.add(buffer);
             } else {
-                // 不等于poolableSize的内存由JVM自动回收
+                // 不等于poolableSize的内存由JVM自动回收, 堆外内存立即释放
                 this.nonPooledAvailableMemory += size;
+                if (direct)
+                    DirectBufferCleaner.clean(buffer);
             }
 
             // 每当有ByteBuffer释放时，取出waiters队首的Condition调用signal将对应线程唤醒。
@@ -266,6 +287,7 @@ public final class FixedBufferPool {
     /**
      * the total free memory both unallocated and in the free list
      */
+    @Override
     public long availableMemory() {
         lock.lock();
         try {
@@ -283,6 +305,7 @@ public final class FixedBufferPool {
     /**
      * Get the unallocated memory (not in the free list or in use)
      */
+    @Override
     public long unallocatedMemory() {
         lock.lock();
         try {
@@ -307,6 +330,7 @@ public final class FixedBufferPool {
     /**
      * The buffer size that will be retained in the free list after use
      */
+    @Override
     public int poolableSize() {
         return this.poolableSize;
     }
@@ -314,10 +338,31 @@ public final class FixedBufferPool {
     /**
      * The total memory managed by this pool
      */
+    @Override
     public long totalMemory() {
         return this.totalMemory;
     }
 
+    @Override
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            ByteBuffer buffer;
+            while ((buffer = this.free.pollFirst()) != null) {
+                this.nonPooledAvailableMemory += buffer.capacity();
+                if (direct)
+                    DirectBufferCleaner.clean(buffer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     // package-private method used only for testing
     Deque<Condition> waiters() {
         return this.waiters;
@@ -0,0 +1,195 @@
+package com.github.data.common;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link BufferPool} without locks. Free buffers are kept in a lock-free queue and the memory
+ * accounting is done with CAS operations, so concurrent allocations and deallocations never
+ * contend on a lock. A thread which cannot be served immediately parks briefly and retries until
+ * its deadline instead of waiting on a condition, there is no fairness between waiting threads.
+ *
+ * <p>With {@code roundUp} every request is served with a buffer of the poolable size whose limit
+ * is set to the requested size, so that every buffer of the pool is recycled. Otherwise requests
+ * which are not of the poolable size get a buffer of exactly the requested size which is not
+ * recycled, like {@link FixedBufferPool} does.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/17 10:21
+ * @description 无锁内存池
+ */
+public final class LockFreeBufferPool implements BufferPool {
+    // 等待可用内存时的单次挂起时间
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final long totalMemory;
+    private final int poolableSize;
+    private final boolean roundUp;
+    private final boolean direct;
+
+    // 缓存的poolableSize大小的ByteBuffer
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    // free中的ByteBuffer个数, ConcurrentLinkedQueue.size()需要遍历
+    private final AtomicInteger freeSize = new AtomicInteger();
+
+    // 未申请未使用的内存空间
+    private final AtomicLong nonPooledAvailableMemory;
+
+    public LockFreeBufferPool(long memory, int poolableSize, boolean roundUp){
+        this(memory, poolableSize, roundUp, false);
+    }
+
+    public LockFreeBufferPool(long memory, int poolableSize, boolean roundUp, boolean direct){
+        this.totalMemory = memory;
+        this.poolableSize = poolableSize;
+        this.roundUp = roundUp;
+        this.direct = direct;
+        this.nonPooledAvailableMemory = new AtomicLong(memory);
+    }
+
+    @Override
+    public ByteBuffer allocate(int size, long maxTimeToBlockMs) throws InterruptedException {
+        if (size > this.totalMemory || (roundUp && size > poolableSize))
+            throw new IllegalArgumentException("Attempt to allocate " + size
+                    + " bytes, but there is a hard limit of "
+                    + (roundUp ? poolableSize : this.totalMemory)
+                    + " on memory allocations.");
+
+        boolean pooled = roundUp || size == poolableSize;
+        long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxTimeToBlockMs);
+        while (true) {
+            if (pooled) {
+                ByteBuffer buffer = pollFree();
+                if (buffer != null) {
+                    buffer.limit(size);
+                    return buffer;
+                }
+                if (reserve(poolableSize)) {
+                    return safeAllocateByteBuffer(poolableSize, size);
+                }
+            } else {
+                if (reserve(size)) {
+                    return safeAllocateByteBuffer(size, size);
+                }
+                // 释放缓存的ByteBuffer腾出空间
+                ByteBuffer buffer = pollFree();
+                if (buffer != null) {
+                    nonPooledAvailableMemory.addAndGet(buffer.capacity());
+                    if (direct) {
+                        DirectBufferCleaner.clean(buffer);
+                    }
+                    continue;
+                }
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadlineNs >= 0) {
+                throw new RuntimeException("Failed to allocate memory within the configured max blocking time " + maxTimeToBlockMs + " ms.");
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Takes a buffer from the free list without ever allocating, {@code null} if the list is empty.
+     */
+    ByteBuffer pollFree() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            freeSize.decrementAndGet();
+        }
+        return buffer;
+    }
+
+    private boolean reserve(int size) {
+        long available;
+        do {
+            available = nonPooledAvailableMemory.get();
+            if (available < size) {
+                return false;
+            }
+        } while (!nonPooledAvailableMemory.compareAndSet(available, available - size));
+        return true;
+    }
+
+    private ByteBuffer safeAllocateByteBuffer(int capacity, int size) {
+        boolean error = true;
+        try {
+            ByteBuffer buffer = allocateByteBuffer(capacity);
+            buffer.limit(size);
+            error = false;
+            return buffer;
+        } finally {
+            if (error) {
+                nonPooledAvailableMemory.addAndGet(capacity);
+            }
+        }
+    }
+
+    private ByteBuffer allocateByteBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Return buffers to the pool. Buffers of the poolable size are added to the free list, for other
+     * buffers their capacity is given back to the unallocated memory.
+     */
+    @Override
+    public void deallocate(ByteBuffer buffer, int size) {
+        if (buffer.capacity() == poolableSize) {
+            buffer.clear();
+            free.offer(buffer);
+            freeSize.incrementAndGet();
+        } else {
+            nonPooledAvailableMemory.addAndGet(buffer.capacity());
+            if (direct) {
+                DirectBufferCleaner.clean(buffer);
+            }
+        }
+    }
+
+    @Override
+    public long availableMemory() {
+        return nonPooledAvailableMemory.get() + freeSize.get() * (long) poolableSize;
+    }
+
+    @Override
+    public long unallocatedMemory() {
+        return nonPooledAvailableMemory.get();
+    }
+
+    @Override
+    public int poolableSize() {
+        return poolableSize;
+    }
+
+    @Override
+    public long totalMemory() {
+        return totalMemory;
+    }
+
+    @Override
+    public boolean isDirect() {
+        return direct;
+    }
+
+    @Override
+    public void close() {
+        ByteBuffer buffer;
+        while ((buffer = pollFree()) != null) {
+            nonPooledAvailableMemory.addAndGet(buffer.capacity());
+            if (direct) {
+                DirectBufferCleaner.clean(buffer);
+            }
+        }
+    }
+}
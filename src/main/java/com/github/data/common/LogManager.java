@@ -1,9 +1,13 @@
 package com.github.data.common;
 
+import com.github.data.utils.AppConfiguration;
 import com.github.data.utils.JvmPid;
+import com.github.data.utils.Utils;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 
 /**
  * @author yusheng
@@ -15,15 +19,46 @@ public final class LogManager {
     private final TinyLogger tinyLogger;
     private static final String LOG_DIR = "./logs";
     private static final String LOG_FILE_NAME_BASE = "data_platform";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile int configuredQueueCapacity = 8192;
+    private static volatile TinyLogger.FullPolicy configuredFullPolicy = TinyLogger.FullPolicy.BLOCK;
+    private static volatile long configuredFlushIntervalMs = 1000L;
+    private static volatile TinyLogger.LogLevel configuredLevel = TinyLogger.LogLevel.INFO;
+    private static volatile boolean initialized;
 
     private LogManager(){
+        Utils.mkdirIfPossible(LOG_DIR);
         FileWriter fr;
         try{
             fr = new FileWriter(LOG_DIR + "/" + LOG_FILE_NAME_BASE + "_" + JvmPid.getPid() + ".log");
         }catch (IOException ioe){
             throw new RuntimeException("日志文件打开失败!");
         }
-        this.tinyLogger = new TinyLogger(fr);
+        this.tinyLogger = new TinyLogger(configuredQueueCapacity,configuredFullPolicy,configuredFlushIntervalMs,
+                new PrintWriter(new BufferedWriter(fr,WRITE_BUFFER_SIZE)));
+        this.tinyLogger.setLevel(configuredLevel);
+        initialized = true;
+    }
+
+    /**
+     * Reads the level threshold from {@code server.log.level}, {@code info} by default, it can be
+     * changed later with {@link TinyLogger#setLevel}. Reads the size of the log queue from {@code server.log.queue.capacity}, what callers do when
+     * it is full from {@code server.log.queue.full.policy}, either {@code block} (default) or
+     * {@code drop}, and the longest delay before written lines reach the file from
+     * {@code server.log.flush.interval.ms}. Must be called before the logger is first used.
+     *
+     * @throws IllegalStateException if the logger is already in use.
+     */
+    public static void configure(AppConfiguration appConf){
+        if(initialized){
+            throw new IllegalStateException("LogManager已初始化, 无法修改配置!");
+        }
+        configuredQueueCapacity = appConf.getInteger("server.log.queue.capacity",configuredQueueCapacity);
+        String fullPolicy = appConf.getString("server.log.queue.full.policy",configuredFullPolicy.name());
+        configuredFullPolicy = TinyLogger.FullPolicy.valueOf(fullPolicy.trim().toUpperCase());
+        configuredFlushIntervalMs = appConf.getLong("server.log.flush.interval.ms",configuredFlushIntervalMs);
+        configuredLevel = TinyLogger.LogLevel.forName(appConf.getString("server.log.level",configuredLevel.name()));
     }
 
     public TinyLogger getTinyLogger(){
@@ -1,16 +1,34 @@
 package com.github.data.common;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 /**
+ * Asynchronous logger. Callers only claim a slot of a pre-allocated ring buffer with one CAS and
+ * store the timestamp, level and message in it; the log thread renders the lines with a cached
+ * timestamp prefix into a reused buffer and writes them in batches, flushing the file at most once
+ * per flush interval. When the ring is full callers either wait for the log thread
+ * ({@link FullPolicy#BLOCK}) or drop the message ({@link FullPolicy#DROP}), the dropped messages
+ * are counted and reported in the log.
+ *
+ * <p>Messages below the level threshold, changeable at runtime with {@link #setLevel(LogLevel)},
+ * cost a single comparison. Messages take SLF4J style {@code {}} placeholders which are filled in
+ * on the log thread, the arguments must therefore not be modified after the call; a
+ * {@link Throwable} passed as the last argument without a placeholder of its own is logged with
+ * its stack trace. {@link Supplier} overloads build the message on the caller thread, only when
+ * the level is enabled.
+ *
  * @author yusheng
  * @version 1.0.0
  * @datetime 2022/7/24 15:34
@@ -18,117 +36,361 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public final class TinyLogger{
     private static final int DEFAULT_LOG_QUEUE_CAPACITY = 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000L;
+    // 输出文件的缓冲区大小
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // 日志线程每批最多处理的日志数, 之后检查是否需要刷盘
+    private static final int MAX_DRAIN_BATCH = 256;
+    // 日志线程空闲时的最长等待时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 队列满时调用线程让出CPU的次数, 之后短暂休眠
+    private static final int FULL_YIELDS = 64;
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final Logger logger;
     private final Thread logThread;
-    private boolean isShutdown;
+    private volatile boolean isShutdown;
+    // 低于该级别的日志不记录
+    private volatile LogLevel level = LogLevel.INFO;
 
+    /**
+     * 日志级别, 按严重程度递增
+     * */
     public enum LogLevel{
         DEBUG("debug"),
-        WARN("warn"),
         INFO("info"),
+        WARN("warn"),
         ERROR("error");
 
         private final String levelName;
+        // 日志行中的级别标记
+        private final String tag;
 
         LogLevel(String levelName){
             this.levelName = levelName;
+            this.tag = " [" + levelName.toUpperCase() + "] ";
+        }
+
+        public static LogLevel forName(String name){
+            for (LogLevel level : values()) {
+                if(level.levelName.equalsIgnoreCase(name.trim())){
+                    return level;
+                }
+            }
+            throw new IllegalArgumentException("Unknown log level: " + name);
         }
     }
 
+    /**
+     * 日志队列满时的处理策略
+     * */
+    public enum FullPolicy{
+        // 丢弃日志并计数, 调用线程不等待
+        DROP,
+        // 调用线程等待日志线程腾出空间
+        BLOCK
+    }
+
     public interface Logger extends Runnable{
-        void log(String message, String level) throws InterruptedException;
+        /**
+         * @param pattern  the message, with a {@code {}} placeholder per argument.
+         * @param argCount the number of arguments, held by {@code arg0} and {@code arg1} when at
+         *                 most two, by {@code args} otherwise.
+         */
+        void log(LogLevel level, String pattern, int argCount, Object arg0, Object arg1, Object[] args, Throwable ex);
+
+        default void log(LogLevel level, String message, Throwable ex) {
+            log(level,message,0,null,null,null,ex);
+        }
 
         default void debug(String message) {
-            try{
-                log(message,LogLevel.DEBUG.levelName);
-            }catch (InterruptedException ie){
-                // ignore.
-            }
+            log(LogLevel.DEBUG,message,null);
         }
 
         default void error(String message) {
-            try{
-                log(message,LogLevel.ERROR.levelName);
-            }catch (InterruptedException ie){
-                // ignore.
-            }
+            log(LogLevel.ERROR,message,null);
         }
 
         default void info(String message) {
-            try{
-                log(message,LogLevel.INFO.levelName);
-            }catch (InterruptedException ie){
-                // ignore.
-            }
+            log(LogLevel.INFO,message,null);
         }
 
         default void warn(String message) {
-            try{
-                log(message,LogLevel.WARN.levelName);
-            }catch (InterruptedException ie){
-                // ignore.
-            }
+            log(LogLevel.WARN,message,null);
         }
     }
 
-    private class DefaultLoggerTask implements Logger{
-        private int reservations;
-        private final BlockingQueue<String> messageQueue;
+    /**
+     * 环形队列中的一条日志, 预先分配并重复使用
+     * */
+    private static final class LogEntry{
+        long timestamp;
+        LogLevel level;
+        String message;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object[] args;
+        Throwable throwable;
+
+        Object arg(int index){
+            return args != null ? args[index] : index == 0 ? arg0 : arg1;
+        }
+    }
+
+    private final class AsyncLoggerTask implements Logger{
+        private final LogEntry[] entries;
+        private final int mask;
+        // 每个槽位已发布的序号, 日志线程据此判断槽位是否可读
+        private final AtomicLongArray published;
+        // 下一个待申请的序号
+        private final AtomicLong claimSequence = new AtomicLong();
+        // 下一个待处理的序号, 只由日志线程更新
+        private volatile long consumedSequence;
+        // 日志线程是否在等待新日志
+        private volatile boolean sleeping;
+
+        private final FullPolicy fullPolicy;
+        private final long flushIntervalMs;
         private final PrintWriter messageWriter;
+        private final LongAdder dropped = new LongAdder();
+
+        // 以下字段只由日志线程访问
+        private final ZoneId zoneId = ZoneId.systemDefault();
+        private final StringBuilder line = new StringBuilder(256);
+        private char[] lineChars = new char[256];
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedSecondPrefix;
+        private long reportedDropped;
 
-        public DefaultLoggerTask(BlockingQueue<String> messageQueue, PrintWriter messageWriter){
-            this.messageQueue = messageQueue;
+        AsyncLoggerTask(int capacity, FullPolicy fullPolicy, long flushIntervalMs, PrintWriter messageWriter){
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.entries = new LogEntry[size];
+            for (int i = 0; i < size; i++) {
+                entries[i] = new LogEntry();
+            }
+            this.mask = size - 1;
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                published.set(i,-1L);
+            }
+            this.fullPolicy = fullPolicy;
+            this.flushIntervalMs = flushIntervalMs;
             this.messageWriter = messageWriter;
         }
 
+        @Override
+        public void log(LogLevel level, String pattern, int argCount, Object arg0, Object arg1, Object[] args, Throwable ex) {
+            if(isShutdown){
+                throw new IllegalStateException("日志服务已关闭异常!");
+            }
+            long sequence = claim();
+            if(sequence < 0){
+                dropped.increment();
+                return;
+            }
+            int index = (int) sequence & mask;
+            LogEntry entry = entries[index];
+            entry.timestamp = System.currentTimeMillis();
+            entry.level = level;
+            entry.message = pattern;
+            entry.argCount = argCount;
+            entry.arg0 = arg0;
+            entry.arg1 = arg1;
+            entry.args = args;
+            entry.throwable = ex;
+            // volatile写保证与之后读取sleeping的顺序, 日志线程不会错过唤醒
+            published.set(index,sequence);
+            if(sleeping){
+                LockSupport.unpark(logThread);
+            }
+        }
+
+        /**
+         * 申请一个序号, 队列满且策略为DROP时返回-1.
+         * */
+        private long claim(){
+            int yields = 0;
+            while (true){
+                long sequence = claimSequence.get();
+                if(sequence - consumedSequence < entries.length){
+                    if(claimSequence.compareAndSet(sequence,sequence + 1)){
+                        return sequence;
+                    }
+                    continue;
+                }
+                if(fullPolicy == FullPolicy.DROP){
+                    return -1L;
+                }
+                LockSupport.unpark(logThread);
+                if(++yields < FULL_YIELDS){
+                    Thread.yield();
+                }else{
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                }
+            }
+        }
+
         @Override
         public void run() {
+            long next = 0L;
+            long lastFlushMs = System.currentTimeMillis();
+            boolean dirty = false;
             try{
                 while (true){
-                    try{
-                        synchronized (TinyLogger.this){
-                            if(isShutdown && reservations == 0){
-                                break;
-                            }
-                        }
-                        String message = messageQueue.take();
-                        synchronized (TinyLogger.this) {
-                            --reservations;
-                        }
-                        messageWriter.println(message);
+                    int drained = 0;
+                    int index = (int) next & mask;
+                    while (drained < MAX_DRAIN_BATCH && published.get(index) == next){
+                        write(entries[index]);
+                        next++;
+                        consumedSequence = next;
+                        drained++;
+                        index = (int) next & mask;
+                    }
+                    if(drained > 0){
+                        dirty = true;
+                        reportDropped();
+                    }
+
+                    long nowMs = System.currentTimeMillis();
+                    if(dirty && nowMs - lastFlushMs >= flushIntervalMs){
                         messageWriter.flush();
-                    }catch (InterruptedException ie){
-                        // retry.
+                        dirty = false;
+                        lastFlushMs = nowMs;
                     }
+                    if(drained > 0){
+                        continue;
+                    }
+
+                    if(isShutdown && next == claimSequence.get()){
+                        break;
+                    }
+                    sleeping = true;
+                    if(published.get(index) != next && !isShutdown){
+                        LockSupport.parkNanos(dirty ? TimeUnit.MILLISECONDS.toNanos(Math.max(1L,flushIntervalMs - (nowMs - lastFlushMs))) : IDLE_PARK_NANOS);
+                        // 中断不用于停止日志线程, 清除中断状态避免park立即返回
+                        Thread.interrupted();
+                    }
+                    sleeping = false;
                 }
             }finally {
+                reportDropped();
                 messageWriter.close();
             }
         }
 
-        @Override
-        public void log(String message, String level) throws InterruptedException{
-            synchronized (this){
-                if(isShutdown){
-                    throw new IllegalStateException("日志服务已关闭异常!");
+        private void write(LogEntry entry){
+            line.setLength(0);
+            appendTimestamp(entry.timestamp);
+            line.append(entry.level.tag);
+            Throwable throwable = appendMessage(entry);
+            // 释放引用, 避免被环形队列长期持有
+            entry.message = null;
+            entry.arg0 = null;
+            entry.arg1 = null;
+            entry.args = null;
+            entry.throwable = null;
+            if(throwable != null){
+                line.append(", stack trace: ");
+                writeLine(false);
+                throwable.printStackTrace(messageWriter);
+                return;
+            }
+            writeLine(true);
+        }
+
+        /**
+         * 用参数替换占位符, 返回需要输出堆栈的异常.
+         * */
+        private Throwable appendMessage(LogEntry entry){
+            String pattern = entry.message;
+            int argCount = entry.argCount;
+            if(argCount == 0){
+                line.append(pattern);
+                return entry.throwable;
+            }
+            int argIndex = 0;
+            int from = 0;
+            int at;
+            while (argIndex < argCount && (at = pattern.indexOf("{}",from)) >= 0){
+                line.append(pattern,from,at);
+                appendArg(entry.arg(argIndex++));
+                from = at + 2;
+            }
+            line.append(pattern,from,pattern.length());
+            // 没有对应占位符的最后一个参数是异常时输出其堆栈
+            Object last = entry.arg(argCount - 1);
+            if(entry.throwable == null && argIndex < argCount && last instanceof Throwable){
+                return (Throwable) last;
+            }
+            return entry.throwable;
+        }
+
+        private void appendArg(Object arg){
+            try{
+                if(arg instanceof Object[]){
+                    line.append(Arrays.deepToString((Object[]) arg));
+                }else{
+                    line.append(arg);
                 }
-                ++reservations;
+            }catch (Throwable t){
+                // 参数的toString异常不能影响日志线程
+                line.append("[").append(arg.getClass().getName()).append(".toString() failed: ").append(t).append("]");
             }
+        }
 
-            String logLine = timestampToDateTime(System.currentTimeMillis()) + " [" + level.toUpperCase() + "] " + message;
+        private void writeLine(boolean newLine){
+            int length = line.length();
+            if(lineChars.length < length){
+                lineChars = new char[Math.max(length,lineChars.length * 2)];
+            }
+            line.getChars(0,length,lineChars,0);
+            messageWriter.write(lineChars,0,length);
+            if(newLine){
+                messageWriter.println();
+            }
+        }
+
+        private void appendTimestamp(long timestamp){
+            // 同一秒内的日志复用格式化好的前缀, 只追加毫秒
+            long second = Math.floorDiv(timestamp,1000L);
+            if(second != cachedSecond){
+                cachedSecond = second;
+                cachedSecondPrefix = SECOND_FORMATTER.format(Instant.ofEpochSecond(second).atZone(zoneId)) + ",";
+            }
+            int millis = (int) Math.floorMod(timestamp,1000L);
+            line.append(cachedSecondPrefix)
+                    .append((char) ('0' + millis / 100))
+                    .append((char) ('0' + millis / 10 % 10))
+                    .append((char) ('0' + millis % 10));
+        }
 
-            /*
-             * inserts the specified element into this queue,
-             * waiting if necessary for space to become available.
-             * */
-            messageQueue.put(logLine);
+        private void reportDropped(){
+            long total = dropped.sum();
+            if(total == reportedDropped){
+                return;
+            }
+            line.setLength(0);
+            appendTimestamp(System.currentTimeMillis());
+            line.append(LogLevel.WARN.tag).append(total - reportedDropped).append(" log messages dropped, log queue full");
+            writeLine(true);
+            reportedDropped = total;
         }
     }
 
+    /**
+     * @param logQueueCapacity the number of messages the ring buffer holds, rounded up to a power of two.
+     * @param fullPolicy       what callers do when the ring buffer is full.
+     * @param flushIntervalMs  the longest time a written message stays in the write buffer.
+     */
+    public TinyLogger(int logQueueCapacity, FullPolicy fullPolicy, long flushIntervalMs, PrintWriter writer){
+        this.logger = new AsyncLoggerTask(logQueueCapacity,fullPolicy,flushIntervalMs,writer);
+        this.logThread = new Thread(this.logger,"TinyLoggerThread");
+    }
+
     public TinyLogger(int logQueueCapacity, PrintWriter writer){
-        BlockingQueue<String> queue = new LinkedBlockingQueue<>(logQueueCapacity);
-        this.logger = new DefaultLoggerTask(queue,writer);
-        this.logThread = new Thread(this.logger);
+        this(logQueueCapacity,FullPolicy.BLOCK,DEFAULT_FLUSH_INTERVAL_MS,writer);
     }
 
     public TinyLogger(PrintWriter writer){
@@ -136,61 +398,137 @@ public final class TinyLogger{
     }
 
     public TinyLogger(FileWriter fileWriter){
-        this(new PrintWriter(fileWriter));
+        this(new PrintWriter(new BufferedWriter(fileWriter,WRITE_BUFFER_SIZE)));
     }
 
     public void start(){
         this.logThread.start();
     }
 
+    /**
+     * Stops accepting messages, the log thread writes the queued ones and closes the writer.
+     */
     public void stop(){
-        synchronized (this){
-            this.isShutdown = true;
-        }
-        this.logThread.interrupt();
+        this.isShutdown = true;
+        LockSupport.unpark(this.logThread);
+    }
+
+    public LogLevel getLevel(){
+        return level;
+    }
+
+    /**
+     * Changes the level threshold, effective immediately for every thread.
+     */
+    public void setLevel(LogLevel level){
+        this.level = level;
+    }
+
+    public boolean isEnabled(LogLevel level){
+        return level.ordinal() >= this.level.ordinal();
+    }
+
+    public boolean isDebugEnabled(){
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public void debug(String message){
+        log(LogLevel.DEBUG,message,0,null,null,null,null);
+    }
+
+    public void debug(String pattern, Object arg){
+        log(LogLevel.DEBUG,pattern,1,arg,null,null,null);
+    }
+
+    public void debug(String pattern, Object arg0, Object arg1){
+        log(LogLevel.DEBUG,pattern,2,arg0,arg1,null,null);
+    }
+
+    public void debug(String pattern, Object... args){
+        log(LogLevel.DEBUG,pattern,args.length,null,null,args,null);
+    }
+
+    public void debug(Supplier<String> message){
+        log(LogLevel.DEBUG,message);
     }
 
     public void info(String message){
-        logger.info(message);
+        log(LogLevel.INFO,message,0,null,null,null,null);
+    }
+
+    public void info(String pattern, Object arg){
+        log(LogLevel.INFO,pattern,1,arg,null,null,null);
     }
 
-    public void info(String message,Object argValue){
-        logger.info(message + "," + argValue);
+    public void info(String pattern, Object arg0, Object arg1){
+        log(LogLevel.INFO,pattern,2,arg0,arg1,null,null);
+    }
+
+    public void info(String pattern, Object... args){
+        log(LogLevel.INFO,pattern,args.length,null,null,args,null);
+    }
+
+    public void info(Supplier<String> message){
+        log(LogLevel.INFO,message);
     }
 
     public void warn(String message){
-        logger.warn(message);
+        log(LogLevel.WARN,message,0,null,null,null,null);
     }
 
-    public void debug(String message){
-        logger.debug(message);
+    public void warn(String pattern, Object arg){
+        log(LogLevel.WARN,pattern,1,arg,null,null,null);
+    }
+
+    public void warn(String pattern, Object arg0, Object arg1){
+        log(LogLevel.WARN,pattern,2,arg0,arg1,null,null);
+    }
+
+    public void warn(String pattern, Object... args){
+        log(LogLevel.WARN,pattern,args.length,null,null,args,null);
+    }
+
+    public void warn(Supplier<String> message){
+        log(LogLevel.WARN,message);
     }
 
     public void error(String message){
-        logger.error(message);
+        log(LogLevel.ERROR,message,0,null,null,null,null);
+    }
+
+    public void error(String pattern, Object arg){
+        log(LogLevel.ERROR,pattern,1,arg,null,null,null);
+    }
+
+    public void error(String pattern, Object arg0, Object arg1){
+        log(LogLevel.ERROR,pattern,2,arg0,arg1,null,null);
+    }
+
+    public void error(String pattern, Object... args){
+        log(LogLevel.ERROR,pattern,args.length,null,null,args,null);
+    }
+
+    public void error(Supplier<String> message){
+        log(LogLevel.ERROR,message);
     }
 
     public void error(Throwable ex){
-        logger.error( "Error, stack trace: " + stackTrace(ex));
+        log(LogLevel.ERROR,"Error",0,null,null,null,ex);
     }
 
     public void error(String message, Throwable ex){
-        logger.error(message + ", stack trace: " + stackTrace(ex));
+        log(LogLevel.ERROR,message,0,null,null,null,ex);
     }
 
-    private static String timestampToDateTime(long ts){
-        LocalDateTime localDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneId.systemDefault());
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS");
-        return localDateTime.format(formatter);
+    private void log(LogLevel level, String pattern, int argCount, Object arg0, Object arg1, Object[] args, Throwable ex){
+        if(isEnabled(level)){
+            logger.log(level,pattern,argCount,arg0,arg1,args,ex);
+        }
     }
 
-    /**
-     * Get the stack trace from an exception as a string
-     */
-    private static String stackTrace(Throwable e) {
-        StringWriter sw = new StringWriter();
-        PrintWriter pw = new PrintWriter(sw);
-        e.printStackTrace(pw);
-        return sw.toString();
+    private void log(LogLevel level, Supplier<String> message){
+        if(isEnabled(level)){
+            logger.log(level,message.get(),0,null,null,null,null);
+        }
     }
 }
@@ -0,0 +1,36 @@
+package com.github.data.compress;
+
+/**
+ * A block compression codec. Codecs are stateless and shared by all threads, they work on heap
+ * arrays and know nothing about the size of the data they restore, the caller records it, see
+ * {@link CompressionType#compress(byte[], int, int, byte[], int)}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 14:10
+ * @description 压缩编解码器
+ */
+public interface CompressionCodec {
+
+    /**
+     * The maximum size of {@code length} bytes once compressed, incompressible data included.
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses {@code src[srcOffset, srcOffset + length)} into {@code dest} at {@code destOffset},
+     * which must have room for {@link #maxCompressedLength(int)} bytes.
+     *
+     * @return the number of compressed bytes written.
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset);
+
+    /**
+     * Decompresses {@code src[srcOffset, srcOffset + length)} into exactly
+     * {@code destLength} bytes of {@code dest} at {@code destOffset}.
+     *
+     * @throws CorruptCompressedDataException if the input is malformed or does not restore exactly
+     *                                        {@code destLength} bytes.
+     */
+    void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int destLength);
+}
@@ -0,0 +1,151 @@
+package com.github.data.compress;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The compression of a record batch, its id is stored in the lowest 3 bits of the batch
+ * attributes, both on the wire and in the log. A compressed batch holds its records as:
+ * <pre>
+ * uncompressedSize int32  size of the records once decompressed
+ * payload          bytes  the records compressed by the codec
+ * </pre>
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 14:00
+ * @description 压缩类型
+ */
+public enum CompressionType {
+    NONE(0, "none", null),
+
+    GZIP(1, "gzip", new GzipCodec()),
+
+    LZ4(2, "lz4", new Lz4Codec());
+
+    // batch attributes中压缩类型所占的低3位
+    public static final int COMPRESSION_CODEC_MASK = 0x07;
+
+    // 压缩数据前记录原始长度的字节数
+    public static final int SIZE_PREFIX_BYTES = 4;
+
+    private final byte id;
+    private final String name;
+    private final CompressionCodec codec;
+
+    CompressionType(int id, String name, CompressionCodec codec){
+        this.id = (byte) id;
+        this.name = name;
+        this.codec = codec;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static CompressionType forId(int id) {
+        switch (id) {
+            case 0:
+                return NONE;
+            case 1:
+                return GZIP;
+            case 2:
+                return LZ4;
+            default:
+                throw new IllegalArgumentException("Unknown compression codec id: " + id);
+        }
+    }
+
+    /**
+     * Returns the compression of a batch from its attributes.
+     */
+    public static CompressionType fromAttributes(int attributes) {
+        return forId(attributes & COMPRESSION_CODEC_MASK);
+    }
+
+    public static CompressionType forName(String name) {
+        for (CompressionType type : values()) {
+            if (type.name.equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression name: " + name);
+    }
+
+    /**
+     * The maximum size of {@code length} bytes once compressed, size prefix included.
+     */
+    public int maxCompressedSize(int length) {
+        return SIZE_PREFIX_BYTES + codec().maxCompressedLength(length);
+    }
+
+    /**
+     * Compresses {@code src[srcOffset, srcOffset + length)} into {@code dest} at {@code destOffset}
+     * prefixed with its size, {@code dest} needs {@link #maxCompressedSize(int)} bytes.
+     *
+     * @return the number of bytes written.
+     */
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) {
+        CompressionCodec codec = codec();
+        dest[destOffset] = (byte) (length >>> 24);
+        dest[destOffset + 1] = (byte) (length >>> 16);
+        dest[destOffset + 2] = (byte) (length >>> 8);
+        dest[destOffset + 3] = (byte) length;
+        return SIZE_PREFIX_BYTES + codec.compress(src, srcOffset, length, dest, destOffset + SIZE_PREFIX_BYTES);
+    }
+
+    /**
+     * Returns the uncompressed size recorded in front of the compressed data at the position of
+     * {@code compressed}, or {@code -1} if there are not enough bytes.
+     */
+    public static int uncompressedSize(ByteBuffer compressed) {
+        return compressed.remaining() < SIZE_PREFIX_BYTES ? -1 : compressed.getInt(compressed.position());
+    }
+
+    /**
+     * Decompresses the remaining bytes of {@code compressed}, whose position is advanced to its
+     * limit.
+     *
+     * @param maxSize the largest uncompressed size accepted, checked before anything is allocated.
+     * @return a heap buffer holding the decompressed data.
+     * @throws CorruptCompressedDataException if the data is malformed or too large.
+     */
+    public ByteBuffer decompress(ByteBuffer compressed, int maxSize) {
+        CompressionCodec codec = codec();
+        if (compressed.remaining() < SIZE_PREFIX_BYTES) {
+            throw new CorruptCompressedDataException("Missing uncompressed size of " + name + " data");
+        }
+        int size = compressed.getInt();
+        if (size < 0 || size > maxSize) {
+            throw new CorruptCompressedDataException("Invalid uncompressed size " + size + " of " + name + " data, max " + maxSize);
+        }
+
+        byte[] src;
+        int srcOffset;
+        int length = compressed.remaining();
+        if (compressed.hasArray()) {
+            src = compressed.array();
+            srcOffset = compressed.arrayOffset() + compressed.position();
+        } else {
+            // 直接内存或只读缓存先复制到堆上
+            src = new byte[length];
+            compressed.duplicate().get(src);
+            srcOffset = 0;
+        }
+        compressed.position(compressed.limit());
+
+        byte[] dest = new byte[size];
+        codec.decompress(src, srcOffset, length, dest, 0, size);
+        return ByteBuffer.wrap(dest);
+    }
+
+    private CompressionCodec codec() {
+        if (codec == null) {
+            throw new IllegalStateException("Compression type " + name + " has no codec");
+        }
+        return codec;
+    }
+}
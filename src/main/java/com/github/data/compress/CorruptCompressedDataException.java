@@ -0,0 +1,23 @@
+package com.github.data.compress;
+
+import com.github.data.common.DataPlatformException;
+
+/**
+ * Thrown when compressed data cannot be restored.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 14:12
+ * @description 压缩数据损坏
+ */
+public class CorruptCompressedDataException extends DataPlatformException {
+    private static final long serialVersionUID = -4302915620833419725L;
+
+    public CorruptCompressedDataException(String message){
+        super(message);
+    }
+
+    public CorruptCompressedDataException(String message, Throwable cause){
+        super(message,cause);
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.data.compress;
+
+import java.util.Arrays;
+
+/**
+ * A pure-Java codec of the LZ4 block format. Each sequence is a token holding the literal length
+ * and the match length in its high and low nibble, the extra bytes of lengths of 15 or more, the
+ * literals, and the match as a 2 byte little endian distance back into the output. The last
+ * sequence only carries literals: the last 5 bytes of a block are always literals and the last
+ * match starts at least 12 bytes before the end.
+ *
+ * <p>The compressor is the single pass, hash table based one of the reference implementation, it
+ * skips faster through data which does not compress. Matches are at most 64 KB back so the hash
+ * table only remembers the latest position of every 4 byte sequence.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 14:30
+ * @description 纯Java实现的LZ4块压缩
+ */
+public final class Lz4Codec implements CompressionCodec {
+    private static final int MIN_MATCH = 4;
+    // 最后一个match至少距块尾12字节, 块尾5字节总是字面量
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 65535;
+    // token中长度的最大值, 超过时后跟扩展长度字节
+    private static final int RUN_MASK = 15;
+    private static final int MAX_HASH_LOG = 14;
+    private static final int MIN_HASH_LOG = 8;
+    // 连续未匹配时逐步加大步长
+    private static final int SKIP_TRIGGER = 6;
+
+    // 每个线程复用的哈希表, 记录4字节序列最近出现的位置
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << MAX_HASH_LOG]);
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) {
+        int srcEnd = srcOffset + length;
+        int anchor = srcOffset;
+        int dp = destOffset;
+        if (length > MF_LIMIT) {
+            // 小块只清理并使用哈希表的一部分
+            int hashLog = Math.max(MIN_HASH_LOG, Math.min(MAX_HASH_LOG, 32 - Integer.numberOfLeadingZeros(length)));
+            int[] table = HASH_TABLE.get();
+            Arrays.fill(table, 0, 1 << hashLog, -1);
+
+            int matchLimit = srcEnd - LAST_LITERALS;
+            int mfLimit = srcEnd - MF_LIMIT;
+            int sp = srcOffset;
+            int searchMatchNb = 1 << SKIP_TRIGGER;
+            while (sp < mfLimit) {
+                int sequence = readInt(src, sp);
+                int h = (sequence * -1640531535) >>> (32 - hashLog);
+                int ref = table[h];
+                table[h] = sp;
+                if (ref < 0 || sp - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    sp += searchMatchNb++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchMatchNb = 1 << SKIP_TRIGGER;
+
+                // 向前扩展到字面量中
+                while (sp > anchor && ref > srcOffset && src[sp - 1] == src[ref - 1]) {
+                    sp--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (sp + matchLength < matchLimit && src[sp + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, dest, dp, sp - ref, matchLength);
+                sp += matchLength;
+                anchor = sp;
+            }
+        }
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dest, dp) - destOffset;
+    }
+
+    private static int readInt(byte[] buf, int offset) {
+        return (buf[offset] & 0xff) << 24 | (buf[offset + 1] & 0xff) << 16 | (buf[offset + 2] & 0xff) << 8 | (buf[offset + 3] & 0xff);
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, byte[] dest, int dp, int distance, int matchLength) {
+        int tokenPosition = dp++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dp = writeLength(dest, dp, literalLength - RUN_MASK);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dest, dp, literalLength);
+        dp += literalLength;
+
+        dest[dp++] = (byte) distance;
+        dest[dp++] = (byte) (distance >>> 8);
+
+        int extraMatchLength = matchLength - MIN_MATCH;
+        if (extraMatchLength >= RUN_MASK) {
+            token |= RUN_MASK;
+            dp = writeLength(dest, dp, extraMatchLength - RUN_MASK);
+        } else {
+            token |= extraMatchLength;
+        }
+        dest[tokenPosition] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLastLiterals(byte[] src, int offset, int length, byte[] dest, int dp) {
+        if (length >= RUN_MASK) {
+            dest[dp++] = (byte) (RUN_MASK << 4);
+            dp = writeLength(dest, dp, length - RUN_MASK);
+        } else {
+            dest[dp++] = (byte) (length << 4);
+        }
+        System.arraycopy(src, offset, dest, dp, length);
+        return dp + length;
+    }
+
+    private static int writeLength(byte[] dest, int dp, int length) {
+        while (length >= 255) {
+            dest[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dest[dp++] = (byte) length;
+        return dp;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int destLength) {
+        int sp = srcOffset;
+        int srcEnd = srcOffset + length;
+        int dp = destOffset;
+        int destEnd = destOffset + destLength;
+        while (true) {
+            if (sp >= srcEnd) {
+                throw new CorruptCompressedDataException("Truncated LZ4 block at " + (sp - srcOffset));
+            }
+            int token = src[sp++] & 0xff;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd || literalLength > destLength) {
+                        throw new CorruptCompressedDataException("Malformed LZ4 literal length at " + (sp - srcOffset));
+                    }
+                    b = src[sp++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if (literalLength > srcEnd - sp || literalLength > destEnd - dp) {
+                throw new CorruptCompressedDataException("LZ4 literals of " + literalLength + " bytes overflow the block at " + (sp - srcOffset));
+            }
+            System.arraycopy(src, sp, dest, dp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if (sp == srcEnd) {
+                // 最后一个序列只有字面量
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw new CorruptCompressedDataException("Truncated LZ4 match at " + (sp - srcOffset));
+            }
+            int distance = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+            sp += 2;
+            int ref = dp - distance;
+            if (distance == 0 || ref < destOffset) {
+                throw new CorruptCompressedDataException("Invalid LZ4 match distance " + distance + " at " + (sp - srcOffset));
+            }
+
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd || matchLength > destLength) {
+                        throw new CorruptCompressedDataException("Malformed LZ4 match length at " + (sp - srcOffset));
+                    }
+                    b = src[sp++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destEnd - dp) {
+                throw new CorruptCompressedDataException("LZ4 match of " + matchLength + " bytes overflows the output at " + (sp - srcOffset));
+            }
+            if (distance >= matchLength) {
+                System.arraycopy(dest, ref, dest, dp, matchLength);
+            } else {
+                // 重叠的match逐字节复制, 即重复最近的distance个字节
+                for (int i = 0; i < matchLength; i++) {
+                    dest[dp + i] = dest[ref + i];
+                }
+            }
+            dp += matchLength;
+        }
+        if (dp != destEnd) {
+            throw new CorruptCompressedDataException("LZ4 block restores " + (dp - destOffset) + " bytes, expected " + destLength);
+        }
+    }
+}
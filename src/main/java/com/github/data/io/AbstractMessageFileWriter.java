@@ -4,6 +4,9 @@ import com.github.data.common.DataPlatformException;
 import com.github.data.json.Json;
 import com.github.data.json.JsonObject;
 import com.github.data.json.JsonValue;
+import com.github.data.utils.Utils;
+
+import java.nio.ByteBuffer;
 
 /**
  * @author yusheng
@@ -15,15 +18,25 @@ public abstract class AbstractMessageFileWriter implements MessageWriter{
 
     @Override
     public final void write(byte[] key, byte[] value) {
-        JsonValue jsonValue = Json.parse(new String(key));
+        write(ByteBuffer.wrap(key),ByteBuffer.wrap(value));
+    }
+
+    @Override
+    public final void write(ByteBuffer key, ByteBuffer value) {
+        write(key,value,null);
+    }
+
+    @Override
+    public final void write(ByteBuffer key, ByteBuffer value, AppendCallback callback) {
+        JsonValue jsonValue = Json.parse(Utils.utf8(key));
         if(jsonValue.isObject()){
             JsonObject jsonObject = jsonValue.asObject();
-            write(jsonObject,value);
+            write(jsonObject,value,callback);
         }else {
             throw new DataPlatformException("Invalid message key.");
         }
     }
 
-    public abstract void write(JsonObject json,byte[] value);
+    public abstract void write(JsonObject json,ByteBuffer value,AppendCallback callback);
 
-}
\ No newline at end of file
+}
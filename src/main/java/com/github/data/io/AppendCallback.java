@@ -0,0 +1,26 @@
+package com.github.data.io;
+
+/**
+ * Completion callback of an asynchronous append, invoked by the {@link GroupCommitAppender} thread
+ * once the record is written with the durability of the configured {@link FsyncPolicy}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/19 09:46
+ * @description 异步追加回调
+ */
+public interface AppendCallback {
+
+    /**
+     * @param offset    the offset of the record, {@code -1} if the append failed.
+     * @param exception the failure, {@code null} on success.
+     */
+    void onCompletion(long offset, Exception exception);
+
+    /**
+     * Invoked once per group commit after all the completions of this callback in that commit, lets a
+     * callback shared by many records act on them as a batch.
+     */
+    default void onBatchCompleted() {
+    }
+}
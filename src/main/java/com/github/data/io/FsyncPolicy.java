@@ -0,0 +1,19 @@
+package com.github.data.io;
+
+/**
+ * When the appended batches of a {@link TopicLog} are forced to disk by the
+ * {@link GroupCommitAppender}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/19 09:40
+ * @description 刷盘策略
+ */
+public enum FsyncPolicy {
+    // 不主动刷盘, 由操作系统回写
+    NONE,
+    // 按固定间隔刷盘
+    INTERVAL,
+    // 每个batch写入后刷盘, 回调在刷盘完成后触发
+    EVERY_BATCH
+}
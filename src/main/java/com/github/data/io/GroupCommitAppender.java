@@ -0,0 +1,306 @@
+package com.github.data.io;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends records to {@link TopicLog}s from a single group commit thread. Producers enqueue framed
+ * records and return at once; the thread drains whatever has queued up, appends the records of each
+ * topic as one batch with a gathering write, forces the logs to disk according to the
+ * {@link FsyncPolicy} and only then completes the {@link AppendCallback}s. A producer therefore
+ * never waits for the disk, and a producer which needs a durable write waits on its callback for
+ * exactly the durability the policy provides.
+ *
+ * <p>The record buffers are taken from the {@link BufferPoolAllocator} by {@link #append}, or handed
+ * over already framed by {@link #appendFramed}, and released by the commit thread once written.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/19 10:20
+ * @description 组提交追加器
+ */
+public final class GroupCommitAppender implements Closeable {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    // 等待队列容量, 队列满时生产者阻塞
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    // 队列为空时的等待时间
+    private static final long POLL_TIMEOUT_MS = 100L;
+
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
+    private final BlockingQueue<AppendRequest> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final int maxBatchRecords;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final Thread commitThread;
+
+    private volatile boolean running = true;
+
+    // 以下字段只由提交线程访问
+    private final List<AppendRequest> drained = new ArrayList<>();
+    private final Map<TopicLog, List<AppendRequest>> requestsByLog = new LinkedHashMap<>();
+    private final Set<TopicLog> dirtyLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<TopicLog, IOException> failedFsyncs = new IdentityHashMap<>();
+    private final Set<AppendCallback> completedCallbacks = Collections.newSetFromMap(new IdentityHashMap<>());
+    private ByteBuffer[] records = new ByteBuffer[64];
+    private long lastFsyncMs = System.currentTimeMillis();
+
+    private static final class AppendRequest {
+        private final TopicLog topicLog;
+        // 一个或多个连续的已分帧记录
+        private final ByteBuffer framedRecords;
+        private final int recordCount;
+        private final AppendCallback callback;
+        private long offset = -1L;
+        private Exception exception;
+
+        AppendRequest(TopicLog topicLog, ByteBuffer framedRecords, int recordCount, AppendCallback callback) {
+            this.topicLog = topicLog;
+            this.framedRecords = framedRecords;
+            this.recordCount = recordCount;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * @param maxBatchRecords the maximum number of records appended as one batch.
+     * @param fsyncPolicy     when the appended batches are forced to disk.
+     * @param fsyncIntervalMs the fsync interval of {@link FsyncPolicy#INTERVAL}.
+     */
+    public GroupCommitAppender(int maxBatchRecords, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) {
+        this.maxBatchRecords = Math.max(1, maxBatchRecords);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.commitThread = new Thread(this::commitLoop, "log_group_commit");
+        this.commitThread.setDaemon(true);
+        this.commitThread.start();
+    }
+
+    /**
+     * Enqueues a copy of {@code record} for {@code topicLog}, blocking only while the queue is full.
+     *
+     * @param callback invoked once the record is appended, may be {@code null}.
+     */
+    public void append(TopicLog topicLog, ByteBuffer record, AppendCallback callback) {
+        if (!running) {
+            complete(callback, -1L, new IOException("GroupCommitAppender is closed."));
+            batchCompleted(callback);
+            return;
+        }
+        ByteBuffer framedRecord = bufferPoolAllocator.allocate(TopicLog.framedSize(record.remaining()));
+        TopicLog.frameRecord(record, framedRecord);
+        enqueue(new AppendRequest(topicLog, framedRecord, 1, callback));
+    }
+
+    /**
+     * Enqueues {@code recordCount} records already framed, see {@link TopicLog#frameRecord}, in a
+     * buffer taken from the {@link BufferPoolAllocator}. The buffer is handed over, it is released
+     * by the appender. The records are always appended to the same batch, so they get consecutive
+     * offsets and {@code callback} is completed once, with the offset of the first record.
+     */
+    public void appendFramed(TopicLog topicLog, ByteBuffer framedRecords, int recordCount, AppendCallback callback) {
+        if (!running) {
+            bufferPoolAllocator.release(framedRecords, framedRecords.capacity());
+            complete(callback, -1L, new IOException("GroupCommitAppender is closed."));
+            batchCompleted(callback);
+            return;
+        }
+        enqueue(new AppendRequest(topicLog, framedRecords, recordCount, callback));
+    }
+
+    private void enqueue(AppendRequest request) {
+        try {
+            queue.put(request);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            bufferPoolAllocator.release(request.framedRecords, request.framedRecords.capacity());
+            complete(request.callback, -1L, ie);
+            batchCompleted(request.callback);
+        }
+    }
+
+    /**
+     * Number of append requests waiting for the commit thread.
+     */
+    public int pendingRequests() {
+        return queue.size();
+    }
+
+    private void commitLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                AppendRequest first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    drained.add(first);
+                    queue.drainTo(drained);
+                    commit();
+                }
+                if (fsyncPolicy == FsyncPolicy.INTERVAL && System.currentTimeMillis() - lastFsyncMs >= fsyncIntervalMs) {
+                    fsyncDirtyLogs();
+                }
+            } catch (InterruptedException ie) {
+                // 提交线程不响应中断, 中断会关闭正在读写的FileChannel
+            } catch (Throwable t) {
+                LOG.error("exception in group commit thread", t);
+            }
+        }
+        fsyncDirtyLogs();
+    }
+
+    private void commit() {
+        try {
+            for (AppendRequest request : drained) {
+                requestsByLog.computeIfAbsent(request.topicLog, k -> new ArrayList<>()).add(request);
+            }
+
+            for (Map.Entry<TopicLog, List<AppendRequest>> entry : requestsByLog.entrySet()) {
+                TopicLog topicLog = entry.getKey();
+                List<AppendRequest> requests = entry.getValue();
+                int from = 0;
+                while (from < requests.size()) {
+                    // 按记录数切分batch, 一个请求的记录不会被拆开
+                    int to = from;
+                    int recordCount = 0;
+                    do {
+                        recordCount += requests.get(to++).recordCount;
+                    } while (to < requests.size() && recordCount + requests.get(to).recordCount <= maxBatchRecords);
+                    appendBatch(topicLog, requests, from, to, recordCount);
+                    from = to;
+                }
+            }
+
+            if (fsyncPolicy == FsyncPolicy.EVERY_BATCH) {
+                // 刷盘失败的日志上的请求均未持久化, 不能确认成功
+                Map<TopicLog, IOException> failed = fsyncDirtyLogs();
+                if (!failed.isEmpty()) {
+                    for (AppendRequest request : drained) {
+                        IOException fsyncException = failed.get(request.topicLog);
+                        if (fsyncException != null && request.exception == null) {
+                            request.offset = -1L;
+                            request.exception = fsyncException;
+                        }
+                    }
+                }
+            }
+
+            // 达到所配置的持久化级别后再按到达顺序通知生产者, 同一连接发往不同topic的确认不会乱序
+            for (AppendRequest request : drained) {
+                if (request.callback != null) {
+                    complete(request.callback, request.offset, request.exception);
+                    completedCallbacks.add(request.callback);
+                }
+            }
+            for (AppendCallback callback : completedCallbacks) {
+                batchCompleted(callback);
+            }
+        } finally {
+            drained.clear();
+            requestsByLog.clear();
+            completedCallbacks.clear();
+            failedFsyncs.clear();
+        }
+    }
+
+    private void appendBatch(TopicLog topicLog, List<AppendRequest> requests, int from, int to, int recordCount) {
+        int count = to - from;
+        if (records.length < count) {
+            records = new ByteBuffer[Math.max(count, records.length << 1)];
+        }
+        for (int i = 0; i < count; i++) {
+            records[i] = requests.get(from + i).framedRecords;
+        }
+
+        long baseOffset = -1L;
+        Exception exception = null;
+        try {
+            baseOffset = topicLog.append(records, count, recordCount);
+            dirtyLogs.add(topicLog);
+        } catch (IOException | RuntimeException e) {
+            // 压缩等运行时异常同样只让本batch失败, 其余batch照常追加, 回调都会完成
+            LOG.error("failed to append batch to {}", topicLog.dir(), e);
+            exception = e;
+        }
+
+        long offset = baseOffset;
+        for (int i = 0; i < count; i++) {
+            AppendRequest request = requests.get(from + i);
+            request.offset = exception == null ? offset : -1L;
+            request.exception = exception;
+            offset += request.recordCount;
+            bufferPoolAllocator.release(request.framedRecords, request.framedRecords.capacity());
+            records[i] = null;
+        }
+    }
+
+    /**
+     * Forces the logs appended since the last fsync.
+     *
+     * @return the logs which failed to flush, with their failure.
+     */
+    private Map<TopicLog, IOException> fsyncDirtyLogs() {
+        failedFsyncs.clear();
+        for (TopicLog topicLog : dirtyLogs) {
+            try {
+                topicLog.flush();
+            } catch (IOException ioe) {
+                LOG.error("failed to flush {}", topicLog.dir(), ioe);
+                failedFsyncs.put(topicLog, ioe);
+            }
+        }
+        dirtyLogs.clear();
+        lastFsyncMs = System.currentTimeMillis();
+        return failedFsyncs;
+    }
+
+    private static void complete(AppendCallback callback, long offset, Exception exception) {
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.onCompletion(offset, exception);
+        } catch (Throwable t) {
+            LOG.error("exception in append callback", t);
+        }
+    }
+
+    private static void batchCompleted(AppendCallback callback) {
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.onBatchCompleted();
+        } catch (Throwable t) {
+            LOG.error("exception in append callback", t);
+        }
+    }
+
+    /**
+     * Appends and forces the queued records, then stops the commit thread.
+     */
+    @Override
+    public void close() {
+        // 不能中断提交线程, 最多等待一次poll超时后退出循环
+        running = false;
+        try {
+            commitThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.data.io;
+
+import com.github.data.compress.CompressionType;
+import com.github.data.utils.AppConfiguration;
+
+/**
+ * Settings of a {@link TopicLog}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/18 10:05
+ * @description topic日志配置
+ */
+public final class LogConfig {
+    // 默认单个segment最大1GB
+    public static final int DEFAULT_SEGMENT_BYTES = 1024 * 1024 * 1024;
+
+    // 默认每7天滚动一个新segment
+    public static final long DEFAULT_SEGMENT_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    // 默认每写入4KB数据添加一个索引项
+    public static final int DEFAULT_INDEX_INTERVAL_BYTES = 4096;
+
+    // 默认每秒刷盘一次
+    public static final long DEFAULT_FSYNC_INTERVAL_MS = 1000L;
+
+    private final int segmentBytes;
+    private final long segmentMs;
+    private final int indexIntervalBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final CompressionType compressionType;
+
+    public LogConfig(){
+        this(DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_MS, DEFAULT_INDEX_INTERVAL_BYTES);
+    }
+
+    public LogConfig(int segmentBytes, long segmentMs, int indexIntervalBytes){
+        this(segmentBytes, segmentMs, indexIntervalBytes, FsyncPolicy.INTERVAL, DEFAULT_FSYNC_INTERVAL_MS);
+    }
+
+    /**
+     * @param segmentBytes       the size in bytes after which the active segment is rolled.
+     * @param segmentMs          the age in milliseconds after which the active segment is rolled.
+     * @param indexIntervalBytes the number of log bytes between two entries of the offset index.
+     * @param fsyncPolicy        when appended batches are forced to disk.
+     * @param fsyncIntervalMs    the fsync interval of {@link FsyncPolicy#INTERVAL}.
+     */
+    public LogConfig(int segmentBytes, long segmentMs, int indexIntervalBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMs){
+        this(segmentBytes, segmentMs, indexIntervalBytes, fsyncPolicy, fsyncIntervalMs, CompressionType.NONE);
+    }
+
+    /**
+     * @param compressionType the compression of the batches written to the log.
+     */
+    public LogConfig(int segmentBytes, long segmentMs, int indexIntervalBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMs,
+                     CompressionType compressionType){
+        if(segmentBytes <= LogSegment.BATCH_HEADER_SIZE){
+            throw new IllegalArgumentException("Invalid segment bytes: " + segmentBytes);
+        }
+        if(segmentMs <= 0 || indexIntervalBytes <= 0){
+            throw new IllegalArgumentException("Invalid segment ms: " + segmentMs + " or index interval bytes: " + indexIntervalBytes);
+        }
+        if(fsyncIntervalMs <= 0){
+            throw new IllegalArgumentException("Invalid fsync interval ms: " + fsyncIntervalMs);
+        }
+        this.segmentBytes = segmentBytes;
+        this.segmentMs = segmentMs;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.compressionType = compressionType;
+    }
+
+    public static LogConfig from(AppConfiguration appConf){
+        int segmentBytes = appConf.getInteger("server.service.log.segment.bytes", DEFAULT_SEGMENT_BYTES);
+        long segmentMs = appConf.getLong("server.service.log.segment.ms", DEFAULT_SEGMENT_MS);
+        int indexIntervalBytes = appConf.getInteger("server.service.log.index.interval.bytes", DEFAULT_INDEX_INTERVAL_BYTES);
+        String fsyncPolicy = appConf.getString("server.service.log.fsync.policy", FsyncPolicy.INTERVAL.name());
+        long fsyncIntervalMs = appConf.getLong("server.service.log.fsync.interval.ms", DEFAULT_FSYNC_INTERVAL_MS);
+        String compressionType = appConf.getString("server.service.log.compression.type", CompressionType.NONE.getName());
+        return new LogConfig(segmentBytes, segmentMs, indexIntervalBytes, FsyncPolicy.valueOf(fsyncPolicy.trim().toUpperCase()), fsyncIntervalMs,
+                CompressionType.forName(compressionType));
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public long getSegmentMs() {
+        return segmentMs;
+    }
+
+    public int getIndexIntervalBytes() {
+        return indexIntervalBytes;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getFsyncIntervalMs() {
+        return fsyncIntervalMs;
+    }
+
+    public CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    @Override
+    public String toString() {
+        return "LogConfig{segmentBytes=" + segmentBytes + ", segmentMs=" + segmentMs + ", indexIntervalBytes=" + indexIntervalBytes
+                + ", fsyncPolicy=" + fsyncPolicy + ", fsyncIntervalMs=" + fsyncIntervalMs + ", compressionType=" + compressionType + "}";
+    }
+}
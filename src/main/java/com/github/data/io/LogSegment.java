@@ -0,0 +1,319 @@
+package com.github.data.io;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+import com.github.data.utils.Crc32C;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One segment of a {@link TopicLog}: a log file {@code <baseOffset>.log} holding record batches and
+ * its sparse {@link OffsetIndex} {@code <baseOffset>.index}, the base offset being the offset of the
+ * first record of the segment, zero padded to 20 digits so that the files sort by offset.
+ *
+ * <p>The log file is a sequence of batches:
+ * <pre>
+ * baseOffset      int64  offset of the first record of the batch
+ * length          int32  number of bytes following this field
+ * crc             uint32 CRC-32C of the batch from attributes to its end
+ * attributes      int8   compression codec id in the lowest 3 bits, see CompressionType
+ * lastOffsetDelta int32  offset of the last record minus baseOffset
+ * records         [length int32][bytes] repeated lastOffsetDelta + 1 times
+ * </pre>
+ * The records of a compressed batch are stored in the compressed form of
+ * {@link com.github.data.compress.CompressionType}. Recovery truncates the log file at the first
+ * batch whose crc does not match, torn or corrupted writes never reach a reader.
+ *
+ * <p>Appends are serialized by the owning {@link TopicLog}, reads use positional reads and may run
+ * concurrently with an append.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/18 11:10
+ * @description 日志分段
+ */
+final class LogSegment implements Closeable {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    static final String LOG_FILE_SUFFIX = ".log";
+    static final String INDEX_FILE_SUFFIX = ".index";
+
+    static final int BASE_OFFSET_OFFSET = 0;
+    static final int LENGTH_OFFSET = BASE_OFFSET_OFFSET + 8;
+    // baseOffset + length, 即length字段未计入的字节数
+    static final int LOG_OVERHEAD = LENGTH_OFFSET + 4;
+    static final int CRC_OFFSET = LOG_OVERHEAD;
+    static final int ATTRIBUTES_OFFSET = CRC_OFFSET + 4;
+    static final int LAST_OFFSET_DELTA_OFFSET = ATTRIBUTES_OFFSET + 1;
+    static final int BATCH_HEADER_SIZE = LAST_OFFSET_DELTA_OFFSET + 4;
+    // 每条记录前的4字节长度
+    static final int RECORD_OVERHEAD = 4;
+
+    private final long baseOffset;
+    private final File logFile;
+    private final FileChannel channel;
+    private final OffsetIndex index;
+    private final int indexIntervalBytes;
+
+    private volatile int size;
+    private volatile long nextOffset;
+    private int bytesSinceLastIndexEntry;
+    private long createdMs;
+
+    private LogSegment(File dir, long baseOffset, int indexIntervalBytes) throws IOException {
+        this.baseOffset = baseOffset;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.logFile = new File(dir, fileName(baseOffset) + LOG_FILE_SUFFIX);
+        this.channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = new OffsetIndex(new File(dir, fileName(baseOffset) + INDEX_FILE_SUFFIX), baseOffset);
+        this.size = (int) channel.size();
+        this.nextOffset = baseOffset;
+        this.createdMs = size == 0 ? System.currentTimeMillis() : logFile.lastModified();
+    }
+
+    /**
+     * Opens the segment of {@code baseOffset} in {@code dir}, creating its files if needed.
+     *
+     * @param recover whether to validate the log file, truncate it after its last valid batch and
+     *                rebuild its index, done for the active segment which may have been cut by a crash.
+     */
+    static LogSegment open(File dir, long baseOffset, LogConfig config, boolean recover) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseOffset, config.getIndexIntervalBytes());
+        if (recover || (segment.size > 0 && segment.index.entries() == 0)) {
+            segment.recover();
+        } else {
+            segment.nextOffset = segment.readNextOffset();
+        }
+        return segment;
+    }
+
+    static String fileName(long offset) {
+        return String.format("%020d", offset);
+    }
+
+    /**
+     * Parses the base offset out of a segment file name, {@code -1} if it is not a log file.
+     */
+    static long parseBaseOffset(String fileName) {
+        if (!fileName.endsWith(LOG_FILE_SUFFIX)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - LOG_FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Appends a batch given as consecutive buffers, header first, written with one gathering write
+     * so that it is contiguous in the log file.
+     *
+     * @param buffers   the batch, each buffer from its position to its limit.
+     * @param count     the number of buffers to write.
+     * @param batchSize the total number of bytes remaining in the buffers.
+     * @return the position of the batch in the log file.
+     */
+    int append(long firstOffset, long lastOffset, ByteBuffer[] buffers, int count, int batchSize) throws IOException {
+        int position = size;
+        channel.position(position);
+        long written = 0L;
+        while (written < batchSize) {
+            written += channel.write(buffers, 0, count);
+        }
+
+        if (position == 0 || bytesSinceLastIndexEntry > indexIntervalBytes) {
+            index.append(firstOffset, position);
+            bytesSinceLastIndexEntry = 0;
+        }
+        bytesSinceLastIndexEntry += batchSize;
+        nextOffset = lastOffset + 1;
+        size = position + batchSize;
+        return position;
+    }
+
+    /**
+     * Whether a batch of {@code batchSize} bytes has to go to a new segment.
+     */
+    boolean shouldRoll(int batchSize, long lastOffset, long nowMs, LogConfig config) {
+        if (size == 0) {
+            return false;
+        }
+        return size > config.getSegmentBytes() - batchSize
+                || nowMs - createdMs >= config.getSegmentMs()
+                || lastOffset - baseOffset > Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the position of the batch containing {@code offset}, or {@code -1} if the offset is
+     * not in this segment.
+     */
+    int translateOffset(long offset) throws IOException {
+        if (offset >= nextOffset) {
+            return -1;
+        }
+        int end = size;
+        int position = index.lookup(offset);
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        while (position + BATCH_HEADER_SIZE <= end) {
+            readFully(header, position);
+            long batchBaseOffset = header.getLong(BASE_OFFSET_OFFSET);
+            int length = header.getInt(LENGTH_OFFSET);
+            int lastOffsetDelta = header.getInt(LAST_OFFSET_DELTA_OFFSET);
+            if (batchBaseOffset + lastOffsetDelta >= offset) {
+                return position;
+            }
+            position += LOG_OVERHEAD + length;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads whole batches starting at {@code position}, at most {@code maxBytes} unless the first
+     * batch alone is larger in which case exactly that batch is returned.
+     */
+    ByteBuffer read(int position, int maxBytes) throws IOException {
+        int end = size;
+        if (position + LOG_OVERHEAD > end) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(LOG_OVERHEAD);
+        readFully(lengthBuffer, position);
+        int firstBatchSize = LOG_OVERHEAD + lengthBuffer.getInt(LENGTH_OFFSET);
+        int readSize = Math.min(end - position, Math.max(firstBatchSize, maxBytes));
+
+        ByteBuffer buffer = ByteBuffer.allocate(readSize);
+        readFully(buffer, position);
+        // 去掉末尾不完整的batch
+        int limit = 0;
+        while (limit + LOG_OVERHEAD <= readSize) {
+            int batchSize = LOG_OVERHEAD + buffer.getInt(limit + LENGTH_OFFSET);
+            if (limit + batchSize > readSize) {
+                break;
+            }
+            limit += batchSize;
+        }
+        buffer.limit(limit);
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment " + logFile + " at " + position);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Validates the batches of the log file, truncates it after the last valid one and rebuilds the
+     * index.
+     */
+    private void recover() throws IOException {
+        index.reset();
+        bytesSinceLastIndexEntry = 0;
+
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        ByteBuffer batch = ByteBuffer.allocate(0);
+        Crc32C crc32C = new Crc32C();
+        int position = 0;
+        long expectedOffset = baseOffset;
+        while (position + BATCH_HEADER_SIZE <= fileSize) {
+            readFully(header, position);
+            long batchBaseOffset = header.getLong(BASE_OFFSET_OFFSET);
+            int length = header.getInt(LENGTH_OFFSET);
+            int lastOffsetDelta = header.getInt(LAST_OFFSET_DELTA_OFFSET);
+            if (batchBaseOffset < expectedOffset || lastOffsetDelta < 0
+                    || length < BATCH_HEADER_SIZE - LOG_OVERHEAD || position + LOG_OVERHEAD + (long) length > fileSize) {
+                break;
+            }
+            // 校验attributes至batch末尾的crc
+            int checkedSize = LOG_OVERHEAD + length - ATTRIBUTES_OFFSET;
+            if (batch.capacity() < checkedSize) {
+                batch = ByteBuffer.allocate(Math.max(checkedSize, batch.capacity() << 1));
+            }
+            batch.clear();
+            batch.limit(checkedSize);
+            ByteBuffer checked = batch.slice();
+            readFully(checked, position + ATTRIBUTES_OFFSET);
+            crc32C.reset();
+            crc32C.update(checked);
+            if ((int) crc32C.getValue() != header.getInt(CRC_OFFSET)) {
+                LOG.warn("Corrupt batch at {} of segment {}, crc mismatch", position, logFile);
+                break;
+            }
+
+            if (position == 0 || bytesSinceLastIndexEntry > indexIntervalBytes) {
+                index.append(batchBaseOffset, position);
+                bytesSinceLastIndexEntry = 0;
+            }
+            int batchSize = LOG_OVERHEAD + length;
+            bytesSinceLastIndexEntry += batchSize;
+            position += batchSize;
+            expectedOffset = batchBaseOffset + lastOffsetDelta + 1;
+        }
+
+        if (position < fileSize) {
+            LOG.warn("Truncating segment {} from {} to {} bytes", logFile, fileSize, position);
+            channel.truncate(position);
+        }
+        this.size = position;
+        this.nextOffset = expectedOffset;
+    }
+
+    /**
+     * Finds the next offset of a segment which is not recovered, scanning from its last index entry.
+     */
+    private long readNextOffset() throws IOException {
+        long next = baseOffset;
+        int end = size;
+        int position = index.lookup(Long.MAX_VALUE);
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        while (position + BATCH_HEADER_SIZE <= end) {
+            readFully(header, position);
+            next = header.getLong(BASE_OFFSET_OFFSET) + header.getInt(LAST_OFFSET_DELTA_OFFSET) + 1;
+            position += LOG_OVERHEAD + header.getInt(LENGTH_OFFSET);
+        }
+        return next;
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void flush() throws IOException {
+        channel.force(true);
+        index.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogSegment{baseOffset=" + baseOffset + ", size=" + size + ", nextOffset=" + nextOffset + "}";
+    }
+}
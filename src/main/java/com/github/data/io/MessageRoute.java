@@ -0,0 +1,52 @@
+package com.github.data.io;
+
+/**
+ * Where the messages of one key go: the routing fields of the key and, for the
+ * {@value #MESSAGE_QUEUE_POLICY} policy, the writer of its topic.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 10:10
+ * @description 消息key解析后的路由
+ */
+public final class MessageRoute {
+    // 目前唯一支持的消息处理策略
+    public static final String MESSAGE_QUEUE_POLICY = "message_queue";
+
+    private final String processPolicy;
+    private final String topic;
+    private final TopicMessageFileWriter writer;
+
+    MessageRoute(String processPolicy, String topic, TopicMessageFileWriter writer){
+        this.processPolicy = processPolicy;
+        this.topic = topic;
+        this.writer = writer;
+    }
+
+    public String getProcessPolicy() {
+        return processPolicy;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Whether the messages are appended to the log of their topic, the only policy with a writer.
+     */
+    public boolean isMessageQueue() {
+        return writer != null;
+    }
+
+    /**
+     * The writer of the topic, {@code null} unless {@link #isMessageQueue()}.
+     */
+    public TopicMessageFileWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageRoute{processPolicy=" + processPolicy + ", topic=" + topic + "}";
+    }
+}
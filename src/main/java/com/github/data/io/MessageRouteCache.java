@@ -0,0 +1,155 @@
+package com.github.data.io;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the {@link MessageRoute}s of message keys. Producers send a handful of distinct
+ * keys over and over, so the routing fields are parsed out of the JSON of a key once and later
+ * messages only hash and compare the raw key bytes, without decoding them.
+ *
+ * <p>The cache is split in segments, each one a least recently used map guarded by its own lock.
+ * Keys are stored as heap copies and looked up with the views of the request, {@link ByteBuffer}
+ * hashes and compares the remaining bytes whatever the kind of buffer. Keys longer than
+ * {@value #MAX_CACHED_KEY_BYTES} bytes are resolved every time.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 10:20
+ * @description 消息key路由缓存
+ */
+public final class MessageRouteCache {
+    // 默认缓存的key数
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // 超过该长度的key不缓存
+    static final int MAX_CACHED_KEY_BYTES = 1024;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of cached keys, {@code 0} disables the cache.
+     */
+    public MessageRouteCache(int capacity){
+        if(capacity < 0){
+            throw new IllegalArgumentException("Invalid route cache capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        if(capacity == 0){
+            this.segments = new Segment[0];
+            return;
+        }
+        // 段数为2的幂, 每段至少16个key
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, capacity / 16)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((capacity + segmentCount - 1) / segmentCount);
+        }
+    }
+
+    /**
+     * Returns the route of {@code key}, resolving it on a miss. The resolver runs outside of any
+     * lock, two threads missing the same key both resolve it.
+     *
+     * @param key      the raw key bytes from its position to its limit, left unchanged.
+     * @param resolver parses the key, given a duplicate of it.
+     */
+    public MessageRoute get(ByteBuffer key, Function<ByteBuffer, MessageRoute> resolver) {
+        if(segments.length == 0 || key.remaining() > MAX_CACHED_KEY_BYTES){
+            misses.increment();
+            return resolver.apply(key.duplicate());
+        }
+
+        int hash = key.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+        MessageRoute route;
+        synchronized (segment) {
+            route = segment.get(key);
+        }
+        if(route != null){
+            hits.increment();
+            return route;
+        }
+
+        misses.increment();
+        route = resolver.apply(key.duplicate());
+        ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key.duplicate());
+        copy.flip();
+        synchronized (segment) {
+            segment.put(copy, route);
+        }
+        return route;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public void printStatus(){
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        System.out.println("route cache: size=" + size() + "(capacity=" + capacity + ",segments=" + segments.length + ")"
+                + ",hits=" + hitCount + ",misses=" + missCount + ",evictions=" + evictions.sum()
+                + ",hitRatio=" + (total == 0 ? "0.00" : String.format("%.2f", hitCount * 1.0 / total)));
+    }
+
+    /**
+     * One least recently used segment, accessed while holding its monitor.
+     */
+    private final class Segment extends LinkedHashMap<ByteBuffer, MessageRoute> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, MessageRoute> eldest) {
+            if(size() > capacity){
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.data.io;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author yusheng
  * @version 1.0.0
@@ -10,4 +12,16 @@ public interface MessageWriter {
 
     void write(byte[] key, byte[] value);
 
+    /**
+     * Writes a message given as buffer views. The views are only valid during the call, a writer
+     * which keeps the message around has to copy it.
+     */
+    void write(ByteBuffer key, ByteBuffer value);
+
+    /**
+     * Writes a message asynchronously, {@code callback} is completed once the message is persisted.
+     * The views are only valid during the call.
+     */
+    void write(ByteBuffer key, ByteBuffer value, AppendCallback callback);
+
 }
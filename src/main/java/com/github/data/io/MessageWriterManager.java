@@ -1,11 +1,13 @@
 package com.github.data.io;
 
 import com.github.data.common.DataPlatformException;
-import com.github.data.utils.Utils;
+import com.github.data.json.JsonFieldReader;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -15,43 +17,108 @@ import java.util.Map;
  * @description
  */
 public final class MessageWriterManager {
-    private static final String MESSAGE_FILE_SUFFIX = ".dat";
-    private final static Map<String, TopicMessageFileWriter> topicOutStreamMap = new HashMap<>();
+    private final Map<String, TopicMessageFileWriter> topicWriterMap = new HashMap<>();
 
-    private final int cacheFlushSize;
     private final String storagePath;
+    private final LogConfig logConfig;
+    private final GroupCommitAppender appender;
+    // 消息key到路由的缓存, 避免每条消息都解析key的JSON
+    private final MessageRouteCache routeCache;
+
+    private static final byte[] PROCESS_POLICY_FIELD = JsonFieldReader.name("message_process_policy");
+    private static final byte[] TOPIC_FIELD = JsonFieldReader.name("topic");
 
     public MessageWriterManager(int cacheFlushSize, String storagePath){
-        this.cacheFlushSize = cacheFlushSize;
+        this(cacheFlushSize,storagePath,new LogConfig());
+    }
+
+    public MessageWriterManager(int cacheFlushSize, String storagePath, LogConfig logConfig){
+        this(cacheFlushSize,storagePath,logConfig,MessageRouteCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param cacheFlushSize 单个batch最多包含的消息数
+     * @param routeCacheSize 缓存路由的消息key数, 0表示不缓存
+     * */
+    public MessageWriterManager(int cacheFlushSize, String storagePath, LogConfig logConfig, int routeCacheSize){
         this.storagePath = storagePath;
+        this.logConfig = logConfig;
+        this.appender = new GroupCommitAppender(cacheFlushSize,logConfig.getFsyncPolicy(),logConfig.getFsyncIntervalMs());
+        this.routeCache = new MessageRouteCache(routeCacheSize);
+    }
+
+    /**
+     * Returns the route of a message key, parsing the key only the first time it is seen.
+     *
+     * @param key the raw key, a JSON object with the {@code message_process_policy} and
+     *            {@code topic} fields, left unchanged.
+     * @throws DataPlatformException if the key is not a JSON object.
+     */
+    public MessageRoute route(ByteBuffer key){
+        return routeCache.get(key,this::resolveRoute);
+    }
+
+    private MessageRoute resolveRoute(ByteBuffer key){
+        // 只读取路由需要的两个字段, 不构建JSON对象
+        JsonFieldReader reader = new JsonFieldReader(key);
+        if(!reader.find() || reader.valueType() != JsonFieldReader.ValueType.OBJECT){
+            throw new DataPlatformException("Invalid message key.");
+        }
+        String processPolicy = stringField(reader,PROCESS_POLICY_FIELD);
+        if(!MessageRoute.MESSAGE_QUEUE_POLICY.equals(processPolicy)){
+            return new MessageRoute(processPolicy,null,null);
+        }
+        String topic = stringField(reader,TOPIC_FIELD);
+        if(topic == null){
+            throw new DataPlatformException("Message key without topic.");
+        }
+        return new MessageRoute(processPolicy,topic,byTopic(topic));
+    }
+
+    private static String stringField(JsonFieldReader reader, byte[] name){
+        return reader.find(name) && reader.valueType() == JsonFieldReader.ValueType.STRING ? reader.stringValue() : null;
+    }
+
+    public MessageRouteCache getRouteCache() {
+        return routeCache;
     }
 
     public synchronized TopicMessageFileWriter byTopic(String topic){
-        TopicMessageFileWriter topicMessageFileWriter;
-        if(topicOutStreamMap.containsKey(topic)){
-            topicMessageFileWriter = topicOutStreamMap.get(topic);
-        }else {
-            String fileName = newMessageFileName(topic);
+        // 大小写不同的topic共用同一个日志目录, 也必须共用同一个writer
+        topic = normalize(topic);
+        TopicMessageFileWriter topicMessageFileWriter = topicWriterMap.get(topic);
+        if(topicMessageFileWriter == null){
             try{
-                Utils.mkdirIfPossible(storagePath + "/" + Utils.currDateStr());
-                FileOutputStream fos = new FileOutputStream(fileName);
-                topicMessageFileWriter = new TopicMessageFileWriter(cacheFlushSize,fos);
-                topicOutStreamMap.put(topic,topicMessageFileWriter);
+                // 每个topic一个日志目录: storagePath/topic/
+                TopicLog topicLog = new TopicLog(topicDir(topic),logConfig);
+                topicMessageFileWriter = new TopicMessageFileWriter(topicLog,appender);
+                topicWriterMap.put(topic,topicMessageFileWriter);
             }catch (IOException ioe){
-                throw new DataPlatformException("初始化topic文件失败!");
+                throw new DataPlatformException("初始化topic日志失败!",ioe);
             }
         }
         return topicMessageFileWriter;
     }
 
-    public void close(){
-        topicOutStreamMap.forEach((k,v) -> {
+    public GroupCommitAppender getAppender() {
+        return appender;
+    }
+
+    public synchronized void close(){
+        // 先写完排队中的消息再关闭日志
+        appender.close();
+        routeCache.clear();
+        topicWriterMap.forEach((k,v) -> {
             v.close();
         });
+        topicWriterMap.clear();
+    }
+
+    private File topicDir(String topic){
+        return new File(storagePath,topic);
     }
 
-    private String newMessageFileName(String topic){
-        String fileName = topic.toLowerCase() + "_" + Utils.timestampToDateTime(System.currentTimeMillis(),"yyyyMMdd") + MESSAGE_FILE_SUFFIX;
-        return storagePath + "/" + Utils.currDateStr() + "/" + fileName;
+    private static String normalize(String topic){
+        return topic.toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,150 @@
+package com.github.data.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A sparse index from offsets to file positions of one {@link LogSegment}. Every entry is
+ * {@code [relativeOffset:int32][position:int32]}, the offset relative to the base offset of the
+ * segment and the position of the batch starting with that offset in the log file. Entries are
+ * strictly increasing so a lookup is a binary search, the entries are kept in memory and the file
+ * is only appended to.
+ *
+ * <p>Not thread safe for writers, appends are serialized by the owning {@link TopicLog}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/18 10:32
+ * @description 稀疏偏移量索引
+ */
+final class OffsetIndex implements Closeable {
+    // 索引项大小: 4字节相对偏移量 + 4字节文件位置
+    static final int ENTRY_SIZE = 4 + 4;
+
+    private final File file;
+    private final long baseOffset;
+    private final FileChannel channel;
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+    private volatile int[] relativeOffsets = new int[64];
+    private volatile int[] positions = new int[64];
+    private volatile int entries;
+
+    OffsetIndex(File file, long baseOffset) throws IOException {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    private void load() throws IOException {
+        // 丢弃未写完整的索引项
+        int count = (int) (channel.size() / ENTRY_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(count * ENTRY_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        int valid = 0;
+        int[] offsets = new int[Math.max(64, count)];
+        int[] filePositions = new int[Math.max(64, count)];
+        for (int i = 0; i < count; i++) {
+            int relativeOffset = buffer.getInt();
+            int position = buffer.getInt();
+            if (valid > 0 && (relativeOffset <= offsets[valid - 1] || position <= filePositions[valid - 1])) {
+                break;
+            }
+            offsets[valid] = relativeOffset;
+            filePositions[valid] = position;
+            valid++;
+        }
+        this.relativeOffsets = offsets;
+        this.positions = filePositions;
+        this.entries = valid;
+        channel.truncate((long) valid * ENTRY_SIZE);
+    }
+
+    /**
+     * Appends an entry, ignored if it is not after the last entry.
+     */
+    void append(long offset, int position) throws IOException {
+        int relativeOffset = (int) (offset - baseOffset);
+        int count = entries;
+        if (count > 0 && (relativeOffset <= relativeOffsets[count - 1] || position <= positions[count - 1])) {
+            return;
+        }
+        if (count == relativeOffsets.length) {
+            positions = Arrays.copyOf(positions, count << 1);
+            relativeOffsets = Arrays.copyOf(relativeOffsets, count << 1);
+        }
+        relativeOffsets[count] = relativeOffset;
+        positions[count] = position;
+
+        entryBuffer.clear();
+        entryBuffer.putInt(relativeOffset);
+        entryBuffer.putInt(position);
+        entryBuffer.flip();
+        long filePosition = (long) count * ENTRY_SIZE;
+        while (entryBuffer.hasRemaining()) {
+            filePosition += channel.write(entryBuffer, filePosition);
+        }
+        entries = count + 1;
+    }
+
+    /**
+     * Returns the position of the largest indexed offset less than or equal to {@code offset}, or
+     * 0 if there is none.
+     */
+    int lookup(long offset) {
+        int[] offsets = relativeOffsets;
+        int[] filePositions = positions;
+        int count = Math.min(entries, Math.min(offsets.length, filePositions.length));
+        long target = offset - baseOffset;
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] <= target) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? 0 : filePositions[found];
+    }
+
+    /**
+     * Removes all the entries, used before the index is rebuilt from its log.
+     */
+    void reset() throws IOException {
+        entries = 0;
+        channel.truncate(0);
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    File file() {
+        return file;
+    }
+
+    void flush() throws IOException {
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,399 @@
+package com.github.data.io;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+import com.github.data.compress.CompressionType;
+import com.github.data.utils.Crc32C;
+import com.github.data.utils.Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The append-only log of one topic, stored in its own directory as a sequence of
+ * {@link LogSegment}s. Every record gets a 64-bit offset, monotonic within the topic and surviving
+ * restarts. Records are appended as batches, the active segment is rolled once it would exceed
+ * {@link LogConfig#getSegmentBytes()} or is older than {@link LogConfig#getSegmentMs()}, and every
+ * segment has a sparse offset index so that reads seek to any offset without scanning the log.
+ *
+ * <p>With a {@link LogConfig#getCompressionType() compression type} the records of every batch are
+ * compressed as a whole, batches which do not shrink are stored as they are. Reads decompress the
+ * batches they go through.
+ *
+ * <p>On open the active segment is recovered: a batch cut by a crash is truncated and the index is
+ * rebuilt.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/18 14:20
+ * @description 分段、带索引的topic日志
+ */
+public final class TopicLog implements Closeable {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    // 读取时每次从segment读取的字节数
+    private static final int READ_CHUNK_BYTES = 64 * 1024;
+
+    // 压缩batch的最大原始长度, 更大的batch不压缩, 读取时据此拒绝损坏的长度字段
+    static final int MAX_UNCOMPRESSED_BATCH_BYTES = 256 * 1024 * 1024;
+
+    private final File dir;
+    private final LogConfig config;
+    private final ConcurrentNavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile LogSegment activeSegment;
+
+    // 以下字段只在持有lock时访问: batch头部、其校验和及gathering write数组
+    private final ByteBuffer batchHeader = ByteBuffer.allocateDirect(LogSegment.BATCH_HEADER_SIZE);
+    private final Crc32C crc32C = new Crc32C();
+    private ByteBuffer[] gather = new ByteBuffer[64];
+
+    // 以下字段只在持有lock时访问: 压缩前后的记录
+    private byte[] uncompressed = new byte[0];
+    private byte[] compressed = new byte[0];
+    private final ByteBuffer[] compressedGather = new ByteBuffer[1];
+
+    /**
+     * Visitor of the records returned by {@link #read(long, int, RecordVisitor)}.
+     */
+    public interface RecordVisitor {
+        /**
+         * @param offset the offset of the record.
+         * @param record the record, only valid during the call.
+         */
+        void visit(long offset, ByteBuffer record);
+    }
+
+    public TopicLog(File dir, LogConfig config) throws IOException {
+        this.dir = dir;
+        this.config = config;
+        Utils.mkdirIfPossible(dir.getPath());
+        loadSegments();
+    }
+
+    private void loadSegments() throws IOException {
+        List<Long> baseOffsets = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long baseOffset = LogSegment.parseBaseOffset(file.getName());
+                if (baseOffset >= 0) {
+                    baseOffsets.add(baseOffset);
+                }
+            }
+        }
+        Collections.sort(baseOffsets);
+
+        for (int i = 0; i < baseOffsets.size(); i++) {
+            long baseOffset = baseOffsets.get(i);
+            boolean active = i == baseOffsets.size() - 1;
+            segments.put(baseOffset, LogSegment.open(dir, baseOffset, config, active));
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, LogSegment.open(dir, 0L, config, false));
+        }
+        activeSegment = segments.lastEntry().getValue();
+        LOG.info("Loaded log {} with {} segments, log end offset {}", dir, segments.size(), activeSegment.nextOffset());
+    }
+
+    /**
+     * Appends the records as one batch.
+     *
+     * @param records the records, in order.
+     * @return the offset of the first record.
+     * @throws IOException if writing the log fails.
+     */
+    public long append(List<byte[]> records) throws IOException {
+        ByteBuffer[] framedRecords = new ByteBuffer[records.size()];
+        for (int i = 0; i < framedRecords.length; i++) {
+            byte[] record = records.get(i);
+            ByteBuffer framedRecord = ByteBuffer.allocate(LogSegment.RECORD_OVERHEAD + record.length);
+            framedRecord.putInt(record.length);
+            framedRecord.put(record);
+            framedRecord.flip();
+            framedRecords[i] = framedRecord;
+        }
+        return append(framedRecords, framedRecords.length);
+    }
+
+    /**
+     * Appends the records as one batch, the batch header and the records are written with a single
+     * gathering write. The positions of the buffers are advanced to their limits.
+     *
+     * @param framedRecords the records, each one already prefixed with its 4 byte length, see
+     *                      {@link #frameRecord(ByteBuffer, ByteBuffer)}.
+     * @param count         the number of records to append.
+     * @return the offset of the first record.
+     * @throws IOException if writing the log fails.
+     */
+    public long append(ByteBuffer[] framedRecords, int count) throws IOException {
+        return append(framedRecords, count, count);
+    }
+
+    /**
+     * Appends the framed records held by {@code buffers} as one batch, a buffer may hold any number
+     * of consecutive framed records. The batch header and the buffers are written with a single
+     * gathering write, the positions of the buffers are advanced to their limits. With compression
+     * the records are first gathered and compressed into one array.
+     *
+     * @param buffers     the buffers, in order, each one holding whole framed records.
+     * @param bufferCount the number of buffers to append.
+     * @param recordCount the number of records held by the buffers.
+     * @return the offset of the first record.
+     * @throws IOException if writing the log fails.
+     */
+    public long append(ByteBuffer[] buffers, int bufferCount, int recordCount) throws IOException {
+        if (bufferCount <= 0 || recordCount <= 0) {
+            throw new IllegalArgumentException("Cannot append an empty batch.");
+        }
+        int recordsSize = 0;
+        for (int i = 0; i < bufferCount; i++) {
+            recordsSize += buffers[i].remaining();
+        }
+
+        lock.lock();
+        try {
+            byte attributes = 0;
+            CompressionType compressionType = config.getCompressionType();
+            if (compressionType != CompressionType.NONE && recordsSize <= MAX_UNCOMPRESSED_BATCH_BYTES) {
+                ByteBuffer records = compress(compressionType, buffers, bufferCount, recordsSize);
+                // 压缩后没有变小时按原样存储
+                if (records.array() == compressed) {
+                    attributes = compressionType.getId();
+                }
+                compressedGather[0] = records;
+                buffers = compressedGather;
+                bufferCount = 1;
+                recordsSize = records.remaining();
+            }
+            int batchSize = LogSegment.BATCH_HEADER_SIZE + recordsSize;
+
+            long baseOffset = activeSegment.nextOffset();
+            long lastOffset = baseOffset + recordCount - 1;
+            batchHeader.clear();
+            batchHeader.putLong(baseOffset);
+            batchHeader.putInt(batchSize - LogSegment.LOG_OVERHEAD);
+            batchHeader.putInt(0);
+            batchHeader.put(attributes);
+            batchHeader.putInt(recordCount - 1);
+            batchHeader.flip();
+            batchHeader.putInt(LogSegment.CRC_OFFSET, checksum(buffers, bufferCount));
+
+            if (gather.length < bufferCount + 1) {
+                gather = new ByteBuffer[Math.max(bufferCount + 1, gather.length << 1)];
+            }
+            gather[0] = batchHeader;
+            System.arraycopy(buffers, 0, gather, 1, bufferCount);
+
+            try {
+                LogSegment segment = maybeRoll(batchSize, lastOffset);
+                segment.append(baseOffset, lastOffset, gather, bufferCount + 1, batchSize);
+            } finally {
+                Arrays.fill(gather, 0, bufferCount + 1, null);
+                compressedGather[0] = null;
+            }
+            return baseOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The crc of the batch whose header is in {@link #batchHeader} and whose records are held by
+     * {@code buffers}, from the attributes on, the buffers are left untouched.
+     */
+    private int checksum(ByteBuffer[] buffers, int bufferCount) {
+        crc32C.reset();
+        ByteBuffer checkedHeader = batchHeader.duplicate();
+        checkedHeader.position(LogSegment.ATTRIBUTES_OFFSET);
+        crc32C.update(checkedHeader);
+        for (int i = 0; i < bufferCount; i++) {
+            crc32C.update(buffers[i].duplicate());
+        }
+        return (int) crc32C.getValue();
+    }
+
+    /**
+     * Gathers the records and compresses them, the positions of the buffers are advanced to their
+     * limits. Returns the compressed records, or the gathered records if they do not shrink.
+     */
+    private ByteBuffer compress(CompressionType compressionType, ByteBuffer[] buffers, int bufferCount, int recordsSize) {
+        if (uncompressed.length < recordsSize) {
+            uncompressed = new byte[recordsSize];
+        }
+        int position = 0;
+        for (int i = 0; i < bufferCount; i++) {
+            int length = buffers[i].remaining();
+            buffers[i].get(uncompressed, position, length);
+            position += length;
+        }
+
+        int maxSize = compressionType.maxCompressedSize(recordsSize);
+        if (compressed.length < maxSize) {
+            compressed = new byte[maxSize];
+        }
+        int compressedSize = compressionType.compress(uncompressed, 0, recordsSize, compressed, 0);
+        if (compressedSize >= recordsSize) {
+            return ByteBuffer.wrap(uncompressed, 0, recordsSize);
+        }
+        return ByteBuffer.wrap(compressed, 0, compressedSize);
+    }
+
+    /**
+     * Copies {@code record} prefixed with its length into {@code dest} and flips it, {@code dest}
+     * needs {@link #framedSize(int)} bytes.
+     */
+    public static ByteBuffer frameRecord(ByteBuffer record, ByteBuffer dest) {
+        dest.putInt(record.remaining());
+        dest.put(record.duplicate());
+        dest.flip();
+        return dest;
+    }
+
+    /**
+     * The size of a record of {@code recordSize} bytes once framed.
+     */
+    public static int framedSize(int recordSize) {
+        return LogSegment.RECORD_OVERHEAD + recordSize;
+    }
+
+    private LogSegment maybeRoll(int batchSize, long lastOffset) throws IOException {
+        LogSegment segment = activeSegment;
+        if (segment.shouldRoll(batchSize, lastOffset, System.currentTimeMillis(), config)) {
+            // 旧segment已不再写入, 刷盘后滚动
+            segment.flush();
+            long baseOffset = segment.nextOffset();
+            segment = LogSegment.open(dir, baseOffset, config, false);
+            segments.put(baseOffset, segment);
+            activeSegment = segment;
+            LOG.info("Rolled new log segment {} in {}", LogSegment.fileName(baseOffset), dir);
+        }
+        return segment;
+    }
+
+    /**
+     * Reads records in offset order starting at {@code startOffset}.
+     *
+     * @param startOffset the first offset to read, clamped to the log start offset.
+     * @param maxRecords  the maximum number of records to visit.
+     * @param visitor     the visitor receiving the records.
+     * @return the offset following the last visited record.
+     * @throws IOException if reading the log fails.
+     */
+    public long read(long startOffset, int maxRecords, RecordVisitor visitor) throws IOException {
+        long offset = Math.max(startOffset, logStartOffset());
+        int visited = 0;
+        while (visited < maxRecords) {
+            Map.Entry<Long, LogSegment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                break;
+            }
+            LogSegment segment = entry.getValue();
+            int position = segment.translateOffset(offset);
+            if (position < 0) {
+                // 当前segment已读完, 继续读下一个segment
+                Map.Entry<Long, LogSegment> next = segments.higherEntry(entry.getKey());
+                if (next == null) {
+                    break;
+                }
+                offset = next.getKey();
+                continue;
+            }
+
+            ByteBuffer batches = segment.read(position, READ_CHUNK_BYTES);
+            if (!batches.hasRemaining()) {
+                break;
+            }
+            while (batches.hasRemaining() && visited < maxRecords) {
+                long batchBaseOffset = batches.getLong();
+                int length = batches.getInt();
+                int batchEnd = batches.position() + length;
+                // crc在恢复活跃segment时校验, 读取时不再校验
+                batches.getInt();
+                CompressionType compressionType = CompressionType.fromAttributes(batches.get());
+                int lastOffsetDelta = batches.getInt();
+                if (batchBaseOffset + lastOffsetDelta < offset) {
+                    // 整个batch都在起始offset之前, 无需解压
+                    batches.position(batchEnd);
+                    continue;
+                }
+
+                ByteBuffer records = batches;
+                if (compressionType != CompressionType.NONE) {
+                    ByteBuffer compressedRecords = batches.slice();
+                    compressedRecords.limit(batchEnd - batches.position());
+                    records = compressionType.decompress(compressedRecords, MAX_UNCOMPRESSED_BATCH_BYTES);
+                }
+                for (int delta = 0; delta <= lastOffsetDelta && visited < maxRecords; delta++) {
+                    int recordLength = records.getInt();
+                    long recordOffset = batchBaseOffset + delta;
+                    if (recordOffset >= offset) {
+                        ByteBuffer record = records.slice();
+                        record.limit(recordLength);
+                        visitor.visit(recordOffset, record);
+                        visited++;
+                        offset = recordOffset + 1;
+                    }
+                    records.position(records.position() + recordLength);
+                }
+                batches.position(batchEnd);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * The offset of the first record of the log.
+     */
+    public long logStartOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * The offset the next appended record gets.
+     */
+    public long logEndOffset() {
+        return activeSegment.nextOffset();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public File dir() {
+        return dir;
+    }
+
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            activeSegment.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            activeSegment.flush();
+            for (LogSegment segment : segments.values()) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
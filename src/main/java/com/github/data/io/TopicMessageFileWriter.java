@@ -1,17 +1,9 @@
 package com.github.data.io;
 
-import com.github.data.common.BufferPoolAllocator;
-import com.github.data.common.LogManager;
-import com.github.data.common.TinyLogger;
 import com.github.data.json.JsonObject;
+
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author yusheng
@@ -20,70 +12,50 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @description
  */
 public class TopicMessageFileWriter extends AbstractMessageFileWriter{
-    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
-    private final int cacheFlushSize;
-    private final List<byte[]> appendingWriteCaches = new ArrayList<>();
-    private final OutputStream os;
-    private static final AtomicInteger offset = new AtomicInteger(0);
-    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final Lock writeLock = readWriteLock.writeLock();
-
-    public TopicMessageFileWriter(int cacheFlushSize,OutputStream os){
-        this.cacheFlushSize = cacheFlushSize;
-        this.os = os;
+    // topic的分段日志, 偏移量由日志按topic分配
+    private final TopicLog topicLog;
+    // 所有topic共用的组提交追加器
+    private final GroupCommitAppender appender;
+
+    public TopicMessageFileWriter(TopicLog topicLog,GroupCommitAppender appender){
+        this.topicLog = topicLog;
+        this.appender = appender;
     }
 
     @Override
-    public void write(JsonObject json, byte[] value) {
-        append(value);
+    public void write(JsonObject json, ByteBuffer value, AppendCallback callback) {
+        // 拷贝到池化内存后异步追加, 不阻塞调用线程
+        appender.append(topicLog,value,callback);
     }
 
-    private void append(byte[] value){
-        writeLock.lock();
-        try{
-            appendingWriteCaches.add(value);
-
-            if(appendingWriteCaches.size() > cacheFlushSize){
-                ByteBuffer tmpBuff = bufferPoolAllocator.allocate(256);
-                for (byte[] bytes : appendingWriteCaches) {
-                    try{
-                        tmpBuff.clear();
-                        // 写入偏移量
-                        tmpBuff.putInt(offset.incrementAndGet());
-                        // 写入字节数据数据长度
-                        tmpBuff.putInt(bytes.length);
-
-                        os.write(tmpBuff.array());
-                        // 写入字节数据
-                        os.write(bytes);
-                    }catch (IOException ioe){
-                        LOG.error(ioe);
-                    }
-                }
-
-                bufferPoolAllocator.release(tmpBuff,tmpBuff.capacity());
+    /**
+     * Appends a message whose key is already routed to this topic, see
+     * {@link MessageWriterManager#route(ByteBuffer)}, without parsing the key again.
+     * */
+    public void append(ByteBuffer value, AppendCallback callback){
+        appender.append(topicLog,value,callback);
+    }
 
-                try{
-                    os.flush();
-                }catch (IOException ioe){
-                    ioe.printStackTrace();
-                }
+    /**
+     * Appends records already framed into a pooled buffer as one batch, the buffer is handed over to
+     * the appender. {@code callback} is completed with the offset of the first record.
+     * */
+    public void writeFramed(ByteBuffer framedRecords, int recordCount, AppendCallback callback){
+        appender.appendFramed(topicLog,framedRecords,recordCount,callback);
+    }
 
-                appendingWriteCaches.clear();
-            }
-        }finally {
-            writeLock.unlock();
-        }
+    public TopicLog getTopicLog() {
+        return topicLog;
     }
 
+    /**
+     * 关闭topic日志, 须在追加器关闭之后调用
+     * */
     public void close(){
-        if(os != null){
-            try{
-                os.close();
-            }catch (IOException ioe){
-                ioe.printStackTrace();
-            }
+        try{
+            topicLog.close();
+        }catch (IOException ioe){
+            ioe.printStackTrace();
         }
     }
 }
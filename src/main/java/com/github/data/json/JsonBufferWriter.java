@@ -0,0 +1,442 @@
+package com.github.data.json;
+
+import com.github.data.common.BufferPoolAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Serializes JSON as UTF-8 straight into a buffer of the {@link BufferPoolAllocator}, for the
+ * responses and payloads built on the reactor. Unlike {@link JsonWriter} no {@code String} or
+ * {@link java.io.Writer} is involved: ASCII strings are copied byte by byte, other characters are
+ * encoded in place, integers and most doubles are formatted without {@link Double#toString(double)}.
+ *
+ * <p>Values are written either from a tree with {@link #write(JsonValue)} or as a stream with
+ * {@link #beginObject()}, {@link #name(String)}, {@link #value(String)} and so on, commas are
+ * inserted automatically. The buffer grows by taking a larger one from the pool, up to a deliberate
+ * cap of 1MB per document, far below the largest pooled chuck, so that a runaway document fails
+ * instead of draining the large size classes of the pool. {@link #finish()} hands the buffer over to the
+ * caller, who releases it; otherwise {@link #release()} gives it back. A writer is not thread safe.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 19:30
+ * @description 直接写入池化ByteBuffer的UTF-8 JSON序列化
+ */
+public final class JsonBufferWriter {
+    private static final int DEFAULT_INITIAL_CAPACITY = 256;
+    // 单个文档的长度上限, 有意远小于池中最大的内存块, 避免失控的文档耗尽大内存块
+    private static final int MAX_DOCUMENT_BYTES = 1024 * 1024;
+
+    // 需要转义的ASCII字符, 0表示原样输出
+    private static final byte[] ESCAPES = new byte[128];
+    private static final byte[] HEX = {'0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'};
+    private static final byte[] TRUE = {'t','r','u','e'};
+    private static final byte[] FALSE = {'f','a','l','s','e'};
+    private static final byte[] NULL = {'n','u','l','l'};
+    private static final byte[] MIN_LONG = {'-','9','2','2','3','3','7','2','0','3','6','8','5','4','7','7','5','8','0','8'};
+
+    // 不经过Double.toString输出的最多小数位数
+    private static final int MAX_FAST_FRACTION_DIGITS = 9;
+    private static final double[] POWERS_OF_TEN = new double[MAX_FAST_FRACTION_DIGITS + 1];
+    // 2^53, 超过该值的整数不能被double精确表示
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
+    private static final byte OBJECT = 1;
+    private static final byte ARRAY = 2;
+
+    static {
+        for (int i = 0x00; i <= 0x1f; i++) {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+
+        POWERS_OF_TEN[0] = 1d;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10d;
+        }
+    }
+
+    private final BufferPoolAllocator allocator;
+    private ByteBuffer buffer;
+
+    // 嵌套的对象和数组, 以及其中是否已有元素
+    private byte[] containers = new byte[8];
+    private boolean[] hasElements = new boolean[8];
+    private int depth;
+    // 已写入字段名, 等待字段值
+    private boolean afterName;
+
+    private final byte[] digits = new byte[20];
+
+    public JsonBufferWriter() {
+        this(BufferPoolAllocator.getInstance(), DEFAULT_INITIAL_CAPACITY, 0);
+    }
+
+    /**
+     * @param initialCapacity the size of the first buffer taken from the pool.
+     * @param reservedBytes   bytes left at the start of the buffer, for instance for a frame
+     *                        header filled in once the length of the document is known.
+     */
+    public JsonBufferWriter(BufferPoolAllocator allocator, int initialCapacity, int reservedBytes) {
+        this.allocator = allocator;
+        this.buffer = allocate(Math.max(initialCapacity, reservedBytes + 1));
+        this.buffer.position(reservedBytes);
+    }
+
+    public JsonBufferWriter write(JsonValue value) {
+        if (value == null || value.isNull()) {
+            return nullValue();
+        } else if (value.isBoolean()) {
+            return value(value.asBoolean());
+        } else if (value.isNumber()) {
+            return value(value.asNumber());
+        } else if (value.isString()) {
+            return value(value.asString());
+        } else if (value.isArray()) {
+            beginArray();
+            for (JsonValue element : value.asArray()) {
+                write(element);
+            }
+            return endArray();
+        } else {
+            beginObject();
+            Iterator<Map.Entry<String, JsonValue>> it = value.asObject().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonValue> entry = it.next();
+                name(entry.getKey());
+                write(entry.getValue());
+            }
+            return endObject();
+        }
+    }
+
+    public JsonBufferWriter beginObject() {
+        return begin(OBJECT, (byte) '{');
+    }
+
+    public JsonBufferWriter endObject() {
+        return end(OBJECT, (byte) '}');
+    }
+
+    public JsonBufferWriter beginArray() {
+        return begin(ARRAY, (byte) '[');
+    }
+
+    public JsonBufferWriter endArray() {
+        return end(ARRAY, (byte) ']');
+    }
+
+    public JsonBufferWriter name(String name) {
+        if (depth == 0 || containers[depth - 1] != OBJECT || afterName) {
+            throw new IllegalStateException("Field name outside of an object");
+        }
+        separate();
+        string(name);
+        ensure(1);
+        buffer.put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonBufferWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonBufferWriter value(boolean value) {
+        beforeValue();
+        bytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonBufferWriter nullValue() {
+        beforeValue();
+        bytes(NULL);
+        return this;
+    }
+
+    public JsonBufferWriter value(long value) {
+        beforeValue();
+        longValue(value);
+        return this;
+    }
+
+    /**
+     * Writes a double, as an integer if it has no fraction like {@link JsonWriter} does.
+     *
+     * @throws IllegalStateException if the value is NaN or infinite.
+     */
+    public JsonBufferWriter value(double value) {
+        beforeValue();
+        doubleValue(value);
+        return this;
+    }
+
+    public JsonBufferWriter value(Number value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        if (value instanceof LazyNumber) {
+            // 解析得到的数字保留了原始文本, 已是合法的JSON数字
+            ascii(value.toString());
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            longValue(value.longValue());
+        } else {
+            long l = value.longValue();
+            double d = value.doubleValue();
+            if (l == d) {
+                longValue(l);
+            } else {
+                doubleValue(d);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The number of bytes written, the reserved bytes included.
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Returns the pooled buffer holding the document from position 0, reserved bytes included, to
+     * its limit. The buffer is handed over to the caller, who releases it to the
+     * {@link BufferPoolAllocator} with its capacity; the writer must not be used afterwards.
+     *
+     * @throws IllegalStateException if an object or array is still open.
+     */
+    public ByteBuffer finish() {
+        if (depth != 0) {
+            throw new IllegalStateException("Unclosed object or array");
+        }
+        ByteBuffer result = buffer;
+        buffer = null;
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Gives the buffer back to the pool without taking the document, does nothing after
+     * {@link #finish()}.
+     */
+    public void release() {
+        if (buffer != null) {
+            allocator.release(buffer, buffer.capacity());
+            buffer = null;
+        }
+    }
+
+    private JsonBufferWriter begin(byte container, byte bracket) {
+        beforeValue();
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        containers[depth] = container;
+        hasElements[depth] = false;
+        depth++;
+        ensure(1);
+        buffer.put(bracket);
+        return this;
+    }
+
+    private JsonBufferWriter end(byte container, byte bracket) {
+        if (depth == 0 || containers[depth - 1] != container || afterName) {
+            throw new IllegalStateException("Unexpected end of " + (container == OBJECT ? "object" : "array"));
+        }
+        depth--;
+        ensure(1);
+        buffer.put(bracket);
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (containers[depth - 1] == OBJECT) {
+                throw new IllegalStateException("Value without a field name");
+            }
+            separate();
+        }
+    }
+
+    private void separate() {
+        if (hasElements[depth - 1]) {
+            ensure(1);
+            buffer.put((byte) ',');
+        } else {
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void string(String value) {
+        int length = value.length();
+        ensure(length + 2);
+        buffer.put((byte) '"');
+        int i = 0;
+        // ASCII快速路径: 已预留每个字符一个字节
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || ESCAPES[c] != 0) {
+                break;
+            }
+            buffer.put((byte) c);
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            // 剩余字符最多各占6个字节
+            ensure(6 + 1);
+            if (c < 0x80) {
+                byte escape = ESCAPES[c];
+                if (escape == 0) {
+                    buffer.put((byte) c);
+                } else if (escape == 'u') {
+                    buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                            .put(HEX[c >> 4]).put(HEX[c & 0xf]);
+                } else {
+                    buffer.put((byte) '\\').put(escape);
+                }
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符, 与String.getBytes一样替换为'?'
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        ensure(1);
+        buffer.put((byte) '"');
+    }
+
+    private void longValue(long value) {
+        if (value == Long.MIN_VALUE) {
+            bytes(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+
+    private void doubleValue(double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalStateException("Cannot serialize NaN or Infinity");
+        }
+        double abs = Math.abs(value);
+        if (abs < MAX_EXACT_INTEGER && value == (long) value) {
+            longValue((long) value);
+            return;
+        }
+        // 寻找最少的小数位数p, 使value是整数scaled除以10^p的正确舍入结果.
+        // 此时十进制文本被解析时会得到同一个double, 与Double.toString一样可以精确还原
+        for (int p = 1; p <= MAX_FAST_FRACTION_DIGITS; p++) {
+            double power = POWERS_OF_TEN[p];
+            if (abs * power >= MAX_EXACT_INTEGER) {
+                break;
+            }
+            long scaled = Math.round(abs * power);
+            if (scaled / power == abs) {
+                fixed(value < 0, scaled, p);
+                return;
+            }
+        }
+        // 很大, 很小或位数很多的值仍使用Double.toString
+        ascii(Double.toString(value));
+    }
+
+    private void fixed(boolean negative, long scaled, int fractionDigits) {
+        ensure(22);
+        if (negative) {
+            buffer.put((byte) '-');
+        }
+        int start = digits.length;
+        for (int i = 0; i < fractionDigits; i++) {
+            digits[--start] = (byte) ('0' + scaled % 10);
+            scaled /= 10;
+        }
+        // 位数最少时小数部分末位不为0
+        int fractionStart = start;
+        do {
+            digits[--start] = (byte) ('0' + scaled % 10);
+            scaled /= 10;
+        } while (scaled != 0);
+        buffer.put(digits, start, fractionStart - start);
+        buffer.put((byte) '.');
+        buffer.put(digits, fractionStart, digits.length - fractionStart);
+    }
+
+    private void ascii(String value) {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void bytes(byte[] bytes) {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer == null) {
+            throw new IllegalStateException("JsonBufferWriter is finished");
+        }
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        // 从池中申请更大的缓冲区, 旧的归还
+        int required = buffer.position() + bytes;
+        if (required > MAX_DOCUMENT_BYTES) {
+            throw new IllegalStateException("JSON document larger than " + MAX_DOCUMENT_BYTES + " bytes");
+        }
+        ByteBuffer larger = allocate(Math.max(required, Math.min(buffer.capacity() * 2, MAX_DOCUMENT_BYTES)));
+        buffer.flip();
+        larger.put(buffer);
+        allocator.release(buffer, buffer.capacity());
+        buffer = larger;
+    }
+
+    private ByteBuffer allocate(int size) {
+        ByteBuffer allocated = allocator.allocate(size);
+        // 池按内存块大小分配, 整块都可以使用
+        allocated.limit(allocated.capacity());
+        return allocated;
+    }
+}
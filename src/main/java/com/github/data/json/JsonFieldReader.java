@@ -0,0 +1,482 @@
+package com.github.data.json;
+
+import com.github.data.utils.Utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Path-targeted reader over a UTF-8 JSON document held in a {@code byte[]} or {@link ByteBuffer}.
+ * Unlike {@link JsonReader} it builds no tree: {@link #find(byte[]...)} walks the fields of the
+ * enclosing objects, skips every other value by scanning its bytes, and leaves the reader on the
+ * value of the path, which is then read as a slice or a primitive.
+ *
+ * <p>Only the objects along the path are parsed, skipped values are checked for closed strings
+ * and balanced brackets only and the document is not checked past the value found, so a
+ * malformed document may still yield a field. A reader is not thread safe, it may be reused for
+ * any number of lookups on the same document.
+ *
+ * <pre>{@code
+ * static final byte[] TOPIC = JsonFieldReader.name("topic");
+ *
+ * JsonFieldReader reader = new JsonFieldReader(keyBuffer);
+ * if (reader.find(TOPIC) && reader.valueType() == JsonFieldReader.ValueType.STRING) {
+ *     String topic = reader.stringValue();
+ * }
+ * }</pre>
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 15:10
+ * @description 按字段路径读取UTF-8 JSON, 不构建对象树
+ */
+public final class JsonFieldReader {
+    /**
+     * The type of a JSON value, decided by its first byte.
+     */
+    public enum ValueType {
+        OBJECT, ARRAY, STRING, NUMBER, TRUE, FALSE, NULL
+    }
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    // 当前值在buffer中的区间[valueStart, valueEnd)
+    private ValueType valueType;
+    private int valueStart;
+    private int valueEnd;
+    // 当前字符串值是否包含转义字符
+    private boolean escaped;
+
+    // scanString的附带结果, 避免返回对象
+    private boolean lastStringEscaped;
+
+    /**
+     * @param buffer the document, from its position to its limit. The buffer is not changed, its
+     *               bytes must not change while the reader is used.
+     */
+    public JsonFieldReader(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.start = buffer.position();
+        this.end = buffer.limit();
+    }
+
+    public JsonFieldReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * The UTF-8 bytes of a field name, to be computed once and passed to {@link #find(byte[]...)}.
+     */
+    public static byte[] name(String name) {
+        return Utils.utf8(name);
+    }
+
+    /**
+     * Moves to the value at {@code path}, the names of the fields leading to it from the root
+     * object; an empty path is the root value. Returns {@code false} if a field is missing or a
+     * value along the path is not an object, the reader is then on no value.
+     *
+     * @throws JsonException if the bytes read are not valid JSON.
+     */
+    public boolean find(byte[]... path) {
+        valueType = null;
+        int position = skipWhitespace(start);
+        for (byte[] name : path) {
+            position = findField(position, name);
+            if (position < 0) {
+                return false;
+            }
+        }
+        if (position >= end) {
+            throw new JsonException("Unexpected end of input");
+        }
+        valueStart = position;
+        valueEnd = skipValue(position);
+        valueType = typeOf(byteAt(position));
+        escaped = valueType == ValueType.STRING && lastStringEscaped;
+        return true;
+    }
+
+    /**
+     * The type of the value found, {@code null} if the last {@link #find(byte[]...)} failed.
+     */
+    public ValueType valueType() {
+        return valueType;
+    }
+
+    public boolean isNull() {
+        return valueType == ValueType.NULL;
+    }
+
+    /**
+     * The raw bytes of the value found, including the quotes of a string or the brackets of an
+     * object or array, sharing the content of the document.
+     */
+    public ByteBuffer valueSlice() {
+        ensureValue();
+        return slice(valueStart, valueEnd);
+    }
+
+    /**
+     * The bytes between the quotes of the string value found, sharing the content of the document.
+     * Escape sequences are left as they are, see {@link #hasEscapes()}.
+     */
+    public ByteBuffer stringSlice() {
+        ensureType(ValueType.STRING);
+        return slice(valueStart + 1, valueEnd - 1);
+    }
+
+    /**
+     * Whether the string value found contains escape sequences, whose slice then differs from its
+     * decoded value.
+     */
+    public boolean hasEscapes() {
+        ensureType(ValueType.STRING);
+        return escaped;
+    }
+
+    public String stringValue() {
+        ensureType(ValueType.STRING);
+        String raw = Utils.utf8(buffer, valueStart + 1 - start, valueEnd - valueStart - 2);
+        return escaped ? unescape(raw) : raw;
+    }
+
+    /**
+     * Compares the string value found with the UTF-8 bytes {@code expected}, without decoding the
+     * value unless it contains escape sequences.
+     */
+    public boolean stringEquals(byte[] expected) {
+        ensureType(ValueType.STRING);
+        if (escaped) {
+            return stringValue().equals(new String(expected, StandardCharsets.UTF_8));
+        }
+        return bytesEqual(valueStart + 1, valueEnd - 1, expected);
+    }
+
+    public boolean booleanValue() {
+        ensureValue();
+        if (valueType == ValueType.TRUE) {
+            return true;
+        }
+        if (valueType == ValueType.FALSE) {
+            return false;
+        }
+        throw new JsonException("Expected a boolean, got " + valueType);
+    }
+
+    /**
+     * The integer value found, parsed from its bytes.
+     *
+     * @throws JsonException if the value is not an integer number or does not fit in a long.
+     */
+    public long longValue() {
+        ensureType(ValueType.NUMBER);
+        int position = valueStart;
+        boolean negative = byteAt(position) == '-';
+        if (negative) {
+            position++;
+        }
+        if (position == valueEnd) {
+            throw new JsonException("Expected a digit");
+        }
+        // 按负数累加, 与Long.parseLong相同, 可以表示Long.MIN_VALUE
+        long result = 0;
+        for (; position < valueEnd; position++) {
+            int digit = byteAt(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new JsonException("Not an integer number: " + ascii(valueStart, valueEnd));
+            }
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new JsonException("Integer number out of range: " + ascii(valueStart, valueEnd));
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new JsonException("Integer number out of range: " + ascii(valueStart, valueEnd));
+            }
+            return -result;
+        }
+        return result;
+    }
+
+    public double doubleValue() {
+        ensureType(ValueType.NUMBER);
+        try {
+            return Double.parseDouble(ascii(valueStart, valueEnd));
+        } catch (NumberFormatException e) {
+            throw new JsonException("Invalid number", e);
+        }
+    }
+
+    /**
+     * Returns the position of the value of field {@code name} of the object at {@code position},
+     * or -1 if the object has no such field or the value at {@code position} is not an object.
+     */
+    private int findField(int position, byte[] name) {
+        if (position >= end || byteAt(position) != '{') {
+            return -1;
+        }
+        position = skipWhitespace(position + 1);
+        if (position < end && byteAt(position) == '}') {
+            return -1;
+        }
+        while (true) {
+            expect(position, '"');
+            int nameEnd = scanString(position);
+            boolean match = lastStringEscaped
+                    ? unescape(Utils.utf8(buffer, position + 1 - start, nameEnd - position - 1)).equals(new String(name, StandardCharsets.UTF_8))
+                    : bytesEqual(position + 1, nameEnd, name);
+            position = skipWhitespace(nameEnd + 1);
+            expect(position, ':');
+            position = skipWhitespace(position + 1);
+            if (match) {
+                return position;
+            }
+            position = skipWhitespace(skipValue(position));
+            if (position < end && byteAt(position) == ',') {
+                position = skipWhitespace(position + 1);
+                continue;
+            }
+            expect(position, '}');
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the position just after the value at {@code position}.
+     */
+    private int skipValue(int position) {
+        if (position >= end) {
+            throw new JsonException("Unexpected end of input");
+        }
+        int c = byteAt(position);
+        switch (c) {
+            case '"':
+                return scanString(position) + 1;
+            case '{':
+            case '[':
+                return skipContainer(position);
+            case 't':
+                return expectLiteral(position, "true");
+            case 'f':
+                return expectLiteral(position, "false");
+            case 'n':
+                return expectLiteral(position, "null");
+            default:
+                if (c == '-' || isDigit(c)) {
+                    return skipNumber(position);
+                }
+                throw new JsonException("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private int skipContainer(int position) {
+        // 只检查括号是否配对, 不解析其中的值
+        int depth = 0;
+        while (position < end) {
+            int c = byteAt(position);
+            if (c == '"') {
+                position = scanString(position) + 1;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return position + 1;
+                }
+            }
+            position++;
+        }
+        throw new JsonException("Unclosed object or array");
+    }
+
+    private int skipNumber(int position) {
+        while (position < end) {
+            int c = byteAt(position);
+            if (!isDigit(c) && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position of the closing quote of the string starting at {@code position}.
+     */
+    private int scanString(int position) {
+        lastStringEscaped = false;
+        position++;
+        while (position < end) {
+            int c = byteAt(position);
+            if (c == '"') {
+                return position;
+            }
+            if (c == '\\') {
+                lastStringEscaped = true;
+                position += 2;
+                continue;
+            }
+            if (c >= 0 && c < 0x20) {
+                throw new JsonException("Raw control character");
+            }
+            position++;
+        }
+        throw new JsonException("Unclosed string literal");
+    }
+
+    private int expectLiteral(int position, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (position + i >= end || byteAt(position + i) != literal.charAt(i)) {
+                throw new JsonException("Expected '" + literal + "' literal");
+            }
+        }
+        return position + literal.length();
+    }
+
+    private void expect(int position, char expected) {
+        if (position >= end) {
+            throw new JsonException("Expected '" + expected + "', got end of input");
+        }
+        if (byteAt(position) != expected) {
+            throw new JsonException("Expected '" + expected + "', got '" + (char) byteAt(position) + "'");
+        }
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < end) {
+            int c = byteAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private boolean bytesEqual(int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unescape(String raw) {
+        // 转义序列都是ASCII, 可以在解码后的字符串上处理
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (++i >= raw.length()) {
+                throw new JsonException("Illegal escape");
+            }
+            switch (raw.charAt(i)) {
+                case '"':
+                    builder.append('"');
+                    break;
+                case '\\':
+                    builder.append('\\');
+                    break;
+                case '/':
+                    builder.append('/');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= raw.length()) {
+                        throw new JsonException("Expected hex digit");
+                    }
+                    int result = 0;
+                    for (int j = 1; j <= 4; j++) {
+                        int digit = Character.digit(raw.charAt(i + j), 16);
+                        if (digit < 0) {
+                            throw new JsonException("Expected hex digit");
+                        }
+                        result = (result << 4) | digit;
+                    }
+                    builder.append((char) result);
+                    i += 4;
+                    break;
+                default:
+                    throw new JsonException("Illegal escape");
+            }
+        }
+        return builder.toString();
+    }
+
+    private static ValueType typeOf(int c) {
+        switch (c) {
+            case '{':
+                return ValueType.OBJECT;
+            case '[':
+                return ValueType.ARRAY;
+            case '"':
+                return ValueType.STRING;
+            case 't':
+                return ValueType.TRUE;
+            case 'f':
+                return ValueType.FALSE;
+            case 'n':
+                return ValueType.NULL;
+            default:
+                return ValueType.NUMBER;
+        }
+    }
+
+    private ByteBuffer slice(int from, int to) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(to);
+        duplicate.position(from);
+        return duplicate.slice();
+    }
+
+    private String ascii(int from, int to) {
+        return Utils.utf8(buffer, from - start, to - from);
+    }
+
+    private void ensureValue() {
+        if (valueType == null) {
+            throw new IllegalStateException("No value found");
+        }
+    }
+
+    private void ensureType(ValueType expected) {
+        ensureValue();
+        if (valueType != expected) {
+            throw new JsonException("Expected a " + expected + ", got " + valueType);
+        }
+    }
+
+    private int byteAt(int position) {
+        return buffer.get(position);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
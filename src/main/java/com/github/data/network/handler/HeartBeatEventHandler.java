@@ -1,11 +1,11 @@
 package com.github.data.network.handler;
 
 import com.github.data.network.reactor.AbstractNioChannel;
+import com.github.data.network.reactor.ChannelContext;
 import com.github.data.protocol.AbstractRequest;
 import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.request.HeartBeatRequest;
 import com.github.data.protocol.request.HeartBeatResponse;
-import com.github.data.protocol.types.Struct;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
@@ -39,20 +39,17 @@ public class HeartBeatEventHandler implements EventHandler{
             }
 
             // 更新会话.
-            channel.getChannelManager().updateSession(key.channel());
-
-            Struct responseStruct = heartBeatResponse.toStruct();
-
-            ByteBuffer buffer = ByteBuffer.allocate(responseStruct.sizeOf() + 4 + 4);
-
-            // 写入4字节的消息体长度
-            buffer.putInt(responseStruct.sizeOf());
+            channel.getChannelManager().updateSession(key);
+            ChannelContext context = ChannelContext.contextOf(key);
+            if(context != null){
+                context.updateHeartBeatTs(System.currentTimeMillis());
+            }
 
-            // 写入4字节的消息类型id
-            buffer.putInt(ApiKeys.HEART_BEAT.getId());
+            short version = ChannelContext.protocolVersionOf(key);
+            ByteBuffer buffer = ByteBuffer.allocate(heartBeatResponse.frameSize(version));
 
-            // 写入消息体数据
-            responseStruct.writeTo(buffer);
+            // 写入消息长度, 消息类型id及消息体数据
+            heartBeatResponse.writeFrame(ApiKeys.HEART_BEAT,version,buffer);
 
             // prepare for write.
             buffer.flip();
@@ -1,12 +1,13 @@
 package com.github.data.network.handler;
 
+import com.github.data.common.BufferPoolAllocator;
 import com.github.data.network.reactor.AbstractNioChannel;
+import com.github.data.network.reactor.ChannelContext;
 import com.github.data.protocol.AbstractRequest;
 import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.ServerResponseCode;
 import com.github.data.protocol.request.LoginRequest;
 import com.github.data.protocol.request.LoginResponse;
-import com.github.data.protocol.types.Struct;
 import com.github.data.utils.AppConfiguration;
 
 import java.nio.ByteBuffer;
@@ -20,6 +21,7 @@ import java.util.Map;
  * @description
  */
 public class LoginEventHandler implements EventHandler{
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
     private static final Map<String,String> authDataMap;
 
     static {
@@ -38,24 +40,28 @@ public class LoginEventHandler implements EventHandler{
                 responseCode = ServerResponseCode.LOGIN_SUCCESS;
 
                 // 新增会话
-                channel.getChannelManager().addSession(key.channel());
+                channel.getChannelManager().addSession(key);
             }else{
                 responseCode = ServerResponseCode.LOGIN_FAILED;
             }
             System.out.println(request.toStruct().toString());
 
-            LoginResponse loginResponse = new LoginResponse(responseCode.getValue(), responseCode.getDescriptor());
-            Struct responseStruct = loginResponse.toStruct();
-            ByteBuffer buffer = ByteBuffer.allocate(responseStruct.sizeOf() + 4 + 4);
-
-            // 写入4字节的消息体长度
-            buffer.putInt(responseStruct.sizeOf());
+            // 协商协议版本: 取客户端与服务端支持的最高版本中较小者, 旧客户端不携带版本即为旧版本; 负数版本按旧版本处理
+            LoginRequest loginRequest = (LoginRequest) request;
+            short protocolVersion = (short) Math.max(ApiKeys.LEGACY_VERSION, Math.min(loginRequest.getProtocolVersion(), ApiKeys.LATEST_VERSION));
+            ChannelContext context = ChannelContext.contextOf(key);
+            if(context != null && responseCode == ServerResponseCode.LOGIN_SUCCESS){
+                context.setProtocolVersion(protocolVersion);
+                context.updateHeartBeatTs(System.currentTimeMillis());
+            }
 
-            // 写入4字节的消息类型id
-            buffer.putInt(ApiKeys.LOGIN.getId());
+            LoginResponse loginResponse = new LoginResponse(responseCode.getValue(), responseCode.getDescriptor(), protocolVersion);
+            // 只有发送了协议版本的客户端才会收到协商结果, 旧客户端收到的响应与之前完全相同
+            short responseVersion = loginRequest.getProtocolVersion() > ApiKeys.LEGACY_VERSION ? ApiKeys.COMPACT_VERSION : ApiKeys.LEGACY_VERSION;
+            ByteBuffer buffer = bufferPoolAllocator.allocate(loginResponse.frameSize(responseVersion));
 
-            // 写入消息体数据
-            responseStruct.writeTo(buffer);
+            // 写入消息长度, 消息类型id及消息体数据
+            loginResponse.writeFrame(ApiKeys.LOGIN,responseVersion,buffer);
 
             // prepare for write.
             buffer.flip();
@@ -0,0 +1,249 @@
+package com.github.data.network.handler;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.io.AppendCallback;
+import com.github.data.network.reactor.AbstractNioChannel;
+import com.github.data.network.reactor.ChannelContext;
+import com.github.data.network.reactor.NioDatagramChannel;
+import com.github.data.protocol.ApiKeys;
+import com.github.data.protocol.ServerResponseCode;
+import com.github.data.protocol.request.MessageBatchResponse;
+import com.github.data.protocol.request.MessageResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.Arrays;
+
+/**
+ * Acknowledges the messages of one connection once they are persisted. It is the
+ * {@link AppendCallback} of every message of its connection: completions are only counted, and
+ * when the group commit they belong to is done all the pending acknowledgements are written with a
+ * single buffer of pre-encoded {@link MessageResponse} frames. The {@link MessageBatchResponse}s of
+ * the batches of the connection go through the same queue, see {@link #batchCallback(byte[])}.
+ *
+ * <p>Every request of the connection reserves its response slot in arrival order, before its
+ * records are handed to the appender, and responses are only written as a contiguous run from the
+ * oldest slot. The responses written without an append, see {@link #respond(byte[])}, therefore
+ * wait for the acknowledgements of the earlier requests. The appender completes the records in
+ * arrival order, a completion fills the oldest slot still waiting for its append. This needs the
+ * frames of a connection to be handled one at a time in the order they were read, i.e. the
+ * {@link com.github.data.network.reactor.OrderedThreadPoolDispatcher}, which the server enforces.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/19 15:10
+ * @description 按连接批量发送消息确认
+ */
+public final class MessageAckBatcher implements AppendCallback {
+    // 按协议版本预先编码的成功及失败响应帧
+    private static final byte[][] SUCCESS_FRAMES = new byte[ApiKeys.LATEST_VERSION + 1][];
+    private static final byte[][] FAILED_FRAMES = new byte[ApiKeys.LATEST_VERSION + 1][];
+
+    static {
+        for (short version = 0; version <= ApiKeys.LATEST_VERSION; version++) {
+            SUCCESS_FRAMES[version] = encode(version,ServerResponseCode.MESSAGE_SUCCESS.getValue(),"消息接收成功");
+            FAILED_FRAMES[version] = encode(version,ServerResponseCode.MESSAGE_FAILED.getValue(),ServerResponseCode.MESSAGE_FAILED.getDescriptor());
+        }
+    }
+
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
+    private final AbstractNioChannel channel;
+    private final SelectionKey key;
+    // 连接协商的协议版本, 批量确认器在登录之后才会创建
+    private final short version;
+    private final byte[] successFrame;
+    private final byte[] failedFrame;
+
+    // 按请求到达顺序预留的响应槽位, 环形数组, null表示响应尚未就绪
+    private byte[][] slots = new byte[64][];
+    // 下一个待写出的槽位
+    private long head;
+    // 下一个待预留的槽位
+    private long tail;
+    // 下一个可能等待追加完成的槽位, 之前的槽位均已就绪
+    private long fillCursor;
+
+    public MessageAckBatcher(AbstractNioChannel channel, SelectionKey key){
+        this.channel = channel;
+        this.key = key;
+        this.version = ChannelContext.protocolVersionOf(key);
+        this.successFrame = SUCCESS_FRAMES[version];
+        this.failedFrame = FAILED_FRAMES[version];
+    }
+
+    private static byte[] encode(short version, int statusCode, String descriptor){
+        MessageResponse response = new MessageResponse(statusCode,descriptor);
+        ByteBuffer buffer = ByteBuffer.allocate(response.frameSize(version));
+        // 写入消息长度, 消息类型id及消息体数据
+        response.writeFrame(ApiKeys.MESSAGE,version,buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Reserves the response slot of one message and returns its callback, must be called before the
+     * message is handed to the appender.
+     */
+    synchronized AppendCallback messageCallback(){
+        reserve();
+        return this;
+    }
+
+    @Override
+    public synchronized void onCompletion(long offset, Exception exception) {
+        fill(exception == null ? successFrame : failedFrame);
+    }
+
+    /**
+     * Queues a response which needs no append, it is written as soon as the responses of the
+     * earlier requests are.
+     */
+    synchronized void respond(byte[] frame){
+        long slot = reserve();
+        slots[(int) (slot & (slots.length - 1))] = frame;
+        writeReady();
+    }
+
+    /**
+     * Writes the acknowledgement of one message which needs no append, see {@link #respond(byte[])}.
+     */
+    void respond(boolean success){
+        respond(success ? successFrame : failedFrame);
+    }
+
+    private long reserve(){
+        if(tail - head == slots.length){
+            // 按顺序拷贝到两倍大小的数组, 保持下标与序号的对应关系
+            byte[][] newSlots = new byte[slots.length << 1][];
+            for (long i = head; i < tail; i++) {
+                newSlots[(int) (i & (newSlots.length - 1))] = slots[(int) (i & (slots.length - 1))];
+            }
+            slots = newSlots;
+        }
+        return tail++;
+    }
+
+    /**
+     * 追加完成的响应填入最早的未就绪槽位
+     * */
+    private void fill(byte[] frame){
+        int mask = slots.length - 1;
+        // 已写出的槽位被清空, 不能再填入
+        fillCursor = Math.max(fillCursor, head);
+        while (fillCursor < tail && slots[(int) (fillCursor & mask)] != null) {
+            fillCursor++;
+        }
+        if(fillCursor == tail){
+            // 没有预留槽位的完成, 不应发生
+            throw new IllegalStateException("Acknowledgement without a reserved slot.");
+        }
+        slots[(int) (fillCursor++ & mask)] = frame;
+    }
+
+    /**
+     * Returns the callback of one message batch, it queues the {@link MessageBatchResponse} of the
+     * batch once the batch is persisted.
+     *
+     * @param recordStatuses the status of every record of the batch, records which could not be
+     *                       decoded are already marked failed. The statuses of the appended
+     *                       records are turned into failures if the append fails.
+     */
+    synchronized AppendCallback batchCallback(byte[] recordStatuses){
+        reserve();
+        return new AppendCallback() {
+            @Override
+            public void onCompletion(long offset, Exception exception) {
+                if(exception != null){
+                    Arrays.fill(recordStatuses,(byte) ServerResponseCode.MESSAGE_FAILED.getValue());
+                }
+                byte[] frame = encodeBatch(version,offset,recordStatuses);
+                synchronized (MessageAckBatcher.this){
+                    fill(frame);
+                }
+            }
+
+            @Override
+            public void onBatchCompleted() {
+                MessageAckBatcher.this.onBatchCompleted();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void onBatchCompleted() {
+        writeReady();
+    }
+
+    /**
+     * 写出从最早槽位开始连续就绪的响应
+     * */
+    private void writeReady(){
+        int mask = slots.length - 1;
+        long end = head;
+        int size = 0;
+        byte[] frame;
+        while (end < tail && (frame = slots[(int) (end & mask)]) != null) {
+            size += frame.length;
+            end++;
+        }
+        if(end == head){
+            return;
+        }
+        if(!key.isValid()){
+            // 连接已关闭, 丢弃确认
+            for (long i = head; i < end; i++) {
+                slots[(int) (i & mask)] = null;
+            }
+            head = end;
+            return;
+        }
+
+        ByteBuffer buffer = bufferPoolAllocator.allocate(size);
+        for (long i = head; i < end; i++) {
+            buffer.put(slots[(int) (i & mask)]);
+            slots[(int) (i & mask)] = null;
+        }
+        head = end;
+        buffer.flip();
+        channel.write(buffer,key);
+    }
+
+    /**
+     * Encodes the {@link MessageBatchResponse} frame of a batch. The batch succeeds if all of its
+     * records do.
+     */
+    static byte[] encodeBatch(short version, long baseOffset, byte[] recordStatuses){
+        ServerResponseCode responseCode = ServerResponseCode.MESSAGE_SUCCESS;
+        for (byte status : recordStatuses) {
+            if(status != ServerResponseCode.MESSAGE_SUCCESS.getValue()){
+                responseCode = ServerResponseCode.MESSAGE_FAILED;
+                break;
+            }
+        }
+        MessageBatchResponse response = new MessageBatchResponse(responseCode.getValue(),responseCode.getDescriptor(),baseOffset,recordStatuses);
+        byte[] frame = new byte[response.frameSize(version)];
+        response.writeFrame(ApiKeys.MESSAGE_BATCH,version,ByteBuffer.wrap(frame));
+        return frame;
+    }
+
+    /**
+     * Writes an encoded response frame right away.
+     */
+    static void writeNow(AbstractNioChannel channel, SelectionKey key, byte[] frame){
+        if(channel instanceof NioDatagramChannel){
+            // UDP消息不回复, 不必分配缓存
+            return;
+        }
+        ByteBuffer buffer = BufferPoolAllocator.getInstance().allocate(frame.length);
+        buffer.put(frame);
+        buffer.flip();
+        channel.write(buffer,key);
+    }
+
+    /**
+     * Writes the acknowledgement of one message right away.
+     */
+    static void ackNow(AbstractNioChannel channel, SelectionKey key, boolean success){
+        short version = ChannelContext.protocolVersionOf(key);
+        writeNow(channel,key,success ? SUCCESS_FRAMES[version] : FAILED_FRAMES[version]);
+    }
+}
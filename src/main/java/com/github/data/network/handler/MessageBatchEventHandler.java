@@ -0,0 +1,144 @@
+package com.github.data.network.handler;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+import com.github.data.io.MessageRoute;
+import com.github.data.io.MessageWriterManager;
+import com.github.data.io.TopicLog;
+import com.github.data.io.TopicMessageFileWriter;
+import com.github.data.network.reactor.AbstractNioChannel;
+import com.github.data.network.reactor.ChannelContext;
+import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiKeys;
+import com.github.data.protocol.ServerResponseCode;
+import com.github.data.protocol.request.MessageBatchRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.Arrays;
+
+/**
+ * Handles {@link MessageBatchRequest}s. The shared key is routed once for the whole batch, the
+ * records are framed straight from the request into one pooled buffer and appended to the topic
+ * log as a single batch. One {@link com.github.data.protocol.request.MessageBatchResponse} carries
+ * the status of every record; records after a malformed one are rejected, the ones before it are
+ * still appended. A batch rejected as a whole is answered at once.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 11:20
+ * @description 批量消息处理器
+ */
+public class MessageBatchEventHandler implements EventHandler{
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+    private static final byte SUCCESS = (byte) ServerResponseCode.MESSAGE_SUCCESS.getValue();
+    private static final byte FAILED = (byte) ServerResponseCode.MESSAGE_FAILED.getValue();
+
+    // 整体被拒绝且记录数不可信的batch只返回一个失败状态
+    private static final byte[] BATCH_FAILED = {FAILED};
+
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
+    private final MessageWriterManager writerManager;
+    private final MessageEventHandler.AckMode ackMode;
+
+    public MessageBatchEventHandler(MessageWriterManager writerManager, MessageEventHandler.AckMode ackMode){
+        this.writerManager = writerManager;
+        this.ackMode = ackMode;
+    }
+
+    @Override
+    public void handle(AbstractNioChannel channel, SelectionKey key, ApiKeys apiKeys, AbstractRequest request) {
+        if(request instanceof MessageBatchRequest){
+            MessageBatchRequest batchRequest = (MessageBatchRequest) request;
+
+            // 记录数由客户端声明, 校验通过前不能据此申请内存
+            if(!batchRequest.isValid()){
+                LOG.error("Invalid message batch, record count: {}, records length: {}, attributes: {}",
+                        batchRequest.getRecordCount(),batchRequest.recordsLength(),batchRequest.getAttributes());
+                respondNow(channel,key,BATCH_FAILED);
+                return;
+            }
+            int recordCount = batchRequest.getRecordCount();
+            byte[] recordStatuses = new byte[recordCount];
+            Arrays.fill(recordStatuses,FAILED);
+
+            MessageRoute route = writerManager.route(batchRequest.keyBuffer());
+            if(!route.isMessageQueue()){
+                LOG.error("Unsupported message process policy: {}", route.getProcessPolicy());
+                respondNow(channel,key,recordStatuses);
+                return;
+            }
+            TopicMessageFileWriter messageWriter = route.getWriter();
+
+            ByteBuffer records;
+            try {
+                // 先解压, 缓存按解压后的实际长度申请, 不信任请求声明的长度
+                records = batchRequest.records();
+            } catch (RuntimeException e) {
+                LOG.error("Corrupt message batch, records length: {}, attributes: {}, cause: {}",
+                        batchRequest.recordsLength(),batchRequest.getAttributes(),e.getMessage());
+                respondNow(channel,key,recordStatuses);
+                return;
+            }
+
+            // 每条记录的长度前缀由变长变为4字节, 按最大膨胀申请; 压缩的记录解压后再按topic日志的配置重新压缩
+            long framedSize = records.remaining() + (long) recordCount * TopicLog.framedSize(0);
+            if(framedSize > BufferPoolAllocator.MAX_CHUCK_SIZE){
+                LOG.error("Message batch too large, record count: {}, records length: {}", recordCount, records.remaining());
+                respondNow(channel,key,recordStatuses);
+                return;
+            }
+            ByteBuffer framedRecords;
+            try {
+                framedRecords = bufferPoolAllocator.allocate((int) framedSize);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to allocate {} bytes for message batch: {}", framedSize, e.getMessage());
+                respondNow(channel,key,recordStatuses);
+                return;
+            }
+            int appended = batchRequest.forEachRecord(records,(index, ts, value) -> {
+                framedRecords.putInt(value.remaining());
+                framedRecords.put(value);
+                recordStatuses[index] = SUCCESS;
+            });
+            framedRecords.flip();
+
+            if(appended == 0){
+                bufferPoolAllocator.release(framedRecords,framedRecords.capacity());
+                respondNow(channel,key,recordStatuses);
+                return;
+            }
+
+            MessageAckBatcher ackBatcher = ackBatcherOf(channel,key);
+            if(ackBatcher != null){
+                // 响应由提交线程在持久化后发送
+                messageWriter.writeFramed(framedRecords,appended,ackBatcher.batchCallback(recordStatuses));
+                return;
+            }
+            messageWriter.writeFramed(framedRecords,appended,null);
+            respondNow(channel,key,recordStatuses);
+        }
+    }
+
+    /**
+     * 持久化确认模式下返回连接的批量确认器, 只有TCP连接才有连接上下文
+     * */
+    private MessageAckBatcher ackBatcherOf(AbstractNioChannel channel, SelectionKey key){
+        ChannelContext context = ackMode == MessageEventHandler.AckMode.PERSISTED ? ChannelContext.contextOf(key) : null;
+        return context == null ? null : context.attribute(MessageAckBatcher.class, c -> new MessageAckBatcher(channel,key));
+    }
+
+    /**
+     * 发送不需要等待追加的响应; 持久化确认模式下经由批量确认器排队, 不越过之前的确认
+     * */
+    private void respondNow(AbstractNioChannel channel, SelectionKey key, byte[] recordStatuses){
+        byte[] frame = MessageAckBatcher.encodeBatch(ChannelContext.protocolVersionOf(key),-1L,recordStatuses);
+        MessageAckBatcher ackBatcher = ackBatcherOf(channel,key);
+        if(ackBatcher != null){
+            ackBatcher.respond(frame);
+        }else{
+            MessageAckBatcher.writeNow(channel,key,frame);
+        }
+    }
+}
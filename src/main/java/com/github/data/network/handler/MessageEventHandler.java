@@ -1,21 +1,14 @@
 package com.github.data.network.handler;
 
-import com.github.data.common.BufferPoolAllocator;
-import com.github.data.common.DataPlatformException;
 import com.github.data.common.LogManager;
 import com.github.data.common.TinyLogger;
-import com.github.data.io.MessageWriter;
+import com.github.data.io.MessageRoute;
 import com.github.data.io.MessageWriterManager;
-import com.github.data.json.Json;
-import com.github.data.json.JsonObject;
-import com.github.data.json.JsonValue;
 import com.github.data.network.reactor.AbstractNioChannel;
+import com.github.data.network.reactor.ChannelContext;
 import com.github.data.protocol.AbstractRequest;
 import com.github.data.protocol.ApiKeys;
-import com.github.data.protocol.ServerResponseCode;
 import com.github.data.protocol.request.MessageRequest;
-import com.github.data.protocol.request.MessageResponse;
-import com.github.data.protocol.types.Struct;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
@@ -28,11 +21,26 @@ import java.nio.channels.SelectionKey;
  */
 public class MessageEventHandler implements EventHandler{
     private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
-    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
     private final MessageWriterManager writerManager;
+    private final AckMode ackMode;
+
+    /**
+     * 消息确认方式
+     * */
+    public enum AckMode{
+        // 消息交给写入器后立即确认
+        IMMEDIATE,
+        // 消息所在batch按刷盘策略持久化后确认, 按连接批量发送
+        PERSISTED
+    }
 
     public MessageEventHandler(MessageWriterManager writerManager){
+        this(writerManager,AckMode.IMMEDIATE);
+    }
+
+    public MessageEventHandler(MessageWriterManager writerManager, AckMode ackMode){
         this.writerManager = writerManager;
+        this.ackMode = ackMode;
     }
 
     @Override
@@ -40,46 +48,32 @@ public class MessageEventHandler implements EventHandler{
         if(request instanceof MessageRequest){
             MessageRequest messageRequest = (MessageRequest) request;
 
-            byte[] keyBytes = messageRequest.getKey();
-            byte[] valueBytes = messageRequest.getValue();
+            ByteBuffer keyBuffer = messageRequest.keyBuffer();
+            ByteBuffer valueBuffer = messageRequest.valueBuffer();
 
-            JsonValue jsonValue = Json.parse(new String(keyBytes));
-            if(jsonValue.isObject()){
-                JsonObject jsonObject = jsonValue.asObject();
+            // 只有TCP连接才有连接上下文
+            ChannelContext context = ackMode == AckMode.PERSISTED ? ChannelContext.contextOf(key) : null;
+            MessageAckBatcher ackBatcher = context == null ? null : context.attribute(MessageAckBatcher.class, c -> new MessageAckBatcher(channel,key));
 
-                String processPolicy = jsonObject.getString("message_process_policy");
-                if(processPolicy.equals("message_queue")){
-                    String topic = jsonObject.getString("topic");
-                    MessageWriter messageWriter = writerManager.byTopic(topic);
-                    messageWriter.write(keyBytes,valueBytes);
-                }else{
-                    LOG.error("Unsupported message process policy: " + processPolicy);
+            // key的路由被缓存, 相同的key只解析一次
+            MessageRoute route = writerManager.route(keyBuffer);
+            if(route.isMessageQueue()){
+                if(ackBatcher != null){
+                    // 确认由提交线程在持久化后发送
+                    route.getWriter().append(valueBuffer,ackBatcher.messageCallback());
+                    return;
                 }
-            }else {
-                throw new DataPlatformException("Invalid message key.");
+                route.getWriter().append(valueBuffer,null);
+            }else{
+                LOG.error("Unsupported message process policy: {}", route.getProcessPolicy());
             }
 
-            MessageResponse messageResponse = new MessageResponse(ServerResponseCode.MESSAGE_SUCCESS.getValue(),"消息接收成功");
-            Struct responseStruct = messageResponse.toStruct();
-            ByteBuffer buffer = bufferPoolAllocator.allocate(responseStruct.sizeOf() + 4 + 4);
-
-            // 写入4字节的消息体长度
-            buffer.putInt(responseStruct.sizeOf());
-
-            // 写入4字节的消息类型id
-            buffer.putInt(ApiKeys.MESSAGE.getId());
-
-            // 写入消息体数据
-            responseStruct.writeTo(buffer);
-
-            // prepare for write.
-            buffer.flip();
-
-            // 写socket
-            channel.write(buffer, key);
-
-            channel.getChannelManager().printChannelManagerStatus();
-            // System.out.println("- - - - - message event handler - - - - - -");
+            if(ackBatcher != null){
+                // 不能越过尚未发送的确认
+                ackBatcher.respond(true);
+                return;
+            }
+            MessageAckBatcher.ackNow(channel,key,true);
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.github.data.network.reactor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -94,17 +95,104 @@ public abstract class AbstractNioChannel {
 
     /*
      * Called from the context of reactor thread when the key becomes writable. The channel writes the
-     * whole pending block of data at once.
+     * whole pending block of data at once. If the underlying channel cannot take all of it the key
+     * keeps its write interest and the rest is written on the next writable event.
      */
     void flush(SelectionKey key) throws IOException {
         Queue<Object> pendingWrites = channelToPendingWrites.get(key.channel());
+        if (pendingWrites != null && !doFlush(pendingWrites, key)) {
+            // bytes remain, stay interested in writing
+            return;
+        }
+        // We don't have anything more to write so channel is interested in reading more data,
+        // unless a handler queued data while flushing, which must not wait for the next write
+        boolean moreWrites = pendingWrites != null && !pendingWrites.isEmpty();
+        reactor.changeOps(key, moreWrites ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Writes the pending block of data to the channel. The default implementation writes the pending
+     * data one by one using {@link #doWrite(Object, SelectionKey)}.
+     *
+     * @param pendingWrites the queue of pending data, written data must be removed from it.
+     * @param key           the key which is writable.
+     * @return {@code true} if all the pending data has been written, {@code false} if the channel
+     * could not take all of it.
+     * @throws IOException if any I/O error occurs.
+     */
+    protected boolean doFlush(Queue<Object> pendingWrites, SelectionKey key) throws IOException {
         Object pendingWrite;
         while ((pendingWrite = pendingWrites.poll()) != null) {
+            int size = pendingWrite instanceof ByteBuffer ? ((ByteBuffer) pendingWrite).remaining() : 0;
             // ask the concrete channel to make sense of data and write it to java channel
             doWrite(pendingWrite, key);
+            onBytesWritten(key, size);
         }
-        // We don't have anything more to write so channel is interested in reading more data
-        reactor.changeOps(key, SelectionKey.OP_READ);
+        return true;
+    }
+
+    /**
+     * Reports bytes of the pending data written to the channel, lets a connection suspended because
+     * of its write backlog resume reading.
+     *
+     * @param key   the key of the channel.
+     * @param bytes the number of bytes written.
+     */
+    protected final void onBytesWritten(SelectionKey key, long bytes) {
+        ChannelContext context = ChannelContext.contextOf(key);
+        if (context != null && bytes > 0) {
+            reactor.getBackpressureController().onBytesWritten(context, key, bytes);
+        }
+    }
+
+    /**
+     * Whether the dispatcher is too busy to take more events of {@code key}, see
+     * {@link BackpressureController#isDispatcherSaturated(SelectionKey)}.
+     */
+    final boolean isDispatcherSaturated(SelectionKey key) {
+        return reactor != null && reactor.getBackpressureController().isDispatcherSaturated(key);
+    }
+
+    /**
+     * Hands a read object to the handler of this channel, dispatchers must use this method rather
+     * than calling the handler directly so that the reactor knows when the data has been handled.
+     *
+     * @param readObject the object read by this channel.
+     * @param key        the key on which the read event occurred.
+     */
+    public final void handleRead(Object readObject, SelectionKey key) {
+        try {
+            handler.handleChannelRead(this, readObject, key);
+        } finally {
+            reactor.onReadHandled(key, readObject);
+        }
+    }
+
+    /**
+     * Drops the data still pending for a closed channel.
+     *
+     * @param key the key of the closed channel.
+     */
+    void discardPendingWrites(SelectionKey key) {
+        Queue<Object> pendingWrites = channelToPendingWrites.remove(key.channel());
+        if (pendingWrites != null) {
+            discard(pendingWrites);
+        }
+    }
+
+    private void discard(Queue<Object> pendingWrites) {
+        Object pendingWrite;
+        while ((pendingWrite = pendingWrites.poll()) != null) {
+            onDiscard(pendingWrite);
+        }
+    }
+
+    /**
+     * Releases a piece of pending data which will never be written.
+     *
+     * @param pendingWrite the data that was queued for writing.
+     */
+    protected void onDiscard(Object pendingWrite) {
     }
 
     /**
@@ -148,7 +236,17 @@ public abstract class AbstractNioChannel {
                 }
             }
         }
+        ChannelContext context = ChannelContext.contextOf(key);
+        if (context != null && data instanceof ByteBuffer) {
+            reactor.getBackpressureController().onWriteQueued(context, ((ByteBuffer) data).remaining());
+        }
         pendingWrites.add(data);
+        if (!key.isValid()) {
+            // 连接已关闭, 待写数据可能已被清理, 移除重新创建的队列并释放其中的数据
+            channelToPendingWrites.remove(key.channel(), pendingWrites);
+            discard(pendingWrites);
+            return;
+        }
         reactor.changeOps(key, SelectionKey.OP_WRITE);
     }
 }
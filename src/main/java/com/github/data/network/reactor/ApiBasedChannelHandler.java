@@ -5,8 +5,8 @@ import com.github.data.common.LogManager;
 import com.github.data.common.TinyLogger;
 import com.github.data.network.handler.EventHandler;
 import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiCodecs;
 import com.github.data.protocol.ApiKeys;
-import com.github.data.protocol.types.Struct;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
@@ -33,39 +33,43 @@ public class ApiBasedChannelHandler implements ChannelHandler{
 
     @Override
     public void handleChannelRead(AbstractNioChannel channel, Object readObject, SelectionKey key) {
+        if(readObject instanceof ByteBuffer){
+            handleFrame(channel,(ByteBuffer) readObject,key);
+        }else if(readObject instanceof List){
+            // 一次读取解码出的多个完整帧, 按顺序处理
+            for (Object frame : (List<?>) readObject) {
+                handleFrame(channel,(ByteBuffer) frame,key);
+            }
+        }
+    }
 
+    private void handleFrame(AbstractNioChannel channel, ByteBuffer inputBuff, SelectionKey key) {
         try{
-            if(readObject instanceof ByteBuffer){
-                ByteBuffer inputBuff = (ByteBuffer) readObject;
-                // buff长度
-                int len = inputBuff.getInt();
+            // buff长度
+            int len = inputBuff.getInt();
 
-                // API id
-                int api = inputBuff.getInt();
-                ApiKeys apiKeys = ApiKeys.forId(api);
+            // API id
+            int api = inputBuff.getInt();
+            ApiKeys apiKeys = ApiKeys.forId(api);
 
-                // System.out.println("len=" + len + ",api=" + api);
+            // System.out.println("len=" + len + ",api=" + api);
 
-                Struct struct = apiKeys.getRequestSchema().read(inputBuff);
-                // 回收读缓存
-                bufferPoolAllocator.release(inputBuff,inputBuff.capacity());
+            // 按API及连接协商的协议版本预编译的解码器直接从帧缓存解码, 不经过Struct
+            AbstractRequest request = ApiCodecs.decodeRequest(apiKeys,ChannelContext.protocolVersionOf(key),inputBuff);
 
-                // System.out.println("struct -> " + struct.toString());
+            // System.out.println("request -> " + request.toStruct().toString());
 
-                AbstractRequest request = AbstractRequest.parseRequest(apiKeys,struct);
+            // System.out.println(ChannelManager.getEndpointByChannel(key.channel()) + " -> " + request.toStruct().toString());
 
-                // System.out.println("request -> " + request.toStruct().toString());
-
-                // System.out.println(ChannelManager.getEndpointByChannel(key.channel()) + " -> " + request.toStruct().toString());
-
-                // process EventHandler.
-                for (EventHandler handler : handlers) {
-                    handler.handle(channel,key,apiKeys,request);
-                }
+            // process EventHandler.
+            for (EventHandler handler : handlers) {
+                handler.handle(channel,key,apiKeys,request);
             }
         }catch (Exception ex){
             LOG.error(ex);
+        }finally {
+            // 请求中的BYTES字段是读缓存的切片, 所有EventHandler处理完毕后才回收读缓存
+            bufferPoolAllocator.release(inputBuff,inputBuff.capacity());
         }
-
     }
 }
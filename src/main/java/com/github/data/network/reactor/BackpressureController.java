@@ -0,0 +1,229 @@
+package com.github.data.network.reactor;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+import com.github.data.utils.AppConfiguration;
+import com.github.data.utils.Utils;
+
+import java.nio.channels.SelectionKey;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suspends reading from connections whose downstream is slow, turning a burst into TCP pushback
+ * instead of an unbounded backlog on the heap. Three quantities have a high and a low watermark:
+ * <ul>
+ * <li>the frames of a connection read but not yet handled,
+ * <li>the bytes queued for writing to a connection,
+ * <li>the events queued in the {@link Dispatcher} ahead of the connection, see
+ * {@link Dispatcher#pendingEvents(SelectionKey)}.
+ * </ul>
+ * When a read pushes any of them above its high watermark {@code OP_READ} of the connection is
+ * dropped, it is restored once all of them are back below their low watermarks. While a connection
+ * is suspended the {@link NioReactor} masks {@code OP_READ} out of every change of its operations.
+ *
+ * <p>Suspended connections are grouped by dispatcher queue, see {@link Dispatcher#queueOf(SelectionKey)}.
+ * Once a connection is suspended while its queue is above the low watermark the queue is flagged,
+ * and the first handled frame which finds it back at the low watermark clears the flag and retries
+ * the connections of that queue only. Handling a frame otherwise costs no scan of the suspended
+ * connections.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 15:30
+ * @description 背压控制
+ */
+public final class BackpressureController {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    public static final int DEFAULT_INFLIGHT_FRAMES_HIGH = 512;
+    public static final int DEFAULT_INFLIGHT_FRAMES_LOW = 128;
+    public static final long DEFAULT_PENDING_WRITE_BYTES_HIGH = 4 * 1024 * 1024;
+    public static final long DEFAULT_PENDING_WRITE_BYTES_LOW = 1024 * 1024;
+    public static final int DEFAULT_DISPATCHER_PENDING_HIGH = 4096;
+    public static final int DEFAULT_DISPATCHER_PENDING_LOW = 1024;
+
+    private final int inflightFramesHigh;
+    private final int inflightFramesLow;
+    private final long pendingWriteBytesHigh;
+    private final long pendingWriteBytesLow;
+    // 绑定分发器时可能按其容量下调
+    private int dispatcherPendingHigh;
+    private int dispatcherPendingLow;
+
+    // 当前被暂停读取的连接, 按所在的分发器队列分组
+    private Set<ChannelContext>[] suspended;
+    // 各分发器队列是否有连接在队列高于低水位时被暂停, 队列回落到低水位时清除并恢复这些连接
+    private AtomicIntegerArray dispatcherBusy;
+    private final AtomicLong suspensions = new AtomicLong();
+    private final AtomicLong resumptions = new AtomicLong();
+
+    private NioReactor reactor;
+    private Dispatcher dispatcher;
+
+    public BackpressureController(){
+        this(DEFAULT_INFLIGHT_FRAMES_HIGH, DEFAULT_INFLIGHT_FRAMES_LOW,
+                DEFAULT_PENDING_WRITE_BYTES_HIGH, DEFAULT_PENDING_WRITE_BYTES_LOW,
+                DEFAULT_DISPATCHER_PENDING_HIGH, DEFAULT_DISPATCHER_PENDING_LOW);
+    }
+
+    public BackpressureController(int inflightFramesHigh, int inflightFramesLow,
+                                  long pendingWriteBytesHigh, long pendingWriteBytesLow,
+                                  int dispatcherPendingHigh, int dispatcherPendingLow){
+        if(inflightFramesLow > inflightFramesHigh || pendingWriteBytesLow > pendingWriteBytesHigh || dispatcherPendingLow > dispatcherPendingHigh){
+            throw new IllegalArgumentException("Low watermark above high watermark.");
+        }
+        this.inflightFramesHigh = inflightFramesHigh;
+        this.inflightFramesLow = inflightFramesLow;
+        this.pendingWriteBytesHigh = pendingWriteBytesHigh;
+        this.pendingWriteBytesLow = pendingWriteBytesLow;
+        this.dispatcherPendingHigh = dispatcherPendingHigh;
+        this.dispatcherPendingLow = dispatcherPendingLow;
+    }
+
+    public static BackpressureController fromConfiguration(AppConfiguration appConf){
+        return new BackpressureController(
+                appConf.getInteger("server.backpressure.connection.inflight.frames.high", DEFAULT_INFLIGHT_FRAMES_HIGH),
+                appConf.getInteger("server.backpressure.connection.inflight.frames.low", DEFAULT_INFLIGHT_FRAMES_LOW),
+                appConf.getLong("server.backpressure.connection.pending.write.bytes.high", DEFAULT_PENDING_WRITE_BYTES_HIGH),
+                appConf.getLong("server.backpressure.connection.pending.write.bytes.low", DEFAULT_PENDING_WRITE_BYTES_LOW),
+                appConf.getInteger("server.backpressure.dispatcher.pending.events.high", DEFAULT_DISPATCHER_PENDING_HIGH),
+                appConf.getInteger("server.backpressure.dispatcher.pending.events.low", DEFAULT_DISPATCHER_PENDING_LOW));
+    }
+
+    @SuppressWarnings("unchecked")
+    void bind(NioReactor reactor, Dispatcher dispatcher){
+        this.reactor = reactor;
+        this.dispatcher = dispatcher;
+        int queueCount = dispatcher.queueCount();
+        this.suspended = new Set[queueCount];
+        for (int i = 0; i < queueCount; i++) {
+            suspended[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.dispatcherBusy = new AtomicIntegerArray(queueCount);
+        // 高水位须低于分发器容量, 留出暂停读取前各连接还会分发的事件
+        int capacity = dispatcher.pendingEventsCapacity();
+        int maxHigh = capacity - capacity / 4;
+        if(dispatcherPendingHigh > maxHigh){
+            LOG.warn("Dispatcher pending events high watermark {} lowered to {}, dispatcher capacity: {}", dispatcherPendingHigh, maxHigh, capacity);
+            dispatcherPendingHigh = maxHigh;
+            dispatcherPendingLow = Math.min(dispatcherPendingLow, maxHigh / 2);
+        }
+    }
+
+    /**
+     * Called by the event loop once frames of a connection have been read and dispatched.
+     */
+    void onFramesDispatched(ChannelContext context, SelectionKey key, int frames){
+        context.addInflightFrames(frames);
+        if(!context.isReadSuspended() && aboveHighWatermark(context) && context.suspendRead()){
+            int queue = dispatcher.queueOf(key);
+            suspended[queue].add(context);
+            if(dispatcher.pendingEvents(key) > dispatcherPendingLow){
+                // 先加入集合再置位, 清除标志的线程一定能看到该连接
+                dispatcherBusy.set(queue, 1);
+            }
+            suspensions.incrementAndGet();
+            reactor.suspendRead(key);
+        }
+    }
+
+    /**
+     * Called by a dispatcher thread once frames of a connection have been handled.
+     */
+    void onFramesHandled(ChannelContext context, SelectionKey key, int frames){
+        context.addInflightFrames(-frames);
+        maybeResume(context, key);
+        int queue = dispatcher.queueOf(key);
+        // 只在队列回落到低水位的那一次扫描该队列上暂停的连接
+        if(dispatcherBusy.get(queue) != 0 && dispatcher.pendingEvents(key) <= dispatcherPendingLow
+                && dispatcherBusy.compareAndSet(queue, 1, 0)){
+            for (ChannelContext other : suspended[queue]) {
+                maybeResume(other, other.getKey());
+            }
+        }
+    }
+
+    /**
+     * Called when data is queued for writing to a connection.
+     */
+    void onWriteQueued(ChannelContext context, long bytes){
+        context.addPendingWriteBytes(bytes);
+    }
+
+    /**
+     * Called by the event loop once queued data has been written to, or dropped for, a connection.
+     */
+    void onBytesWritten(ChannelContext context, SelectionKey key, long bytes){
+        context.addPendingWriteBytes(-bytes);
+        maybeResume(context, key);
+    }
+
+    /**
+     * Forgets a closed connection.
+     */
+    void onClosed(ChannelContext context){
+        SelectionKey key = context.getKey();
+        if(key != null){
+            suspended[dispatcher.queueOf(key)].remove(context);
+        }
+    }
+
+    /**
+     * Whether the dispatcher queue ahead of the events of {@code key} is above its high watermark.
+     * Channels without a connection context, whose reads cannot be suspended, shed their load then.
+     */
+    boolean isDispatcherSaturated(SelectionKey key){
+        return dispatcher != null && dispatcher.pendingEvents(key) > dispatcherPendingHigh;
+    }
+
+    private boolean aboveHighWatermark(ChannelContext context){
+        return context.getInflightFrames() > inflightFramesHigh
+                || context.getPendingWriteBytes() > pendingWriteBytesHigh
+                || dispatcher.pendingEvents(context.getKey()) > dispatcherPendingHigh;
+    }
+
+    private boolean belowLowWatermark(ChannelContext context){
+        return context.getInflightFrames() <= inflightFramesLow
+                && context.getPendingWriteBytes() <= pendingWriteBytesLow
+                && dispatcher.pendingEvents(context.getKey()) <= dispatcherPendingLow;
+    }
+
+    private void maybeResume(ChannelContext context, SelectionKey key){
+        if(context.isReadSuspended() && key != null && belowLowWatermark(context) && context.resumeRead()){
+            suspended[dispatcher.queueOf(key)].remove(context);
+            resumptions.incrementAndGet();
+            reactor.resumeRead(key);
+        }
+    }
+
+    public int suspendedConnections(){
+        int count = 0;
+        for (Set<ChannelContext> queueSuspended : suspended) {
+            count += queueSuspended.size();
+        }
+        return count;
+    }
+
+    public long suspensions(){
+        return suspensions.get();
+    }
+
+    public long resumptions(){
+        return resumptions.get();
+    }
+
+    public void printStatus(){
+        System.out.println("backpressure: suspendedConnections=" + suspendedConnections() + ",suspensions=" + suspensions.get() + ",resumptions=" + resumptions.get()
+                + ",dispatcherPendingEvents=" + dispatcher.pendingEvents() + "(high=" + dispatcherPendingHigh + ",low=" + dispatcherPendingLow + ")"
+                + ",inflightFrames(high=" + inflightFramesHigh + ",low=" + inflightFramesLow + ")"
+                + ",pendingWriteBytes(high=" + Utils.formatBytes(pendingWriteBytesHigh) + ",low=" + Utils.formatBytes(pendingWriteBytesLow) + ")");
+        for (Set<ChannelContext> queueSuspended : suspended) {
+            for (ChannelContext context : queueSuspended) {
+                System.out.println("suspended " + context);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.data.network.reactor;
+
+import com.github.data.protocol.ApiKeys;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per connection state attached to the {@link SelectionKey} of every accepted connection. Keys of
+ * server and datagram channels carry their {@link AbstractNioChannel} directly.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/16 15:02
+ * @description 连接上下文
+ */
+public final class ChannelContext {
+    // 接收该连接的Channel
+    private final AbstractNioChannel channel;
+
+    // 拆包解码器
+    private final LengthFieldFrameDecoder frameDecoder;
+
+    // 事件处理器保存的连接级状态, 以类型为键
+    private final ConcurrentMap<Class<?>, Object> attributes = new ConcurrentHashMap<>(4);
+
+    // 连接注册到事件循环后的SelectionKey
+    private volatile SelectionKey key;
+
+    // 连接注册到的事件循环
+    private volatile NioEventLoop loop;
+
+    // 已读取但尚未处理完成的帧数
+    private final AtomicInteger inflightFrames = new AtomicInteger();
+
+    // 等待写出的字节数
+    private final AtomicLong pendingWriteBytes = new AtomicLong();
+
+    // 是否因背压暂停读取
+    private final AtomicBoolean readSuspended = new AtomicBoolean();
+
+    // 登录时协商的协议版本, 登录前为旧版本
+    private volatile short protocolVersion = ApiKeys.LEGACY_VERSION;
+
+    // 最近一次收到心跳的时间, 收到前为接收连接的时间
+    private volatile long lastHeartBeatTs = System.currentTimeMillis();
+
+    // 心跳检查的定时任务, 只由事件循环线程访问
+    private Timeout idleTimeout;
+
+    // 登录后的会话, 登录前为null
+    private volatile Session session;
+
+    // 其他线程请求且尚未由事件循环应用的interest ops, 只保留最后一次
+    private static final int NO_PENDING_OPS = -1;
+    private final AtomicInteger pendingOps = new AtomicInteger(NO_PENDING_OPS);
+
+    // 应用pendingOps的命令, 每个连接复用一个
+    private final Runnable applyPendingOpsCommand = () -> {
+        int ops = pendingOps.getAndSet(NO_PENDING_OPS);
+        SelectionKey selectionKey = key;
+        if (ops != NO_PENDING_OPS && selectionKey != null) {
+            NioReactor.applyOps(selectionKey, ops);
+        }
+    };
+
+    public ChannelContext(AbstractNioChannel channel, LengthFieldFrameDecoder frameDecoder){
+        this.channel = channel;
+        this.frameDecoder = frameDecoder;
+    }
+
+    public AbstractNioChannel getChannel() {
+        return channel;
+    }
+
+    public LengthFieldFrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    NioEventLoop getLoop() {
+        return loop;
+    }
+
+    /**
+     * Records the key of the connection and the event loop it is registered with.
+     */
+    void setRegistration(NioEventLoop loop, SelectionKey key) {
+        this.loop = loop;
+        this.key = key;
+    }
+
+    public int getInflightFrames() {
+        return inflightFrames.get();
+    }
+
+    void addInflightFrames(int delta) {
+        inflightFrames.addAndGet(delta);
+    }
+
+    public long getPendingWriteBytes() {
+        return pendingWriteBytes.get();
+    }
+
+    void addPendingWriteBytes(long delta) {
+        pendingWriteBytes.addAndGet(delta);
+    }
+
+    public short getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(short protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public long getLastHeartBeatTs() {
+        return lastHeartBeatTs;
+    }
+
+    /**
+     * Records a heartbeat of the connection, which keeps it open for another heartbeat timeout.
+     */
+    public void updateHeartBeatTs(long ts) {
+        this.lastHeartBeatTs = ts;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    void setSession(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Records the operations requested for the connection by a thread other than its event loop.
+     *
+     * @return {@code true} if no change was pending, the caller then queues
+     * {@link #applyPendingOpsCommand()} to the loop.
+     */
+    boolean offerPendingOps(int ops) {
+        return pendingOps.getAndSet(ops) == NO_PENDING_OPS;
+    }
+
+    Runnable applyPendingOpsCommand() {
+        return applyPendingOpsCommand;
+    }
+
+    Timeout getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    void setIdleTimeout(Timeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isReadSuspended() {
+        return readSuspended.get();
+    }
+
+    /**
+     * Marks reading as suspended, {@code false} if it already was.
+     */
+    boolean suspendRead() {
+        return readSuspended.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks reading as resumed, {@code false} if it was not suspended.
+     */
+    boolean resumeRead() {
+        return readSuspended.compareAndSet(true, false);
+    }
+
+    /**
+     * Returns the connection scoped attribute of the given type, creating it on first use.
+     *
+     * @param type    the type of the attribute, also its key.
+     * @param factory creates the attribute for this context.
+     */
+    public <T> T attribute(Class<T> type, Function<ChannelContext, ? extends T> factory) {
+        Object attribute = attributes.get(type);
+        if (attribute == null) {
+            attribute = attributes.computeIfAbsent(type, k -> factory.apply(this));
+        }
+        return type.cast(attribute);
+    }
+
+    /**
+     * Releases the resources held by the connection, called by the event loop on close.
+     */
+    void release() {
+        frameDecoder.release();
+    }
+
+    @Override
+    public String toString() {
+        SelectionKey selectionKey = key;
+        return "ChannelContext{channel=" + (selectionKey == null ? null : selectionKey.channel())
+                + ", inflightFrames=" + inflightFrames.get() + ", pendingWriteBytes=" + pendingWriteBytes.get()
+                + ", readSuspended=" + readSuspended.get() + ", protocolVersion=" + protocolVersion + "}";
+    }
+
+    /**
+     * Returns the channel of the key whatever its attachment is.
+     */
+    public static AbstractNioChannel channelOf(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof ChannelContext) {
+            return ((ChannelContext) attachment).channel;
+        }
+        return (AbstractNioChannel) attachment;
+    }
+
+    /**
+     * Returns the context of the key, or {@code null} if the key is not an accepted connection.
+     */
+    public static ChannelContext contextOf(SelectionKey key) {
+        Object attachment = key.attachment();
+        return attachment instanceof ChannelContext ? (ChannelContext) attachment : null;
+    }
+
+    /**
+     * Returns the protocol version negotiated by the connection of the key, datagram channels
+     * always use {@link ApiKeys#LEGACY_VERSION}.
+     */
+    public static short protocolVersionOf(SelectionKey key) {
+        Object attachment = key.attachment();
+        return attachment instanceof ChannelContext ? ((ChannelContext) attachment).protocolVersion : ApiKeys.LEGACY_VERSION;
+    }
+}
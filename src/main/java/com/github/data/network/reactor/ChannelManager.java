@@ -1,45 +1,97 @@
 package com.github.data.network.reactor;
 
+import com.github.data.utils.LongObjectHashMap;
 import com.github.data.utils.Snowflake;
 
 import java.net.Socket;
 import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Table of the sessions of the logged in connections, indexed by their session id. The session of
+ * a connection is also attached to its {@link ChannelContext}, handlers reach it from the key of
+ * the connection without any lookup nor allocation, the table only serves the lookups by id and
+ * the status reports.
+ *
  * @author yusheng
  * @version 1.0.0
  * @datetime 2022/8/11 14:47
  * @description
  */
 public final class ChannelManager {
-    private final Map<EndPoint, Session> channelToSessionMap;
+    // 以会话ID为键, 访问时对自身加锁; 心跳不访问该表
+    private final LongObjectHashMap<Session> sessionTable;
     private static final Snowflake snowflake = new Snowflake(6,10);
 
     public ChannelManager(){
-        this.channelToSessionMap = new ConcurrentHashMap<>();
+        this.sessionTable = new LongObjectHashMap<>();
     }
 
-    public void addSession(SelectableChannel channel){
-        SocketChannel socketChannel = (SocketChannel) channel;
-        Socket socket = socketChannel.socket();
-        EndPoint localEndPoint = getLocalEndPointFromSocket(socket);
-        EndPoint remoteEndPoint = getRemoteEndPointFromSocket(socket);
-        Session session = new Session(snowflake.id(),localEndPoint,remoteEndPoint);
+    /**
+     * Opens the session of a logged in connection, a connection logging in again keeps its
+     * session.
+     *
+     * @return the session of the connection, or {@code null} if it is not a TCP connection.
+     */
+    public Session addSession(SelectionKey key){
+        ChannelContext context = ChannelContext.contextOf(key);
+        if(context == null){
+            return null;
+        }
+        Session session;
+        // 登录很少, 加锁避免同一连接并发登录时创建两个会话
+        synchronized (sessionTable){
+            session = context.getSession();
+            if(session == null){
+                Socket socket = ((SocketChannel) key.channel()).socket();
+                session = new Session(snowflake.id(),getLocalEndPointFromSocket(socket),getRemoteEndPointFromSocket(socket));
+                context.setSession(session);
+                sessionTable.put(session.getSessionID(),session);
+            }
+        }
         session.updateHeartBeatAckTs(System.currentTimeMillis());
-        channelToSessionMap.putIfAbsent(remoteEndPoint,session);
+        return session;
+    }
+
+    /**
+     * Records a heartbeat of a connection, does nothing before its login.
+     */
+    public void updateSession(SelectionKey key){
+        Session session = sessionOf(key);
+        // 未登录的连接没有会话
+        if(session != null){
+            session.updateHeartBeatAckTs(System.currentTimeMillis());
+        }
+    }
+
+    public void removeSession(SelectionKey key){
+        Session session = sessionOf(key);
+        if(session != null){
+            synchronized (sessionTable){
+                sessionTable.remove(session.getSessionID());
+            }
+        }
+    }
+
+    public Session getSession(long sessionID){
+        synchronized (sessionTable){
+            return sessionTable.get(sessionID);
+        }
     }
 
-    public void updateSession(SelectableChannel channel){
-        EndPoint remoteEndPoint = getRemoteEndPointFromSocket(((SocketChannel)channel).socket());
-        channelToSessionMap.get(remoteEndPoint).updateHeartBeatAckTs(System.currentTimeMillis());
+    /**
+     * Returns the session of the connection of {@code key}, or {@code null} before its login.
+     */
+    public static Session sessionOf(SelectionKey key){
+        ChannelContext context = ChannelContext.contextOf(key);
+        return context == null ? null : context.getSession();
     }
 
-    public void removeSession(SelectableChannel channel){
-        EndPoint remoteEndPoint = getRemoteEndPointFromSocket(((SocketChannel)channel).socket());
-        channelToSessionMap.remove(remoteEndPoint);
+    public int sessionCount(){
+        synchronized (sessionTable){
+            return sessionTable.size();
+        }
     }
 
     private EndPoint getLocalEndPointFromSocket(Socket socket){
@@ -57,8 +109,10 @@ public final class ChannelManager {
     }
 
     public void printChannelManagerStatus(){
-        channelToSessionMap.forEach((k,v) -> {
-            System.out.println(v);
-        });
+        synchronized (sessionTable){
+            sessionTable.forEach((id,session) -> {
+                System.out.println(session);
+            });
+        }
     }
 }
@@ -18,7 +18,8 @@ public interface Dispatcher {
     /**
      * This hook method is called when read event occurs on particular channel. The data read is
      * provided in <code>readObject</code>. The implementation should dispatch this read event to the
-     * associated {@link ChannelHandler} of <code>channel</code>.
+     * associated {@link ChannelHandler} of <code>channel</code> through {@link
+     * AbstractNioChannel#handleRead(Object, SelectionKey)}.
      *
      * <p>The type of <code>readObject</code> depends on the channel on which data was received.
      *
@@ -28,6 +29,48 @@ public interface Dispatcher {
      */
     void onChannelReadEvent(AbstractNioChannel channel, Object readObject, SelectionKey key);
 
+    /**
+     * Number of events dispatched but not yet picked up by a worker, used as a backpressure signal.
+     *
+     * @return the number of queued events, {@code 0} if the dispatcher does not queue events.
+     */
+    default int pendingEvents() {
+        return 0;
+    }
+
+    /**
+     * Number of events queued ahead of the next event of {@code key}, the backpressure signal of the
+     * connection. A dispatcher with a queue per group of connections counts the queue of the group.
+     *
+     * @return the number of events the next event of {@code key} waits for.
+     */
+    default int pendingEvents(SelectionKey key) {
+        return pendingEvents();
+    }
+
+    /**
+     * Number of queues the events are spread over, see {@link #queueOf(SelectionKey)}.
+     */
+    default int queueCount() {
+        return 1;
+    }
+
+    /**
+     * Index of the queue the events of {@code key} go through, in {@code [0, queueCount())}. The
+     * keys of one queue all see the same {@link #pendingEvents(SelectionKey)}.
+     */
+    default int queueOf(SelectionKey key) {
+        return 0;
+    }
+
+    /**
+     * The most events which may queue up ahead of the events of one connection, the dispatcher
+     * high watermark of the {@link BackpressureController} is kept below it.
+     */
+    default int pendingEventsCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * Stops dispatching events and cleans up any acquired resources such as threads.
      *
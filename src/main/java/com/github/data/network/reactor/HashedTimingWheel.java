@@ -0,0 +1,188 @@
+package com.github.data.network.reactor;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel owned by one {@link NioEventLoop}: a ring of buckets, each one a doubly linked
+ * list of the timeouts whose deadline falls on the tick of the bucket, modulo the size of the
+ * wheel. Adding a timeout and expiring one cost O(1) whatever the number of timeouts, only the
+ * tick of a timeout is precise, a task runs at most one tick plus one loop iteration late.
+ *
+ * <p>The wheel itself is only accessed by the thread of its loop, which adds the timeouts and
+ * calls {@link #advance(long)} on every iteration. {@link Timeout#cancel()} may be called from any
+ * thread, it marks the timeout and the loop unlinks it when it next visits its bucket.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 14:20
+ * @description 时间轮
+ */
+final class HashedTimingWheel {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    static final long DEFAULT_TICK_MS = 100L;
+    // 一圈512个槽位, 约51秒
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final long tickMs;
+    private final long startMs;
+    private final WheelTimeout[] buckets;
+    private final int mask;
+
+    // 下一个待处理的tick
+    private long currentTick;
+    // 已加入时间轮且未移除的任务数
+    private int size;
+
+    /**
+     * @param startMs the time of tick 0 on the clock later passed to the wheel.
+     */
+    HashedTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Invalid timing wheel, tick: " + tickMs + " ms, size: " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.startMs = startMs;
+        this.buckets = new WheelTimeout[wheelSize];
+        this.mask = wheelSize - 1;
+    }
+
+    /**
+     * Creates the timeout of {@code task}, to be added with {@link #add(Timeout)} by the loop.
+     */
+    static Timeout newTimeout(Runnable task, long deadlineMs) {
+        return new WheelTimeout(task, deadlineMs);
+    }
+
+    /**
+     * Adds a timeout created by {@link #newTimeout(Runnable, long)}, a deadline already passed
+     * expires on the next tick.
+     */
+    void add(Timeout timeout) {
+        WheelTimeout node = (WheelTimeout) timeout;
+        if (node.isCancelled()) {
+            return;
+        }
+        // 向上取整, 任务不会提前执行
+        long tick = Math.max(currentTick, -Math.floorDiv(startMs - node.deadlineMs, tickMs));
+        node.remainingRounds = (tick - currentTick) / buckets.length;
+        int index = (int) (tick & mask);
+        node.next = buckets[index];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        buckets[index] = node;
+        size++;
+    }
+
+    /**
+     * Runs the tasks of every tick up to {@code nowMs}.
+     */
+    void advance(long nowMs) {
+        while (startMs + currentTick * tickMs <= nowMs) {
+            // 先推进tick, 任务中新加入的定时任务落在后面的槽位
+            int index = (int) (currentTick++ & mask);
+            expireBucket(index);
+        }
+    }
+
+    /**
+     * Returns the time until the next tick, or -1 if the wheel is empty.
+     */
+    long nextTickDelayMs(long nowMs) {
+        if (size == 0) {
+            return -1L;
+        }
+        return Math.max(0L, startMs + currentTick * tickMs - nowMs);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void expireBucket(int index) {
+        WheelTimeout node = buckets[index];
+        while (node != null) {
+            WheelTimeout next = node.next;
+            if (node.isCancelled()) {
+                remove(index, node);
+            } else if (node.remainingRounds <= 0) {
+                remove(index, node);
+                node.expire();
+            } else {
+                node.remainingRounds--;
+            }
+            node = next;
+        }
+    }
+
+    private void remove(int index, WheelTimeout node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            buckets[index] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        size--;
+    }
+
+    private static final class WheelTimeout extends AtomicInteger implements Timeout {
+        private static final long serialVersionUID = 1L;
+
+        private final Runnable task;
+        private final long deadlineMs;
+
+        // 以下字段只由事件循环线程访问
+        private long remainingRounds;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadlineMs) {
+            super(ST_INIT);
+            this.task = task;
+            this.deadlineMs = deadlineMs;
+        }
+
+        @Override
+        public boolean cancel() {
+            return compareAndSet(ST_INIT, ST_CANCELLED);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.error("exception in scheduled task", t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout{deadlineMs=" + deadlineMs + ", state=" + get() + ", task=" + task + "}";
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.data.network.reactor;
+
+import com.github.data.common.BufferPoolAllocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A stateful decoder splitting the byte stream of one connection into frames of the form
+ * {@code [len:int32][apiId:int32][struct:len bytes]}. Bytes of an incomplete frame are kept in a
+ * per-connection accumulation buffer until the rest of the frame arrives, so a frame split over
+ * several TCP reads is reassembled and every complete frame of a pipelined read is emitted.
+ *
+ * <p>Every emitted frame is a buffer taken from {@link BufferPoolAllocator} positioned at the frame
+ * header, the consumer is responsible for releasing it. Instances are not thread safe, a decoder is
+ * only used by the event loop owning its connection.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/16 15:20
+ * @description 基于长度字段的拆包解码器
+ */
+public final class LengthFieldFrameDecoder {
+    // 帧头大小: 4字节消息体长度 + 4字节API id
+    public static final int FRAME_HEADER_SIZE = 4 + 4;
+
+    // 默认最大消息体长度
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    // 累积缓存初始大小
+    private static final int INITIAL_CUMULATION_SIZE = 4 * 1024;
+
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
+
+    private final int maxFrameLength;
+
+    // 尚未组成完整帧的残余数据, 始终处于写模式
+    private ByteBuffer cumulation;
+
+    public LengthFieldFrameDecoder(){
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthFieldFrameDecoder(int maxFrameLength){
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Consumes all the remaining bytes of {@code in} and appends every frame completed by them to
+     * {@code out}.
+     *
+     * @param in  bytes just read from the connection.
+     * @param out the list receiving complete frames.
+     * @throws IOException if a frame header announces an invalid length.
+     */
+    public void decode(ByteBuffer in, List<ByteBuffer> out) throws IOException {
+        if (cumulation == null) {
+            // fast path, no leftover of a previous read: decode straight out of the input.
+            decodeFrames(in, out);
+            if (in.hasRemaining()) {
+                cumulate(in);
+            }
+            return;
+        }
+
+        cumulate(in);
+        cumulation.flip();
+        decodeFrames(cumulation, out);
+        cumulation.compact();
+
+        if (cumulation.position() == 0) {
+            // 残余数据已全部解码, 归还累积缓存, 空闲连接不占用内存
+            release();
+        }
+    }
+
+    private void decodeFrames(ByteBuffer buffer, List<ByteBuffer> out) throws IOException {
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int bodyLength = buffer.getInt(buffer.position());
+            if (bodyLength < 0 || bodyLength > maxFrameLength) {
+                throw new IOException("Invalid frame length: " + bodyLength + ", max frame length: " + maxFrameLength);
+            }
+
+            int frameLength = FRAME_HEADER_SIZE + bodyLength;
+            if (buffer.remaining() < frameLength) {
+                return;
+            }
+
+            ByteBuffer frame = bufferPoolAllocator.allocate(frameLength);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + frameLength);
+            frame.put(buffer);
+            buffer.limit(limit);
+            frame.flip();
+            out.add(frame);
+        }
+    }
+
+    private void cumulate(ByteBuffer in) {
+        if (cumulation == null) {
+            cumulation = bufferPoolAllocator.allocate(Math.max(INITIAL_CUMULATION_SIZE, in.remaining()));
+        } else if (cumulation.remaining() < in.remaining()) {
+            int required = cumulation.position() + in.remaining();
+            int newCapacity = cumulation.capacity();
+            while (newCapacity < required) {
+                newCapacity = newCapacity << 1;
+            }
+            ByteBuffer newCumulation = bufferPoolAllocator.allocate(newCapacity);
+            cumulation.flip();
+            newCumulation.put(cumulation);
+            bufferPoolAllocator.release(cumulation, cumulation.capacity());
+            cumulation = newCumulation;
+        }
+        cumulation.put(in);
+    }
+
+    /**
+     * Number of bytes waiting for the rest of their frame.
+     */
+    public int pendingBytes() {
+        return cumulation == null ? 0 : cumulation.position();
+    }
+
+    /**
+     * Returns the accumulation buffer to the pool, called when the connection is closed.
+     */
+    public void release() {
+        if (cumulation != null) {
+            bufferPoolAllocator.release(cumulation, cumulation.capacity());
+            cumulation = null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.data.network.reactor;
 
+import com.github.data.common.BufferPoolAllocator;
 import com.github.data.common.LogManager;
 import com.github.data.common.TinyLogger;
 
@@ -10,15 +11,47 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A wrapper over {@link DatagramChannel} which can read and write data on a DatagramChannel.
+ *
+ * <p>Serves fire-and-forget ingestion: every datagram carries exactly one frame laid out as on TCP
+ * connections, length, API id and body, encoded with the legacy protocol version since there is
+ * no login to negotiate another one. Datagrams are read into one pooled receive buffer and copied
+ * into pooled frame buffers, and their frames are dispatched like the ones of a TCP connection.
+ * Nothing is sent back, the responses written by event handlers are dropped.
+ *
+ * <p>Reading a datagram channel cannot be suspended like a connection: while the dispatcher is
+ * above its high watermark, or no pooled buffer is available, datagrams are received into a
+ * private buffer and dropped, without ever blocking the event loop.
  */
 public class NioDatagramChannel extends AbstractNioChannel {
     private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
 
+    // 默认的最大数据报长度, 更长的数据报被截断后丢弃
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 16 * 1024;
+
+    // 一次可读事件最多读取的数据报数, 避免独占事件循环
+    private static final int MAX_DATAGRAMS_PER_READ = 64;
+
+    private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
+
     private final int port;
 
+    private final int maxDatagramSize;
+
+    // 格式错误被丢弃的数据报数
+    private final LongAdder malformedDatagrams = new LongAdder();
+
+    // 因分发器繁忙或内存不足被丢弃的数据报数
+    private final LongAdder droppedDatagrams = new LongAdder();
+
+    // 丢弃数据报时的接收缓存, 不占用内存池
+    private final ByteBuffer dropBuffer;
+
     /**
      * Creates a {@link DatagramChannel} which will bind at provided port and use <code>handler</code>
      * to handle incoming events on this channel.
@@ -31,8 +64,21 @@ public class NioDatagramChannel extends AbstractNioChannel {
      * @throws IOException if any I/O error occurs.
      */
     public NioDatagramChannel(int port, ChannelHandler handler) throws IOException {
+        this(port, handler, DEFAULT_MAX_DATAGRAM_SIZE);
+    }
+
+    /**
+     * Creates a {@link DatagramChannel} reading datagrams of at most {@code maxDatagramSize} bytes,
+     * longer ones are dropped.
+     */
+    public NioDatagramChannel(int port, ChannelHandler handler, int maxDatagramSize) throws IOException {
         super(handler, DatagramChannel.open());
+        if (maxDatagramSize < LengthFieldFrameDecoder.FRAME_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid max datagram size: " + maxDatagramSize);
+        }
         this.port = port;
+        this.maxDatagramSize = maxDatagramSize;
+        this.dropBuffer = ByteBuffer.allocate(maxDatagramSize);
     }
 
     @Override
@@ -44,24 +90,114 @@ public class NioDatagramChannel extends AbstractNioChannel {
     }
 
     /**
-     * Reads and returns a {@link DatagramPacket} from the underlying channel.
-     *
-     * @return the datagram packet read having the sender address.
+     * Reads the datagrams queued on the underlying channel, up to a bound per readiness event, and
+     * returns their frames as a list of pooled {@link ByteBuffer}s. A datagram whose length does not
+     * match the length of its frame is dropped, so are all datagrams while the dispatcher is
+     * saturated or pooled buffers run out. Returns {@code null} when no valid datagram was read.
      */
     @Override
-    public DatagramPacket read(SelectionKey key) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
-        SocketAddress sender = ((DatagramChannel) key.channel()).receive(buffer);
+    public List<ByteBuffer> read(SelectionKey key) throws IOException {
+        DatagramChannel datagramChannel = (DatagramChannel) key.channel();
+        // 分发器繁忙时在分发前丢弃, 帧不会在分发队列中占用内存池
+        ByteBuffer data = isDispatcherSaturated(key) ? null : tryAllocate(maxDatagramSize);
+        if(data == null){
+            drop(datagramChannel);
+            return null;
+        }
+        List<ByteBuffer> frames = null;
+        // 同一个接收缓存读取本轮所有数据报
+        try{
+            for (int i = 0; i < MAX_DATAGRAMS_PER_READ; i++) {
+                data.clear();
+                data.limit(maxDatagramSize);
+                if(datagramChannel.receive(data) == null){
+                    break;
+                }
+                data.flip();
+                if(!isCompleteFrame(data)){
+                    malformedDatagrams.increment();
+                    if(LOG.isDebugEnabled()){
+                        LOG.debug("Dropped malformed datagram of {} bytes", data.remaining());
+                    }
+                    continue;
+                }
+                ByteBuffer frame = tryAllocate(data.remaining());
+                if(frame == null){
+                    droppedDatagrams.increment();
+                    continue;
+                }
+                frame.put(data);
+                frame.flip();
+                if(frames == null){
+                    frames = new ArrayList<>(4);
+                }
+                frames.add(frame);
+            }
+        }catch (IOException ioe){
+            releaseFrames(frames);
+            throw ioe;
+        }finally {
+            bufferPoolAllocator.release(data,data.capacity());
+        }
+        return frames;
+    }
 
-        /*
-         * It is required to create a DatagramPacket because we need to preserve which socket address
-         * acts as destination for sending reply packets.
-         */
-        buffer.flip();
-        DatagramPacket packet = new DatagramPacket(buffer);
-        packet.setSender(sender);
+    /**
+     * 不阻塞地从内存池申请, 内存不足时返回null, 不能让事件循环等待或退出
+     * */
+    private ByteBuffer tryAllocate(int size){
+        try{
+            return bufferPoolAllocator.allocate(size,0L);
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            return null;
+        }catch (RuntimeException e){
+            return null;
+        }
+    }
+
+    /**
+     * 读取并丢弃本轮的数据报, 使socket接收缓存不会一直可读
+     * */
+    private void drop(DatagramChannel datagramChannel) throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_READ; i++) {
+            dropBuffer.clear();
+            if(datagramChannel.receive(dropBuffer) == null){
+                break;
+            }
+            droppedDatagrams.increment();
+        }
+    }
 
-        return packet;
+    /**
+     * 数据报恰好包含一个完整帧; 超过最大长度的数据报被截断, 长度不符
+     * */
+    private static boolean isCompleteFrame(ByteBuffer datagram){
+        return datagram.remaining() >= LengthFieldFrameDecoder.FRAME_HEADER_SIZE
+                && datagram.getInt(datagram.position()) == datagram.remaining() - LengthFieldFrameDecoder.FRAME_HEADER_SIZE;
+    }
+
+    private void releaseFrames(List<ByteBuffer> frames){
+        if(frames != null){
+            for (ByteBuffer frame : frames) {
+                bufferPoolAllocator.release(frame,frame.capacity());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of datagrams dropped because they did not hold exactly one frame.
+     */
+    public long getMalformedDatagrams() {
+        return malformedDatagrams.sum();
+    }
+
+    /**
+     * Returns the number of datagrams dropped because the dispatcher was saturated or no pooled
+     * buffer was available.
+     */
+    public long getDroppedDatagrams() {
+        return droppedDatagrams.sum();
     }
 
     /**
@@ -99,10 +235,17 @@ public class NioDatagramChannel extends AbstractNioChannel {
     /**
      * Writes the outgoing {@link DatagramPacket} to the channel. The intended receiver of the
      * datagram packet must be set in the <code>data</code> using {@link
-     * DatagramPacket#setReceiver(SocketAddress)}.
+     * DatagramPacket#setReceiver(SocketAddress)}. A bare {@link ByteBuffer}, the response of an event
+     * handler to an ingested frame, has no receiver and is released instead.
      */
     @Override
     public void write(Object data, SelectionKey key) {
+        if (data instanceof ByteBuffer) {
+            // UDP消息不回复
+            ByteBuffer buffer = (ByteBuffer) data;
+            bufferPoolAllocator.release(buffer, buffer.capacity());
+            return;
+        }
         super.write(data, key);
     }
 
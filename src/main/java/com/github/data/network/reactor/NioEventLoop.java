@@ -0,0 +1,298 @@
+package com.github.data.network.reactor;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single threaded event loop owning one {@link Selector}. The {@link NioReactor} runs one loop as
+ * the acceptor (boss) and, in multi reactor mode, hands every accepted connection to one of its
+ * sub reactor (worker) loops. All the keys registered with a loop are only ever touched by the loop
+ * thread, other threads talk to the loop through its command queue. Every loop also drives a
+ * {@link HashedTimingWheel} running the tasks scheduled on it in the loop thread.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/16 10:12
+ * @description Reactor事件循环
+ */
+final class NioEventLoop {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    private final NioReactor reactor;
+
+    // SelectableChannel对象的多路复用器
+    private final Selector selector;
+
+    // 替换了selector内部HashSet的数组, 反射被拒绝时为null
+    private final SelectedSelectionKeySet selectedKeys;
+
+    // 每轮从命令队列取出的命令, 复用同一个数组
+    private final Runnable[] commandBatch = new Runnable[COMMAND_BATCH_SIZE];
+    private static final int COMMAND_BATCH_SIZE = 1024;
+
+    /**
+     * All the work of altering the SelectionKey operations and Selector operations are performed in
+     * the context of this event loop. So when any channel needs to change its readability or
+     * writability, a new command is added in the command queue and then the event loop picks up
+     * the command and executes it in next iteration.
+     */
+    private final Queue<Runnable> pendingCommands = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService loopThread;
+
+    /**
+     * Whether the loop is awake or a wakeup of the selector is already pending, in both cases the
+     * loop drains the command queue before it blocks in select again. Only the first command queued
+     * while the loop is blocked wakes the selector up.
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    // 事件循环线程, 启动后设置
+    private volatile Thread thread;
+
+    // 定时任务, 只由事件循环线程访问
+    private final HashedTimingWheel timingWheel;
+
+    // select的最长阻塞时间
+    private static final long SELECT_TIMEOUT_MS = 500L;
+
+    NioEventLoop(NioReactor reactor, ThreadFactory threadFactory) throws IOException {
+        this.reactor = reactor;
+        this.selector = Selector.open();
+        this.selectedKeys = SelectedSelectionKeySet.install(selector);
+        this.loopThread = Executors.newSingleThreadExecutor(threadFactory);
+        this.timingWheel = new HashedTimingWheel(HashedTimingWheel.DEFAULT_TICK_MS,HashedTimingWheel.DEFAULT_WHEEL_SIZE,clockMs());
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Starts the event loop in its own thread.
+     */
+    void start() {
+        loopThread.execute(() -> {
+            try {
+                LOG.info("Reactor event loop started, waiting for events...");
+                eventLoop();
+            } catch (IOException e) {
+                LOG.error("exception in event loop", e);
+            }
+        });
+    }
+
+    /**
+     * Stops the event loop and closes its selector.
+     *
+     * @throws InterruptedException if interrupted while stopping the loop.
+     * @throws IOException          if any I/O error occurs.
+     */
+    void stop() throws InterruptedException, IOException {
+        loopThread.shutdown();
+        selector.wakeup();
+        if (!loopThread.awaitTermination(4, TimeUnit.SECONDS)) {
+            loopThread.shutdownNow();
+        }
+        selector.close();
+    }
+
+    /**
+     * Whether the caller is the thread of this event loop.
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Schedules {@code task} to run in the context of this event loop after {@code delay}, at the
+     * precision of a tick of the timing wheel. May be called from any thread.
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = HashedTimingWheel.newTimeout(task, clockMs() + unit.toMillis(delay));
+        if (inEventLoop()) {
+            timingWheel.add(timeout);
+        } else {
+            execute(() -> timingWheel.add(timeout));
+        }
+        return timeout;
+    }
+
+    /**
+     * Queues a command to be run in the context of this event loop and wakes the selector up, unless
+     * the loop is awake or already being woken up.
+     */
+    void execute(Runnable command) {
+        pendingCommands.add(command);
+        if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Changes the operations of a key registered with this loop, at once when called by the loop
+     * thread. Other threads only record the latest operations of a connection, the changes recorded
+     * before the loop applies them collapse into a single command.
+     */
+    void changeOps(SelectionKey key, int interestedOps) {
+        if (inEventLoop()) {
+            NioReactor.applyOps(key, interestedOps);
+            return;
+        }
+        ChannelContext context = ChannelContext.contextOf(key);
+        if (context == null) {
+            execute(new NioReactor.ChangeKeyOpsCommand(key, interestedOps));
+        } else if (context.offerPendingOps(interestedOps)) {
+            execute(context.applyPendingOpsCommand());
+        }
+    }
+
+    /**
+     * Adds or removes {@code OP_READ} from the current operations of a key.
+     */
+    void setReadInterest(SelectionKey key, boolean read) {
+        Runnable command = () -> {
+            if (key.isValid()) {
+                int ops = key.interestOps();
+                key.interestOps(read ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+            }
+        };
+        if (inEventLoop()) {
+            command.run();
+        } else {
+            execute(command);
+        }
+    }
+
+    /**
+     * Registers an accepted channel with this loop. The registration is performed by the loop thread
+     * itself, because {@link SelectableChannel#register(Selector, int)} blocks while the selector of
+     * another thread is selecting.
+     */
+    void registerLater(SelectableChannel channel, int interestedOps, Object attachment) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, interestedOps);
+                key.attach(attachment);
+                if (attachment instanceof ChannelContext) {
+                    ((ChannelContext) attachment).setRegistration(this, key);
+                    reactor.onRegistered(this, key, (ChannelContext) attachment);
+                }
+            } catch (ClosedChannelException e) {
+                LOG.error("error registering accepted channel", e);
+            }
+        });
+    }
+
+    private void eventLoop() throws IOException {
+        thread = Thread.currentThread();
+        // honor interrupt request
+        while (!Thread.interrupted()) {
+            // honor any pending commands first
+            processPendingCommands();
+
+            /*
+             * Synchronous event de-multiplexing happens here, this is blocking call which returns when it
+             * is possible to initiate non-blocking operation on any of the registered channels.
+             * It returns at the latest on the next tick of the timing wheel.
+             *
+             * A command queued after the drain above saw the loop awake and did not wake the selector
+             * up, the queue is checked again once the flag is cleared.
+             */
+            wakenUp.set(false);
+            long nextTickDelayMs = timingWheel.nextTickDelayMs(clockMs());
+            if (nextTickDelayMs == 0L || !pendingCommands.isEmpty()) {
+                selector.selectNow();
+            } else {
+                selector.select(nextTickDelayMs < 0L ? SELECT_TIMEOUT_MS : Math.min(nextTickDelayMs, SELECT_TIMEOUT_MS));
+            }
+            // 已醒来, 处理完本轮事件前其他线程无需再唤醒selector
+            wakenUp.set(true);
+
+            /*
+             * Represents the events that have occurred on registered handles.
+             */
+            if (selectedKeys != null) {
+                processSelectedKeysOptimized();
+            } else {
+                processSelectedKeys();
+            }
+
+            timingWheel.advance(clockMs());
+        }
+    }
+
+    /**
+     * 定时任务使用的单调时钟, 毫秒
+     * */
+    private static long clockMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * 按下标遍历数组实现的selectedKeys, 不分配对象
+     * */
+    private void processSelectedKeysOptimized() throws IOException {
+        SelectionKey[] keys = selectedKeys.keys;
+        for (int i = 0; i < selectedKeys.size; i++) {
+            SelectionKey key = keys[i];
+            // 释放引用, 已关闭的连接可被回收
+            keys[i] = null;
+            if (key.isValid()) {
+                reactor.processKey(key);
+            }
+        }
+        selectedKeys.size = 0;
+    }
+
+    private void processSelectedKeys() throws IOException {
+        Set<SelectionKey> keys = selector.selectedKeys();
+        Iterator<SelectionKey> iterator = keys.iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            if (!key.isValid()) {
+                iterator.remove();
+                continue;
+            }
+            reactor.processKey(key);
+        }
+        keys.clear();
+    }
+
+    /**
+     * 处理pending命令. 每轮最多取出一批, 执行中新加入的命令留到下一轮, 不会饿死selector
+     * */
+    private void processPendingCommands() {
+        Runnable[] batch = commandBatch;
+        int count = 0;
+        Runnable command;
+        while (count < batch.length && (command = pendingCommands.poll()) != null) {
+            batch[count++] = command;
+        }
+        for (int i = 0; i < count; i++) {
+            command = batch[i];
+            batch[i] = null;
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                LOG.error("exception in event loop command", e);
+            }
+        }
+    }
+}
@@ -8,13 +8,10 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class acts as Synchronous Event De-multiplexer and Initiation Dispatcher of Reactor pattern.
@@ -25,7 +22,8 @@ import java.util.concurrent.TimeUnit;
  *
  * <p>Implementation: A NIO reactor runs in its own thread when it is started using {@link
  * #start()} method. {@link NioReactor} uses {@link Selector} for realizing Synchronous Event
- * De-multiplexing.
+ * De-multiplexing. In multi reactor mode an acceptor loop accepts the connections and spreads them
+ * over several sub reactors, each running its own {@link Selector} in its own thread.
  *
  * <p>NOTE: This is one of the ways to implement NIO reactor and it does not take care of all
  * possible edge cases which are required in a real application. This implementation is meant to
@@ -34,50 +32,89 @@ import java.util.concurrent.TimeUnit;
 public class NioReactor {
     private static final TinyLogger LOG = com.github.data.common.LogManager.getInstance().getTinyLogger();
 
-    // SelectableChannel对象的多路复用器
-    private final Selector selector;
-
     // 事件分发器
     private final Dispatcher dispatcher;
 
     // Channel会话管理器
     private final ChannelManager channelManager;
 
-    /**
-     * All the work of altering the SelectionKey operations and Selector operations are performed in
-     * the context of main event loop of reactor. So when any channel needs to change its readability
-     * or writability, a new command is added in the command queue and then the event loop picks up
-     * the command and executes it in next iteration.
-     */
-    private final Queue<Runnable> pendingCommands = new ConcurrentLinkedQueue<>();
+    // 主Reactor(acceptor)事件循环, 单Reactor模式下同时负责所有连接的读写
+    private final NioEventLoop bossLoop;
+
+    // 从Reactor事件循环, 每个已接收的连接固定绑定到其中一个
+    private final NioEventLoop[] subLoops;
 
-    private final ExecutorService reactorMain = Executors.newSingleThreadExecutor(Utils.acceptorNamedDaemonThreadFactory());
+    // 轮询选择从Reactor的计数器, 仅由bossLoop线程访问
+    private int nextSubLoop;
+
+    // 背压控制
+    private final BackpressureController backpressureController;
+
+    // 心跳超时时间, 超时未收到心跳的连接被关闭, 0表示不检查
+    private volatile long heartBeatTimeoutMs;
+
+    // 因心跳超时关闭的连接数
+    private final LongAdder idleEvictions = new LongAdder();
 
     /**
-     * Creates a reactor which will use provided {@code dispatcher} to dispatch events. The
+     * Creates a single reactor which will use provided {@code dispatcher} to dispatch events. The
      * application can provide various implementations of dispatcher which suits its needs.
      *
      * @param dispatcher a non-null dispatcher used to dispatch events on registered channels.
      * @throws IOException if any I/O error occurs.
      */
     public NioReactor(Dispatcher dispatcher) throws IOException {
+        this(dispatcher, 0);
+    }
+
+    /**
+     * Creates a multi reactor. The boss event loop only accepts connections and hands every accepted
+     * {@link SocketChannel} to one of {@code subReactorNum} sub reactors in a round robin fashion,
+     * each of which owns its own {@link Selector} and command queue. With {@code subReactorNum} of
+     * {@code 0} the boss loop serves all the connections itself.
+     *
+     * @param dispatcher    a non-null dispatcher used to dispatch events on registered channels.
+     * @param subReactorNum number of sub reactors, {@code 0} for single reactor mode.
+     * @throws IOException if any I/O error occurs.
+     */
+    public NioReactor(Dispatcher dispatcher, int subReactorNum) throws IOException {
+        this(dispatcher, subReactorNum, new BackpressureController());
+    }
+
+    /**
+     * Creates a multi reactor suspending the reads of connections according to the watermarks of
+     * {@code backpressureController}.
+     *
+     * @param dispatcher            a non-null dispatcher used to dispatch events on registered channels.
+     * @param subReactorNum         number of sub reactors, {@code 0} for single reactor mode.
+     * @param backpressureController the watermarks of connections and of the dispatcher.
+     * @throws IOException if any I/O error occurs.
+     */
+    public NioReactor(Dispatcher dispatcher, int subReactorNum, BackpressureController backpressureController) throws IOException {
+        if (subReactorNum < 0) {
+            throw new IllegalArgumentException("Invalid sub reactor num: " + subReactorNum);
+        }
         this.dispatcher = dispatcher;
-        this.selector = Selector.open();
         this.channelManager = new ChannelManager();
+        this.backpressureController = backpressureController;
+        backpressureController.bind(this, dispatcher);
+        this.bossLoop = new NioEventLoop(this, Utils.acceptorNamedDaemonThreadFactory());
+        this.subLoops = new NioEventLoop[subReactorNum];
+        ThreadFactory subThreadFactory = Utils.subReactorNamedDaemonThreadFactory();
+        for (int i = 0; i < subReactorNum; i++) {
+            subLoops[i] = new NioEventLoop(this, subThreadFactory);
+        }
     }
 
     /**
-     * Starts the reactor event loop in a new thread.
+     * Starts the reactor event loops, each in a new thread.
      */
     public void start() {
-        reactorMain.execute(() -> {
-            try {
-                LOG.info("Reactor started, waiting for events...");
-                eventLoop();
-            } catch (IOException e) {
-                LOG.error("exception in event loop", e);
-            }
-        });
+        for (NioEventLoop subLoop : subLoops) {
+            subLoop.start();
+        }
+        bossLoop.start();
+        LOG.info("Reactor started with sub reactors: {}", subLoops.length);
     }
 
     /**
@@ -87,15 +124,55 @@ public class NioReactor {
      * @throws IOException          if any I/O error occurs.
      */
     public void stop() throws InterruptedException, IOException {
-        reactorMain.shutdown();
-        selector.wakeup();
-        if (!reactorMain.awaitTermination(4, TimeUnit.SECONDS)) {
-            reactorMain.shutdownNow();
+        bossLoop.stop();
+        for (NioEventLoop subLoop : subLoops) {
+            subLoop.stop();
         }
-        selector.close();
         LOG.info("Reactor stopped");
     }
 
+    /**
+     * Closes the connections which have not sent a heartbeat for {@code timeoutMs}, counting from
+     * their accept before their first one. Applies to the connections accepted afterwards, must
+     * therefore be set before {@link #start()}.
+     *
+     * @param timeoutMs the heartbeat timeout, {@code 0} to keep idle connections open.
+     */
+    public void setHeartBeatTimeoutMs(long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("Invalid heartbeat timeout: " + timeoutMs);
+        }
+        this.heartBeatTimeoutMs = timeoutMs;
+    }
+
+    public long getHeartBeatTimeoutMs() {
+        return heartBeatTimeoutMs;
+    }
+
+    /**
+     * Returns the number of connections closed for missing heartbeats.
+     */
+    public long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    /**
+     * Schedules {@code task} to run after {@code delay} in the event loop owning {@code key}, so
+     * the task may touch the key like the loop itself. Scheduling and cancelling cost O(1), the
+     * delay is rounded up to the next tick of the loop's timing wheel.
+     */
+    public Timeout schedule(SelectionKey key, Runnable task, long delay, TimeUnit unit) {
+        return loopOf(key).schedule(task, delay, unit);
+    }
+
+    /**
+     * Schedules {@code task} to run after {@code delay} in the acceptor event loop. The task must
+     * not block, it delays the accept of new connections.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return bossLoop.schedule(task, delay, unit);
+    }
+
     /**
      * Registers a new channel (handle) with this reactor. Reactor will start waiting for events on
      * this channel and notify of any events. While registering the channel the reactor uses {@link
@@ -107,59 +184,17 @@ public class NioReactor {
      * @throws IOException if any I/O error occurs.
      */
     public NioReactor registerChannel(AbstractNioChannel channel) throws IOException {
-        SelectionKey key = channel.getJavaChannel().register(selector, channel.getInterestedOps());
+        SelectionKey key = channel.getJavaChannel().register(bossLoop.selector(), channel.getInterestedOps());
         key.attach(channel);
         channel.setReactor(this);
         return this;
     }
 
-    private void eventLoop() throws IOException {
-        // honor interrupt request
-        while (!Thread.interrupted()) {
-            // honor any pending commands first
-            processPendingCommands();
-
-            /*
-             * Synchronous event de-multiplexing happens here, this is blocking call which returns when it
-             * is possible to initiate non-blocking operation on any of the registered channels.
-             */
-            selector.select(500);
-
-            /*
-             * Represents the events that have occurred on registered handles.
-             */
-            Set<SelectionKey> keys = selector.selectedKeys();
-            Iterator<SelectionKey> iterator = keys.iterator();
-
-            while (iterator.hasNext()) {
-                SelectionKey key = iterator.next();
-                if (!key.isValid()) {
-                    iterator.remove();
-                    continue;
-                }
-                processKey(key);
-            }
-            keys.clear();
-        }
-    }
-
-    /**
-     * 处理pending命令
-     * */
-    private void processPendingCommands() {
-        Iterator<Runnable> iterator = pendingCommands.iterator();
-        while (iterator.hasNext()) {
-            Runnable command = iterator.next();
-            command.run();
-            iterator.remove();
-        }
-    }
-
     /*
      * Initiation dispatcher logic, it checks the type of event and notifier application specific
-     * event handler to handle the event.
+     * event handler to handle the event. Called from the context of the event loop owning the key.
      */
-    private void processKey(SelectionKey key) throws IOException {
+    void processKey(SelectionKey key) throws IOException {
         // tests whether this key's channel is ready to accept a new socket connection.
         if (key.isAcceptable()) {
             onChannelAcceptable(key);
@@ -177,9 +212,13 @@ public class NioReactor {
     /**
      * 处理socket写请求
      * */
-    private void onChannelWritable(SelectionKey key) throws IOException {
-        AbstractNioChannel channel = (AbstractNioChannel) key.attachment();
-        channel.flush(key);
+    private void onChannelWritable(SelectionKey key) {
+        try {
+            ChannelContext.channelOf(key).flush(key);
+        } catch (IOException e) {
+            // 对端重置等写失败只关闭该连接, 不能让异常结束事件循环
+            closeChannel(key);
+        }
     }
 
     /**
@@ -188,14 +227,35 @@ public class NioReactor {
     private void onChannelReadable(SelectionKey key) {
         try {
             // reads the incoming data in context of reactor main loop. Can this be improved?
-            Object readObject = ((AbstractNioChannel) key.attachment()).read(key);
-            dispatchReadEvent(key, readObject);
+            Object readObject = ChannelContext.channelOf(key).read(key);
+            // nothing to dispatch until a complete frame has arrived.
+            if (readObject != null) {
+                dispatchReadEvent(key, readObject);
+            }
         } catch (IOException e) {
-            try {
-                channelManager.removeSession(key.channel());
-                key.channel().close();
-            } catch (IOException ex) {
-                LOG.error("error closing channel", ex);
+            closeChannel(key);
+        }
+    }
+
+    /**
+     * 关闭连接并释放连接相关资源
+     * */
+    private void closeChannel(SelectionKey key) {
+        ChannelContext idleContext = ChannelContext.contextOf(key);
+        if (idleContext != null && idleContext.getIdleTimeout() != null) {
+            idleContext.getIdleTimeout().cancel();
+        }
+        try {
+            channelManager.removeSession(key);
+            key.channel().close();
+        } catch (IOException ex) {
+            LOG.error("error closing channel", ex);
+        } finally {
+            ChannelContext context = ChannelContext.contextOf(key);
+            if (context != null) {
+                backpressureController.onClosed(context);
+                context.getChannel().discardPendingWrites(key);
+                context.release();
             }
         }
     }
@@ -205,33 +265,159 @@ public class NioReactor {
      * to dispatch events to application handler.
      */
     private void dispatchReadEvent(SelectionKey key, Object readObject) {
-        dispatcher.onChannelReadEvent((AbstractNioChannel) key.attachment(), readObject, key);
+        ChannelContext context = ChannelContext.contextOf(key);
+        if (context != null) {
+            // 分发前计数, 超过高水位时暂停读取, 分发器阻塞时也不再继续读取
+            backpressureController.onFramesDispatched(context, key, frameCount(readObject));
+        }
+        dispatcher.onChannelReadEvent(ChannelContext.channelOf(key), readObject, key);
     }
 
     /**
-     * 处理socket连接请求.
+     * Called by dispatcher threads once a read object has been handled.
+     */
+    void onReadHandled(SelectionKey key, Object readObject) {
+        ChannelContext context = ChannelContext.contextOf(key);
+        if (context != null) {
+            backpressureController.onFramesHandled(context, key, frameCount(readObject));
+        }
+    }
+
+    private static int frameCount(Object readObject) {
+        return readObject instanceof List ? ((List<?>) readObject).size() : 1;
+    }
+
+    /**
+     * 处理socket连接请求, 多Reactor模式下将新连接轮询分配给从Reactor.
      * */
     private void onChannelAcceptable(SelectionKey key) throws IOException {
         ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
         SocketChannel socketChannel = serverSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
         socketChannel.configureBlocking(false);
-        SelectionKey readKey = socketChannel.register(selector, SelectionKey.OP_READ);
-        readKey.attach(key.attachment());
+        ChannelContext context = new ChannelContext((AbstractNioChannel) key.attachment(), new LengthFieldFrameDecoder());
+        if (subLoops.length == 0) {
+            SelectionKey readKey = socketChannel.register(bossLoop.selector(), SelectionKey.OP_READ);
+            readKey.attach(context);
+            context.setRegistration(bossLoop, readKey);
+            onRegistered(bossLoop, readKey, context);
+        } else {
+            NioEventLoop subLoop = subLoops[nextSubLoop];
+            nextSubLoop = (nextSubLoop + 1) % subLoops.length;
+            subLoop.registerLater(socketChannel, SelectionKey.OP_READ, context);
+        }
+    }
+
+    /**
+     * Called by the event loop owning an accepted connection once it is registered, starts the
+     * heartbeat check of the connection.
+     */
+    void onRegistered(NioEventLoop loop, SelectionKey key, ChannelContext context) {
+        long timeoutMs = heartBeatTimeoutMs;
+        if (timeoutMs > 0) {
+            context.setIdleTimeout(loop.schedule(new HeartBeatCheck(loop, key, context), timeoutMs, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Closes a connection whose last heartbeat is older than the timeout, otherwise checks it again
+     * when it would time out. A connection costs one timeout of the wheel, whatever the rate of its
+     * heartbeats.
+     */
+    private final class HeartBeatCheck implements Runnable {
+        private final NioEventLoop loop;
+        private final SelectionKey key;
+        private final ChannelContext context;
+
+        HeartBeatCheck(NioEventLoop loop, SelectionKey key, ChannelContext context) {
+            this.loop = loop;
+            this.key = key;
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            if (!key.isValid()) {
+                return;
+            }
+            long timeoutMs = heartBeatTimeoutMs;
+            long idleMs = System.currentTimeMillis() - context.getLastHeartBeatTs();
+            if (idleMs < timeoutMs) {
+                context.setIdleTimeout(loop.schedule(this, timeoutMs - idleMs, TimeUnit.MILLISECONDS));
+                return;
+            }
+            // 关闭前取得远程地址, 日志在日志线程格式化
+            LOG.warn("Closing connection {}, no heartbeat for {} ms", ChannelManager.getEndpointByChannel(key.channel()), idleMs);
+            idleEvictions.increment();
+            closeChannel(key);
+        }
     }
 
     /**
      * Queues the change of operations request of a channel, which will change the interested
-     * operations of the channel sometime in future.
+     * operations of the channel sometime in future. The request is routed to the event loop which
+     * owns the key, the loop thread itself changes the operations at once.
      *
      * <p>This is a non-blocking method and does not guarantee that the operations have changed when
-     * this method returns.
+     * this method returns. Changes requested for a connection before its loop applies them
+     * collapse, the last one wins.
      *
      * @param key           the key for which operations have to be changed.
      * @param interestedOps the new interest operations.
      */
     public void changeOps(SelectionKey key, int interestedOps) {
-        pendingCommands.add(new ChangeKeyOpsCommand(key, interestedOps));
-        selector.wakeup();
+        loopOf(key).changeOps(key, interestedOps);
+    }
+
+    /**
+     * Drops {@code OP_READ} of a connection, changes of its operations mask {@code OP_READ} out
+     * until {@link #resumeRead(SelectionKey)}.
+     */
+    void suspendRead(SelectionKey key) {
+        loopOf(key).setReadInterest(key, false);
+    }
+
+    /**
+     * Restores {@code OP_READ} of a connection suspended by {@link #suspendRead(SelectionKey)}.
+     */
+    void resumeRead(SelectionKey key) {
+        loopOf(key).setReadInterest(key, true);
+    }
+
+    /**
+     * 返回背压控制器
+     * */
+    public BackpressureController getBackpressureController() {
+        return backpressureController;
+    }
+
+    /**
+     * 返回key所属的事件循环: 连接的事件循环在注册时记录于上下文中, 没有上下文的server及datagram channel都注册在bossLoop上
+     * */
+    private NioEventLoop loopOf(SelectionKey key) {
+        ChannelContext context = ChannelContext.contextOf(key);
+        NioEventLoop loop = context == null ? null : context.getLoop();
+        return loop != null ? loop : bossLoop;
+    }
+
+    /**
+     * Sets the interested operations of a key, in the context of the event loop owning it.
+     */
+    static void applyOps(SelectionKey key, int interestedOps) {
+        // 连接可能已在命令入队后关闭
+        if (key.isValid()) {
+            int ops = interestedOps;
+            ChannelContext context = ChannelContext.contextOf(key);
+            if (context != null && context.isReadSuspended()) {
+                // 背压暂停期间不恢复读取
+                ops &= ~SelectionKey.OP_READ;
+            }
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
     }
 
     /**
@@ -247,7 +433,7 @@ public class NioReactor {
         }
 
         public void run() {
-            key.interestOps(interestedOps);
+            applyOps(key, interestedOps);
         }
 
         @Override
@@ -7,11 +7,14 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
 
 import com.github.data.common.BufferPoolAllocator;
 import com.github.data.common.LogManager;
 import com.github.data.common.TinyLogger;
-import com.github.data.utils.IoBuffer;
 
 /**
  * A wrapper over {@link NioServerSocketChannel}
@@ -20,11 +23,14 @@ import com.github.data.utils.IoBuffer;
 public class NioServerSocketChannel extends AbstractNioChannel {
     private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
 
-    // SocketChannel数据读取临时缓存大小
-    private static final int SOCKET_CHANNEL_TMP_READ_BUFF_SIZE = 256;
+    // SocketChannel数据读取缓存大小
+    private static final int SOCKET_CHANNEL_READ_BUFF_SIZE = 4 * 1024;
 
-    // SocketChannel数据读取缓存
-    private final IoBuffer SOCKET_CHANNEL_IO_BUFFER = IoBuffer.allocate(1024 * 4);
+    // 单次聚集写(gathering write)的最大缓存数
+    private static final int MAX_GATHERING_WRITE_BUFFERS = 64;
+
+    // 聚集写缓存数组, flush只在Reactor线程中执行, 每个线程复用一份
+    private static final ThreadLocal<ByteBuffer[]> GATHERING_WRITE_BUFFERS = ThreadLocal.withInitial(() -> new ByteBuffer[MAX_GATHERING_WRITE_BUFFERS]);
 
     private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
 
@@ -63,59 +69,48 @@ public class NioServerSocketChannel extends AbstractNioChannel {
     }
 
     /**
-     * Reads and returns {@link ByteBuffer} from the underlying {@link SocketChannel} represented by
-     * the <code>key</code>. Due to the fact that there is a dedicated channel for each client
-     * connection we don't need to store the sender.
+     * Reads the available bytes from the underlying {@link SocketChannel} represented by the
+     * <code>key</code> and returns every frame they complete as a list of pooled {@link ByteBuffer}s,
+     * see {@link LengthFieldFrameDecoder}. Returns {@code null} when no frame is complete yet. Due to
+     * the fact that there is a dedicated channel for each client connection we don't need to store
+     * the sender.
      */
     @Override
-    public ByteBuffer read(SelectionKey key) throws IOException {
+    public List<ByteBuffer> read(SelectionKey key) throws IOException {
         SocketChannel socketChannel = (SocketChannel) key.channel();
+        LengthFieldFrameDecoder frameDecoder = ((ChannelContext) key.attachment()).getFrameDecoder();
 
+        List<ByteBuffer> frames = new ArrayList<>(4);
         // SocketChannel数据读取缓存
-        SOCKET_CHANNEL_IO_BUFFER.buf().clear();
-
-        // 读取SocketChannel数据
-        int readBytes = readChannel(socketChannel,SOCKET_CHANNEL_IO_BUFFER);
+        ByteBuffer data = bufferPoolAllocator.allocate(SOCKET_CHANNEL_READ_BUFF_SIZE);
+        int ret;
+        try{
+            while((ret = socketChannel.read(data)) > 0){
+                data.flip();
+                frameDecoder.decode(data,frames);
+                data.clear();
+            }
+        }catch (IOException ioe){
+            releaseFrames(frames);
+            throw ioe;
+        }finally {
+            bufferPoolAllocator.release(data,data.capacity());
+        }
 
-        if(readBytes == -1){
+        if(ret == -1){
+            releaseFrames(frames);
             throw new IOException("客户端已关闭异常!");
         }
 
-        ByteBuffer tmpBuff = SOCKET_CHANNEL_IO_BUFFER.buf();
-        ByteBuffer buff = bufferPoolAllocator.allocate(tmpBuff.capacity());
-        buff.put(tmpBuff);
-        buff.flip();
-
-        return buff;
+        return frames.isEmpty() ? null : frames;
     }
 
-    /**
-     * 读取SocketChannel数据
-     * */
-    private int readChannel(SocketChannel socketChannel,IoBuffer readBuffer) throws IOException{
-        // 临时读缓存
-        ByteBuffer data = bufferPoolAllocator.allocate(SOCKET_CHANNEL_TMP_READ_BUFF_SIZE);
-
-        int readBytes = 0;
-        int ret;
-        while((ret = socketChannel.read(data)) > 0){
-            data.flip();
-            readBytes += data.remaining();
-            // readBuffer自动扩容
-            readBuffer.put(data.array(),data.position(),data.remaining());
-            data.clear();
-        }
-
-        if(data.capacity() == SOCKET_CHANNEL_TMP_READ_BUFF_SIZE){
-            bufferPoolAllocator.release(data,SOCKET_CHANNEL_TMP_READ_BUFF_SIZE);
+    private void releaseFrames(List<ByteBuffer> frames){
+        for (ByteBuffer frame : frames) {
+            bufferPoolAllocator.release(frame,frame.capacity());
         }
-
-        readBuffer.flip();
-
-        return ret < 0 ? ret : readBytes;
     }
 
-
     /**
      * Binds TCP socket on the provided <code>port</code>.
      * @throws IOException if any I/O error occurs.
@@ -128,6 +123,51 @@ public class NioServerSocketChannel extends AbstractNioChannel {
         LOG.info("Bound TCP socket at port: {}", port);
     }
 
+    /**
+     * Writes the pending {@link ByteBuffer}s to the underlying channel with as few
+     * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int)} calls as possible.
+     * A buffer is released to the pool once it has been fully written, a partially written buffer
+     * stays at the head of the queue.
+     */
+    @Override
+    protected boolean doFlush(Queue<Object> pendingWrites, SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        ByteBuffer[] buffers = GATHERING_WRITE_BUFFERS.get();
+        while (true) {
+            int count = 0;
+            long expected = 0;
+            for (Object pendingWrite : pendingWrites) {
+                if (count == buffers.length) {
+                    break;
+                }
+                ByteBuffer buffer = (ByteBuffer) pendingWrite;
+                buffers[count++] = buffer;
+                expected += buffer.remaining();
+            }
+            if (count == 0) {
+                return true;
+            }
+
+            long written;
+            try {
+                written = socketChannel.write(buffers, 0, count);
+                onBytesWritten(key, written);
+                // 回收已完全写出的缓存, 只有Reactor线程从队列头部移除数据
+                for (int i = 0; i < count && !buffers[i].hasRemaining(); i++) {
+                    pendingWrites.poll();
+                    bufferPoolAllocator.release(buffers[i],buffers[i].capacity());
+                }
+            } finally {
+                Arrays.fill(buffers, 0, count, null);
+            }
+
+            if (written < expected) {
+                // socket发送缓冲区已满
+                return false;
+            }
+        }
+    }
+
     /**
      * Writes the pending {@link ByteBuffer} to the underlying channel sending data to the intended
      * receiver of the packet.
@@ -139,4 +179,10 @@ public class NioServerSocketChannel extends AbstractNioChannel {
         // 回收缓存
         bufferPoolAllocator.release(pendingBuffer,pendingBuffer.capacity());
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onDiscard(Object pendingWrite) {
+        ByteBuffer pendingBuffer = (ByteBuffer) pendingWrite;
+        bufferPoolAllocator.release(pendingBuffer,pendingBuffer.capacity());
+    }
+}
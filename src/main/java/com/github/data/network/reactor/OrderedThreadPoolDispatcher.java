@@ -0,0 +1,121 @@
+package com.github.data.network.reactor;
+
+import com.github.data.utils.Utils;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Dispatcher} which keeps the events of a connection in order. Every {@link SelectionKey}
+ * is pinned by its hash to one lane, a single worker thread with its own queue, so the frames of
+ * a connection are handled one after the other in the order they were read while different
+ * connections are handled in parallel, without any global lock.
+ *
+ * <p>Dispatching never blocks the reactor thread, which serves every connection of its loop, so the
+ * queue of a lane is an unbounded {@link LinkedBlockingQueue} with a soft bound enforced by the
+ * {@link BackpressureController}. Its dispatcher watermarks apply to the lane of each key and the
+ * high one is kept below the lane queue size. A connection stops reading once it dispatches above
+ * the high watermark, the event which crossed it being queued still, and a datagram channel drops
+ * what it reads while its lane is above it. A lane therefore holds at most the high watermark plus
+ * one event per key pinned to it.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 10:15
+ * @description 按连接有序分发
+ */
+public class OrderedThreadPoolDispatcher implements Dispatcher {
+    // 默认每个lane的队列软容量
+    public static final int DEFAULT_LANE_QUEUE_SIZE = 1024;
+
+    private final ThreadPoolExecutor[] lanes;
+    private final int laneQueueSize;
+
+    /**
+     * Creates an ordered dispatcher.
+     *
+     * @param laneNum       number of lanes, i.e. worker threads.
+     * @param laneQueueSize soft capacity of the queue of each lane, which the dispatcher high
+     *                      watermark is kept below.
+     */
+    public OrderedThreadPoolDispatcher(int laneNum, int laneQueueSize) {
+        ThreadFactory threadFactory = Utils.reactorNamedDaemonThreadFactory();
+        RejectedExecutionHandler rejectWhenStopped = (task, executor) -> {
+            throw new RejectedExecutionException("Dispatcher stopped.");
+        };
+
+        this.laneQueueSize = laneQueueSize;
+        this.lanes = new ThreadPoolExecutor[laneNum];
+        for (int i = 0; i < laneNum; i++) {
+            // 队列不设上限, 事件循环线程从不阻塞; 队列长度由背压控制限制在laneQueueSize以内
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory, rejectWhenStopped);
+        }
+    }
+
+    /**
+     * Queues the event on the lane of its key, never blocks.
+     */
+    @Override
+    public void onChannelReadEvent(AbstractNioChannel channel, Object readObject, SelectionKey key) {
+        laneOf(key).execute(() -> channel.handleRead(readObject, key));
+    }
+
+    @Override
+    public int pendingEvents() {
+        int pending = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            pending += lane.getQueue().size();
+        }
+        return pending;
+    }
+
+    @Override
+    public int pendingEvents(SelectionKey key) {
+        return laneOf(key).getQueue().size();
+    }
+
+    @Override
+    public int pendingEventsCapacity() {
+        return laneQueueSize;
+    }
+
+    @Override
+    public int queueCount() {
+        return lanes.length;
+    }
+
+    @Override
+    public int queueOf(SelectionKey key) {
+        int hash = System.identityHashCode(key);
+        // 打散哈希值的高位
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private ThreadPoolExecutor laneOf(SelectionKey key) {
+        return lanes[queueOf(key)];
+    }
+
+    /**
+     * Stops the lanes, the events already queued are handled first.
+     *
+     * @throws InterruptedException if interrupted while stopping the lanes.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(5, TimeUnit.SECONDS)) {
+                lane.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.data.network.reactor;
+
+import com.github.data.common.LogManager;
+import com.github.data.common.TinyLogger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Array backed set of the keys selected by a {@link Selector}, swapped in for the {@code HashSet}
+ * of the JDK selector by {@link #install(Selector)}. The selector only ever adds keys to it, the
+ * loop walks the array by index and clears it, without hashing, iterator nor entry allocation.
+ *
+ * <p>The selector adds a key at most once per select, {@link #contains(Object)} therefore always
+ * answers {@code false}, and {@link #remove(Object)} of a cancelled key is ignored, the loop skips
+ * the keys which are no longer valid.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/24 10:30
+ * @description 数组实现的selectedKeys
+ */
+final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+    private static final TinyLogger LOG = LogManager.getInstance().getTinyLogger();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    SelectionKey[] keys = new SelectionKey[INITIAL_CAPACITY];
+    int size;
+
+    @Override
+    public boolean add(SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size++] = key;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index++];
+            }
+        };
+    }
+
+    /**
+     * Replaces the selected key sets of {@code selector} with a new array backed set. Writes the
+     * private fields of the JDK selector, with reflection when its package is open, through
+     * {@code sun.misc.Unsafe} otherwise.
+     *
+     * @return the installed set, or {@code null} if the selector is not the JDK one or its fields
+     * cannot be written, the loop then iterates {@link Selector#selectedKeys()}.
+     */
+    static SelectedSelectionKeySet install(Selector selector) {
+        try {
+            Class<?> selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if (!selectorImplClass.isAssignableFrom(selector.getClass())) {
+                LOG.info("Selected key set not optimized, unknown selector: {}", selector.getClass().getName());
+                return null;
+            }
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            SelectedSelectionKeySet selectedKeySet = new SelectedSelectionKeySet();
+            if (!setByReflection(selector, selectedKeysField, publicSelectedKeysField, selectedKeySet)) {
+                setByUnsafe(selector, selectedKeysField, publicSelectedKeysField, selectedKeySet);
+            }
+            return selectedKeySet;
+        } catch (Throwable t) {
+            // 反射被拒绝时退回JDK的selectedKeys
+            LOG.info("Selected key set not optimized: {}", t.toString());
+            return null;
+        }
+    }
+
+    private static boolean setByReflection(Selector selector, Field selectedKeysField, Field publicSelectedKeysField,
+                                           SelectedSelectionKeySet selectedKeySet) throws IllegalAccessException {
+        try {
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+        } catch (RuntimeException e) {
+            // Java 9及以上版本未开放sun.nio.ch包
+            return false;
+        }
+        selectedKeysField.set(selector, selectedKeySet);
+        publicSelectedKeysField.set(selector, selectedKeySet);
+        return true;
+    }
+
+    private static void setByUnsafe(Selector selector, Field selectedKeysField, Field publicSelectedKeysField,
+                                    SelectedSelectionKeySet selectedKeySet) throws ReflectiveOperationException {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafeField.setAccessible(true);
+        Object unsafe = theUnsafeField.get(null);
+        Method objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
+        Method putObject = unsafeClass.getMethod("putObject", Object.class, long.class, Object.class);
+        long selectedKeysOffset = (Long) objectFieldOffset.invoke(unsafe, selectedKeysField);
+        long publicSelectedKeysOffset = (Long) objectFieldOffset.invoke(unsafe, publicSelectedKeysField);
+        putObject.invoke(unsafe, selector, selectedKeysOffset, selectedKeySet);
+        putObject.invoke(unsafe, selector, publicSelectedKeysOffset, selectedKeySet);
+    }
+}
@@ -21,8 +21,8 @@ public class Session {
     // 会话开始时间
     private final long sessionStartTs;
 
-    // 上一次心跳消息回复时间
-    private long lastHeartBeatAckTs;
+    // 上一次心跳消息回复时间, 由处理心跳的线程更新
+    private volatile long lastHeartBeatAckTs;
 
     public Session(long sessionID, EndPoint localEndPoint, EndPoint remoteEndPoint){
         this.sessionID = sessionID;
@@ -3,8 +3,8 @@ package com.github.data.network.reactor;
 import com.github.data.utils.Utils;
 
 import java.nio.channels.SelectionKey;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,7 +13,7 @@ import java.util.concurrent.TimeUnit;
  * (reactor) thread.
  */
 public class ThreadPoolDispatcher implements Dispatcher {
-    private final ExecutorService executorService;
+    private final ThreadPoolExecutor executorService;
 
     /**
      * Creates a pooled dispatcher with tunable pool size.
@@ -21,7 +21,7 @@ public class ThreadPoolDispatcher implements Dispatcher {
      * @param poolSize number of pooled threads
      */
     public ThreadPoolDispatcher(int poolSize) {
-        this.executorService = Executors.newFixedThreadPool(poolSize, Utils.reactorNamedDaemonThreadFactory());
+        this.executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(poolSize, Utils.reactorNamedDaemonThreadFactory());
     }
 
     /**
@@ -31,7 +31,12 @@ public class ThreadPoolDispatcher implements Dispatcher {
      */
     @Override
     public void onChannelReadEvent(AbstractNioChannel channel, Object readObject, SelectionKey key) {
-        executorService.execute(() -> channel.getHandler().handleChannelRead(channel, readObject, key));
+        executorService.execute(() -> channel.handleRead(readObject, key));
+    }
+
+    @Override
+    public int pendingEvents() {
+        return executorService.getQueue().size();
     }
 
     /**
@@ -0,0 +1,24 @@
+package com.github.data.network.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle of a task scheduled with {@link NioReactor#schedule(Runnable, long, TimeUnit)}.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 14:05
+ * @description 定时任务句柄
+ */
+public interface Timeout {
+    /**
+     * Cancels the task if it has not run yet, from any thread.
+     *
+     * @return {@code false} if the task already ran or was already cancelled.
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    boolean isExpired();
+}
@@ -3,6 +3,7 @@ package com.github.data.protocol;
 import com.github.data.common.DataPlatformException;
 import com.github.data.protocol.request.HeartBeatRequest;
 import com.github.data.protocol.request.LoginRequest;
+import com.github.data.protocol.request.MessageBatchRequest;
 import com.github.data.protocol.request.MessageRequest;
 import com.github.data.protocol.types.Struct;
 
@@ -28,6 +29,8 @@ public abstract class AbstractRequest extends AbstractRequestResponse{
                 return new HeartBeatRequest(struct);
             case MESSAGE:
                 return new MessageRequest(struct);
+            case MESSAGE_BATCH:
+                return new MessageBatchRequest(struct);
 
             default:
                 throw new DataPlatformException("Unsupported Request.");
@@ -11,6 +11,73 @@ import java.nio.ByteBuffer;
  * @description
  */
 public abstract class AbstractRequestResponse {
+    // 帧头大小: 4字节消息体长度 + 4字节API id
+    public static final int FRAME_HEADER_SIZE = 4 + 4;
+
+    public abstract Struct toStruct();
+
+    /**
+     * Size of the body encoded in the legacy protocol version.
+     */
+    public final int sizeOf() {
+        return sizeOf(ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Size of the body encoded in the given protocol version. Subclasses with a specialized codec
+     * compute it directly, the default goes through {@link #toStruct()} and only supports the legacy
+     * version.
+     */
+    public int sizeOf(short version) {
+        return toStruct().sizeOf();
+    }
+
+    /**
+     * Encodes the body into {@code buffer} in the legacy protocol version.
+     */
+    public final void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Encodes the body into {@code buffer} in the given protocol version. Subclasses with a
+     * specialized codec write their fields directly, the default goes through {@link #toStruct()}
+     * and only supports the legacy version.
+     */
+    public void writeTo(ByteBuffer buffer, short version) {
+        toStruct().writeTo(buffer);
+    }
+
+    /**
+     * Size of the whole frame in the legacy protocol version, header included.
+     */
+    public final int frameSize() {
+        return frameSize(ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Size of the whole frame in the given protocol version, header included.
+     */
+    public final int frameSize(short version) {
+        return FRAME_HEADER_SIZE + sizeOf(version);
+    }
+
+    /**
+     * Writes the whole frame {@code [len:int32][apiId:int32][body]} in the legacy protocol version.
+     */
+    public final void writeFrame(ApiKeys apiKeys, ByteBuffer buffer) {
+        writeFrame(apiKeys, ApiKeys.LEGACY_VERSION, buffer);
+    }
+
+    /**
+     * Writes the whole frame {@code [len:int32][apiId:int32][body]} in the given protocol version.
+     * The frame header is the same in every version.
+     */
+    public final void writeFrame(ApiKeys apiKeys, short version, ByteBuffer buffer) {
+        buffer.putInt(sizeOf(version));
+        buffer.putInt(apiKeys.getId());
+        writeTo(buffer, version);
+    }
 
     public static ByteBuffer serialize(Struct headerStruct, Struct bodyStruct) {
         ByteBuffer buffer = ByteBuffer.allocate(headerStruct.sizeOf() + bodyStruct.sizeOf());
@@ -0,0 +1,282 @@
+package com.github.data.protocol;
+
+import com.github.data.protocol.request.HeartBeatRequest;
+import com.github.data.protocol.request.HeartBeatResponse;
+import com.github.data.protocol.request.LoginRequest;
+import com.github.data.protocol.request.LoginResponse;
+import com.github.data.protocol.request.MessageBatchRequest;
+import com.github.data.protocol.request.MessageBatchResponse;
+import com.github.data.protocol.request.MessageRequest;
+import com.github.data.protocol.request.MessageResponse;
+import com.github.data.protocol.types.BoundField;
+import com.github.data.protocol.types.Schema;
+import com.github.data.protocol.types.SchemaException;
+import com.github.data.protocol.types.Type;
+import com.github.data.utils.ByteUtils;
+import com.github.data.utils.Utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Specialized codecs of the requests and responses of every {@link ApiKeys}. Each request and
+ * response class decodes its fields straight from the frame buffer and encodes them straight into
+ * the output buffer, without the reflective {@link com.github.data.protocol.types.Struct} round
+ * trip, boxing or per field lookups of {@link Schema#read(ByteBuffer)}.
+ *
+ * <p>The codecs are hand specialized, so when the registry is built every registered codec is
+ * checked against the {@link Schema} of its API: the declared field types must match the schema
+ * field by field, a schema changed without its codec fails at class initialization instead of
+ * silently corrupting the wire format.
+ *
+ * <p>Protocol versions mostly differ in how primitive fields are encoded, the codecs go through the
+ * version aware primitives of this class: {@link ApiKeys#LEGACY_VERSION} uses fixed width integers
+ * and {@code INT16}/{@code INT32} length prefixes, {@link ApiKeys#COMPACT_VERSION} uses varints and
+ * compact length prefixes. {@link ApiKeys#COMPRESSION_VERSION} keeps the compact encoding and adds
+ * the attributes of message batches.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/19 20:40
+ * @description 按Schema预编译的请求/响应编解码器
+ */
+public final class ApiCodecs {
+
+    /**
+     * Decodes a request or response body, the buffer is positioned right after the frame header.
+     */
+    @FunctionalInterface
+    public interface Decoder<T extends AbstractRequestResponse> {
+        T decode(ByteBuffer buffer, short version);
+    }
+
+    // 以API id及协议版本为下标的解码器
+    private static final Decoder<?>[][] REQUEST_DECODERS = new Decoder<?>[ApiKeys.MAX_API_KEY + 1][ApiKeys.LATEST_VERSION + 1];
+    private static final Decoder<?>[][] RESPONSE_DECODERS = new Decoder<?>[ApiKeys.MAX_API_KEY + 1][ApiKeys.LATEST_VERSION + 1];
+
+    static {
+        // 登录在协商版本之前进行, 各版本均使用定长编码, 版本1增加协议版本字段
+        register(ApiKeys.LOGIN, ApiKeys.LEGACY_VERSION,
+                LoginRequest::decode, new Type[]{Type.STRING, Type.STRING},
+                LoginResponse::decode, new Type[]{Type.INT32, Type.STRING});
+        register(ApiKeys.LOGIN, ApiKeys.COMPACT_VERSION,
+                LoginRequest::decode, new Type[]{Type.STRING, Type.STRING, Type.INT16},
+                LoginResponse::decode, new Type[]{Type.INT32, Type.STRING, Type.INT16});
+        register(ApiKeys.LOGIN, ApiKeys.COMPRESSION_VERSION,
+                LoginRequest::decode, new Type[]{Type.STRING, Type.STRING, Type.INT16},
+                LoginResponse::decode, new Type[]{Type.INT32, Type.STRING, Type.INT16});
+
+        register(ApiKeys.HEART_BEAT, ApiKeys.LEGACY_VERSION,
+                HeartBeatRequest::decode, new Type[]{Type.STRING, Type.INT64},
+                HeartBeatResponse::decode, new Type[]{Type.STRING, Type.INT64});
+        register(ApiKeys.HEART_BEAT, ApiKeys.COMPACT_VERSION,
+                HeartBeatRequest::decode, new Type[]{Type.COMPACT_STRING, Type.VARLONG},
+                HeartBeatResponse::decode, new Type[]{Type.COMPACT_STRING, Type.VARLONG});
+        register(ApiKeys.HEART_BEAT, ApiKeys.COMPRESSION_VERSION,
+                HeartBeatRequest::decode, new Type[]{Type.COMPACT_STRING, Type.VARLONG},
+                HeartBeatResponse::decode, new Type[]{Type.COMPACT_STRING, Type.VARLONG});
+
+        register(ApiKeys.MESSAGE, ApiKeys.LEGACY_VERSION,
+                MessageRequest::decode, new Type[]{Type.BYTES, Type.BYTES, Type.INT64},
+                MessageResponse::decode, new Type[]{Type.INT32, Type.STRING});
+        register(ApiKeys.MESSAGE, ApiKeys.COMPACT_VERSION,
+                MessageRequest::decode, new Type[]{Type.COMPACT_BYTES, Type.COMPACT_BYTES, Type.VARLONG},
+                MessageResponse::decode, new Type[]{Type.VARINT, Type.COMPACT_STRING});
+        register(ApiKeys.MESSAGE, ApiKeys.COMPRESSION_VERSION,
+                MessageRequest::decode, new Type[]{Type.COMPACT_BYTES, Type.COMPACT_BYTES, Type.VARLONG},
+                MessageResponse::decode, new Type[]{Type.VARINT, Type.COMPACT_STRING});
+
+        register(ApiKeys.MESSAGE_BATCH, ApiKeys.LEGACY_VERSION,
+                MessageBatchRequest::decode, new Type[]{Type.BYTES, Type.INT64, Type.INT32, Type.BYTES},
+                MessageBatchResponse::decode, new Type[]{Type.INT32, Type.STRING, Type.INT64, Type.BYTES});
+        register(ApiKeys.MESSAGE_BATCH, ApiKeys.COMPACT_VERSION,
+                MessageBatchRequest::decode, new Type[]{Type.COMPACT_BYTES, Type.VARLONG, Type.UNSIGNED_VARINT, Type.COMPACT_BYTES},
+                MessageBatchResponse::decode, new Type[]{Type.VARINT, Type.COMPACT_STRING, Type.VARLONG, Type.COMPACT_BYTES});
+        register(ApiKeys.MESSAGE_BATCH, ApiKeys.COMPRESSION_VERSION,
+                MessageBatchRequest::decode, new Type[]{Type.COMPACT_BYTES, Type.VARLONG, Type.UNSIGNED_VARINT, Type.INT8, Type.COMPACT_BYTES},
+                MessageBatchResponse::decode, new Type[]{Type.VARINT, Type.COMPACT_STRING, Type.VARLONG, Type.COMPACT_BYTES});
+
+        for (ApiKeys apiKeys : ApiKeys.values()) {
+            for (short version = ApiKeys.LEGACY_VERSION; version <= ApiKeys.LATEST_VERSION; version++) {
+                if (REQUEST_DECODERS[apiKeys.getId()][version] == null) {
+                    throw new IllegalStateException("No codec registered for api " + apiKeys.getName() + " version " + version);
+                }
+            }
+        }
+    }
+
+    private ApiCodecs() {
+    }
+
+    private static void register(ApiKeys apiKeys, short version,
+                                 Decoder<? extends AbstractRequest> requestDecoder, Type[] requestTypes,
+                                 Decoder<? extends AbstractResponse> responseDecoder, Type[] responseTypes) {
+        verify(apiKeys, version, apiKeys.getRequestSchema(version), requestTypes);
+        verify(apiKeys, version, apiKeys.getResponseSchema(version), responseTypes);
+        REQUEST_DECODERS[apiKeys.getId()][version] = requestDecoder;
+        RESPONSE_DECODERS[apiKeys.getId()][version] = responseDecoder;
+    }
+
+    private static void verify(ApiKeys apiKeys, short version, Schema schema, Type[] types) {
+        BoundField[] fields = schema.fields();
+        if (fields.length != types.length) {
+            throw new IllegalStateException("Codec of api " + apiKeys.getName() + " version " + version + " encodes "
+                    + types.length + " fields, schema has " + fields.length + ": " + schema);
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].def.type != types[i]) {
+                throw new IllegalStateException("Codec of api " + apiKeys.getName() + " version " + version
+                        + " encodes field " + i + " as " + types[i] + ", schema declares " + fields[i]);
+            }
+        }
+    }
+
+    /**
+     * Decodes the body of a request of the given api and protocol version.
+     */
+    public static AbstractRequest decodeRequest(ApiKeys apiKeys, short version, ByteBuffer buffer) {
+        return (AbstractRequest) REQUEST_DECODERS[apiKeys.getId()][version].decode(buffer, version);
+    }
+
+    /**
+     * Decodes the body of a response of the given api and protocol version.
+     */
+    public static AbstractResponse decodeResponse(ApiKeys apiKeys, short version, ByteBuffer buffer) {
+        return (AbstractResponse) RESPONSE_DECODERS[apiKeys.getId()][version].decode(buffer, version);
+    }
+
+    private static boolean isCompact(short version) {
+        return version >= ApiKeys.COMPACT_VERSION;
+    }
+
+    // - - - - - - 基础类型编解码, 与Type中的编码保持一致 - - - - - -
+
+    /**
+     * Reads a {@link Type#STRING}, or a {@link Type#COMPACT_STRING} in the compact version.
+     */
+    public static String readString(ByteBuffer buffer, short version) {
+        int length = isCompact(version) ? ByteUtils.readUnsignedVarint(buffer) - 1 : buffer.getShort();
+        if (length < 0)
+            throw new SchemaException("String length " + length + " cannot be negative");
+        if (length > buffer.remaining())
+            throw new SchemaException("Error reading string of length " + length + ", only " + buffer.remaining() + " bytes available");
+        String result = Utils.utf8(buffer, length);
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a string field, checking its length.
+     */
+    public static byte[] stringBytes(String string) {
+        byte[] bytes = Utils.utf8(string);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new SchemaException("String length " + bytes.length + " is larger than the maximum string length.");
+        return bytes;
+    }
+
+    public static int sizeOfString(byte[] utf8, short version) {
+        return (isCompact(version) ? ByteUtils.sizeOfUnsignedVarint(utf8.length + 1) : 2) + utf8.length;
+    }
+
+    /**
+     * Writes a string field from its UTF-8 bytes.
+     */
+    public static void writeString(ByteBuffer buffer, byte[] utf8, short version) {
+        if (isCompact(version)) {
+            ByteUtils.writeUnsignedVarint(utf8.length + 1, buffer);
+        } else {
+            buffer.putShort((short) utf8.length);
+        }
+        buffer.put(utf8);
+    }
+
+    /**
+     * Reads the size of a {@link Type#BYTES}, or {@link Type#COMPACT_BYTES}, field and checks it,
+     * the buffer is left positioned at the first byte of the field.
+     */
+    public static int readBytesSize(ByteBuffer buffer, short version) {
+        int size = isCompact(version) ? ByteUtils.readUnsignedVarint(buffer) - 1 : buffer.getInt();
+        if (size < 0)
+            throw new SchemaException("Bytes size " + size + " cannot be negative");
+        if (size > buffer.remaining())
+            throw new SchemaException("Error reading bytes of size " + size + ", only " + buffer.remaining() + " bytes available");
+        return size;
+    }
+
+    public static int sizeOfBytes(int size, short version) {
+        return (isCompact(version) ? ByteUtils.sizeOfUnsignedVarint(size + 1) : 4) + size;
+    }
+
+    /**
+     * Writes a bytes field with the remaining bytes of {@code bytes}, whose position is left
+     * unchanged.
+     */
+    public static void writeBytes(ByteBuffer buffer, ByteBuffer bytes, short version) {
+        int position = bytes.position();
+        if (isCompact(version)) {
+            ByteUtils.writeUnsignedVarint(bytes.remaining() + 1, buffer);
+        } else {
+            buffer.putInt(bytes.remaining());
+        }
+        buffer.put(bytes);
+        bytes.position(position);
+    }
+
+    /**
+     * Reads an {@link Type#INT32}, or a {@link Type#VARINT} in the compact version.
+     */
+    public static int readInt(ByteBuffer buffer, short version) {
+        return isCompact(version) ? ByteUtils.readVarint(buffer) : buffer.getInt();
+    }
+
+    public static int sizeOfInt(int value, short version) {
+        return isCompact(version) ? ByteUtils.sizeOfVarint(value) : 4;
+    }
+
+    public static void writeInt(ByteBuffer buffer, int value, short version) {
+        if (isCompact(version)) {
+            ByteUtils.writeVarint(value, buffer);
+        } else {
+            buffer.putInt(value);
+        }
+    }
+
+    /**
+     * Reads an {@link Type#INT64}, or a {@link Type#VARLONG} in the compact version.
+     */
+    public static long readLong(ByteBuffer buffer, short version) {
+        return isCompact(version) ? ByteUtils.readVarlong(buffer) : buffer.getLong();
+    }
+
+    public static int sizeOfLong(long value, short version) {
+        return isCompact(version) ? ByteUtils.sizeOfVarlong(value) : 8;
+    }
+
+    public static void writeLong(ByteBuffer buffer, long value, short version) {
+        if (isCompact(version)) {
+            ByteUtils.writeVarlong(value, buffer);
+        } else {
+            buffer.putLong(value);
+        }
+    }
+
+    /**
+     * Reads a non negative count, an {@link Type#INT32} or an {@link Type#UNSIGNED_VARINT} in the
+     * compact version.
+     */
+    public static int readCount(ByteBuffer buffer, short version) {
+        return isCompact(version) ? ByteUtils.readUnsignedVarint(buffer) : buffer.getInt();
+    }
+
+    public static int sizeOfCount(int count, short version) {
+        return isCompact(version) ? ByteUtils.sizeOfUnsignedVarint(count) : 4;
+    }
+
+    public static void writeCount(ByteBuffer buffer, int count, short version) {
+        if (isCompact(version)) {
+            ByteUtils.writeUnsignedVarint(count, buffer);
+        } else {
+            buffer.putInt(count);
+        }
+    }
+}
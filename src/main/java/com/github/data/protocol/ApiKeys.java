@@ -11,16 +11,31 @@ import com.github.data.protocol.types.Schema;
  */
 public enum ApiKeys {
 
-    LOGIN(0,"Login", LoginRequest.schema, LoginResponse.schema),
+    LOGIN(0,"Login", LoginRequest.schemaVersions(), LoginResponse.schemaVersions()),
 
-    HEART_BEAT(1,"heart_beat", HeartBeatRequest.schema, HeartBeatResponse.schema),
+    HEART_BEAT(1,"heart_beat", HeartBeatRequest.schemaVersions(), HeartBeatResponse.schemaVersions()),
 
-    MESSAGE(2,"message", MessageRequest.schema,MessageResponse.schema);
+    MESSAGE(2,"message", MessageRequest.schemaVersions(),MessageResponse.schemaVersions()),
+
+    MESSAGE_BATCH(3,"message_batch", MessageBatchRequest.schemaVersions(),MessageBatchResponse.schemaVersions());
+
+    // 协议版本0: 定长整数, INT16/INT32长度前缀, 未协商版本的客户端使用
+    public static final short LEGACY_VERSION = 0;
+
+    // 协议版本1: 变长整数, 紧凑长度前缀
+    public static final short COMPACT_VERSION = 1;
+
+    // 协议版本2: 批量消息携带attributes, 记录可以压缩
+    public static final short COMPRESSION_VERSION = 2;
+
+    // 服务端支持的最高协议版本
+    public static final short LATEST_VERSION = COMPRESSION_VERSION;
 
     private final short id;
     private final String name;
-    private final Schema requestSchema;
-    private final Schema responseSchema;
+    // 以协议版本为下标的schema
+    private final Schema[] requestSchemas;
+    private final Schema[] responseSchemas;
 
     private static final ApiKeys[] ID_TO_TYPE;
     private static final int MIN_API_KEY = 0;
@@ -40,11 +55,14 @@ public enum ApiKeys {
         MAX_API_KEY = maxKey;
     }
 
-    ApiKeys(int id, String name,Schema requestSchema,Schema responseSchema){
+    ApiKeys(int id, String name,Schema[] requestSchemas,Schema[] responseSchemas){
+        if(requestSchemas.length != LATEST_VERSION + 1 || responseSchemas.length != LATEST_VERSION + 1){
+            throw new IllegalStateException("Api " + name + " must define a schema for every protocol version.");
+        }
         this.id = (short) id;
         this.name = name;
-        this.requestSchema = requestSchema;
-        this.responseSchema = responseSchema;
+        this.requestSchemas = requestSchemas;
+        this.responseSchemas = responseSchemas;
     }
 
     public short getId() {
@@ -56,11 +74,23 @@ public enum ApiKeys {
     }
 
     public Schema getRequestSchema() {
-        return requestSchema;
+        return requestSchemas[LEGACY_VERSION];
     }
 
     public Schema getResponseSchema() {
-        return responseSchema;
+        return responseSchemas[LEGACY_VERSION];
+    }
+
+    public Schema getRequestSchema(short version) {
+        return requestSchemas[version];
+    }
+
+    public Schema getResponseSchema(short version) {
+        return responseSchemas[version];
+    }
+
+    public static boolean isSupportedVersion(int version) {
+        return version >= LEGACY_VERSION && version <= LATEST_VERSION;
     }
 
     public static ApiKeys forId(int id) {
@@ -12,9 +12,11 @@ public class CommonFields {
 
     public static final Field.Str LOGIN_USER_REQUEST = new Field.Str("login_user","Login User Name.");
     public static final Field.Str LOGIN_PASSWORD_REQUEST = new Field.Str("login_password","Login Password.");
+    public static final Field.Int16 LOGIN_PROTOCOL_VERSION_REQUEST = new Field.Int16("login_protocol_version","highest protocol version of the client.");
 
     public static final Field.Int32 LOGIN_STATUS_CODE_RESPONSE = new Field.Int32("login_status_code","login response code.");
     public static final Field.Str LOGIN_STATUS_DESCRIPTOR_RESPONSE = new Field.Str("login_status_descriptor","login response code.");
+    public static final Field.Int16 LOGIN_PROTOCOL_VERSION_RESPONSE = new Field.Int16("login_protocol_version","protocol version of the connection.");
 
     public static final Field.Str HEART_BEAT_MESSAGE_REQUEST = new Field.Str("heart_beat_message","heart beat message.");
     public static final Field.Int64 HEART_BEAT_TS_REQUEST = new Field.Int64("heart_beat_ts","heart beat ts.");
@@ -29,5 +31,42 @@ public class CommonFields {
     public static final Field.Int32 MESSAGE_STATUS_CODE_RESPONSE = new Field.Int32("message_status_code","message response code.");
     public static final Field.Str MESSAGE_STATUS_DESCRIPTOR_RESPONSE = new Field.Str("message_status_descriptor","message response code.");
 
+    public static final Field.Bytes MESSAGE_BATCH_KEY_REQUEST = new Field.Bytes("message_batch_key","message key shared by all the records of the batch.");
+    public static final Field.Int64 MESSAGE_BATCH_BASE_TS_REQUEST = new Field.Int64("message_batch_base_ts","timestamp the record timestamps are deltas of.");
+    public static final Field.Int32 MESSAGE_BATCH_RECORD_COUNT_REQUEST = new Field.Int32("message_batch_record_count","number of records.");
+    public static final Field.Bytes MESSAGE_BATCH_RECORDS_REQUEST = new Field.Bytes("message_batch_records","records, each one [ts_delta:varlong][value_length:varint][value].");
 
+    public static final Field.Int32 MESSAGE_BATCH_STATUS_CODE_RESPONSE = new Field.Int32("message_batch_status_code","message batch response code.");
+    public static final Field.Str MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE = new Field.Str("message_batch_status_descriptor","message batch response code.");
+    public static final Field.Int64 MESSAGE_BATCH_BASE_OFFSET_RESPONSE = new Field.Int64("message_batch_base_offset","offset of the first record, -1 if not known.");
+    public static final Field.Bytes MESSAGE_BATCH_RECORD_STATUSES_RESPONSE = new Field.Bytes("message_batch_record_statuses","response code of every record, one byte each.");
+
+    // - - - - - - 协议版本1(紧凑编码)的字段 - - - - - -
+
+    public static final Field.CompactStr HEART_BEAT_MESSAGE_REQUEST_V1 = new Field.CompactStr("heart_beat_message","heart beat message.");
+    public static final Field.Varlong HEART_BEAT_TS_REQUEST_V1 = new Field.Varlong("heart_beat_ts","heart beat ts.");
+
+    public static final Field.CompactStr HEART_BEAT_MESSAGE_RESPONSE_V1 = new Field.CompactStr("heart_beat_message","heart beat message.");
+    public static final Field.Varlong HEART_BEAT_TS_RESPONSE_V1 = new Field.Varlong("heart_beat_ts","heart beat ts.");
+
+    public static final Field.CompactBytes MESSAGE_KEY_REQUEST_V1 = new Field.CompactBytes("message key","message");
+    public static final Field.CompactBytes MESSAGE_VALUE_REQUEST_V1 = new Field.CompactBytes("message value","message");
+    public static final Field.Varlong MESSAGE_TS_V1 = new Field.Varlong("message ts","message ts");
+
+    public static final Field.Varint MESSAGE_STATUS_CODE_RESPONSE_V1 = new Field.Varint("message_status_code","message response code.");
+    public static final Field.CompactStr MESSAGE_STATUS_DESCRIPTOR_RESPONSE_V1 = new Field.CompactStr("message_status_descriptor","message response code.");
+
+    public static final Field.CompactBytes MESSAGE_BATCH_KEY_REQUEST_V1 = new Field.CompactBytes("message_batch_key","message key shared by all the records of the batch.");
+    public static final Field.Varlong MESSAGE_BATCH_BASE_TS_REQUEST_V1 = new Field.Varlong("message_batch_base_ts","timestamp the record timestamps are deltas of.");
+    public static final Field.UnsignedVarint MESSAGE_BATCH_RECORD_COUNT_REQUEST_V1 = new Field.UnsignedVarint("message_batch_record_count","number of records.");
+    public static final Field.CompactBytes MESSAGE_BATCH_RECORDS_REQUEST_V1 = new Field.CompactBytes("message_batch_records","records, each one [ts_delta:varlong][value_length:varint][value].");
+
+    public static final Field.Varint MESSAGE_BATCH_STATUS_CODE_RESPONSE_V1 = new Field.Varint("message_batch_status_code","message batch response code.");
+    public static final Field.CompactStr MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE_V1 = new Field.CompactStr("message_batch_status_descriptor","message batch response code.");
+    public static final Field.Varlong MESSAGE_BATCH_BASE_OFFSET_RESPONSE_V1 = new Field.Varlong("message_batch_base_offset","offset of the first record, -1 if not known.");
+    public static final Field.CompactBytes MESSAGE_BATCH_RECORD_STATUSES_RESPONSE_V1 = new Field.CompactBytes("message_batch_record_statuses","response code of every record, one byte each.");
+
+    // - - - - - - 协议版本2(压缩批量消息)的字段 - - - - - -
+
+    public static final Field.Int8 MESSAGE_BATCH_ATTRIBUTES_REQUEST_V2 = new Field.Int8("message_batch_attributes","compression codec id of the records in the lowest 3 bits.");
 }
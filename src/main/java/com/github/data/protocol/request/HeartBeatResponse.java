@@ -1,6 +1,8 @@
 package com.github.data.protocol.request;
 
 import com.github.data.protocol.AbstractResponse;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.CommonFields;
 import com.github.data.protocol.types.Schema;
 import com.github.data.protocol.types.Struct;
@@ -19,6 +21,16 @@ public class HeartBeatResponse extends AbstractResponse {
 
     public static final Schema schema = new Schema(CommonFields.HEART_BEAT_MESSAGE_RESPONSE,CommonFields.HEART_BEAT_TS_RESPONSE);
 
+    public static final Schema schemaV1 = new Schema(CommonFields.HEART_BEAT_MESSAGE_RESPONSE_V1,CommonFields.HEART_BEAT_TS_RESPONSE_V1);
+
+    // 编码时缓存的UTF-8字节
+    private byte[] messageBytes;
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
     public HeartBeatResponse(String message, long ts){
         this.message = message;
         this.ts = ts;
@@ -38,7 +50,31 @@ public class HeartBeatResponse extends AbstractResponse {
     }
 
     public static HeartBeatResponse parse(ByteBuffer byteBuffer){
-        return new HeartBeatResponse(schema.read(byteBuffer));
+        return decode(byteBuffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    public static HeartBeatResponse decode(ByteBuffer buffer, short version){
+        String message = ApiCodecs.readString(buffer,version);
+        long ts = ApiCodecs.readLong(buffer,version);
+        return new HeartBeatResponse(message,ts);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfString(messageBytes(),version) + ApiCodecs.sizeOfLong(ts,version);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        ApiCodecs.writeString(buffer,messageBytes(),version);
+        ApiCodecs.writeLong(buffer,ts,version);
+    }
+
+    private byte[] messageBytes() {
+        if (messageBytes == null) {
+            messageBytes = ApiCodecs.stringBytes(message);
+        }
+        return messageBytes;
     }
 
     @Override
@@ -1,6 +1,8 @@
 package com.github.data.protocol.request;
 
 import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.CommonFields;
 import com.github.data.protocol.types.Schema;
 import com.github.data.protocol.types.Struct;
@@ -16,17 +18,43 @@ import java.nio.ByteBuffer;
 public class LoginRequest extends AbstractRequest {
     private final String user;
     private final String password;
+    // 客户端支持的最高协议版本, 旧客户端不发送该字段
+    private final short protocolVersion;
 
     public static final Schema schema = new Schema(CommonFields.LOGIN_USER_REQUEST,CommonFields.LOGIN_PASSWORD_REQUEST);
 
+    // 版本1在末尾增加协议版本字段, 仍为定长编码
+    public static final Schema schemaV1 = new Schema(CommonFields.LOGIN_USER_REQUEST,CommonFields.LOGIN_PASSWORD_REQUEST,
+            CommonFields.LOGIN_PROTOCOL_VERSION_REQUEST);
+
+    // 编码时缓存的UTF-8字节
+    private byte[] userBytes;
+    private byte[] passwordBytes;
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
     public LoginRequest(String user,String password){
+        this(user,password,ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * @param protocolVersion the highest protocol version of the client, sent if greater than the
+     *                        legacy version.
+     */
+    public LoginRequest(String user,String password,short protocolVersion){
         this.user = user;
         this.password = password;
+        this.protocolVersion = protocolVersion;
     }
 
     public LoginRequest(Struct struct){
         this.user = struct.get(CommonFields.LOGIN_USER_REQUEST);
         this.password = struct.get(CommonFields.LOGIN_PASSWORD_REQUEST);
+        this.protocolVersion = struct.hasField(CommonFields.LOGIN_PROTOCOL_VERSION_REQUEST)
+                ? struct.get(CommonFields.LOGIN_PROTOCOL_VERSION_REQUEST) : ApiKeys.LEGACY_VERSION;
     }
 
     public String getUser() {
@@ -37,15 +65,70 @@ public class LoginRequest extends AbstractRequest {
         return password;
     }
 
+    /**
+     * The highest protocol version of the client, the legacy version for clients which do not
+     * negotiate.
+     */
+    public short getProtocolVersion() {
+        return protocolVersion;
+    }
+
     public static LoginRequest parse(ByteBuffer buffer){
-        return new LoginRequest(schema.read(buffer));
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Decodes a login request. The protocol version field is read whenever it is present, a login
+     * arrives before the version of the connection is negotiated.
+     */
+    public static LoginRequest decode(ByteBuffer buffer, short version){
+        String user = ApiCodecs.readString(buffer,ApiKeys.LEGACY_VERSION);
+        String password = ApiCodecs.readString(buffer,ApiKeys.LEGACY_VERSION);
+        short protocolVersion = buffer.remaining() >= 2 ? buffer.getShort() : ApiKeys.LEGACY_VERSION;
+        return new LoginRequest(user,password,protocolVersion);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfString(userBytes(),ApiKeys.LEGACY_VERSION) + ApiCodecs.sizeOfString(passwordBytes(),ApiKeys.LEGACY_VERSION)
+                + (sendsProtocolVersion() ? 2 : 0);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        ApiCodecs.writeString(buffer,userBytes(),ApiKeys.LEGACY_VERSION);
+        ApiCodecs.writeString(buffer,passwordBytes(),ApiKeys.LEGACY_VERSION);
+        if (sendsProtocolVersion()) {
+            buffer.putShort(protocolVersion);
+        }
+    }
+
+    private boolean sendsProtocolVersion() {
+        return protocolVersion > ApiKeys.LEGACY_VERSION;
+    }
+
+    private byte[] userBytes() {
+        if (userBytes == null) {
+            userBytes = ApiCodecs.stringBytes(user);
+        }
+        return userBytes;
+    }
+
+    private byte[] passwordBytes() {
+        if (passwordBytes == null) {
+            passwordBytes = ApiCodecs.stringBytes(password);
+        }
+        return passwordBytes;
     }
 
     @Override
     public Struct toStruct() {
-        Struct struct = new Struct(schema);
+        Struct struct = new Struct(sendsProtocolVersion() ? schemaV1 : schema);
         struct.set(CommonFields.LOGIN_USER_REQUEST,user);
         struct.set(CommonFields.LOGIN_PASSWORD_REQUEST,password);
+        if (sendsProtocolVersion()) {
+            struct.set(CommonFields.LOGIN_PROTOCOL_VERSION_REQUEST,protocolVersion);
+        }
         return struct;
     }
 }
@@ -1,6 +1,8 @@
 package com.github.data.protocol.request;
 
 import com.github.data.protocol.AbstractResponse;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.CommonFields;
 import com.github.data.protocol.types.Schema;
 import com.github.data.protocol.types.Struct;
@@ -16,28 +18,101 @@ import java.nio.ByteBuffer;
 public class LoginResponse extends AbstractResponse {
     private final int statusCode;
     private final String descriptor;
+    // 协商后的连接协议版本, 只回复给发送了协议版本的客户端
+    private final short protocolVersion;
 
     public static final Schema schema = new Schema(CommonFields.LOGIN_STATUS_CODE_RESPONSE,CommonFields.LOGIN_STATUS_DESCRIPTOR_RESPONSE);
 
+    public static final Schema schemaV1 = new Schema(CommonFields.LOGIN_STATUS_CODE_RESPONSE,CommonFields.LOGIN_STATUS_DESCRIPTOR_RESPONSE,
+            CommonFields.LOGIN_PROTOCOL_VERSION_RESPONSE);
+
+    // 编码时缓存的UTF-8字节
+    private byte[] descriptorBytes;
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
     public LoginResponse(int statusCode, String descriptor){
+        this(statusCode,descriptor,ApiKeys.LEGACY_VERSION);
+    }
+
+    public LoginResponse(int statusCode, String descriptor, short protocolVersion){
         this.statusCode = statusCode;
         this.descriptor = descriptor;
+        this.protocolVersion = protocolVersion;
     }
 
     public LoginResponse(Struct struct){
         this.statusCode = struct.get(CommonFields.LOGIN_STATUS_CODE_RESPONSE);
         this.descriptor = struct.get(CommonFields.LOGIN_STATUS_DESCRIPTOR_RESPONSE);
+        this.protocolVersion = struct.hasField(CommonFields.LOGIN_PROTOCOL_VERSION_RESPONSE)
+                ? struct.get(CommonFields.LOGIN_PROTOCOL_VERSION_RESPONSE) : ApiKeys.LEGACY_VERSION;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * The protocol version the following frames of the connection use.
+     */
+    public short getProtocolVersion() {
+        return protocolVersion;
     }
 
     public static LoginResponse parse(ByteBuffer buffer) {
-        return new LoginResponse(schema.read(buffer));
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Decodes a login response, the protocol version field is read whenever it is present.
+     */
+    public static LoginResponse decode(ByteBuffer buffer, short version) {
+        int statusCode = buffer.getInt();
+        String descriptor = ApiCodecs.readString(buffer,ApiKeys.LEGACY_VERSION);
+        short protocolVersion = buffer.remaining() >= 2 ? buffer.getShort() : ApiKeys.LEGACY_VERSION;
+        return new LoginResponse(statusCode,descriptor,protocolVersion);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return 4 + ApiCodecs.sizeOfString(descriptorBytes(),ApiKeys.LEGACY_VERSION) + (version > ApiKeys.LEGACY_VERSION ? 2 : 0);
+    }
+
+    /**
+     * Encodes the response, the protocol version field is only written from version 1 on, that is
+     * to clients which sent their own.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        buffer.putInt(statusCode);
+        ApiCodecs.writeString(buffer,descriptorBytes(),ApiKeys.LEGACY_VERSION);
+        if (version > ApiKeys.LEGACY_VERSION) {
+            buffer.putShort(protocolVersion);
+        }
+    }
+
+    private byte[] descriptorBytes() {
+        if (descriptorBytes == null) {
+            descriptorBytes = ApiCodecs.stringBytes(descriptor);
+        }
+        return descriptorBytes;
     }
 
     @Override
     public Struct toStruct() {
-        Struct struct = new Struct(schema);
+        Struct struct = new Struct(protocolVersion > ApiKeys.LEGACY_VERSION ? schemaV1 : schema);
         struct.set(CommonFields.LOGIN_STATUS_CODE_RESPONSE,statusCode);
         struct.set(CommonFields.LOGIN_STATUS_DESCRIPTOR_RESPONSE,descriptor);
+        if (protocolVersion > ApiKeys.LEGACY_VERSION) {
+            struct.set(CommonFields.LOGIN_PROTOCOL_VERSION_RESPONSE,protocolVersion);
+        }
         return struct;
     }
 }
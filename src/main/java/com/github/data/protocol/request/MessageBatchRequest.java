@@ -0,0 +1,371 @@
+package com.github.data.protocol.request;
+
+import com.github.data.compress.CompressionType;
+import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
+import com.github.data.protocol.CommonFields;
+import com.github.data.protocol.types.Schema;
+import com.github.data.protocol.types.Struct;
+import com.github.data.utils.ByteUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A batch of messages sharing one key. The key, which routes the messages, and the base timestamp
+ * are sent once for the whole batch, followed by the records:
+ * <pre>
+ * record => ts_delta:varlong value_length:varint value:bytes
+ * </pre>
+ * where {@code ts_delta} is the timestamp of the record minus the base timestamp. From
+ * {@link ApiKeys#COMPRESSION_VERSION} on the batch has attributes, whose lowest 3 bits give the
+ * {@link CompressionType} of the records.
+ *
+ * <p>Like {@link MessageRequest}, a decoded batch only records where its key and records lie in
+ * the frame buffer, which must not be used after {@code EventHandler.handle} returns.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 10:40
+ * @description 批量消息请求
+ */
+public class MessageBatchRequest extends AbstractRequest {
+    // 单条记录的最小长度: 1字节ts_delta + 1字节value_length
+    private static final int MIN_RECORD_SIZE = 2;
+
+    // 压缩记录解压后的最大长度, 为最大帧长度的8倍
+    private static final int MAX_UNCOMPRESSED_RECORDS_SIZE = 64 * 1024 * 1024;
+
+    // 解压后与压缩前长度之比的上限, 为deflate的理论最大压缩比(lz4为255)
+    private static final int MAX_COMPRESSION_RATIO = 1032;
+
+    private final ByteBuffer keySource;
+    private final int keyOffset;
+    private final int keyLength;
+    private final long baseTs;
+    private final int recordCount;
+    private final byte attributes;
+    private final ByteBuffer recordsSource;
+    private final int recordsOffset;
+    private final int recordsLength;
+
+    public static final Schema schema = new Schema(CommonFields.MESSAGE_BATCH_KEY_REQUEST,CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST,
+            CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST,CommonFields.MESSAGE_BATCH_RECORDS_REQUEST);
+
+    public static final Schema schemaV1 = new Schema(CommonFields.MESSAGE_BATCH_KEY_REQUEST_V1,CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST_V1,
+            CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST_V1,CommonFields.MESSAGE_BATCH_RECORDS_REQUEST_V1);
+
+    public static final Schema schemaV2 = new Schema(CommonFields.MESSAGE_BATCH_KEY_REQUEST_V1,CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST_V1,
+            CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST_V1,CommonFields.MESSAGE_BATCH_ATTRIBUTES_REQUEST_V2,CommonFields.MESSAGE_BATCH_RECORDS_REQUEST_V1);
+
+    public static Schema[] schemaVersions() {
+        return new Schema[]{schema, schemaV1, schemaV2};
+    }
+
+    /**
+     * Visits the records of a batch.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param index the index of the record in the batch.
+         * @param ts    the timestamp of the record.
+         * @param value a view of the value, reused for every record of the batch.
+         */
+        void visit(int index, long ts, ByteBuffer value);
+    }
+
+    public MessageBatchRequest(Struct struct){
+        this(struct.getBytes(CommonFields.MESSAGE_BATCH_KEY_REQUEST.name),
+                struct.get(CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST),
+                struct.get(CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST),
+                struct.hasField(CommonFields.MESSAGE_BATCH_ATTRIBUTES_REQUEST_V2) ? struct.get(CommonFields.MESSAGE_BATCH_ATTRIBUTES_REQUEST_V2) : 0,
+                struct.getBytes(CommonFields.MESSAGE_BATCH_RECORDS_REQUEST.name));
+    }
+
+    private MessageBatchRequest(ByteBuffer key, long baseTs, int recordCount, byte attributes, ByteBuffer records){
+        this(key,key.position(),key.remaining(),baseTs,recordCount,attributes,records,records.position(),records.remaining());
+    }
+
+    private MessageBatchRequest(ByteBuffer keySource, int keyOffset, int keyLength, long baseTs, int recordCount,
+                                byte attributes, ByteBuffer recordsSource, int recordsOffset, int recordsLength){
+        this.keySource = keySource;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.baseTs = baseTs;
+        this.recordCount = recordCount;
+        this.attributes = attributes;
+        this.recordsSource = recordsSource;
+        this.recordsOffset = recordsOffset;
+        this.recordsLength = recordsLength;
+    }
+
+    /**
+     * Returns a read-only view of the key, positioned at its first byte.
+     */
+    public ByteBuffer keyBuffer() {
+        return view(keySource,keyOffset,keyLength);
+    }
+
+    public long getBaseTs() {
+        return baseTs;
+    }
+
+    /**
+     * Number of records announced by the batch header.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Size of the encoded records, compressed if the batch is.
+     */
+    public int recordsLength() {
+        return recordsLength;
+    }
+
+    public byte getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * The compression of the records.
+     *
+     * @throws IllegalArgumentException if the attributes hold an unknown codec id.
+     */
+    public CompressionType compressionType() {
+        return CompressionType.fromAttributes(attributes);
+    }
+
+    /**
+     * Size of the encoded records once decompressed, as announced by compressed records.
+     */
+    public int uncompressedRecordsLength() {
+        CompressionType compressionType = compressionType();
+        if (compressionType == CompressionType.NONE) {
+            return recordsLength;
+        }
+        return CompressionType.uncompressedSize(view(recordsSource,recordsOffset,recordsLength));
+    }
+
+    /**
+     * Whether the announced record count fits in the records and the compression is known, a batch
+     * failing this check is rejected as a whole. The announced uncompressed size is only trusted up
+     * to what the compressed records can possibly restore.
+     */
+    public boolean isValid() {
+        int length;
+        try {
+            length = uncompressedRecordsLength();
+        } catch (IllegalArgumentException e) {
+            // 未知的压缩类型
+            return false;
+        }
+        return recordCount > 0 && length <= MAX_UNCOMPRESSED_RECORDS_SIZE
+                && length <= (long) recordsLength * MAX_COMPRESSION_RATIO && recordCount <= length / MIN_RECORD_SIZE;
+    }
+
+    /**
+     * Returns the encoded records, decompressed first if the batch is compressed, so that their
+     * actual size is known before anything is sized from it.
+     *
+     * @throws com.github.data.compress.CorruptCompressedDataException if the records cannot be decompressed.
+     */
+    public ByteBuffer records() {
+        ByteBuffer records = view(recordsSource,recordsOffset,recordsLength);
+        CompressionType compressionType = compressionType();
+        if (compressionType != CompressionType.NONE) {
+            records = compressionType.decompress(records,MAX_UNCOMPRESSED_RECORDS_SIZE);
+        }
+        return records;
+    }
+
+    /**
+     * Visits the records in order, compressed records are decompressed first. Decoding stops at the
+     * first malformed record, whose index is returned, every record before it has been visited.
+     * None is visited if the records cannot be decompressed.
+     *
+     * @return the number of records visited.
+     */
+    public int forEachRecord(RecordVisitor visitor) {
+        ByteBuffer records;
+        try {
+            records = records();
+        } catch (RuntimeException e) {
+            // 压缩数据损坏
+            return 0;
+        }
+        return forEachRecord(records,visitor);
+    }
+
+    /**
+     * Visits the records of {@code records}, obtained from {@link #records()}, which is consumed.
+     *
+     * @return the number of records visited.
+     */
+    public int forEachRecord(ByteBuffer records, RecordVisitor visitor) {
+        int visited = 0;
+        try {
+            int end = records.limit();
+            while (visited < recordCount && records.position() < end) {
+                long ts = baseTs + ByteUtils.readVarlong(records);
+                int valueLength = ByteUtils.readVarint(records);
+                int valueOffset = records.position();
+                if (valueLength < 0 || valueLength > end - valueOffset) {
+                    break;
+                }
+                records.limit(valueOffset + valueLength);
+                visitor.visit(visited, ts, records);
+                visited++;
+                records.limit(end);
+                records.position(valueOffset + valueLength);
+            }
+        } catch (RuntimeException e) {
+            // 变长整数越界或格式错误, 之后的记录无法解析
+        }
+        return visited;
+    }
+
+    private static ByteBuffer view(ByteBuffer source, int offset, int length) {
+        ByteBuffer view = source.asReadOnlyBuffer();
+        view.clear();
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    public static MessageBatchRequest parse(ByteBuffer buffer){
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Decodes a batch from {@code buffer}, the key and the records stay in {@code buffer}.
+     */
+    public static MessageBatchRequest decode(ByteBuffer buffer, short version){
+        int keyLength = ApiCodecs.readBytesSize(buffer,version);
+        int keyOffset = buffer.position();
+        buffer.position(keyOffset + keyLength);
+
+        long baseTs = ApiCodecs.readLong(buffer,version);
+        int recordCount = ApiCodecs.readCount(buffer,version);
+        byte attributes = hasAttributes(version) ? buffer.get() : 0;
+
+        int recordsLength = ApiCodecs.readBytesSize(buffer,version);
+        int recordsOffset = buffer.position();
+        buffer.position(recordsOffset + recordsLength);
+        return new MessageBatchRequest(buffer,keyOffset,keyLength,baseTs,recordCount,attributes,buffer,recordsOffset,recordsLength);
+    }
+
+    private static boolean hasAttributes(short version) {
+        return version >= ApiKeys.COMPRESSION_VERSION;
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfBytes(keyLength,version) + ApiCodecs.sizeOfLong(baseTs,version)
+                + ApiCodecs.sizeOfCount(recordCount,version) + (hasAttributes(version) ? 1 : 0)
+                + ApiCodecs.sizeOfBytes(recordsLength,version);
+    }
+
+    /**
+     * @throws IllegalStateException if the batch is compressed and the version has no attributes.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        if (!hasAttributes(version) && attributes != 0) {
+            throw new IllegalStateException("Compressed message batches need protocol version " + ApiKeys.COMPRESSION_VERSION + ", not " + version);
+        }
+        ApiCodecs.writeBytes(buffer,keyBuffer(),version);
+        ApiCodecs.writeLong(buffer,baseTs,version);
+        ApiCodecs.writeCount(buffer,recordCount,version);
+        if (hasAttributes(version)) {
+            buffer.put(attributes);
+        }
+        ApiCodecs.writeBytes(buffer,view(recordsSource,recordsOffset,recordsLength),version);
+    }
+
+    @Override
+    public Struct toStruct() {
+        if (attributes != 0) {
+            Struct struct = new Struct(schemaV2);
+            struct.set(CommonFields.MESSAGE_BATCH_KEY_REQUEST_V1.name,keyBuffer());
+            struct.set(CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST_V1,baseTs);
+            struct.set(CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST_V1,recordCount);
+            struct.set(CommonFields.MESSAGE_BATCH_ATTRIBUTES_REQUEST_V2,attributes);
+            struct.set(CommonFields.MESSAGE_BATCH_RECORDS_REQUEST_V1.name,view(recordsSource,recordsOffset,recordsLength));
+            return struct;
+        }
+        Struct struct = new Struct(schema);
+        struct.set(CommonFields.MESSAGE_BATCH_KEY_REQUEST.name,keyBuffer());
+        struct.set(CommonFields.MESSAGE_BATCH_BASE_TS_REQUEST,baseTs);
+        struct.set(CommonFields.MESSAGE_BATCH_RECORD_COUNT_REQUEST,recordCount);
+        struct.set(CommonFields.MESSAGE_BATCH_RECORDS_REQUEST.name,view(recordsSource,recordsOffset,recordsLength));
+        return struct;
+    }
+
+    /**
+     * Builds a batch on the client side, the records are encoded as they are added.
+     */
+    public static final class Builder {
+        private final byte[] key;
+        private final long baseTs;
+        private ByteBuffer records;
+        private int recordCount;
+        private CompressionType compressionType = CompressionType.NONE;
+
+        /**
+         * @param key    the key shared by all the records.
+         * @param baseTs the timestamp the record timestamps are encoded against, usually the
+         *               timestamp of the first record.
+         */
+        public Builder(byte[] key, long baseTs){
+            this.key = key;
+            this.baseTs = baseTs;
+            this.records = ByteBuffer.allocate(1024);
+        }
+
+        public Builder append(long ts, byte[] value){
+            long tsDelta = ts - baseTs;
+            int required = ByteUtils.sizeOfVarlong(tsDelta) + ByteUtils.sizeOfVarint(value.length) + value.length;
+            if (records.remaining() < required) {
+                ByteBuffer newRecords = ByteBuffer.allocate(Math.max(records.capacity() << 1, records.position() + required));
+                records.flip();
+                newRecords.put(records);
+                records = newRecords;
+            }
+            ByteUtils.writeVarlong(tsDelta,records);
+            ByteUtils.writeVarint(value.length,records);
+            records.put(value);
+            recordCount++;
+            return this;
+        }
+
+        /**
+         * Compresses the records with {@code compressionType} when the batch is built, the batch can
+         * then only be sent from {@link ApiKeys#COMPRESSION_VERSION} on.
+         */
+        public Builder compression(CompressionType compressionType){
+            this.compressionType = compressionType;
+            return this;
+        }
+
+        public int recordCount(){
+            return recordCount;
+        }
+
+        public MessageBatchRequest build(){
+            ByteBuffer encoded = records.duplicate();
+            encoded.flip();
+            if (compressionType != CompressionType.NONE) {
+                byte[] compressed = new byte[compressionType.maxCompressedSize(encoded.remaining())];
+                int compressedSize = compressionType.compress(encoded.array(),0,encoded.remaining(),compressed,0);
+                // 压缩后没有变小时不压缩
+                if (compressedSize < encoded.remaining()) {
+                    return new MessageBatchRequest(ByteBuffer.wrap(key),baseTs,recordCount,compressionType.getId(),ByteBuffer.wrap(compressed,0,compressedSize));
+                }
+            }
+            return new MessageBatchRequest(ByteBuffer.wrap(key),baseTs,recordCount,(byte) 0,encoded);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.data.protocol.request;
+
+import com.github.data.protocol.AbstractResponse;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
+import com.github.data.protocol.CommonFields;
+import com.github.data.protocol.types.Schema;
+import com.github.data.protocol.types.Struct;
+import com.github.data.utils.Utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The response to a {@link MessageBatchRequest}: an overall status, the offset of the first record
+ * and the status of every record of the batch, one byte each, in the order of the batch.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 10:55
+ * @description 批量消息响应
+ */
+public class MessageBatchResponse extends AbstractResponse {
+    private final int statusCode;
+    private final String descriptor;
+    private final long baseOffset;
+    private final byte[] recordStatuses;
+
+    public static final Schema schema = new Schema(CommonFields.MESSAGE_BATCH_STATUS_CODE_RESPONSE,CommonFields.MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE,
+            CommonFields.MESSAGE_BATCH_BASE_OFFSET_RESPONSE,CommonFields.MESSAGE_BATCH_RECORD_STATUSES_RESPONSE);
+
+    public static final Schema schemaV1 = new Schema(CommonFields.MESSAGE_BATCH_STATUS_CODE_RESPONSE_V1,CommonFields.MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE_V1,
+            CommonFields.MESSAGE_BATCH_BASE_OFFSET_RESPONSE_V1,CommonFields.MESSAGE_BATCH_RECORD_STATUSES_RESPONSE_V1);
+
+    // 编码时缓存的UTF-8字节
+    private byte[] descriptorBytes;
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
+    public MessageBatchResponse(int statusCode, String descriptor, long baseOffset, byte[] recordStatuses){
+        this.statusCode = statusCode;
+        this.descriptor = descriptor;
+        this.baseOffset = baseOffset;
+        this.recordStatuses = recordStatuses;
+    }
+
+    public MessageBatchResponse(Struct struct){
+        this.statusCode = struct.get(CommonFields.MESSAGE_BATCH_STATUS_CODE_RESPONSE);
+        this.descriptor = struct.get(CommonFields.MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE);
+        this.baseOffset = struct.get(CommonFields.MESSAGE_BATCH_BASE_OFFSET_RESPONSE);
+        this.recordStatuses = Utils.toArray(struct.getBytes(CommonFields.MESSAGE_BATCH_RECORD_STATUSES_RESPONSE.name));
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * The response code of every record, in the order of the batch.
+     */
+    public byte[] getRecordStatuses() {
+        return recordStatuses;
+    }
+
+    public static MessageBatchResponse parse(ByteBuffer buffer){
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    public static MessageBatchResponse decode(ByteBuffer buffer, short version){
+        int statusCode = ApiCodecs.readInt(buffer,version);
+        String descriptor = ApiCodecs.readString(buffer,version);
+        long baseOffset = ApiCodecs.readLong(buffer,version);
+        byte[] recordStatuses = new byte[ApiCodecs.readBytesSize(buffer,version)];
+        buffer.get(recordStatuses);
+        return new MessageBatchResponse(statusCode,descriptor,baseOffset,recordStatuses);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfInt(statusCode,version) + ApiCodecs.sizeOfString(descriptorBytes(),version)
+                + ApiCodecs.sizeOfLong(baseOffset,version) + ApiCodecs.sizeOfBytes(recordStatuses.length,version);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        ApiCodecs.writeInt(buffer,statusCode,version);
+        ApiCodecs.writeString(buffer,descriptorBytes(),version);
+        ApiCodecs.writeLong(buffer,baseOffset,version);
+        ApiCodecs.writeBytes(buffer,ByteBuffer.wrap(recordStatuses),version);
+    }
+
+    private byte[] descriptorBytes() {
+        if (descriptorBytes == null) {
+            descriptorBytes = ApiCodecs.stringBytes(descriptor);
+        }
+        return descriptorBytes;
+    }
+
+    @Override
+    public Struct toStruct() {
+        Struct struct = new Struct(schema);
+        struct.set(CommonFields.MESSAGE_BATCH_STATUS_CODE_RESPONSE,statusCode);
+        struct.set(CommonFields.MESSAGE_BATCH_STATUS_DESCRIPTOR_RESPONSE,descriptor);
+        struct.set(CommonFields.MESSAGE_BATCH_BASE_OFFSET_RESPONSE,baseOffset);
+        struct.set(CommonFields.MESSAGE_BATCH_RECORD_STATUSES_RESPONSE.name,ByteBuffer.wrap(recordStatuses));
+        return struct;
+    }
+}
@@ -1,58 +1,159 @@
 package com.github.data.protocol.request;
 
 import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.CommonFields;
 import com.github.data.protocol.types.Schema;
 import com.github.data.protocol.types.Struct;
+import com.github.data.utils.Utils;
 
 import java.nio.ByteBuffer;
 
 /**
+ * A message request. The key and the value of a request read from the network are read-only views
+ * over the pooled frame buffer the request was decoded from, no bytes are copied. Such a frame is
+ * returned to the pool once every event handler has processed the request, so the views must not
+ * be retained after {@code EventHandler.handle} returns, copy them if they are needed longer.
+ *
+ * <p>{@link #decode(ByteBuffer)} only records where the key and the value lie in the frame, the
+ * request object is its only allocation, views are created on demand.
+ *
  * @author yusheng
  * @version 1.0.0
  * @datetime 2022/8/12 14:25
  * @description
  */
 public class MessageRequest extends AbstractRequest {
-    private final byte[] key;
-    private final byte[] value;
+    // key及value所在的缓存及其区间, 解码时只记录位置不创建视图
+    private final ByteBuffer keySource;
+    private final int keyOffset;
+    private final int keyLength;
+    private final ByteBuffer valueSource;
+    private final int valueOffset;
+    private final int valueLength;
     private final long ts;
 
     public static final Schema schema = new Schema(CommonFields.MESSAGE_KEY_REQUEST,CommonFields.MESSAGE_VALUE_REQUEST,CommonFields.MESSAGE_TS);
 
+    public static final Schema schemaV1 = new Schema(CommonFields.MESSAGE_KEY_REQUEST_V1,CommonFields.MESSAGE_VALUE_REQUEST_V1,CommonFields.MESSAGE_TS_V1);
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
     public MessageRequest(byte[] key, byte[] value, long ts){
-        this.key = key;
-        this.value = value;
-        this.ts = ts;
+        this(ByteBuffer.wrap(key),ByteBuffer.wrap(value),ts);
     }
 
     public MessageRequest(Struct struct){
-        this.key = struct.getByteArray(CommonFields.MESSAGE_KEY_REQUEST.name);
-        this.value = struct.getByteArray(CommonFields.MESSAGE_VALUE_REQUEST.name);
-        this.ts = struct.get(CommonFields.MESSAGE_TS);
+        // BYTES字段读取结果本身就是帧缓存的切片, 此处不再拷贝
+        this(struct.getBytes(CommonFields.MESSAGE_KEY_REQUEST.name),
+                struct.getBytes(CommonFields.MESSAGE_VALUE_REQUEST.name),
+                struct.get(CommonFields.MESSAGE_TS));
     }
 
+    private MessageRequest(ByteBuffer key, ByteBuffer value, long ts){
+        this(key,key.position(),key.remaining(),value,value.position(),value.remaining(),ts);
+    }
+
+    private MessageRequest(ByteBuffer keySource, int keyOffset, int keyLength,
+                           ByteBuffer valueSource, int valueOffset, int valueLength, long ts){
+        this.keySource = keySource;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.valueSource = valueSource;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.ts = ts;
+    }
+
+    /**
+     * Returns a read-only view of the key, positioned at its first byte.
+     */
+    public ByteBuffer keyBuffer() {
+        return view(keySource,keyOffset,keyLength);
+    }
+
+    /**
+     * Returns a read-only view of the value, positioned at its first byte.
+     */
+    public ByteBuffer valueBuffer() {
+        return view(valueSource,valueOffset,valueLength);
+    }
+
+    /**
+     * Returns a copy of the key.
+     */
     public byte[] getKey() {
-        return key;
+        return Utils.toArray(keyBuffer());
     }
 
+    /**
+     * Returns a copy of the value.
+     */
     public byte[] getValue() {
-        return value;
+        return Utils.toArray(valueBuffer());
+    }
+
+    public int keyLength() {
+        return keyLength;
+    }
+
+    public int valueLength() {
+        return valueLength;
     }
 
     public long getTs() {
         return ts;
     }
 
+    private static ByteBuffer view(ByteBuffer source, int offset, int length) {
+        ByteBuffer view = source.asReadOnlyBuffer();
+        view.clear();
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
     public static MessageRequest parse(ByteBuffer buffer){
-        return new MessageRequest(schema.read(buffer));
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    /**
+     * Decodes a request from {@code buffer}, the key and the value stay in {@code buffer}.
+     */
+    public static MessageRequest decode(ByteBuffer buffer, short version){
+        int keyLength = ApiCodecs.readBytesSize(buffer,version);
+        int keyOffset = buffer.position();
+        buffer.position(keyOffset + keyLength);
+
+        int valueLength = ApiCodecs.readBytesSize(buffer,version);
+        int valueOffset = buffer.position();
+        buffer.position(valueOffset + valueLength);
+
+        long ts = ApiCodecs.readLong(buffer,version);
+        return new MessageRequest(buffer,keyOffset,keyLength,buffer,valueOffset,valueLength,ts);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfBytes(keyLength,version) + ApiCodecs.sizeOfBytes(valueLength,version) + ApiCodecs.sizeOfLong(ts,version);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        ApiCodecs.writeBytes(buffer,keyBuffer(),version);
+        ApiCodecs.writeBytes(buffer,valueBuffer(),version);
+        ApiCodecs.writeLong(buffer,ts,version);
     }
 
     @Override
     public Struct toStruct() {
         Struct struct = new Struct(schema);
-        struct.setByteArray(CommonFields.MESSAGE_KEY_REQUEST.name,key);
-        struct.setByteArray(CommonFields.MESSAGE_VALUE_REQUEST.name,value);
+        struct.set(CommonFields.MESSAGE_KEY_REQUEST.name,keyBuffer());
+        struct.set(CommonFields.MESSAGE_VALUE_REQUEST.name,valueBuffer());
         struct.set(CommonFields.MESSAGE_TS,ts);
         return struct;
     }
@@ -1,6 +1,8 @@
 package com.github.data.protocol.request;
 
 import com.github.data.protocol.AbstractResponse;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
 import com.github.data.protocol.CommonFields;
 import com.github.data.protocol.types.Schema;
 import com.github.data.protocol.types.Struct;
@@ -19,6 +21,16 @@ public class MessageResponse extends AbstractResponse {
 
     public static final Schema schema = new Schema(CommonFields.MESSAGE_STATUS_CODE_RESPONSE,CommonFields.MESSAGE_STATUS_DESCRIPTOR_RESPONSE);
 
+    public static final Schema schemaV1 = new Schema(CommonFields.MESSAGE_STATUS_CODE_RESPONSE_V1,CommonFields.MESSAGE_STATUS_DESCRIPTOR_RESPONSE_V1);
+
+    // 编码时缓存的UTF-8字节
+    private byte[] descriptorBytes;
+
+    public static Schema[] schemaVersions() {
+        // 版本2只改变批量消息请求
+        return new Schema[]{schema, schemaV1, schemaV1};
+    }
+
     public MessageResponse(int statusCode, String descriptor){
         this.statusCode = statusCode;
         this.descriptor = descriptor;
@@ -38,7 +50,31 @@ public class MessageResponse extends AbstractResponse {
     }
 
     public static MessageResponse parse(ByteBuffer buffer){
-        return new MessageResponse(schema.read(buffer));
+        return decode(buffer,ApiKeys.LEGACY_VERSION);
+    }
+
+    public static MessageResponse decode(ByteBuffer buffer, short version){
+        int statusCode = ApiCodecs.readInt(buffer,version);
+        String descriptor = ApiCodecs.readString(buffer,version);
+        return new MessageResponse(statusCode,descriptor);
+    }
+
+    @Override
+    public int sizeOf(short version) {
+        return ApiCodecs.sizeOfInt(statusCode,version) + ApiCodecs.sizeOfString(descriptorBytes(),version);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, short version) {
+        ApiCodecs.writeInt(buffer,statusCode,version);
+        ApiCodecs.writeString(buffer,descriptorBytes(),version);
+    }
+
+    private byte[] descriptorBytes() {
+        if (descriptorBytes == null) {
+            descriptorBytes = ApiCodecs.stringBytes(descriptor);
+        }
+        return descriptorBytes;
     }
 
     @Override
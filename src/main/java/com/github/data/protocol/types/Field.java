@@ -83,6 +83,42 @@ public class Field {
         }
     }
 
+    public static class Varint extends Field {
+        public Varint(String name, String docString) {
+            super(name, Type.VARINT, docString, false, null);
+        }
+    }
+
+    public static class UnsignedVarint extends Field {
+        public UnsignedVarint(String name, String docString) {
+            super(name, Type.UNSIGNED_VARINT, docString, false, null);
+        }
+    }
+
+    public static class Varlong extends Field {
+        public Varlong(String name, String docString) {
+            super(name, Type.VARLONG, docString, false, null);
+        }
+    }
+
+    public static class CompactStr extends Field {
+        public CompactStr(String name, String docString) {
+            super(name, Type.COMPACT_STRING, docString, false, null);
+        }
+    }
+
+    public static class CompactBytes extends Field {
+        public CompactBytes(String name, String docString) {
+            super(name, Type.COMPACT_BYTES, docString, false, null);
+        }
+    }
+
+    public static class CompactArray extends Field {
+        public CompactArray(String name, Type elementType, String docString) {
+            super(name, new CompactArrayOf(elementType), docString, false, null);
+        }
+    }
+
     public static class Array extends Field {
         public Array(String name, Type elementType, String docString) {
             super(name, new ArrayOf(elementType), docString, false, null);
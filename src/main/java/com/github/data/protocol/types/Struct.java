@@ -84,6 +84,26 @@ public class Struct {
         return getBoolean(field.name);
     }
 
+    public Integer get(Field.Varint field) {
+        return getInt(field.name);
+    }
+
+    public Integer get(Field.UnsignedVarint field) {
+        return getInt(field.name);
+    }
+
+    public Long get(Field.Varlong field) {
+        return getLong(field.name);
+    }
+
+    public String get(Field.CompactStr field) {
+        return getString(field.name);
+    }
+
+    public Object[] get(Field.CompactArray field) {
+        return getArray(field.name);
+    }
+
     public Object[] get(Field.Array field) {
         return getArray(field.name);
     }
@@ -315,6 +335,26 @@ public class Struct {
         return set(def.name, value);
     }
 
+    public Struct set(Field.Varint def, int value) {
+        return set(def.name, value);
+    }
+
+    public Struct set(Field.UnsignedVarint def, int value) {
+        return set(def.name, value);
+    }
+
+    public Struct set(Field.Varlong def, long value) {
+        return set(def.name, value);
+    }
+
+    public Struct set(Field.CompactStr def, String value) {
+        return set(def.name, value);
+    }
+
+    public Struct set(Field.CompactArray def, Object[] value) {
+        return set(def.name, value);
+    }
+
     public Struct set(Field.Array def, Object[] value) {
         return set(def.name, value);
     }
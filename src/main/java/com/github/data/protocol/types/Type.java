@@ -1,5 +1,6 @@
 package com.github.data.protocol.types;
 
+import com.github.data.utils.ByteUtils;
 import com.github.data.utils.Utils;
 
 import java.nio.ByteBuffer;
@@ -359,6 +360,211 @@ public abstract class Type {
         }
     };
 
+    public static final DocumentedType UNSIGNED_VARINT = new DocumentedType() {
+        @Override
+        public void write(ByteBuffer buffer, Object o) {
+            ByteUtils.writeUnsignedVarint((Integer) o, buffer);
+        }
 
+        @Override
+        public Integer read(ByteBuffer buffer) {
+            return ByteUtils.readUnsignedVarint(buffer);
+        }
 
+        @Override
+        public int sizeOf(Object o) {
+            return ByteUtils.sizeOfUnsignedVarint((Integer) o);
+        }
+
+        @Override
+        public String typeName() {
+            return "UNSIGNED_VARINT";
+        }
+
+        @Override
+        public Integer validate(Object item) {
+            if (item instanceof Integer)
+                return (Integer) item;
+            throw new SchemaException(item + " is not an integer");
+        }
+
+        @Override
+        public String documentation() {
+            return "Represents an integer between 0 and 2<sup>32</sup>-1 inclusive. " +
+                    "The values are encoded using 7 bits per byte, the high bit of a byte tells whether " +
+                    "another byte follows. The encoding takes between 1 and 5 bytes.";
+        }
+    };
+
+    public static final DocumentedType VARINT = new DocumentedType() {
+        @Override
+        public void write(ByteBuffer buffer, Object o) {
+            ByteUtils.writeVarint((Integer) o, buffer);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer) {
+            return ByteUtils.readVarint(buffer);
+        }
+
+        @Override
+        public int sizeOf(Object o) {
+            return ByteUtils.sizeOfVarint((Integer) o);
+        }
+
+        @Override
+        public String typeName() {
+            return "VARINT";
+        }
+
+        @Override
+        public Integer validate(Object item) {
+            if (item instanceof Integer)
+                return (Integer) item;
+            throw new SchemaException(item + " is not an integer");
+        }
+
+        @Override
+        public String documentation() {
+            return "Represents an integer between -2<sup>31</sup> and 2<sup>31</sup>-1 inclusive. " +
+                    "The values are zig-zag encoded then written as an " + UNSIGNED_VARINT + ".";
+        }
+    };
+
+    public static final DocumentedType VARLONG = new DocumentedType() {
+        @Override
+        public void write(ByteBuffer buffer, Object o) {
+            ByteUtils.writeVarlong((Long) o, buffer);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer) {
+            return ByteUtils.readVarlong(buffer);
+        }
+
+        @Override
+        public int sizeOf(Object o) {
+            return ByteUtils.sizeOfVarlong((Long) o);
+        }
+
+        @Override
+        public String typeName() {
+            return "VARLONG";
+        }
+
+        @Override
+        public Long validate(Object item) {
+            if (item instanceof Long)
+                return (Long) item;
+            throw new SchemaException(item + " is not a long");
+        }
+
+        @Override
+        public String documentation() {
+            return "Represents an integer between -2<sup>63</sup> and 2<sup>63</sup>-1 inclusive. " +
+                    "The values are zig-zag encoded then written with 7 bits per byte, " +
+                    "the encoding takes between 1 and 10 bytes.";
+        }
+    };
+
+    public static final DocumentedType COMPACT_STRING = new DocumentedType() {
+        @Override
+        public void write(ByteBuffer buffer, Object o) {
+            byte[] bytes = Utils.utf8((String) o);
+            if (bytes.length > Short.MAX_VALUE)
+                throw new SchemaException("String length " + bytes.length + " is larger than the maximum string length.");
+            ByteUtils.writeUnsignedVarint(bytes.length + 1, buffer);
+            buffer.put(bytes);
+        }
+
+        @Override
+        public String read(ByteBuffer buffer) {
+            int length = ByteUtils.readUnsignedVarint(buffer) - 1;
+            if (length < 0)
+                throw new SchemaException("String length " + length + " cannot be negative");
+            if (length > Short.MAX_VALUE)
+                throw new SchemaException("String length " + length + " is larger than the maximum string length.");
+            if (length > buffer.remaining())
+                throw new SchemaException("Error reading string of length " + length + ", only " + buffer.remaining() + " bytes available");
+            String result = Utils.utf8(buffer, length);
+            buffer.position(buffer.position() + length);
+            return result;
+        }
+
+        @Override
+        public int sizeOf(Object o) {
+            int length = Utils.utf8Length((String) o);
+            return ByteUtils.sizeOfUnsignedVarint(length + 1) + length;
+        }
+
+        @Override
+        public String typeName() {
+            return "COMPACT_STRING";
+        }
+
+        @Override
+        public String validate(Object item) {
+            if (item instanceof String)
+                return (String) item;
+            else
+                throw new SchemaException(item + " is not a String.");
+        }
+
+        @Override
+        public String documentation() {
+            return "Represents a sequence of characters. First the length N + 1 is given as an " + UNSIGNED_VARINT +
+                    ". Then N bytes follow which are the UTF-8 encoding of the character sequence.";
+        }
+    };
+
+    public static final DocumentedType COMPACT_BYTES = new DocumentedType() {
+        @Override
+        public void write(ByteBuffer buffer, Object o) {
+            ByteBuffer arg = (ByteBuffer) o;
+            int pos = arg.position();
+            ByteUtils.writeUnsignedVarint(arg.remaining() + 1, buffer);
+            buffer.put(arg);
+            arg.position(pos);
+        }
+
+        @Override
+        public Object read(ByteBuffer buffer) {
+            int size = ByteUtils.readUnsignedVarint(buffer) - 1;
+            if (size < 0)
+                throw new SchemaException("Bytes size " + size + " cannot be negative");
+            if (size > buffer.remaining())
+                throw new SchemaException("Error reading bytes of size " + size + ", only " + buffer.remaining() + " bytes available");
+
+            ByteBuffer val = buffer.slice();
+            val.limit(size);
+            buffer.position(buffer.position() + size);
+            return val;
+        }
+
+        @Override
+        public int sizeOf(Object o) {
+            ByteBuffer buffer = (ByteBuffer) o;
+            int remaining = buffer.remaining();
+            return ByteUtils.sizeOfUnsignedVarint(remaining + 1) + remaining;
+        }
+
+        @Override
+        public String typeName() {
+            return "COMPACT_BYTES";
+        }
+
+        @Override
+        public ByteBuffer validate(Object item) {
+            if (item instanceof ByteBuffer)
+                return (ByteBuffer) item;
+            else
+                throw new SchemaException(item + " is not a java.nio.ByteBuffer.");
+        }
+
+        @Override
+        public String documentation() {
+            return "Represents a raw sequence of bytes. First the length N + 1 is given as an " + UNSIGNED_VARINT +
+                    ". Then N bytes follow.";
+        }
+    };
 }
@@ -1,7 +1,11 @@
 package com.github.data.tools;
 
 import com.github.data.common.BufferPoolAllocator;
+import com.github.data.io.MessageRouteCache;
+import com.github.data.io.MessageWriterManager;
+import com.github.data.network.reactor.BackpressureController;
 import com.github.data.network.reactor.ChannelManager;
+import com.github.data.network.reactor.NioReactor;
 
 import java.util.Timer;
 import java.util.TimerTask;
@@ -14,12 +18,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * @description
  */
 public class ServerMonitor extends TimerTask {
+    private static final long PERIOD_MS = 15 * 1000;
+
+    private final NioReactor reactor;
     private final ChannelManager channelManager;
+    private final BackpressureController backpressureController;
+    private final MessageRouteCache routeCache;
     private final BufferPoolAllocator bufferPoolAllocator = BufferPoolAllocator.getInstance();
     private static final AtomicBoolean isRunning = new AtomicBoolean(false);
 
-    private ServerMonitor(ChannelManager channelManager){
-        this.channelManager = channelManager;
+    private ServerMonitor(NioReactor reactor, MessageWriterManager writerManager){
+        this.reactor = reactor;
+        this.channelManager = reactor.getChannelManager();
+        this.backpressureController = reactor.getBackpressureController();
+        this.routeCache = writerManager.getRouteCache();
         isRunning.set(true);
     }
 
@@ -31,14 +43,22 @@ public class ServerMonitor extends TimerTask {
 
         channelManager.printChannelManagerStatus();
 
+        backpressureController.printStatus();
+
+        routeCache.printStatus();
+
+        System.out.println("idle connections closed: " + reactor.getIdleEvictions());
+
         System.out.println("- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -");
+
     }
 
-    public static void start(ChannelManager channelManager){
+    public static void start(NioReactor reactor, MessageWriterManager writerManager){
         if(isRunning.get()){
             throw new RuntimeException("ServerMonitor已运行...");
         }
-        Timer timer = new Timer("ServerMonitorThread");
-        timer.scheduleAtFixedRate(new ServerMonitor(channelManager),100,15 * 1000);
+        // 打印会阻塞且需要持有会话表的锁, 在单独的守护线程上运行, 不占用reactor的事件循环
+        Timer timer = new Timer("ServerMonitorThread",true);
+        timer.scheduleAtFixedRate(new ServerMonitor(reactor,writerManager),100,PERIOD_MS);
     }
 }
@@ -1,37 +1,47 @@
 package com.github.data.tools;
 
-import java.io.FileInputStream;
+import com.github.data.common.LogManager;
+import com.github.data.io.LogConfig;
+import com.github.data.io.TopicLog;
+import com.github.data.utils.Utils;
+
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 /**
+ * Dumps the records of a topic log, seeking straight to the start offset through the segment
+ * indexes.
+ *
+ * <pre>
+ * TopicMessageFileReader &lt;topicDir&gt; [startOffset] [maxRecords]
+ * </pre>
+ *
  * @author yusheng
  * @version 1.0.0
  * @datetime 2022/8/13 20:03
  * @description
  */
 public class TopicMessageFileReader {
-
     public static void main(String[] args) throws IOException {
-        String filePath = "E:\\github\\my-projects\\data_platform\\data\\20220813\\topic08_20220813.dat";
-        FileInputStream fis = new FileInputStream(filePath);
-
-        FileChannel fileChannel = fis.getChannel();
-        System.out.println("file size=" + fileChannel.size());
-        ByteBuffer buff = ByteBuffer.allocate((int)fileChannel.size());
-        fileChannel.read(buff);
-        buff.flip();
-
-        while(buff.hasRemaining()){
-            System.out.println("offset=" + buff.getInt());
-            int len = buff.getInt();
-            System.out.println("len=" + len);
-            byte[] data = new byte[len];
-            buff.get(data);
-            System.out.println(new String(data));
+        if(args.length < 1){
+            System.out.println("Usage: TopicMessageFileReader <topicDir> [startOffset] [maxRecords]");
+            return;
         }
+        File topicDir = new File(args[0]);
+        long startOffset = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        int maxRecords = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
 
-        fis.close();
+        try(TopicLog topicLog = new TopicLog(topicDir,new LogConfig())){
+            System.out.println("segments=" + topicLog.segmentCount() + ",logStartOffset=" + topicLog.logStartOffset() + ",logEndOffset=" + topicLog.logEndOffset());
+            long nextOffset = topicLog.read(startOffset,maxRecords,(offset, record) -> {
+                System.out.println("offset=" + offset);
+                System.out.println("len=" + record.remaining());
+                System.out.println(Utils.utf8(record));
+            });
+            System.out.println("nextOffset=" + nextOffset);
+        }finally {
+            // 日志线程非守护线程, 需停止后才能退出
+            LogManager.getInstance().getTinyLogger().stop();
+        }
     }
 }
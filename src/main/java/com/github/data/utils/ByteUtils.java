@@ -0,0 +1,128 @@
+package com.github.data.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integer encodings, the same as the ones of protocol buffers: unsigned values use
+ * 7 bits per byte with the high bit set on every byte but the last, signed values are zig-zag
+ * encoded first so that small negative values stay short.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 10:15
+ * @description 变长整数编解码
+ */
+public final class ByteUtils {
+
+    private ByteUtils() {
+    }
+
+    /**
+     * Reads an unsigned varint of at most 5 bytes.
+     *
+     * @throws IllegalArgumentException if the varint is longer than 5 bytes.
+     */
+    public static int readUnsignedVarint(ByteBuffer buffer) {
+        int value = 0;
+        int i = 0;
+        int b;
+        while (((b = buffer.get()) & 0x80) != 0) {
+            value |= (b & 0x7f) << i;
+            i += 7;
+            if (i > 28)
+                throw illegalVarintException(value);
+        }
+        value |= b << i;
+        return value;
+    }
+
+    /**
+     * Reads a zig-zag encoded varint.
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = readUnsignedVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a zig-zag encoded varlong of at most 10 bytes.
+     *
+     * @throws IllegalArgumentException if the varlong is longer than 10 bytes.
+     */
+    public static long readVarlong(ByteBuffer buffer) {
+        long value = 0L;
+        int i = 0;
+        long b;
+        while (((b = buffer.get()) & 0x80) != 0) {
+            value |= (b & 0x7f) << i;
+            i += 7;
+            if (i > 63)
+                throw illegalVarlongException(value);
+        }
+        value |= b << i;
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeUnsignedVarint(int value, ByteBuffer buffer) {
+        while ((value & 0xffffff80) != 0L) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void writeVarint(int value, ByteBuffer buffer) {
+        writeUnsignedVarint((value << 1) ^ (value >> 31), buffer);
+    }
+
+    public static void writeVarlong(long value, ByteBuffer buffer) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & 0xffffffffffffff80L) != 0L) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Number of bytes of the unsigned varint encoding of {@code value}.
+     */
+    public static int sizeOfUnsignedVarint(int value) {
+        int bytes = 1;
+        while ((value & 0xffffff80) != 0L) {
+            bytes += 1;
+            value >>>= 7;
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of bytes of the zig-zag varint encoding of {@code value}.
+     */
+    public static int sizeOfVarint(int value) {
+        return sizeOfUnsignedVarint((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Number of bytes of the zig-zag varlong encoding of {@code value}.
+     */
+    public static int sizeOfVarlong(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        int bytes = 1;
+        while ((v & 0xffffffffffffff80L) != 0L) {
+            bytes += 1;
+            v >>>= 7;
+        }
+        return bytes;
+    }
+
+    private static IllegalArgumentException illegalVarintException(int value) {
+        return new IllegalArgumentException("Varint is too long, the most significant bit in the 5th byte is set, " +
+                "converted value: " + Integer.toHexString(value));
+    }
+
+    private static IllegalArgumentException illegalVarlongException(long value) {
+        return new IllegalArgumentException("Varlong is too long, most significant bit in the 10th byte is set, " +
+                "converted value: " + Long.toHexString(value));
+    }
+}
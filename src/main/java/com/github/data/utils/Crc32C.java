@@ -0,0 +1,97 @@
+package com.github.data.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, the one used by iSCSI, ext4 and the Kafka record batch, with
+ * better error detection than {@link java.util.zip.CRC32} for the same cost. {@code java.util.zip.CRC32C}
+ * only exists from Java 9 on, this is the table driven slicing-by-8 algorithm, which reads 8 bytes
+ * at a time from heap and direct buffers alike.
+ *
+ * <p>Not thread safe.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 15:10
+ * @description CRC32C校验和
+ */
+public final class Crc32C implements Checksum {
+    // Castagnoli多项式的反序表示
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    // 8张256项的表, 第k张表对应其后还有k个字节时一个字节对结果的贡献
+    private static final int[] TABLE = new int[8 * 256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            int crc = TABLE[n];
+            for (int k = 1; k < 8; k++) {
+                crc = (crc >>> 8) ^ TABLE[crc & 0xff];
+                TABLE[k * 256 + n] = crc;
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        update(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Updates the checksum with the remaining bytes of {@code buffer}, whose position is advanced
+     * to its limit.
+     */
+    public void update(ByteBuffer buffer) {
+        ByteBuffer source = buffer.order() == ByteOrder.LITTLE_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int crc = this.crc;
+        while (source.remaining() >= 8) {
+            long value = source.getLong();
+            int low = (int) value ^ crc;
+            int high = (int) (value >>> 32);
+            crc = TABLE[7 * 256 + (low & 0xff)] ^ TABLE[6 * 256 + ((low >>> 8) & 0xff)]
+                    ^ TABLE[5 * 256 + ((low >>> 16) & 0xff)] ^ TABLE[4 * 256 + (low >>> 24)]
+                    ^ TABLE[3 * 256 + (high & 0xff)] ^ TABLE[2 * 256 + ((high >>> 8) & 0xff)]
+                    ^ TABLE[256 + ((high >>> 16) & 0xff)] ^ TABLE[high >>> 24];
+        }
+        while (source.hasRemaining()) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ source.get()) & 0xff];
+        }
+        this.crc = crc;
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    /**
+     * Computes the checksum of the remaining bytes of {@code buffer}, its position is left untouched.
+     */
+    public static long compute(ByteBuffer buffer) {
+        Crc32C crc32C = new Crc32C();
+        crc32C.update(buffer.duplicate());
+        return crc32C.getValue();
+    }
+}
@@ -161,7 +161,10 @@ public final class IoBuffer {
                 newBuffer = ByteBuffer.allocate(newCapacity);
             }
 
-            newBuffer.put(this.buf.array());
+            // 拷贝[0, capacity)的全部数据, 兼容堆外内存
+            ByteBuffer src = this.buf.duplicate();
+            src.clear();
+            newBuffer.put(src);
             newBuffer.position(this.buf.position());
 
             // 回收到内存池中
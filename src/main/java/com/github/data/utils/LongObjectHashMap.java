@@ -0,0 +1,204 @@
+package com.github.data.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map of primitive {@code long} keys, with open addressing and linear probing over two
+ * parallel arrays, so a lookup neither boxes its key nor follows an entry node. Removal shifts the
+ * following entries of the probe sequence back instead of leaving tombstones, lookups therefore stay
+ * short under constant churn. A {@code null} value marks a free slot and cannot be stored.
+ *
+ * <p>Not thread safe.
+ *
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 20:10
+ * @description long键哈希表
+ */
+public final class LongObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private V[] values;
+    private int mask;
+    private int size;
+    // 最多占用一半的槽位, 探测序列保持很短
+    private int resizeThreshold;
+
+    /**
+     * Visits the entries of a map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map holds without resizing.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Invalid expected size: " + expectedSize);
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Maps {@code key} to {@code value}.
+     *
+     * @return the previous value of {@code key}, or {@code null} if there was none.
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("null value of key: " + key);
+        }
+        int index = hash(key) & mask;
+        V current;
+        while ((current = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return current;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Maps {@code key} to {@code value} unless it is already mapped.
+     *
+     * @return the current value of {@code key}, or {@code null} if {@code value} was added.
+     */
+    public V putIfAbsent(long key, V value) {
+        V current = get(key);
+        return current != null ? current : put(key, value);
+    }
+
+    /**
+     * Removes the mapping of {@code key}.
+     *
+     * @return the removed value, or {@code null} if {@code key} was not mapped.
+     */
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V removed = values[index];
+        values[index] = null;
+        size--;
+        // 将探测序列中后续的元素前移, 不留删除标记
+        int free = index;
+        int next = (index + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // home不在(free, next]区间内时, 该元素可以移到空出的槽位
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                values[next] = null;
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Visits every entry, in no particular order. The map must not be modified meanwhile.
+     */
+    public void forEach(EntryConsumer<? super V> consumer) {
+        for (int i = 0; i < values.length; i++) {
+            V value = values[i];
+            if (value != null) {
+                consumer.accept(keys[i], value);
+            }
+        }
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("LongObjectHashMap is full, size: " + size);
+        }
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            V value = oldValues[i];
+            if (value != null) {
+                int index = hash(oldKeys[i]) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = value;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = (V[]) new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = capacity >>> 1;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long capacity = Math.max(DEFAULT_CAPACITY, (long) expectedSize * 2);
+        if (capacity > MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) capacity - 1) << 1;
+    }
+
+    /**
+     * 雪花ID等键的低位相近, 乘以黄金分割常数后取高位
+     * */
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
@@ -228,6 +228,20 @@ public final class Utils {
         };
     }
 
+    public static ThreadFactory subReactorNamedDaemonThreadFactory(){
+        return new ThreadFactory(){
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r);
+                t.setName("reactor_sub_processor_" + counter.addAndGet(1));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
     public static byte[] md5(String data){
         MessageDigest messageDigest;
         try{
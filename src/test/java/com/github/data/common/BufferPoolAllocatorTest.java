@@ -0,0 +1,147 @@
+package com.github.data.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 16:40
+ * @description
+ */
+public class BufferPoolAllocatorTest {
+
+    private static BufferPoolAllocator threadLocalAllocator(){
+        return new BufferPoolAllocator(BufferPoolAllocator.ChuckSize.SIZE_64MB, BufferPoolAllocator.AllocatorMode.THREAD_LOCAL,
+                new boolean[BufferPoolAllocator.ChuckSize.values().length]);
+    }
+
+    private static Set<ByteBuffer> identitySet(){
+        return Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static void runInThread(Runnable task) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testMagazineRoundsUpAndRecyclesOnTheSameThread(){
+        BufferPoolAllocator allocator = threadLocalAllocator();
+        ByteBuffer buffer = allocator.allocate(700);
+        assertEquals(1024, buffer.capacity());
+        assertEquals(700, buffer.limit());
+        allocator.release(buffer, 700);
+
+        ByteBuffer recycled = allocator.allocate(1000);
+        assertSame(buffer, recycled);
+        assertEquals(0, recycled.position());
+        assertEquals(1000, recycled.limit());
+        allocator.release(recycled, recycled.capacity());
+        allocator.close();
+    }
+
+    @Test
+    public void testFullMagazineSpillsToTheSharedPool() throws InterruptedException {
+        BufferPoolAllocator allocator = threadLocalAllocator();
+        int count = 100;
+        Set<ByteBuffer> released = identitySet();
+        runInThread(() -> {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                buffers.add(allocator.allocate(1024));
+            }
+            for (ByteBuffer buffer : buffers) {
+                released.add(buffer);
+                allocator.release(buffer, buffer.capacity());
+            }
+        });
+        assertEquals(count, released.size());
+
+        // 另一个线程的magazine为空, 从共享池补充时拿到的是第一个线程溢出的内存块
+        List<ByteBuffer> reused = new ArrayList<>();
+        runInThread(() -> {
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = allocator.allocate(1024);
+                if (released.contains(buffer)) {
+                    reused.add(buffer);
+                }
+            }
+        });
+        // 第一个线程的magazine最多留下32个
+        assertTrue(reused.size() >= count - 32, "reused " + reused.size());
+        allocator.close();
+    }
+
+    @Test
+    public void testBuffersReleasedByOtherThreadsAreNeverHandedOutTwice() throws InterruptedException {
+        BufferPoolAllocator allocator = threadLocalAllocator();
+        int threads = 8;
+        int iterations = 20000;
+        Set<ByteBuffer> inUse = identitySet();
+        // 内存块由申请之外的线程释放
+        ConcurrentLinkedQueue<ByteBuffer> handOff = new ConcurrentLinkedQueue<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < iterations && failure.get() == null; i++) {
+                        ByteBuffer buffer = allocator.allocate(1 + random.nextInt(16 * 1024));
+                        if (!inUse.add(buffer)) {
+                            throw new AssertionError("buffer handed out twice");
+                        }
+                        handOff.offer(buffer);
+                        ByteBuffer other = handOff.poll();
+                        if (other != null) {
+                            inUse.remove(other);
+                            allocator.release(other, other.capacity());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertNull(failure.get());
+
+        ByteBuffer buffer;
+        while ((buffer = handOff.poll()) != null) {
+            assertTrue(inUse.remove(buffer));
+            allocator.release(buffer, buffer.capacity());
+        }
+        assertTrue(inUse.isEmpty());
+        allocator.close();
+    }
+}
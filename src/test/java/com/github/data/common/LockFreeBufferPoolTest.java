@@ -0,0 +1,53 @@
+package com.github.data.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 16:20
+ * @description
+ */
+public class LockFreeBufferPoolTest {
+
+    @Test
+    public void testRoundUpRecyclesEveryBuffer() throws InterruptedException {
+        LockFreeBufferPool pool = new LockFreeBufferPool(4 * 1024, 1024, true);
+        ByteBuffer buffer = pool.allocate(700, 0L);
+        assertEquals(1024, buffer.capacity());
+        assertEquals(700, buffer.limit());
+        assertEquals(3 * 1024, pool.unallocatedMemory());
+
+        pool.deallocate(buffer, buffer.capacity());
+        assertEquals(4 * 1024, pool.availableMemory());
+        ByteBuffer recycled = pool.allocate(1000, 0L);
+        assertSame(buffer, recycled);
+        assertEquals(0, recycled.position());
+        assertEquals(1000, recycled.limit());
+        assertThrows(IllegalArgumentException.class, () -> pool.allocate(1025, 0L));
+    }
+
+    @Test
+    public void testExhaustedPoolFailsAfterDeadline() throws InterruptedException {
+        LockFreeBufferPool pool = new LockFreeBufferPool(2 * 1024, 1024, false);
+        ByteBuffer first = pool.allocate(1024, 0L);
+        ByteBuffer odd = pool.allocate(1000, 0L);
+        assertEquals(1000, odd.capacity());
+        assertThrows(RuntimeException.class, () -> pool.allocate(1024, 10L));
+
+        // 非poolableSize的内存块归还为未分配内存, poolableSize的进入free列表
+        pool.deallocate(odd, odd.capacity());
+        pool.deallocate(first, first.capacity());
+        assertEquals(1024, pool.unallocatedMemory());
+        assertEquals(2 * 1024, pool.availableMemory());
+        // 非poolableSize的申请先释放free列表中的内存块
+        assertEquals(2000, pool.allocate(2000, 0L).capacity());
+        assertEquals(2 * 1024 - 2000, pool.availableMemory());
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.data.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 10:40
+ * @description
+ */
+public class TinyLoggerTest {
+    /**
+     * 关闭时通知测试线程日志线程已退出
+     * */
+    private static final class ClosingWriter extends PrintWriter {
+        private final StringWriter out;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        ClosingWriter(StringWriter out){
+            super(out);
+            this.out = out;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closed.countDown();
+        }
+
+        String awaitClosed() throws InterruptedException {
+            assertTrue(closed.await(10, TimeUnit.SECONDS));
+            return out.toString();
+        }
+    }
+
+    @Test
+    public void testLinesFromManyThreads() throws InterruptedException {
+        ClosingWriter writer = new ClosingWriter(new StringWriter());
+        TinyLogger logger = new TinyLogger(16, TinyLogger.FullPolicy.BLOCK, 10L, writer);
+        logger.start();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    logger.info("thread " + id + " message " + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.error("failed", new IllegalStateException("boom"));
+        logger.stop();
+
+        String[] lines = writer.awaitClosed().split(System.lineSeparator());
+        int[] next = new int[threads.length];
+        int infoLines = 0;
+        for (String line : lines) {
+            if (!line.contains(" [INFO] thread ")) {
+                continue;
+            }
+            assertTrue(line.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3} \\[INFO] thread \\d message \\d+"), line);
+            String[] parts = line.substring(line.indexOf("thread ")).split(" ");
+            int id = Integer.parseInt(parts[1]);
+            // 同一线程的日志保持顺序
+            assertEquals(next[id]++, Integer.parseInt(parts[3]));
+            infoLines++;
+        }
+        assertEquals(4000, infoLines);
+        String output = String.join("\n", lines);
+        assertTrue(output.contains(" [ERROR] failed, stack trace: java.lang.IllegalStateException: boom\n\tat "), output);
+        assertThrows(IllegalStateException.class, () -> logger.info("after stop"));
+    }
+
+    @Test
+    public void testDropPolicyWhenFull() throws InterruptedException {
+        ClosingWriter writer = new ClosingWriter(new StringWriter());
+        TinyLogger logger = new TinyLogger(8, TinyLogger.FullPolicy.DROP, 1000L, writer);
+        // 日志线程未启动, 队列满后的日志被丢弃而不阻塞
+        for (int i = 0; i < 20; i++) {
+            logger.warn("message " + i);
+        }
+        logger.start();
+        logger.stop();
+
+        String output = writer.awaitClosed();
+        assertTrue(output.contains(" [WARN] message 7"));
+        assertTrue(!output.contains(" [WARN] message 8"));
+        assertTrue(output.contains(" [WARN] 12 log messages dropped, log queue full"));
+    }
+
+    @Test
+    public void testLevelsAndPlaceholders() throws InterruptedException {
+        ClosingWriter writer = new ClosingWriter(new StringWriter());
+        TinyLogger logger = new TinyLogger(64, TinyLogger.FullPolicy.BLOCK, 1000L, writer);
+        logger.start();
+        AtomicInteger built = new AtomicInteger();
+
+        assertFalse(logger.isDebugEnabled());
+        logger.debug("hidden {}", 1);
+        logger.debug(() -> "hidden " + built.incrementAndGet());
+        logger.info("port: {}", 16666);
+        logger.info("{} of {}", 3, "batches");
+        logger.warn("a={}, b={}, c={}", "x", null, new Object[]{1, new int[0].length});
+        logger.warn("missing {} and {}", "one");
+        logger.error("failed to flush {}", "topic01", new IllegalStateException("disk"));
+        logger.error("cause {}", (Object) new IllegalStateException("inline"));
+
+        logger.setLevel(TinyLogger.LogLevel.DEBUG);
+        logger.debug(() -> "shown " + built.incrementAndGet());
+        logger.setLevel(TinyLogger.LogLevel.ERROR);
+        logger.warn("hidden warn");
+        logger.stop();
+
+        String output = writer.awaitClosed();
+        assertEquals(1, built.get());
+        assertFalse(output.contains("hidden"));
+        assertTrue(output.contains(" [INFO] port: 16666"));
+        assertTrue(output.contains(" [INFO] 3 of batches"));
+        assertTrue(output.contains(" [WARN] a=x, b=null, c=[1, 0]"));
+        assertTrue(output.contains(" [WARN] missing one and {}"));
+        assertTrue(output.contains(" [ERROR] failed to flush topic01, stack trace: java.lang.IllegalStateException: disk"));
+        assertTrue(output.contains(" [ERROR] cause java.lang.IllegalStateException: inline" + System.lineSeparator()));
+        assertTrue(output.contains(" [DEBUG] shown 1"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.data.compress;
+
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 16:20
+ * @description
+ */
+public class CompressionTypeTest {
+    private static final CompressionType[] CODECS = {CompressionType.GZIP, CompressionType.LZ4};
+
+    private static byte[] json(int count){
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append("{\"topic\":\"topic01\",\"level\":\"info\",\"host\":\"node").append(i % 7)
+                    .append("\",\"message\":\"request served in ").append(i % 100).append(" ms\"}");
+        }
+        return Utils.utf8(builder.toString());
+    }
+
+    private static byte[] roundTrip(CompressionType type, byte[] data){
+        // 非零的起始位置
+        byte[] compressed = new byte[3 + type.maxCompressedSize(data.length)];
+        int size = type.compress(data, 0, data.length, compressed, 3);
+        assertTrue(size <= type.maxCompressedSize(data.length));
+
+        ByteBuffer buffer = ByteBuffer.wrap(compressed, 3, size);
+        assertEquals(data.length, CompressionType.uncompressedSize(buffer));
+        ByteBuffer restored = type.decompress(buffer, data.length);
+        assertEquals(3 + size, buffer.position());
+        return restored.array();
+    }
+
+    @Test
+    public void testRoundTrip(){
+        Random random = new Random(42);
+        byte[] incompressible = new byte[100_000];
+        random.nextBytes(incompressible);
+        byte[] run = new byte[70_000];
+        Arrays.fill(run, (byte) 'a');
+        byte[][] inputs = {new byte[0], Utils.utf8("short"), Utils.utf8("abcdefghijklm"), json(1000), incompressible, run};
+
+        for (CompressionType type : CODECS) {
+            for (byte[] input : inputs) {
+                assertArrayEquals(input, roundTrip(type, input), type + " of " + input.length + " bytes");
+            }
+        }
+    }
+
+    @Test
+    public void testJsonCompressionRatio(){
+        byte[] data = json(1000);
+        for (CompressionType type : CODECS) {
+            byte[] compressed = new byte[type.maxCompressedSize(data.length)];
+            int size = type.compress(data, 0, data.length, compressed, 0);
+            assertTrue(size * 3 < data.length, type + " compressed " + data.length + " bytes to " + size);
+        }
+    }
+
+    @Test
+    public void testCorruptData(){
+        byte[] data = json(100);
+        for (CompressionType type : CODECS) {
+            byte[] compressed = new byte[type.maxCompressedSize(data.length)];
+            int size = type.compress(data, 0, data.length, compressed, 0);
+
+            // 截断
+            assertThrows(CorruptCompressedDataException.class, () -> type.decompress(ByteBuffer.wrap(compressed, 0, size - 1), data.length));
+            // 原始长度超过上限
+            assertThrows(CorruptCompressedDataException.class, () -> type.decompress(ByteBuffer.wrap(compressed, 0, size), data.length - 1));
+            // 原始长度与数据不符
+            compressed[3]++;
+            assertThrows(CorruptCompressedDataException.class, () -> type.decompress(ByteBuffer.wrap(compressed, 0, size), data.length + 1));
+        }
+    }
+
+    @Test
+    public void testCodecIds(){
+        for (CompressionType type : CompressionType.values()) {
+            assertEquals(type, CompressionType.forId(type.getId()));
+            assertEquals(type, CompressionType.forName(type.getName().toUpperCase()));
+            assertEquals(type, CompressionType.fromAttributes(0xf8 | type.getId()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompressionType.forId(7));
+    }
+}
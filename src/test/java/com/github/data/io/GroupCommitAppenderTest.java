@@ -0,0 +1,143 @@
+package com.github.data.io;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 10:20
+ * @description
+ */
+public class GroupCommitAppenderTest {
+    @TempDir
+    File dir;
+
+    private final GroupCommitAppender appender = new GroupCommitAppender(16, FsyncPolicy.EVERY_BATCH, 0L);
+
+    @AfterEach
+    public void tearDown(){
+        appender.close();
+    }
+
+    /**
+     * 记录回调的完成顺序
+     * */
+    private static final class Completions {
+        private final List<String> completions = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch done;
+
+        Completions(int expected){
+            this.done = new CountDownLatch(expected);
+        }
+
+        AppendCallback named(String name){
+            return new AppendCallback() {
+                @Override
+                public void onCompletion(long offset, Exception exception) {
+                    completions.add(name + ":" + (exception == null ? offset : exception.getClass().getSimpleName()));
+                    done.countDown();
+                }
+            };
+        }
+
+        List<String> await() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            return completions;
+        }
+    }
+
+    /**
+     * 阻塞提交线程, 让之后的请求在同一次提交中被处理
+     * */
+    private CountDownLatch blockCommitThread(TopicLog log) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        appender.append(log, ByteBuffer.wrap(Utils.utf8("block")), (offset, exception) -> {
+            blocked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static ByteBuffer record(String value){
+        return ByteBuffer.wrap(Utils.utf8(value));
+    }
+
+    @Test
+    public void testCallbacksCompleteInArrivalOrderAcrossTopics() throws IOException, InterruptedException {
+        try (TopicLog orders = new TopicLog(new File(dir, "orders"), new LogConfig());
+             TopicLog payments = new TopicLog(new File(dir, "payments"), new LogConfig())) {
+            CountDownLatch release = blockCommitThread(orders);
+            Completions callback = new Completions(4);
+            appender.append(payments, record("p0"), callback.named("p0"));
+            appender.append(orders, record("o1"), callback.named("o1"));
+            appender.append(payments, record("p1"), callback.named("p1"));
+            appender.append(orders, record("o2"), callback.named("o2"));
+            release.countDown();
+
+            assertEquals(Arrays.asList("p0:0", "o1:1", "p1:1", "o2:2"), callback.await());
+        }
+    }
+
+    @Test
+    public void testIoFailureFailsOnlyTheRequestsOfItsLog() throws IOException, InterruptedException {
+        try (TopicLog healthy = new TopicLog(new File(dir, "healthy"), new LogConfig())) {
+            TopicLog closed = new TopicLog(new File(dir, "closed"), new LogConfig());
+            closed.close();
+            Completions callback = new Completions(3);
+            appender.append(closed, record("c0"), callback.named("c0"));
+            appender.append(healthy, record("h0"), callback.named("h0"));
+            appender.append(closed, record("c1"), callback.named("c1"));
+
+            List<String> completions = callback.await();
+            assertTrue(completions.contains("h0:0"));
+            assertTrue(completions.contains("c0:ClosedChannelException"));
+            assertTrue(completions.contains("c1:ClosedChannelException"));
+        }
+    }
+
+    @Test
+    public void testRuntimeFailureCompletesEveryCallback() throws IOException, InterruptedException {
+        try (TopicLog healthy = new TopicLog(new File(dir, "healthy"), new LogConfig());
+             TopicLog broken = new TopicLog(new File(dir, "broken"), new LogConfig())) {
+            CountDownLatch release = blockCommitThread(healthy);
+            Completions callback = new Completions(3);
+            // 记录数为0的batch使TopicLog.append抛出IllegalArgumentException
+            ByteBuffer empty = BufferPoolAllocator.getInstance().allocate(8);
+            empty.limit(0);
+            appender.appendFramed(broken, empty, 0, callback.named("b0"));
+            appender.append(healthy, record("h1"), callback.named("h1"));
+            appender.append(healthy, record("h2"), callback.named("h2"));
+            release.countDown();
+
+            assertEquals(Arrays.asList("b0:IllegalArgumentException", "h1:1", "h2:2"), callback.await());
+
+            List<String> values = new ArrayList<>();
+            healthy.read(0, Integer.MAX_VALUE, (offset, value) -> values.add(Utils.utf8(value)));
+            assertEquals(Arrays.asList("block", "h1", "h2"), values);
+            assertEquals(0L, broken.logEndOffset());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.data.io;
+
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 11:05
+ * @description
+ */
+public class MessageRouteCacheTest {
+    private static ByteBuffer key(String topic){
+        return ByteBuffer.wrap(Utils.utf8("{\"topic\":\"" + topic + "\", \"message_process_policy\":\"message_queue\"}"));
+    }
+
+    private static Function<ByteBuffer, MessageRoute> resolver(AtomicInteger resolved){
+        return key -> {
+            resolved.incrementAndGet();
+            return new MessageRoute(MessageRoute.MESSAGE_QUEUE_POLICY, Utils.utf8(key), null);
+        };
+    }
+
+    @Test
+    public void testHitsAndMisses(){
+        MessageRouteCache cache = new MessageRouteCache(16);
+        AtomicInteger resolved = new AtomicInteger();
+
+        MessageRoute first = cache.get(key("topic01"), resolver(resolved));
+        ByteBuffer key = key("topic01");
+        int position = key.position();
+        MessageRoute second = cache.get(key, resolver(resolved));
+
+        assertSame(first, second);
+        assertEquals(position, key.position());
+        assertEquals(1, resolved.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLookupByDirectReadOnlyView(){
+        MessageRouteCache cache = new MessageRouteCache(16);
+        AtomicInteger resolved = new AtomicInteger();
+        MessageRoute route = cache.get(key("topic01"), resolver(resolved));
+
+        // 请求中的key是帧缓冲区的一段只读视图
+        ByteBuffer frame = ByteBuffer.allocateDirect(256);
+        frame.putInt(7);
+        frame.put(key("topic01"));
+        frame.putInt(9);
+        frame.flip();
+        frame.position(4).limit(frame.limit() - 4);
+
+        assertSame(route, cache.get(frame.slice().asReadOnlyBuffer(), resolver(resolved)));
+        assertEquals(1, resolved.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction(){
+        MessageRouteCache cache = new MessageRouteCache(2);
+        AtomicInteger resolved = new AtomicInteger();
+        cache.get(key("topic01"), resolver(resolved));
+        cache.get(key("topic02"), resolver(resolved));
+        // topic01最近被访问, 淘汰topic02
+        cache.get(key("topic01"), resolver(resolved));
+        cache.get(key("topic03"), resolver(resolved));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        cache.get(key("topic01"), resolver(resolved));
+        assertEquals(3, resolved.get());
+        cache.get(key("topic02"), resolver(resolved));
+        assertEquals(4, resolved.get());
+    }
+
+    @Test
+    public void testLongKeysAndDisabledCache(){
+        AtomicInteger resolved = new AtomicInteger();
+        MessageRouteCache cache = new MessageRouteCache(16);
+        ByteBuffer longKey = ByteBuffer.allocate(MessageRouteCache.MAX_CACHED_KEY_BYTES + 1);
+        cache.get(longKey, resolver(resolved));
+        cache.get(longKey, resolver(resolved));
+        assertEquals(2, resolved.get());
+        assertEquals(0, cache.size());
+
+        MessageRouteCache disabled = new MessageRouteCache(0);
+        disabled.get(key("topic01"), resolver(resolved));
+        disabled.get(key("topic01"), resolver(resolved));
+        assertEquals(4, resolved.get());
+        assertEquals(2, disabled.misses());
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.data.io;
+
+import com.github.data.compress.CompressionType;
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/18 16:30
+ * @description
+ */
+public class TopicLogTest {
+    @TempDir
+    File dir;
+
+    private static List<byte[]> records(int from, int count){
+        List<byte[]> records = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            records.add(Utils.utf8("record-" + i));
+        }
+        return records;
+    }
+
+    private static List<String> readAll(TopicLog log, long startOffset) throws IOException {
+        List<String> values = new ArrayList<>();
+        log.read(startOffset, Integer.MAX_VALUE, (offset, record) -> values.add(offset + ":" + Utils.utf8(record)));
+        return values;
+    }
+
+    @Test
+    public void testOffsetsAreMonotonicAndSurviveReopen() throws IOException {
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(0L, log.append(records(0, 3)));
+            assertEquals(3L, log.append(records(3, 2)));
+            assertEquals(5L, log.logEndOffset());
+        }
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(5L, log.logEndOffset());
+            assertEquals(5L, log.append(records(5, 1)));
+            assertEquals(Arrays.asList("4:record-4", "5:record-5"), readAll(log, 4));
+        }
+    }
+
+    @Test
+    public void testRollAndSeekAcrossSegments() throws IOException {
+        try (TopicLog log = new TopicLog(dir, new LogConfig(256, LogConfig.DEFAULT_SEGMENT_MS, 32))) {
+            for (int i = 0; i < 100; i++) {
+                log.append(records(i, 1));
+            }
+            assertTrue(log.segmentCount() > 1);
+            assertTrue(new File(dir, LogSegment.fileName(0) + LogSegment.INDEX_FILE_SUFFIX).exists());
+
+            List<String> values = new ArrayList<>();
+            long next = log.read(57, 3, (offset, record) -> values.add(offset + ":" + Utils.utf8(record)));
+            assertEquals(Arrays.asList("57:record-57", "58:record-58", "59:record-59"), values);
+            assertEquals(60L, next);
+            assertEquals(100, readAll(log, 0).size());
+        }
+    }
+
+    @Test
+    public void testAppendBuffersHoldingManyRecords() throws IOException {
+        ByteBuffer first = ByteBuffer.allocate(64);
+        for (byte[] record : records(0, 3)) {
+            first.putInt(record.length).put(record);
+        }
+        first.flip();
+        ByteBuffer second = TopicLog.frameRecord(ByteBuffer.wrap(Utils.utf8("record-3")), ByteBuffer.allocate(TopicLog.framedSize(8)));
+
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(0L, log.append(new ByteBuffer[]{first, second}, 2, 4));
+            assertEquals(4L, log.logEndOffset());
+            assertEquals(Arrays.asList("2:record-2", "3:record-3"), readAll(log, 2));
+        }
+    }
+
+    @Test
+    public void testRecoveryTruncatesPartialBatch() throws IOException {
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            log.append(records(0, 2));
+            log.append(records(2, 2));
+        }
+        File logFile = new File(dir, LogSegment.fileName(0) + LogSegment.LOG_FILE_SUFFIX);
+        long validSize = logFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            // 模拟写入一半时宕机
+            file.setLength(validSize - 3);
+        }
+
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(2L, log.logEndOffset());
+            assertEquals(Arrays.asList("0:record-0", "1:record-1"), readAll(log, 0));
+            assertEquals(2L, log.append(records(9, 1)));
+            assertEquals(Arrays.asList("2:record-9"), readAll(log, 2));
+        }
+    }
+
+    @Test
+    public void testRecoveryTruncatesAtFirstCrcMismatch() throws IOException {
+        long secondBatchPosition;
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            log.append(records(0, 2));
+            secondBatchPosition = new File(dir, LogSegment.fileName(0) + LogSegment.LOG_FILE_SUFFIX).length();
+            log.append(records(2, 2));
+            log.append(records(4, 2));
+        }
+        File logFile = new File(dir, LogSegment.fileName(0) + LogSegment.LOG_FILE_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            // 第二个batch的最后一个字节损坏, 长度等字段仍然合法
+            long corrupted = secondBatchPosition + LogSegment.BATCH_HEADER_SIZE + TopicLog.framedSize(8) * 2 - 1;
+            file.seek(corrupted);
+            int value = file.read();
+            file.seek(corrupted);
+            file.write(value ^ 0x01);
+        }
+
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(2L, log.logEndOffset());
+            assertEquals(secondBatchPosition, logFile.length());
+            assertEquals(Arrays.asList("0:record-0", "1:record-1"), readAll(log, 0));
+        }
+    }
+
+    @Test
+    public void testCompressedBatches() throws IOException {
+        LogConfig config = new LogConfig(LogConfig.DEFAULT_SEGMENT_BYTES, LogConfig.DEFAULT_SEGMENT_MS, 32,
+                FsyncPolicy.INTERVAL, LogConfig.DEFAULT_FSYNC_INTERVAL_MS, CompressionType.LZ4);
+        List<byte[]> json = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            json.add(Utils.utf8("{\"topic\":\"t\",\"level\":\"info\",\"message\":\"request served\",\"seq\":" + i + "}"));
+        }
+        int uncompressedSize = LogSegment.BATCH_HEADER_SIZE;
+        for (byte[] record : json) {
+            uncompressedSize += TopicLog.framedSize(record.length);
+        }
+
+        try (TopicLog log = new TopicLog(dir, config)) {
+            assertEquals(0L, log.append(json));
+            // 不可压缩的短batch按原样存储
+            assertEquals(200L, log.append(records(0, 1)));
+        }
+        File logFile = new File(dir, LogSegment.fileName(0) + LogSegment.LOG_FILE_SUFFIX);
+        assertTrue(logFile.length() < uncompressedSize / 3);
+
+        // 压缩与否可以逐batch变化, 未压缩的日志也能继续读取
+        try (TopicLog log = new TopicLog(dir, new LogConfig())) {
+            assertEquals(201L, log.logEndOffset());
+            assertEquals(201L, log.append(records(1, 1)));
+            List<String> values = readAll(log, 198);
+            assertEquals(Arrays.asList("198:" + Utils.utf8(ByteBuffer.wrap(json.get(198))), "199:" + Utils.utf8(ByteBuffer.wrap(json.get(199))),
+                    "200:record-0", "201:record-1"), values);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.data.json;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 20:40
+ * @description
+ */
+public class JsonBufferWriterTest {
+    private static String write(Consumer<JsonBufferWriter> body){
+        JsonBufferWriter writer = new JsonBufferWriter(BufferPoolAllocator.getInstance(), 16, 0);
+        body.accept(writer);
+        ByteBuffer buffer = writer.finish();
+        try {
+            return Utils.utf8(buffer);
+        } finally {
+            BufferPoolAllocator.getInstance().release(buffer, buffer.capacity());
+        }
+    }
+
+    @Test
+    public void testStreamingWrite(){
+        String json = write(w -> w.beginObject()
+                .name("topic").value("topic01")
+                .name("count").value(42L)
+                .name("ok").value(true)
+                .name("none").nullValue()
+                .name("items").beginArray().value(1L).beginObject().endObject().beginArray().endArray().value("x").endArray()
+                .name("text").value("tab\tquote\" \\ \u0001 é 中 😀")
+                .endObject());
+
+        assertEquals("{\"topic\":\"topic01\",\"count\":42,\"ok\":true,\"none\":null,\"items\":[1,{},[],\"x\"],"
+                + "\"text\":\"tab\\tquote\\\" \\\\ \\u0001 é 中 😀\"}", json);
+        assertEquals("tab\tquote\" \\ \u0001 é 中 😀", Json.parse(json).asObject().getString("text"));
+    }
+
+    @Test
+    public void testNumbers(){
+        assertEquals("[0,-1,9223372036854775807,-9223372036854775808]",
+                write(w -> w.beginArray().value(0L).value(-1L).value(Long.MAX_VALUE).value(Long.MIN_VALUE).endArray()));
+        assertEquals("[1.5,-0.1,3,0.000123,123456.789]",
+                write(w -> w.beginArray().value(1.5).value(-0.1).value(3.0).value(0.000123).value(123456.789).endArray()));
+
+        double[] values = {0.1 + 0.2, Math.PI, -1e-12, 1e300, 4.9e-324, 1234567.0001, 2.5e15, 0.3};
+        for (double value : values) {
+            String json = write(w -> w.value(value));
+            assertEquals(value, Double.parseDouble(json), json);
+        }
+        assertThrows(IllegalStateException.class, () -> write(w -> w.value(Double.NaN)));
+    }
+
+    @Test
+    public void testWriteTreeAndGrow(){
+        JsonObject object = Json.parse("{\"a\": [1, 2.50, \"s\"], \"b\": {\"c\": false}}").asObject();
+        assertEquals("{\"a\":[1,2.50,\"s\"],\"b\":{\"c\":false}}", write(w -> w.write(object)));
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append(i % 2 == 0 ? 'a' : 'é');
+        }
+        String json = write(w -> w.beginArray().value(large.toString()).endArray());
+        assertEquals(large.toString(), Json.parse(json).asArray().get(0).asString());
+    }
+
+    @Test
+    public void testReservedHeaderAndMisuse(){
+        JsonBufferWriter writer = new JsonBufferWriter(BufferPoolAllocator.getInstance(), 64, 8);
+        writer.beginObject().name("k").value(1L).endObject();
+        ByteBuffer buffer = writer.finish();
+        assertEquals(0, buffer.position());
+        buffer.putInt(0, buffer.limit() - 8);
+        assertEquals(7, buffer.getInt(0));
+        buffer.position(8);
+        assertEquals("{\"k\":1}", Utils.utf8(buffer));
+        BufferPoolAllocator.getInstance().release(buffer, buffer.capacity());
+
+        JsonBufferWriter invalid = new JsonBufferWriter();
+        invalid.beginObject();
+        assertThrows(IllegalStateException.class, () -> invalid.value(1L));
+        assertThrows(IllegalStateException.class, invalid::endArray);
+        assertThrows(IllegalStateException.class, invalid::finish);
+        invalid.release();
+    }
+}
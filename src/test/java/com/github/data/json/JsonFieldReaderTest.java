@@ -0,0 +1,86 @@
+package com.github.data.json;
+
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/22 16:20
+ * @description
+ */
+public class JsonFieldReaderTest {
+    private static final String DOCUMENT = "{ \"payload\": {\"items\": [1, {\"topic\": \"inner\"}, \"]}\"], \"text\": \"a\\\"b\"},"
+            + " \"topic\" : \"topic01\", \"seq\": -9223372036854775808, \"ratio\": 1.5e2, \"ok\": true, \"none\": null,"
+            + " \"meta\": {\"host\": \"h\\u00e9\", \"port\": 8080} }";
+
+    private static final byte[] TOPIC = JsonFieldReader.name("topic");
+
+    @Test
+    public void testFindFieldsAndPaths(){
+        JsonFieldReader reader = new JsonFieldReader(Utils.utf8(DOCUMENT));
+
+        assertTrue(reader.find(TOPIC));
+        assertEquals(JsonFieldReader.ValueType.STRING, reader.valueType());
+        assertEquals("topic01", reader.stringValue());
+        assertTrue(reader.stringEquals(Utils.utf8("topic01")));
+        assertEquals("topic01", Utils.utf8(reader.stringSlice()));
+
+        assertTrue(reader.find(JsonFieldReader.name("seq")));
+        assertEquals(Long.MIN_VALUE, reader.longValue());
+        assertTrue(reader.find(JsonFieldReader.name("ratio")));
+        assertEquals(150.0, reader.doubleValue());
+        assertThrows(JsonException.class, reader::longValue);
+        assertTrue(reader.find(JsonFieldReader.name("ok")));
+        assertTrue(reader.booleanValue());
+        assertTrue(reader.find(JsonFieldReader.name("none")));
+        assertTrue(reader.isNull());
+
+        assertTrue(reader.find(JsonFieldReader.name("meta"), JsonFieldReader.name("port")));
+        assertEquals(8080, reader.longValue());
+        assertTrue(reader.find(JsonFieldReader.name("meta"), JsonFieldReader.name("host")));
+        assertTrue(reader.hasEscapes());
+        assertEquals("hé", reader.stringValue());
+        assertTrue(reader.stringEquals(Utils.utf8("hé")));
+
+        assertTrue(reader.find(JsonFieldReader.name("payload"), JsonFieldReader.name("text")));
+        assertEquals("a\"b", reader.stringValue());
+        assertTrue(reader.find(JsonFieldReader.name("payload"), JsonFieldReader.name("items")));
+        assertEquals("[1, {\"topic\": \"inner\"}, \"]}\"]", Utils.utf8(reader.valueSlice()));
+
+        assertFalse(reader.find(JsonFieldReader.name("missing")));
+        assertFalse(reader.find(TOPIC, JsonFieldReader.name("name")));
+        assertThrows(IllegalStateException.class, reader::valueSlice);
+    }
+
+    @Test
+    public void testDirectBufferRegion(){
+        byte[] document = Utils.utf8("{\"topic\":\"tüpic\"}");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(document.length + 8);
+        buffer.putInt(1).put(document).putInt(2);
+        buffer.position(4);
+        buffer.limit(4 + document.length);
+
+        JsonFieldReader reader = new JsonFieldReader(buffer.slice());
+        assertTrue(reader.find(TOPIC));
+        assertEquals("tüpic", reader.stringValue());
+        assertEquals(4, buffer.position());
+    }
+
+    @Test
+    public void testMalformedDocuments(){
+        assertFalse(new JsonFieldReader(Utils.utf8("[1, 2]")).find(TOPIC));
+        assertThrows(JsonException.class, () -> new JsonFieldReader(Utils.utf8("{\"a\": [1, 2}")).find(TOPIC));
+        assertThrows(JsonException.class, () -> new JsonFieldReader(Utils.utf8("{\"a\": \"open}")).find(TOPIC));
+        assertThrows(JsonException.class, () -> new JsonFieldReader(Utils.utf8("{\"a\" 1}")).find(TOPIC));
+        assertThrows(JsonException.class, () -> new JsonFieldReader(Utils.utf8("{\"a\": tru}")).find(TOPIC));
+        assertThrows(JsonException.class, () -> new JsonFieldReader(Utils.utf8("{\"a\": 1 \"topic\": 2}")).find(TOPIC));
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.data.network.handler;
+
+import com.github.data.common.BufferPoolAllocator;
+import com.github.data.network.reactor.AbstractNioChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 17:10
+ * @description
+ */
+public class MessageAckBatcherTest {
+
+    private Selector selector;
+    private Pipe pipe;
+    private SelectionKey key;
+    private CapturingChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        key = pipe.source().register(selector, SelectionKey.OP_READ);
+        channel = new CapturingChannel(pipe);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        pipe.sink().close();
+        pipe.source().close();
+        selector.close();
+    }
+
+    private static byte[] frame(int i){
+        return new byte[]{(byte) 0x7F, (byte) (i >>> 8), (byte) i};
+    }
+
+    private static byte[] concat(byte[]... frames){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            out.write(frame, 0, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] successFrame(){
+        new MessageAckBatcher(channel, key).respond(true);
+        return channel.writes.remove(0);
+    }
+
+    private byte[] failedFrame(){
+        new MessageAckBatcher(channel, key).respond(false);
+        return channel.writes.remove(0);
+    }
+
+    @Test
+    public void testRespondWaitsForEarlierMessageSlots(){
+        byte[] success = successFrame();
+        byte[] failed = failedFrame();
+        MessageAckBatcher batcher = new MessageAckBatcher(channel, key);
+
+        batcher.messageCallback();
+        batcher.respond(frame(1));
+        batcher.messageCallback();
+        // 最早的槽位尚未完成追加
+        assertTrue(channel.writes.isEmpty());
+
+        batcher.onCompletion(0L, null);
+        // 完成只填充槽位, 组提交结束后才写出
+        assertTrue(channel.writes.isEmpty());
+        batcher.onBatchCompleted();
+        assertEquals(1, channel.writes.size());
+        assertArrayEquals(concat(success, frame(1)), channel.writes.remove(0));
+
+        batcher.respond(frame(3));
+        assertTrue(channel.writes.isEmpty());
+        batcher.onCompletion(1L, new IOException("append failed"));
+        batcher.onBatchCompleted();
+        assertArrayEquals(concat(failed, frame(3)), channel.writes.remove(0));
+
+        // 之前的槽位均已写出, 直接写出
+        batcher.respond(frame(4));
+        assertArrayEquals(frame(4), channel.writes.remove(0));
+    }
+
+    @Test
+    public void testCompletionFillsOldestMessageSlotAcrossResponses(){
+        byte[] success = successFrame();
+        byte[] failed = failedFrame();
+        MessageAckBatcher batcher = new MessageAckBatcher(channel, key);
+
+        batcher.messageCallback();
+        batcher.respond(frame(1));
+        batcher.messageCallback();
+        batcher.respond(frame(3));
+        batcher.onCompletion(0L, null);
+        batcher.onCompletion(1L, new IOException("append failed"));
+        batcher.onBatchCompleted();
+        assertEquals(1, channel.writes.size());
+        assertArrayEquals(concat(success, frame(1), failed, frame(3)), channel.writes.remove(0));
+    }
+
+    @Test
+    public void testSlotsGrowWhileWrappedAndKeepTheirOrder(){
+        byte[] success = successFrame();
+        MessageAckBatcher batcher = new MessageAckBatcher(channel, key);
+
+        // 先写出一部分, 使环形数组的起点不在下标0
+        for (int i = 0; i < 40; i++) {
+            batcher.respond(frame(i));
+        }
+        assertEquals(40, channel.writes.size());
+        channel.writes.clear();
+
+        batcher.messageCallback();
+        byte[][] expected = new byte[201][];
+        expected[0] = success;
+        for (int i = 1; i <= 200; i++) {
+            batcher.respond(frame(i));
+            expected[i] = frame(i);
+        }
+        // 201个槽位超过初始的64个, 数组扩容两次
+        assertTrue(channel.writes.isEmpty());
+
+        batcher.onCompletion(0L, null);
+        batcher.onBatchCompleted();
+        assertEquals(1, channel.writes.size());
+        assertArrayEquals(concat(expected), channel.writes.remove(0));
+    }
+
+    @Test
+    public void testResponsesOfClosedConnectionAreDropped(){
+        MessageAckBatcher batcher = new MessageAckBatcher(channel, key);
+        batcher.messageCallback();
+        batcher.respond(frame(1));
+        key.cancel();
+        batcher.onCompletion(0L, null);
+        batcher.onBatchCompleted();
+        batcher.respond(frame(2));
+        assertTrue(channel.writes.isEmpty());
+    }
+
+    /**
+     * 记录写出的数据并归还内存块
+     */
+    private static final class CapturingChannel extends AbstractNioChannel {
+        private final List<byte[]> writes = new ArrayList<>();
+
+        CapturingChannel(Pipe pipe) {
+            super(null, pipe.source());
+        }
+
+        @Override
+        public int getInterestedOps() {
+            return SelectionKey.OP_READ;
+        }
+
+        @Override
+        public void bind() {
+        }
+
+        @Override
+        public Object read(SelectionKey key) {
+            return null;
+        }
+
+        @Override
+        protected void doWrite(Object pendingWrite, SelectionKey key) {
+        }
+
+        @Override
+        public void write(Object data, SelectionKey key) {
+            ByteBuffer buffer = (ByteBuffer) data;
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            writes.add(bytes);
+            BufferPoolAllocator.getInstance().release(buffer, buffer.capacity());
+        }
+    }
+}
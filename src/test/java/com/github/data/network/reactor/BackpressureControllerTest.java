@@ -0,0 +1,214 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 18:10
+ * @description
+ */
+public class BackpressureControllerTest {
+
+    private Selector selector;
+    private final List<Pipe> pipes = new ArrayList<>();
+    private QueueDispatcher dispatcher;
+    private BackpressureController controller;
+    private NioReactor reactor;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        dispatcher = new QueueDispatcher();
+        // 在途帧4/2, 待写字节64/16, 分发器队列8/4
+        controller = new BackpressureController(4, 2, 64, 16, 8, 4);
+        reactor = new NioReactor(dispatcher, 0, controller);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException, InterruptedException {
+        for (Pipe pipe : pipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        selector.close();
+        reactor.stop();
+    }
+
+    private ChannelContext connection(int queue) throws IOException {
+        Pipe pipe = Pipe.open();
+        pipes.add(pipe);
+        pipe.source().configureBlocking(false);
+        SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+        ChannelContext context = new ChannelContext(null, null);
+        key.attach(context);
+        context.setRegistration(null, key);
+        dispatcher.queues.put(key, queue);
+        return context;
+    }
+
+    @Test
+    public void testInflightFramesSuspendAboveHighAndResumeAtLow() throws IOException {
+        ChannelContext context = connection(0);
+        SelectionKey key = context.getKey();
+
+        controller.onFramesDispatched(context, key, 4);
+        assertFalse(context.isReadSuspended());
+        controller.onFramesDispatched(context, key, 1);
+        assertTrue(context.isReadSuspended());
+        assertEquals(1, controller.suspendedConnections());
+        assertEquals(1, controller.suspensions());
+
+        controller.onFramesHandled(context, key, 2);
+        assertTrue(context.isReadSuspended());
+        controller.onFramesHandled(context, key, 1);
+        assertFalse(context.isReadSuspended());
+        assertEquals(0, controller.suspendedConnections());
+        assertEquals(1, controller.resumptions());
+    }
+
+    @Test
+    public void testPendingWritesKeepConnectionSuspendedUntilLow() throws IOException {
+        ChannelContext context = connection(0);
+        SelectionKey key = context.getKey();
+
+        controller.onWriteQueued(context, 100);
+        controller.onFramesDispatched(context, key, 1);
+        assertTrue(context.isReadSuspended());
+        controller.onFramesHandled(context, key, 1);
+        // 待写字节仍高于低水位
+        assertTrue(context.isReadSuspended());
+        controller.onBytesWritten(context, key, 60);
+        assertTrue(context.isReadSuspended());
+        controller.onBytesWritten(context, key, 24);
+        assertFalse(context.isReadSuspended());
+        assertEquals(1, controller.resumptions());
+    }
+
+    @Test
+    public void testDispatcherQueueFallingEdgeResumesItsConnectionsOnly() throws IOException {
+        ChannelContext first = connection(0);
+        ChannelContext second = connection(0);
+        ChannelContext other = connection(1);
+        dispatcher.pending[0] = 9;
+        dispatcher.pending[1] = 9;
+        assertTrue(controller.isDispatcherSaturated(first.getKey()));
+
+        controller.onFramesDispatched(first, first.getKey(), 1);
+        controller.onFramesDispatched(second, second.getKey(), 1);
+        controller.onFramesDispatched(other, other.getKey(), 1);
+        assertTrue(first.isReadSuspended());
+        assertTrue(second.isReadSuspended());
+        assertTrue(other.isReadSuspended());
+        assertEquals(3, controller.suspendedConnections());
+
+        // 队列仍高于低水位
+        dispatcher.pending[0] = 5;
+        controller.onFramesHandled(first, first.getKey(), 1);
+        assertTrue(first.isReadSuspended());
+        assertTrue(second.isReadSuspended());
+
+        // 回落到低水位, 同一队列上暂停的连接全部恢复
+        dispatcher.pending[0] = 4;
+        assertFalse(controller.isDispatcherSaturated(first.getKey()));
+        controller.onFramesHandled(second, second.getKey(), 1);
+        assertFalse(first.isReadSuspended());
+        assertFalse(second.isReadSuspended());
+        assertTrue(other.isReadSuspended());
+        assertEquals(1, controller.suspendedConnections());
+
+        dispatcher.pending[1] = 0;
+        controller.onFramesHandled(other, other.getKey(), 1);
+        assertFalse(other.isReadSuspended());
+        assertEquals(0, controller.suspendedConnections());
+        assertEquals(3, controller.resumptions());
+    }
+
+    @Test
+    public void testClosedConnectionIsForgotten() throws IOException {
+        ChannelContext context = connection(1);
+        controller.onFramesDispatched(context, context.getKey(), 5);
+        assertEquals(1, controller.suspendedConnections());
+        controller.onClosed(context);
+        assertEquals(0, controller.suspendedConnections());
+    }
+
+    @Test
+    public void testHighWatermarkIsKeptBelowDispatcherCapacity() throws IOException {
+        dispatcher.capacity = 8;
+        BackpressureController bounded = new BackpressureController(4, 2, 64, 16, 100, 50);
+        bounded.bind(reactor, dispatcher);
+        ChannelContext context = connection(0);
+        // 高水位降为6, 低水位降为3
+        dispatcher.pending[0] = 6;
+        assertFalse(bounded.isDispatcherSaturated(context.getKey()));
+        dispatcher.pending[0] = 7;
+        assertTrue(bounded.isDispatcherSaturated(context.getKey()));
+
+        bounded.onFramesDispatched(context, context.getKey(), 1);
+        assertTrue(context.isReadSuspended());
+        dispatcher.pending[0] = 4;
+        bounded.onFramesHandled(context, context.getKey(), 1);
+        assertTrue(context.isReadSuspended());
+        dispatcher.pending[0] = 3;
+        bounded.onFramesHandled(context, context.getKey(), 0);
+        assertFalse(context.isReadSuspended());
+    }
+
+    /**
+     * 两个队列的分发器, 每个队列的待处理事件数由测试设定
+     */
+    private static final class QueueDispatcher implements Dispatcher {
+        private final Map<SelectionKey, Integer> queues = new HashMap<>();
+        private final int[] pending = new int[2];
+        private int capacity = Integer.MAX_VALUE;
+
+        @Override
+        public void onChannelReadEvent(AbstractNioChannel channel, Object readObject, SelectionKey key) {
+        }
+
+        @Override
+        public int pendingEvents() {
+            return pending[0] + pending[1];
+        }
+
+        @Override
+        public int pendingEvents(SelectionKey key) {
+            return pending[queueOf(key)];
+        }
+
+        @Override
+        public int pendingEventsCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public int queueCount() {
+            return pending.length;
+        }
+
+        @Override
+        public int queueOf(SelectionKey key) {
+            return queues.get(key);
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
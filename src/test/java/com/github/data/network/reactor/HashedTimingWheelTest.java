@@ -0,0 +1,109 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 16:40
+ * @description
+ */
+public class HashedTimingWheelTest {
+
+    @Test
+    public void testTasksRunOnTheirTickNeverEarly(){
+        HashedTimingWheel wheel = new HashedTimingWheel(10,8,1000);
+        List<String> fired = new ArrayList<>();
+        wheel.add(HashedTimingWheel.newTimeout(() -> fired.add("a"),1025));
+        wheel.add(HashedTimingWheel.newTimeout(() -> fired.add("b"),1010));
+        // 超过一圈(80ms)的任务
+        Timeout c = HashedTimingWheel.newTimeout(() -> fired.add("c"),1195);
+        wheel.add(c);
+        assertEquals(3,wheel.size());
+        assertEquals(0,wheel.nextTickDelayMs(1000));
+
+        wheel.advance(1009);
+        assertTrue(fired.isEmpty());
+        wheel.advance(1010);
+        assertEquals(Arrays.asList("b"),fired);
+        wheel.advance(1029);
+        assertEquals(Arrays.asList("b"),fired);
+        wheel.advance(1030);
+        assertEquals(Arrays.asList("b","a"),fired);
+        assertEquals(5,wheel.nextTickDelayMs(1035));
+
+        // 同一槽位经过两圈仍未到期
+        wheel.advance(1199);
+        assertEquals(Arrays.asList("b","a"),fired);
+        assertFalse(c.isExpired());
+        wheel.advance(1200);
+        assertEquals(Arrays.asList("b","a","c"),fired);
+        assertTrue(c.isExpired());
+        assertEquals(0,wheel.size());
+        assertEquals(-1,wheel.nextTickDelayMs(1200));
+    }
+
+    @Test
+    public void testCancelledTasksNeverRun(){
+        HashedTimingWheel wheel = new HashedTimingWheel(10,8,0);
+        List<String> fired = new ArrayList<>();
+        Timeout a = HashedTimingWheel.newTimeout(() -> fired.add("a"),20);
+        Timeout b = HashedTimingWheel.newTimeout(() -> fired.add("b"),20);
+        wheel.add(a);
+        wheel.add(b);
+
+        assertTrue(a.cancel());
+        assertFalse(a.cancel());
+        assertTrue(a.isCancelled());
+        wheel.advance(20);
+        assertEquals(Arrays.asList("b"),fired);
+        assertFalse(b.cancel());
+        assertEquals(0,wheel.size());
+
+        // 已取消的任务不再加入
+        Timeout d = HashedTimingWheel.newTimeout(() -> fired.add("d"),30);
+        d.cancel();
+        wheel.add(d);
+        assertEquals(0,wheel.size());
+    }
+
+    @Test
+    public void testTasksAddedByTasksRunOnLaterTicks(){
+        HashedTimingWheel wheel = new HashedTimingWheel(10,8,0);
+        List<Long> fired = new ArrayList<>();
+        long[] now = {0};
+        Runnable[] task = new Runnable[1];
+        task[0] = () -> {
+            fired.add(now[0]);
+            if (fired.size() < 3) {
+                // 已过期的截止时间落在下一个tick
+                wheel.add(HashedTimingWheel.newTimeout(task[0],now[0]));
+            }
+        };
+        wheel.add(HashedTimingWheel.newTimeout(task[0],10));
+
+        for (now[0] = 0; now[0] <= 100; now[0] += 10) {
+            wheel.advance(now[0]);
+        }
+        assertEquals(Arrays.asList(10L,20L,30L),fired);
+        assertEquals(0,wheel.size());
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTheWheel(){
+        HashedTimingWheel wheel = new HashedTimingWheel(10,8,0);
+        List<String> fired = new ArrayList<>();
+        wheel.add(HashedTimingWheel.newTimeout(() -> { throw new IllegalStateException("boom"); },10));
+        wheel.add(HashedTimingWheel.newTimeout(() -> fired.add("a"),10));
+        wheel.advance(10);
+        assertEquals(Arrays.asList("a"),fired);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/16 17:05
+ * @description
+ */
+public class LengthFieldFrameDecoderTest {
+
+    private static ByteBuffer frames(int... bodyLengths){
+        int total = 0;
+        for (int len : bodyLengths) {
+            total += LengthFieldFrameDecoder.FRAME_HEADER_SIZE + len;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (int i = 0; i < bodyLengths.length; i++) {
+            buffer.putInt(bodyLengths[i]);
+            buffer.putInt(i);
+            for (int j = 0; j < bodyLengths[i]; j++) {
+                buffer.put((byte) j);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testPipelinedFrames() throws IOException {
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder();
+        List<ByteBuffer> out = new ArrayList<>();
+        decoder.decode(frames(3, 0, 10), out);
+
+        assertEquals(3, out.size());
+        assertEquals(3, out.get(0).getInt());
+        assertEquals(0, out.get(0).getInt());
+        assertEquals(3, out.get(0).remaining());
+        assertEquals(1, out.get(1).getInt(4));
+        assertEquals(LengthFieldFrameDecoder.FRAME_HEADER_SIZE + 10, out.get(2).remaining());
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    @Test
+    public void testFrameSplitAcrossReads() throws IOException {
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder();
+        List<ByteBuffer> out = new ArrayList<>();
+        ByteBuffer stream = frames(20, 5);
+
+        // feed the stream byte by byte
+        while (stream.hasRemaining()) {
+            ByteBuffer chunk = ByteBuffer.allocate(1);
+            chunk.put(stream.get());
+            chunk.flip();
+            decoder.decode(chunk, out);
+        }
+
+        assertEquals(2, out.size());
+        ByteBuffer first = out.get(0);
+        assertEquals(20, first.getInt());
+        assertEquals(0, first.getInt());
+        for (int j = 0; j < 20; j++) {
+            assertEquals((byte) j, first.get());
+        }
+        assertEquals(5, out.get(1).getInt());
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    @Test
+    public void testPartialTailIsKept() throws IOException {
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder();
+        List<ByteBuffer> out = new ArrayList<>();
+        ByteBuffer stream = frames(4, 6);
+        stream.limit(stream.limit() - 2);
+
+        decoder.decode(stream, out);
+        assertEquals(1, out.size());
+        assertEquals(LengthFieldFrameDecoder.FRAME_HEADER_SIZE + 4, decoder.pendingBytes());
+
+        ByteBuffer tail = ByteBuffer.allocate(2);
+        tail.flip();
+        tail.limit(2);
+        decoder.decode(tail, out);
+        assertEquals(2, out.size());
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    @Test
+    public void testInvalidFrameLength() {
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(16);
+        ByteBuffer stream = frames(17);
+        assertThrows(IOException.class, () -> decoder.decode(stream, new ArrayList<>()));
+    }
+}
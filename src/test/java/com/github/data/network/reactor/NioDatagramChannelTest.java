@@ -0,0 +1,83 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/24 16:10
+ * @description
+ */
+public class NioDatagramChannelTest {
+
+    private static ByteBuffer frame(int api, int bodyLength){
+        ByteBuffer buffer = ByteBuffer.allocate(LengthFieldFrameDecoder.FRAME_HEADER_SIZE + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(api);
+        for (int i = 0; i < bodyLength; i++) {
+            buffer.put((byte) i);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testReadDrainsDatagramsAndDropsMalformedOnes() throws IOException {
+        NioDatagramChannel channel = new NioDatagramChannel(0, (c, readObject, key) -> { }, 64);
+        DatagramChannel javaChannel = channel.getJavaChannel();
+        javaChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        javaChannel.configureBlocking(false);
+        try (Selector selector = Selector.open(); DatagramChannel sender = DatagramChannel.open()) {
+            SelectionKey key = javaChannel.register(selector, SelectionKey.OP_READ);
+            InetSocketAddress target = (InetSocketAddress) javaChannel.getLocalAddress();
+
+            sender.send(frame(1, 10), target);
+            // 长度字段与数据报长度不符
+            ByteBuffer truncated = frame(2, 10);
+            truncated.limit(12);
+            sender.send(truncated, target);
+            // 超过最大数据报长度
+            sender.send(frame(3, 100), target);
+            sender.send(frame(4, 0), target);
+
+            List<ByteBuffer> frames = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (frames == null || frames.size() < 2) {
+                selector.select(100);
+                List<ByteBuffer> read = channel.read(key);
+                if (read != null) {
+                    if (frames == null) {
+                        frames = read;
+                    } else {
+                        frames.addAll(read);
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    break;
+                }
+            }
+
+            assertEquals(2, frames.size());
+            assertEquals(10, frames.get(0).getInt());
+            assertEquals(1, frames.get(0).getInt());
+            assertEquals(10, frames.get(0).remaining());
+            assertEquals(0, frames.get(1).getInt());
+            assertEquals(4, frames.get(1).getInt());
+            assertEquals(2, channel.getMalformedDatagrams());
+            assertNull(channel.read(key));
+        } finally {
+            javaChannel.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 17:40
+ * @description
+ */
+public class OrderedThreadPoolDispatcherTest {
+
+    @Test
+    public void testEventsOfOneKeyAreHandledInDispatchOrder() throws IOException, InterruptedException {
+        int keyNum = 8;
+        int eventsPerKey = 5000;
+        OrderedThreadPoolDispatcher dispatcher = new OrderedThreadPoolDispatcher(4, OrderedThreadPoolDispatcher.DEFAULT_LANE_QUEUE_SIZE);
+        NioReactor reactor = new NioReactor(dispatcher);
+        Map<SelectionKey, List<Integer>> handled = new ConcurrentHashMap<>();
+        Map<SelectionKey, Set<Thread>> threads = new ConcurrentHashMap<>();
+        TestChannel channel = new TestChannel((c, readObject, key) -> {
+            handled.get(key).add((Integer) readObject);
+            threads.get(key).add(Thread.currentThread());
+        });
+        channel.setReactor(reactor);
+
+        List<Pipe> pipes = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            List<SelectionKey> keys = new ArrayList<>();
+            for (int i = 0; i < keyNum; i++) {
+                Pipe pipe = Pipe.open();
+                pipes.add(pipe);
+                pipe.source().configureBlocking(false);
+                SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+                keys.add(key);
+                handled.put(key, Collections.synchronizedList(new ArrayList<>()));
+                threads.put(key, ConcurrentHashMap.newKeySet());
+            }
+
+            // 各连接的事件交错分发
+            int[] next = new int[keyNum];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int remaining = keyNum * eventsPerKey; remaining > 0; ) {
+                int k = random.nextInt(keyNum);
+                if (next[k] < eventsPerKey) {
+                    dispatcher.onChannelReadEvent(channel, next[k]++, keys.get(k));
+                    remaining--;
+                }
+            }
+            dispatcher.stop();
+
+            for (SelectionKey key : keys) {
+                List<Integer> events = handled.get(key);
+                assertEquals(eventsPerKey, events.size());
+                for (int i = 0; i < eventsPerKey; i++) {
+                    assertEquals(i, events.get(i).intValue());
+                }
+                // 同一连接的事件由同一个lane处理
+                assertEquals(1, threads.get(key).size());
+                int lane = dispatcher.queueOf(key);
+                assertTrue(lane >= 0 && lane < dispatcher.queueCount());
+            }
+            assertEquals(0, dispatcher.pendingEvents());
+        } finally {
+            for (Pipe pipe : pipes) {
+                pipe.sink().close();
+                pipe.source().close();
+            }
+            reactor.stop();
+        }
+    }
+
+    static final class TestChannel extends AbstractNioChannel {
+
+        TestChannel(ChannelHandler handler) {
+            super(handler, null);
+        }
+
+        @Override
+        public int getInterestedOps() {
+            return SelectionKey.OP_READ;
+        }
+
+        @Override
+        public void bind() {
+        }
+
+        @Override
+        public Object read(SelectionKey key) {
+            return null;
+        }
+
+        @Override
+        protected void doWrite(Object pendingWrite, SelectionKey key) {
+        }
+    }
+}
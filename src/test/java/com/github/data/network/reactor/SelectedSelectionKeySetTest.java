@@ -0,0 +1,78 @@
+package com.github.data.network.reactor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/24 11:20
+ * @description
+ */
+public class SelectedSelectionKeySetTest {
+
+    @Test
+    public void testAddGrowsAndClearReleasesKeys() throws IOException {
+        try (Selector selector = Selector.open()) {
+            Pipe pipe = Pipe.open();
+            pipe.source().configureBlocking(false);
+            SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+
+            SelectedSelectionKeySet set = new SelectedSelectionKeySet();
+            for (int i = 0; i < 3000; i++) {
+                assertTrue(set.add(key));
+            }
+            assertFalse(set.add(null));
+            assertEquals(3000, set.size());
+            assertFalse(set.contains(key));
+            assertFalse(set.remove(key));
+            int visited = 0;
+            for (SelectionKey k : set) {
+                assertSame(key, k);
+                visited++;
+            }
+            assertEquals(3000, visited);
+
+            set.clear();
+            assertEquals(0, set.size());
+            assertNull(set.keys[0]);
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    public void testInstalledSetReceivesSelectedKeys() throws IOException {
+        try (Selector selector = Selector.open()) {
+            SelectedSelectionKeySet set = SelectedSelectionKeySet.install(selector);
+            Pipe pipe = Pipe.open();
+            pipe.source().configureBlocking(false);
+            SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+            pipe.sink().write(ByteBuffer.wrap(new byte[]{1}));
+
+            assertEquals(1, selector.select(1000));
+            if (set != null) {
+                // 安装成功后selector的结果只写入数组
+                assertSame(set, selector.selectedKeys());
+                assertEquals(1, set.size);
+                assertSame(key, set.keys[0]);
+            } else {
+                // 反射被拒绝时退回JDK的实现
+                assertTrue(selector.selectedKeys().contains(key));
+            }
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+}
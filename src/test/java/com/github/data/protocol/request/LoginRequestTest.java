@@ -0,0 +1,64 @@
+package com.github.data.protocol.request;
+
+import com.github.data.protocol.AbstractRequestResponse;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 10:50
+ * @description
+ */
+public class LoginRequestTest {
+
+    private static ByteBuffer body(LoginRequest request){
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize());
+        request.writeFrame(ApiKeys.LOGIN, buffer);
+        buffer.flip();
+        buffer.position(AbstractRequestResponse.FRAME_HEADER_SIZE);
+        return buffer;
+    }
+
+    private static byte[] remaining(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testLegacyLogin(){
+        LoginRequest request = new LoginRequest("admin", "secret");
+        // 旧客户端的登录帧与Struct编码一致, 不携带协议版本
+        ByteBuffer struct = ByteBuffer.allocate(request.toStruct().sizeOf());
+        request.toStruct().writeTo(struct);
+        ByteBuffer buffer = body(request);
+        assertArrayEquals(struct.array(), remaining(buffer.duplicate()));
+
+        LoginRequest decoded = (LoginRequest) ApiCodecs.decodeRequest(ApiKeys.LOGIN, ApiKeys.LEGACY_VERSION, buffer);
+        assertEquals("admin", decoded.getUser());
+        assertEquals(ApiKeys.LEGACY_VERSION, decoded.getProtocolVersion());
+    }
+
+    @Test
+    public void testProtocolVersionNegotiation(){
+        LoginRequest request = new LoginRequest("admin", "secret", ApiKeys.LATEST_VERSION);
+        LoginRequest decoded = (LoginRequest) ApiCodecs.decodeRequest(ApiKeys.LOGIN, ApiKeys.LEGACY_VERSION, body(request));
+        assertEquals(ApiKeys.LATEST_VERSION, decoded.getProtocolVersion());
+
+        LoginResponse response = new LoginResponse(0, "ok", ApiKeys.COMPACT_VERSION);
+        ByteBuffer buffer = ByteBuffer.allocate(response.sizeOf(ApiKeys.COMPACT_VERSION));
+        response.writeTo(buffer, ApiKeys.COMPACT_VERSION);
+        buffer.flip();
+        assertEquals(ApiKeys.COMPACT_VERSION, LoginResponse.decode(buffer, ApiKeys.COMPACT_VERSION).getProtocolVersion());
+
+        // 旧客户端收到的登录响应不含协议版本
+        assertEquals(response.sizeOf(ApiKeys.LEGACY_VERSION), new LoginResponse(0, "ok").toStruct().sizeOf());
+    }
+}
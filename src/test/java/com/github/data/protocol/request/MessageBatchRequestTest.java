@@ -0,0 +1,194 @@
+package com.github.data.protocol.request;
+
+import com.github.data.compress.CompressionType;
+import com.github.data.protocol.AbstractRequest;
+import com.github.data.protocol.ApiCodecs;
+import com.github.data.protocol.ApiKeys;
+import com.github.data.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/20 14:10
+ * @description
+ */
+public class MessageBatchRequestTest {
+
+    private static ByteBuffer frame(MessageBatchRequest request){
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize());
+        request.writeFrame(ApiKeys.MESSAGE_BATCH, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<String> values(MessageBatchRequest request){
+        List<String> values = new ArrayList<>();
+        request.forEachRecord((index, ts, value) -> values.add(index + ":" + ts + ":" + Utils.utf8(value)));
+        return values;
+    }
+
+    @Test
+    public void testRoundTrip(){
+        MessageBatchRequest request = new MessageBatchRequest.Builder(Utils.utf8("{\"topic\":\"t\"}"), 1000L)
+                .append(1000L, Utils.utf8("a"))
+                .append(999L, Utils.utf8(""))
+                .append(1300L, Utils.utf8("ccc"))
+                .build();
+
+        ByteBuffer buffer = frame(request);
+        assertEquals(request.sizeOf(), buffer.getInt());
+        ApiKeys apiKeys = ApiKeys.forId(buffer.getInt());
+        assertEquals(ApiKeys.MESSAGE_BATCH, apiKeys);
+
+        AbstractRequest decoded = ApiCodecs.decodeRequest(apiKeys, ApiKeys.LEGACY_VERSION, buffer);
+        assertFalse(buffer.hasRemaining());
+        MessageBatchRequest batch = (MessageBatchRequest) decoded;
+        assertTrue(batch.isValid());
+        assertEquals("{\"topic\":\"t\"}", Utils.utf8(batch.keyBuffer()));
+        assertEquals(Arrays.asList("0:1000:a", "1:999:", "2:1300:ccc"), values(batch));
+
+        // Struct编码与专用编码一致
+        ByteBuffer struct = ByteBuffer.allocate(batch.sizeOf());
+        batch.toStruct().writeTo(struct);
+        ByteBuffer direct = ByteBuffer.allocate(batch.sizeOf());
+        batch.writeTo(direct);
+        assertEquals(ByteBuffer.wrap(struct.array()), ByteBuffer.wrap(direct.array()));
+    }
+
+    @Test
+    public void testMalformedRecordStopsDecoding(){
+        MessageBatchRequest request = new MessageBatchRequest.Builder(Utils.utf8("k"), 0L)
+                .append(1L, Utils.utf8("one"))
+                .append(2L, Utils.utf8("two"))
+                .build();
+        ByteBuffer buffer = frame(request);
+        // 截断最后一条记录的value, 并相应修改BYTES字段长度
+        int recordsLengthPosition = 4 + 4 + 4 + 1 + 8 + 4;
+        buffer.putInt(recordsLengthPosition, buffer.getInt(recordsLengthPosition) - 1);
+        buffer.position(4 + 4);
+        buffer.limit(buffer.limit() - 1);
+
+        MessageBatchRequest batch = MessageBatchRequest.decode(buffer, ApiKeys.LEGACY_VERSION);
+        assertEquals(2, batch.getRecordCount());
+        assertEquals(Arrays.asList("0:1:one"), values(batch));
+    }
+
+    @Test
+    public void testRecordCountMustFitTheRecords(){
+        MessageBatchRequest request = new MessageBatchRequest.Builder(Utils.utf8("k"), 0L)
+                .append(0L, Utils.utf8("v"))
+                .build();
+        ByteBuffer buffer = frame(request);
+        int recordCountPosition = 4 + 4 + 4 + 1 + 8;
+        buffer.putInt(recordCountPosition, 1000);
+        buffer.position(4 + 4);
+
+        assertFalse(MessageBatchRequest.decode(buffer, ApiKeys.LEGACY_VERSION).isValid());
+    }
+
+    @Test
+    public void testCompactVersion(){
+        MessageBatchRequest request = new MessageBatchRequest.Builder(Utils.utf8("{\"topic\":\"t\"}"), 1000L)
+                .append(1000L, Utils.utf8("a"))
+                .append(1300L, Utils.utf8("ccc"))
+                .build();
+        short version = ApiKeys.COMPACT_VERSION;
+        assertTrue(request.sizeOf(version) < request.sizeOf());
+
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize(version));
+        request.writeFrame(ApiKeys.MESSAGE_BATCH, version, buffer);
+        buffer.flip();
+        assertEquals(request.sizeOf(version), buffer.getInt());
+        assertEquals(ApiKeys.MESSAGE_BATCH.getId(), buffer.getInt());
+
+        // 专用编码与v1 Schema一致
+        ByteBuffer slice = buffer.slice();
+        assertEquals(2, ApiKeys.MESSAGE_BATCH.getRequestSchema(version).read(slice).getInt("message_batch_record_count"));
+
+        MessageBatchRequest batch = (MessageBatchRequest) ApiCodecs.decodeRequest(ApiKeys.MESSAGE_BATCH, version, buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals("{\"topic\":\"t\"}", Utils.utf8(batch.keyBuffer()));
+        assertEquals(Arrays.asList("0:1000:a", "1:1300:ccc"), values(batch));
+    }
+
+    @Test
+    public void testCompressedBatch(){
+        MessageBatchRequest.Builder builder = new MessageBatchRequest.Builder(Utils.utf8("{\"topic\":\"t\"}"), 1000L)
+                .compression(CompressionType.LZ4);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String value = "{\"level\":\"info\",\"message\":\"request served\",\"seq\":" + i + "}";
+            builder.append(1000L + i, Utils.utf8(value));
+            expected.add(i + ":" + (1000L + i) + ":" + value);
+        }
+        MessageBatchRequest request = builder.build();
+        assertEquals(CompressionType.LZ4, request.compressionType());
+        assertTrue(request.recordsLength() * 3 < request.uncompressedRecordsLength());
+        // 旧版本不能携带压缩类型
+        assertThrows(IllegalStateException.class, () -> request.writeTo(ByteBuffer.allocate(request.sizeOf(ApiKeys.COMPACT_VERSION)), ApiKeys.COMPACT_VERSION));
+
+        short version = ApiKeys.COMPRESSION_VERSION;
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize(version));
+        request.writeFrame(ApiKeys.MESSAGE_BATCH, version, buffer);
+        buffer.flip();
+        buffer.position(4 + 4);
+        ByteBuffer slice = buffer.slice();
+        assertEquals(CompressionType.LZ4.getId(), ApiKeys.MESSAGE_BATCH.getRequestSchema(version).read(slice).getByte("message_batch_attributes"));
+
+        MessageBatchRequest batch = (MessageBatchRequest) ApiCodecs.decodeRequest(ApiKeys.MESSAGE_BATCH, version, buffer);
+        assertTrue(batch.isValid());
+        assertEquals(expected, values(batch));
+    }
+
+    @Test
+    public void testCorruptCompressedBatchIsNotVisited(){
+        MessageBatchRequest.Builder builder = new MessageBatchRequest.Builder(Utils.utf8("k"), 0L).compression(CompressionType.LZ4);
+        for (int i = 0; i < 10; i++) {
+            builder.append(i, Utils.utf8("value value value " + i));
+        }
+        MessageBatchRequest request = builder.build();
+        short version = ApiKeys.COMPRESSION_VERSION;
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize(version));
+        request.writeFrame(ApiKeys.MESSAGE_BATCH, version, buffer);
+        // 压缩数据前记录的原始长度与数据不符
+        int sizePosition = buffer.position() - request.recordsLength();
+        buffer.putInt(sizePosition, buffer.getInt(sizePosition) + 1);
+        buffer.flip();
+        buffer.position(4 + 4);
+
+        MessageBatchRequest batch = MessageBatchRequest.decode(buffer, version);
+        assertTrue(batch.isValid());
+        assertEquals(0, batch.forEachRecord((index, ts, value) -> { }));
+    }
+
+    @Test
+    public void testUncompressedSizeBeyondCompressionRatioIsInvalid(){
+        MessageBatchRequest.Builder builder = new MessageBatchRequest.Builder(Utils.utf8("k"), 0L).compression(CompressionType.LZ4);
+        for (int i = 0; i < 10; i++) {
+            builder.append(i, Utils.utf8("value value value " + i));
+        }
+        MessageBatchRequest request = builder.build();
+        short version = ApiKeys.COMPRESSION_VERSION;
+        ByteBuffer buffer = ByteBuffer.allocate(request.frameSize(version));
+        request.writeFrame(ApiKeys.MESSAGE_BATCH, version, buffer);
+        // 声明的原始长度远超压缩数据可能还原的长度
+        int sizePosition = buffer.position() - request.recordsLength();
+        buffer.putInt(sizePosition, 32 * 1024 * 1024);
+        buffer.flip();
+        buffer.position(4 + 4);
+
+        MessageBatchRequest batch = MessageBatchRequest.decode(buffer, version);
+        assertFalse(batch.isValid());
+    }
+}
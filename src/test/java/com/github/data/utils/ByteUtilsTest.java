@@ -0,0 +1,60 @@
+package com.github.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/21 10:30
+ * @description
+ */
+public class ByteUtilsTest {
+
+    @Test
+    public void testVarintRoundTrip(){
+        int[] values = {0, 1, -1, 63, -64, 64, -65, 8191, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        for (int value : values) {
+            buffer.clear();
+            ByteUtils.writeVarint(value, buffer);
+            assertEquals(ByteUtils.sizeOfVarint(value), buffer.position());
+            buffer.flip();
+            assertEquals(value, ByteUtils.readVarint(buffer));
+        }
+        // zigzag: 绝对值小的负数同样只占1个字节
+        assertEquals(1, ByteUtils.sizeOfVarint(-64));
+        assertEquals(5, ByteUtils.sizeOfVarint(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testVarlongRoundTrip(){
+        long[] values = {0L, -1L, 300L, -300L, System.currentTimeMillis(), Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        for (long value : values) {
+            buffer.clear();
+            ByteUtils.writeVarlong(value, buffer);
+            assertEquals(ByteUtils.sizeOfVarlong(value), buffer.position());
+            buffer.flip();
+            assertEquals(value, ByteUtils.readVarlong(buffer));
+        }
+        assertEquals(10, ByteUtils.sizeOfVarlong(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testUnsignedVarint(){
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        ByteUtils.writeUnsignedVarint(300, buffer);
+        assertEquals(2, buffer.position());
+        buffer.flip();
+        assertEquals(300, ByteUtils.readUnsignedVarint(buffer));
+
+        // 超过5个字节的变长整数非法
+        ByteBuffer malformed = ByteBuffer.wrap(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x01});
+        assertThrows(IllegalArgumentException.class, () -> ByteUtils.readUnsignedVarint(malformed));
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/25 15:40
+ * @description
+ */
+public class Crc32CTest {
+
+    @Test
+    public void testKnownValues(){
+        // RFC 3720 B.4的测试向量
+        assertEquals(0xE3069283L, Crc32C.compute(ByteBuffer.wrap(Utils.utf8("123456789"))));
+        assertEquals(0x8A9136AAL, Crc32C.compute(ByteBuffer.allocate(32)));
+        byte[] ones = new byte[32];
+        Arrays.fill(ones, (byte) 0xFF);
+        assertEquals(0x62A8AB43L, Crc32C.compute(ByteBuffer.wrap(ones)));
+        assertEquals(0L, Crc32C.compute(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void testSameValueWhateverTheChunkingAndBuffer(){
+        byte[] data = new byte[1000];
+        new Random(42).nextBytes(data);
+        long expected = Crc32C.compute(ByteBuffer.wrap(data));
+
+        Crc32C crc32C = new Crc32C();
+        crc32C.update(data, 0, 3);
+        crc32C.update(data[3]);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        direct.position(4).limit(517);
+        crc32C.update(direct);
+        assertEquals(517, direct.position());
+        crc32C.update(ByteBuffer.wrap(data, 517, data.length - 517));
+        assertEquals(expected, crc32C.getValue());
+
+        crc32C.reset();
+        crc32C.update(data, 0, data.length);
+        assertEquals(expected, crc32C.getValue());
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author yusheng
+ * @version 1.0.0
+ * @datetime 2022/8/23 20:40
+ * @description
+ */
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testPutGetRemove(){
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(2);
+        assertNull(map.put(0L,"zero"));
+        assertNull(map.put(-1L,"minus one"));
+        assertNull(map.put(Long.MAX_VALUE,"max"));
+        assertEquals("zero",map.put(0L,"0"));
+        assertEquals("max",map.putIfAbsent(Long.MAX_VALUE,"other"));
+        assertEquals(3,map.size());
+
+        assertEquals("0",map.get(0L));
+        assertEquals("minus one",map.get(-1L));
+        assertTrue(map.containsKey(Long.MAX_VALUE));
+        assertFalse(map.containsKey(1L));
+
+        assertEquals("minus one",map.remove(-1L));
+        assertNull(map.remove(-1L));
+        assertNull(map.get(-1L));
+        assertEquals(2,map.size());
+        assertThrows(NullPointerException.class,() -> map.put(1L,null));
+    }
+
+    @Test
+    public void testMatchesHashMapUnderChurn(){
+        // 键集中在少数槽位, 覆盖删除后的元素前移
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long,Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = (long) random.nextInt(2048) << 22;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key),map.remove(key));
+            } else {
+                assertEquals(expected.put(key,(long) i),map.put(key,(long) i));
+            }
+        }
+        assertEquals(expected.size(),map.size());
+        for (Map.Entry<Long,Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(),map.get(entry.getKey()));
+        }
+        int[] visited = {0};
+        map.forEach((key,value) -> {
+            assertEquals(expected.get(key),value);
+            visited[0]++;
+        });
+        assertEquals(expected.size(),visited[0]);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0L));
+    }
+}